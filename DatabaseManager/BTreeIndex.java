@@ -0,0 +1,308 @@
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Ordered B+-tree index. Keys are typed by the column's DataType, so INTEGER
+ * and DOUBLE compare numerically; leaves are linked in both directions for
+ * range scans and ordered iteration.
+ * Author: Eyasu Solomon
+ *
+ * Splits move keys between nodes, so the tree is guarded by a read-write
+ * lock. Readers wait briefly for the read lock, which covers the usual
+ * single-key insert, and only return null when the tree stays busy past
+ * that, letting the table fall back to a scan rather than block. Readers
+ * queue behind a waiting writer, so they cannot starve it.
+ */
+class BTreeIndex extends TableIndex {
+    private static final int ORDER = 64;
+    private static final long READ_WAIT_MICROS = 2_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Leaf();
+    private final SlotList nullSlots = new SlotList();
+    private volatile int distinct;
+
+    public BTreeIndex(Column column) {
+        super(column);
+    }
+
+    @Override public String getType() { return "BTREE"; }
+    @Override public int distinctKeys() { return distinct; }
+
+    @Override
+    public void add(Object value, int slot) {
+        Object key = orderedKey(value);
+        lock.writeLock().lock();
+        try {
+            if (key == null) {
+                nullSlots.add(slot);
+                return;
+            }
+            Object[] split = insert(root, key, slot);
+            if (split != null) {
+                Inner newRoot = new Inner();
+                newRoot.keys[0] = split[0];
+                newRoot.children[0] = root;
+                newRoot.children[1] = (Node) split[1];
+                newRoot.count = 1;
+                root = newRoot;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] lookup(String literal) {
+        Object key = column.getType().keyOf(literal);
+        if (key == null) return new int[0];
+        if (!tryRead()) return null;
+        try {
+            Leaf leaf = findLeaf(key);
+            int pos = search(leaf, key);
+            return pos >= 0 ? leaf.values[pos].toArray() : new int[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Slots with low <= key <= high (bounds optional, inclusiveness per
+     * bound), in ascending key order; null if the tree is busy.
+     */
+    public int[] range(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        if (!tryRead()) return null;
+        try {
+            return rangeLocked(low, lowInclusive, high, highInclusive);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] rangeLocked(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        SlotList out = new SlotList();
+        Leaf leaf = low == null ? leftmostLeaf() : findLeaf(low);
+        int pos = 0;
+        if (low != null) {
+            pos = search(leaf, low);
+            if (pos < 0) pos = -pos - 1;
+            else if (!lowInclusive) pos++;
+        }
+        DataType type = column.getType();
+        while (leaf != null) {
+            for (; pos < leaf.count; pos++) {
+                if (high != null) {
+                    int c = type.compare(leaf.keys[pos], high);
+                    if (c > 0 || (c == 0 && !highInclusive)) return out.toArray();
+                }
+                out.addAll(leaf.values[pos]);
+            }
+            leaf = leaf.next;
+            pos = 0;
+        }
+        return out.toArray();
+    }
+
+    /**
+     * Every slot in key order; slots with NULL values come last (ascending)
+     * or first (descending). Null if the tree is busy.
+     */
+    public int[] ordered(boolean ascending) {
+        if (!tryRead()) return null;
+        try {
+            SlotList out = new SlotList();
+            if (ascending) {
+                for (Leaf leaf = leftmostLeaf(); leaf != null; leaf = leaf.next) {
+                    for (int i = 0; i < leaf.count; i++) out.addAll(leaf.values[i]);
+                }
+                out.addAll(nullSlots);
+            } else {
+                out.addAll(nullSlots);
+                for (Leaf leaf = rightmostLeaf(); leaf != null; leaf = leaf.prev) {
+                    for (int i = leaf.count - 1; i >= 0; i--) out.addAll(leaf.values[i]);
+                }
+            }
+            return out.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Smallest (or largest) key with a slot that {@code visible} accepts.
+     * Returns {@code busy} if the tree is busy and null if there is none.
+     */
+    public Object extreme(boolean min, IntPredicate visible, Object busy) {
+        if (!tryRead()) return busy;
+        try {
+            if (min) {
+                for (Leaf leaf = leftmostLeaf(); leaf != null; leaf = leaf.next) {
+                    for (int i = 0; i < leaf.count; i++) {
+                        if (anyVisible(leaf.values[i], visible)) return leaf.keys[i];
+                    }
+                }
+            } else {
+                for (Leaf leaf = rightmostLeaf(); leaf != null; leaf = leaf.prev) {
+                    for (int i = leaf.count - 1; i >= 0; i--) {
+                        if (anyVisible(leaf.values[i], visible)) return leaf.keys[i];
+                    }
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean anyVisible(SlotList slots, IntPredicate visible) {
+        for (int i = slots.size() - 1; i >= 0; i--) {
+            if (visible.test(slots.get(i))) return true;
+        }
+        return false;
+    }
+
+    /** Takes the read lock, waiting at most READ_WAIT_MICROS for a writer. */
+    private boolean tryRead() {
+        try {
+            return lock.readLock().tryLock(READ_WAIT_MICROS, TimeUnit.MICROSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Typed key, or null when the value is NULL or not valid for the column type. */
+    private Object orderedKey(Object value) {
+        if (value == null) return null;
+        try {
+            return column.getType().coerce(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Object[] insert(Node node, Object key, int slot) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int pos = search(leaf, key);
+            if (pos >= 0) {
+                leaf.values[pos].add(slot);
+                return null;
+            }
+            pos = -pos - 1;
+            System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.count - pos);
+            System.arraycopy(leaf.values, pos, leaf.values, pos + 1, leaf.count - pos);
+            leaf.keys[pos] = key;
+            leaf.values[pos] = new SlotList();
+            leaf.values[pos].add(slot);
+            leaf.count++;
+            distinct++;
+            return leaf.count > ORDER ? splitLeaf(leaf) : null;
+        }
+        
+        Inner inner = (Inner) node;
+        int child = childIndex(inner, key);
+        Object[] split = insert(inner.children[child], key, slot);
+        if (split == null) return null;
+        System.arraycopy(inner.keys, child, inner.keys, child + 1, inner.count - child);
+        System.arraycopy(inner.children, child + 1, inner.children, child + 2, inner.count - child);
+        inner.keys[child] = split[0];
+        inner.children[child + 1] = (Node) split[1];
+        inner.count++;
+        return inner.count > ORDER ? splitInner(inner) : null;
+    }
+
+    private Object[] splitLeaf(Leaf leaf) {
+        int mid = leaf.count / 2;
+        Leaf right = new Leaf();
+        right.count = leaf.count - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.count);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.count);
+        Arrays.fill(leaf.keys, mid, leaf.count, null);
+        Arrays.fill(leaf.values, mid, leaf.count, null);
+        leaf.count = mid;
+        
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) leaf.next.prev = right;
+        leaf.next = right;
+        return new Object[] { right.keys[0], right };
+    }
+
+    private Object[] splitInner(Inner inner) {
+        int mid = inner.count / 2;
+        Object separator = inner.keys[mid];
+        Inner right = new Inner();
+        right.count = inner.count - mid - 1;
+        System.arraycopy(inner.keys, mid + 1, right.keys, 0, right.count);
+        System.arraycopy(inner.children, mid + 1, right.children, 0, right.count + 1);
+        Arrays.fill(inner.keys, mid, inner.count, null);
+        Arrays.fill(inner.children, mid + 1, inner.count + 1, null);
+        inner.count = mid;
+        return new Object[] { separator, right };
+    }
+
+    private Leaf findLeaf(Object key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    private Leaf leftmostLeaf() {
+        Node node = root;
+        while (node instanceof Inner) node = ((Inner) node).children[0];
+        return (Leaf) node;
+    }
+
+    private Leaf rightmostLeaf() {
+        Node node = root;
+        while (node instanceof Inner) node = ((Inner) node).children[node.count];
+        return (Leaf) node;
+    }
+
+    /** First child whose separator is greater than key. */
+    private int childIndex(Inner inner, Object key) {
+        DataType type = column.getType();
+        int lo = 0, hi = inner.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (type.compare(key, inner.keys[mid]) < 0) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /** Binary search in a leaf: the key's position, or -(insertion point) - 1. */
+    private int search(Leaf leaf, Object key) {
+        DataType type = column.getType();
+        int lo = 0, hi = leaf.count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = type.compare(leaf.keys[mid], key);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private abstract static class Node {
+        final Object[] keys = new Object[ORDER + 1];
+        int count;
+    }
+
+    private static final class Leaf extends Node {
+        final SlotList[] values = new SlotList[ORDER + 1];
+        Leaf next;
+        Leaf prev;
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children = new Node[ORDER + 2];
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Values of one column for one batch. INTEGER and BOOLEAN (0/1) load into
+ * {@code ints}, DOUBLE into {@code doubles}, and STRING and DATE into
+ * {@code strings} or, from a dictionary encoded column, as codes into
+ * {@code ints}. Position {@code i} of the batch is element {@code base + i}
+ * of those arrays, which are either the column's own or ones lent by the
+ * storage through {@code wrap}. {@code nulls} is only filled in when
+ * {@code hasNulls} is set.
+ * Author: Eyasu Solomon
+ */
+final class BatchColumn {
+    final DataType type;
+    final boolean[] nulls = new boolean[VectorBatch.SIZE];
+    boolean hasNulls;
+    int[] ints;
+    double[] doubles;
+    String[] strings;
+    int base;
+    private final int[] ownInts;
+    private final double[] ownDoubles;
+    private final String[] ownStrings;
+    private StringVector dictionary;        // set while ints hold codes of this column
+
+    BatchColumn(DataType type) {
+        this.type = type;
+        boolean text = type == DataType.STRING || type == DataType.DATE;
+        this.ownInts = type == DataType.DOUBLE ? null : new int[VectorBatch.SIZE];
+        this.ownDoubles = type == DataType.DOUBLE ? new double[VectorBatch.SIZE] : null;
+        this.ownStrings = text ? new String[VectorBatch.SIZE] : null;
+        clear();
+    }
+
+    /** Back to the column's own arrays, with no NULLs and no dictionary. */
+    void clear() {
+        ints = ownInts;
+        doubles = ownDoubles;
+        strings = ownStrings;
+        base = 0;
+        hasNulls = false;
+        dictionary = null;
+    }
+
+    /** Reads the batch from {@code values}, starting at element {@code from}, without copying. */
+    void wrap(int[] values, int from) {
+        ints = values;
+        base = from;
+    }
+
+    void wrap(double[] values, int from) {
+        doubles = values;
+        base = from;
+    }
+
+    void wrap(String[] values, int from) {
+        strings = values;
+        base = from;
+    }
+
+    void useDictionary(StringVector column) {
+        dictionary = column;
+    }
+
+    /** The dictionary whose codes {@code ints} holds, or null if the values are plain. */
+    StringVector dictionary() {
+        return dictionary;
+    }
+
+    /** Stores a raw value at position {@code i}, coerced to the column type. */
+    void set(int i, Object value) {
+        // Stored values normally have the column's type already
+        if (value instanceof Integer && type == DataType.INTEGER) {
+            nulls[i] = false;
+            ints[i] = (Integer) value;
+            return;
+        }
+        if (value instanceof Double && type == DataType.DOUBLE) {
+            nulls[i] = false;
+            doubles[i] = (Double) value;
+            return;
+        }
+        if (value instanceof String && strings != null) {
+            nulls[i] = false;
+            strings[i] = (String) value;
+            return;
+        }
+        if (value instanceof Boolean && type == DataType.BOOLEAN) {
+            nulls[i] = false;
+            ints[i] = (Boolean) value ? 1 : 0;
+            return;
+        }
+        Object v = null;
+        if (value != null) {
+            try {
+                v = type.coerce(value);
+            } catch (IllegalArgumentException e) {
+                // raw text that is not a valid value of the type: never matches a typed test
+            }
+        }
+        nulls[i] = v == null;
+        if (v == null) {
+            hasNulls = true;
+            if (strings != null) strings[i] = null;
+            return;
+        }
+        switch (type) {
+            case INTEGER: ints[i] = (Integer) v; break;
+            case BOOLEAN: ints[i] = (Boolean) v ? 1 : 0; break;
+            case DOUBLE: doubles[i] = (Double) v; break;
+            default: strings[i] = (String) v; break;
+        }
+    }
+
+    String string(int i) {
+        return dictionary != null ? dictionary.word(ints[base + i]) : strings[base + i];
+    }
+
+    Object get(int i) {
+        if (hasNulls && nulls[i]) return null;
+        switch (type) {
+            case INTEGER: return ints[base + i];
+            case BOOLEAN: return ints[base + i] != 0;
+            case DOUBLE: return doubles[base + i];
+            default: return string(i);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+import java.util.*;
+
+/**
+ * Vectorized scans: filters, projections and aggregates over a
+ * {@link TableSnapshot}, {@value VectorBatch#SIZE} rows at a time.
+ * Author: Eyasu Solomon
+ *
+ * A batch loads only the columns a query touches, each as a primitive
+ * vector (ints, doubles, strings or dictionary codes plus a null array),
+ * the first time an operator asks for it. Columnar storage lends its own
+ * arrays, so loading a batch there copies nothing. The rows still in play are kept
+ * in a selection vector of batch positions; every filter narrows it in one
+ * tight loop per column, so nothing is boxed and no Record is built for a
+ * row that does not match. Projection and aggregation read the surviving
+ * positions straight from the vectors.
+ *
+ * Results are the same as the row-at-a-time predicates of {@link Table}: =
+ * and &lt;&gt; match the text of a value, ranges compare typed values, NULL
+ * matches nothing but IS NULL, and NOT inverts.
+ */
+final class BatchScan {
+    private static volatile boolean enabled = true;
+
+    private final TableSnapshot snapshot;
+    private final List<Column> columns;
+    private final BatchFilter filter;       // null: every visible row
+    private final VectorBatch batch;
+
+    BatchScan(TableSnapshot snapshot, List<Column> columns, Expr where) {
+        this.snapshot = snapshot;
+        this.columns = columns;
+        this.filter = where == null ? null : compile(where);
+        this.batch = new VectorBatch(snapshot.storage, columns);
+    }
+
+    /** Turns vectorized scans on or off, to compare them with row-at-a-time ones. */
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Whether scans of {@code storage} run in batches. ROW storage keeps its
+     * row-at-a-time path: each value there is a map lookup in a Record of its
+     * own, so loading a batch column by column costs as much as the filters
+     * save.
+     */
+    static boolean appliesTo(TableStorage storage) {
+        return enabled && storage.getMode() == StorageMode.COLUMNAR;
+    }
+
+    /** Visible matching slots in {@code [from, to)}, ascending. */
+    int[] slots(int from, int to) {
+        SlotList out = new SlotList();
+        for (int start = from; start < to; start += VectorBatch.SIZE) {
+            int n = select(start, Math.min(VectorBatch.SIZE, to - start));
+            int[] sel = batch.selection;
+            for (int i = 0; i < n; i++) out.add(start + sel[i]);
+        }
+        return out.toArray();
+    }
+
+    /** Number of visible matching rows in {@code [from, to)} where column {@code c} (-1: any) is not NULL. */
+    long count(int c, int from, int to) {
+        long count = 0;
+        for (int start = from; start < to; start += VectorBatch.SIZE) {
+            int n = select(start, Math.min(VectorBatch.SIZE, to - start));
+            if (c < 0 || n == 0) {
+                count += n;
+                continue;
+            }
+            BatchColumn col = batch.column(c);
+            if (!col.hasNulls) {
+                count += n;
+                continue;
+            }
+            int[] sel = batch.selection;
+            for (int i = 0; i < n; i++) {
+                if (!col.nulls[sel[i]]) count++;
+            }
+        }
+        return count;
+    }
+
+    /** Smallest ({@code min}) or largest non-NULL value of column {@code c} among matching rows; null if none. */
+    Object extreme(int c, boolean min, int from, int to) {
+        DataType type = columns.get(c).getType();
+        boolean found = false;
+        long bestLong = 0;
+        double bestDouble = 0;
+        String bestString = null;
+        for (int start = from; start < to; start += VectorBatch.SIZE) {
+            int n = select(start, Math.min(VectorBatch.SIZE, to - start));
+            if (n == 0) continue;
+            BatchColumn col = batch.column(c);
+            boolean[] nulls = col.hasNulls ? col.nulls : null;
+            int[] sel = batch.selection;
+            int base = col.base;
+            switch (type) {
+                case INTEGER:
+                case BOOLEAN: {
+                    int[] v = col.ints;
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (nulls != null && nulls[p]) continue;
+                        int x = v[base + p];
+                        if (!found || (min ? x < bestLong : x > bestLong)) bestLong = x;
+                        found = true;
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double[] v = col.doubles;
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (nulls != null && nulls[p]) continue;
+                        double x = v[base + p];
+                        int cmp = found ? Double.compare(x, bestDouble) : 0;
+                        if (!found || (min ? cmp < 0 : cmp > 0)) bestDouble = x;
+                        found = true;
+                    }
+                    break;
+                }
+                default: {
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (nulls != null && nulls[p]) continue;
+                        String v = col.string(p);
+                        int cmp = found ? v.compareTo(bestString) : 0;
+                        if (!found || (min ? cmp < 0 : cmp > 0)) bestString = v;
+                        found = true;
+                    }
+                    break;
+                }
+            }
+        }
+        if (!found) return null;
+        switch (type) {
+            case INTEGER: return (int) bestLong;
+            case BOOLEAN: return bestLong != 0;
+            case DOUBLE: return bestDouble;
+            default: return bestString;
+        }
+    }
+
+    /** Values of columns {@code cols} for each matching row in {@code [from, to)}, in slot order. */
+    List<Object[]> project(int[] cols, int from, int to) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int start = from; start < to; start += VectorBatch.SIZE) {
+            int n = select(start, Math.min(VectorBatch.SIZE, to - start));
+            if (n == 0) continue;
+            int[] sel = batch.selection;
+            Object[][] out = new Object[n][cols.length];
+            for (int k = 0; k < cols.length; k++) {
+                BatchColumn col = batch.column(cols[k]);
+                for (int i = 0; i < n; i++) {
+                    out[i][k] = col.get(sel[i]);
+                }
+            }
+            rows.addAll(Arrays.asList(out));
+        }
+        return rows;
+    }
+
+    /** Adds every visible matching row in {@code [from, to)} to {@code aggregation} and returns it. */
+    HashAggregation aggregate(HashAggregation aggregation, int from, int to) {
+        for (int start = from; start < to; start += VectorBatch.SIZE) {
+            int n = select(start, Math.min(VectorBatch.SIZE, to - start));
+            if (n > 0) aggregation.add(batch, batch.selection, n);
+        }
+        return aggregation;
+    }
+
+    /** Adds the rows at {@code slots[from..to)}, already filtered, to {@code aggregation} and returns it. */
+    static HashAggregation aggregate(TableSnapshot snapshot, List<Column> columns, int[] slots, int from, int to,
+                                     HashAggregation aggregation) {
+        VectorBatch batch = new VectorBatch(snapshot.storage, columns);
+        for (int start = from; start < to; start += VectorBatch.SIZE) {
+            int n = Math.min(VectorBatch.SIZE, to - start);
+            batch.gather(slots, start, n);
+            aggregation.add(batch, batch.selection, n);
+        }
+        return aggregation;
+    }
+
+    /** Loads the batch at {@code start} and leaves its matching positions in the selection; returns their count. */
+    private int select(int start, int count) {
+        batch.reset(start, count);
+        int n = snapshot.storage.visibleSlots(start, count, snapshot.version, batch.selection);
+        if (filter != null && n > 0) n = filter.apply(batch, batch.selection, n);
+        return n;
+    }
+
+    // ------------------------------------------------------------------
+    // Compiling conditions
+    // ------------------------------------------------------------------
+
+    private BatchFilter compile(Expr e) {
+        if (e instanceof Logical) {
+            Logical l = (Logical) e;
+            BatchFilter left = compile(l.left);
+            BatchFilter right = compile(l.right);
+            return l.and ? new AndFilter(left, right) : new OrFilter(left, right);
+        }
+        if (e instanceof Not) {
+            return new NotFilter(compile(((Not) e).operand));
+        }
+        if (e instanceof IsNull) {
+            return new NullFilter(column(((IsNull) e).column), ((IsNull) e).negated);
+        }
+        if (e instanceof Between) {
+            Between b = (Between) e;
+            int c = column(b.column);
+            DataType type = columns.get(c).getType();
+            return CompareFilter.range(c, type, KeyRange.between(type, b.low, b.high));
+        }
+        Comparison cmp = (Comparison) e;
+        int c = column(cmp.column);
+        DataType type = columns.get(c).getType();
+        if (cmp.op == TokenType.EQ || cmp.op == TokenType.NE) {
+            return CompareFilter.equality(c, type, cmp.op == TokenType.NE, cmp.value);
+        }
+        return CompareFilter.range(c, type, KeyRange.of(type, cmp.op, cmp.value));
+    }
+
+    private int column(String name) {
+        int c = snapshot.storage.columnIndex(name);
+        if (c < 0) {
+            throw new IllegalArgumentException("Unknown column: " + name);
+        }
+        return c;
+    }
+}
+
+// ----------------------------------------------------------------------
+// Filters
+// ----------------------------------------------------------------------
+
+/** Narrows a selection vector: keeps the positions in {@code sel[0..n)} that match and returns how many. */
+abstract class BatchFilter {
+    abstract int apply(VectorBatch batch, int[] sel, int n);
+}
+
+/**
+ * column op literal. Numbers and booleans become longs in the same order
+ * as {@link DataType#compare} (doubles through their bits), so every
+ * operator is one inclusive range test, or its complement for &lt;&gt;.
+ * The loops write every position and advance the output only on a match,
+ * which avoids a mispredicted branch per row on unsorted data. Text
+ * compares each value with the literal and looks the sign up in
+ * {@code accept}.
+ */
+final class CompareFilter extends BatchFilter {
+    private final int column;
+    private final DataType type;
+    private final boolean none;             // matches nothing: = with a literal no value prints as, or an empty range
+    private final long low;
+    private final long high;
+    private final boolean negated;
+    private final boolean[] accept;
+    private final String stringKey;
+
+    // Dictionary codes already compared with stringKey: 1 accepted, 2 rejected
+    private StringVector dictionary;
+    private byte[] verdicts = new byte[0];
+
+    private CompareFilter(int column, DataType type, TokenType op, Object key) {
+        this.column = column;
+        this.type = type;
+        this.none = key == null;
+        this.negated = op == TokenType.NE;
+        this.stringKey = key instanceof String ? (String) key : null;
+        long k = key instanceof Integer ? (Integer) key
+            : key instanceof Double ? sortable((Double) key)
+            : key instanceof Boolean ? ((Boolean) key ? 1 : 0) : 0;
+        switch (op) {
+            case LT: low = Long.MIN_VALUE; high = k - 1; accept = new boolean[] {true, false, false}; break;
+            case LE: low = Long.MIN_VALUE; high = k; accept = new boolean[] {true, true, false}; break;
+            case GT: low = k + 1; high = Long.MAX_VALUE; accept = new boolean[] {false, false, true}; break;
+            case GE: low = k; high = Long.MAX_VALUE; accept = new boolean[] {false, true, true}; break;
+            case NE: low = k; high = k; accept = new boolean[] {true, false, true}; break;
+            default: low = k; high = k; accept = new boolean[] {false, true, false}; break;
+        }
+    }
+
+    /** = or &lt;&gt;: compares against the value whose text is exactly {@code literal}. */
+    static BatchFilter equality(int column, DataType type, boolean negated, String literal) {
+        Object key = type.keyOf(literal);
+        if (key == null) {
+            // Nothing prints as the literal: = matches no row and <> every non-NULL one
+            return negated ? new NullFilter(column, true) : new CompareFilter(column, type, TokenType.EQ, null);
+        }
+        return new CompareFilter(column, type, negated ? TokenType.NE : TokenType.EQ, key);
+    }
+
+    /** Values in {@code range}: one filter per bounded end, IS NOT NULL when neither is. */
+    static BatchFilter range(int column, DataType type, KeyRange range) {
+        if (range.empty) return new CompareFilter(column, type, TokenType.EQ, null);
+        BatchFilter low = range.low == null ? null
+            : new CompareFilter(column, type, range.lowInclusive ? TokenType.GE : TokenType.GT, range.low);
+        BatchFilter high = range.high == null ? null
+            : new CompareFilter(column, type, range.highInclusive ? TokenType.LE : TokenType.LT, range.high);
+        if (low == null) return high != null ? high : new NullFilter(column, true);
+        return high == null ? low : new AndFilter(low, high);
+    }
+
+    /** A long that orders like {@link Double#compare} orders doubles. */
+    static long sortable(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    @Override
+    int apply(VectorBatch batch, int[] sel, int n) {
+        if (none) return 0;
+        BatchColumn col = batch.column(column);
+        if (col.hasNulls) n = dropNulls(col.nulls, sel, n);
+        long lo = low;
+        long span = high - low;
+        int flip = negated ? 1 : 0;
+        int base = col.base;
+        int out = 0;
+        switch (type) {
+            case INTEGER:
+            case BOOLEAN: {
+                int[] v = col.ints;
+                for (int i = 0; i < n; i++) {
+                    int p = sel[i];
+                    sel[out] = p;
+                    out += inside(v[base + p] - lo, span) ^ flip;
+                }
+                return out;
+            }
+            case DOUBLE: {
+                double[] v = col.doubles;
+                for (int i = 0; i < n; i++) {
+                    int p = sel[i];
+                    sel[out] = p;
+                    out += inside(sortable(v[base + p]) - lo, span) ^ flip;
+                }
+                return out;
+            }
+            default:
+                if (col.dictionary() != null) return applyCodes(col, sel, n);
+                String[] v = col.strings;
+                boolean[] accept = this.accept;
+                for (int i = 0; i < n; i++) {
+                    int p = sel[i];
+                    if (accept[Integer.signum(v[base + p].compareTo(stringKey)) + 1]) sel[out++] = p;
+                }
+                return out;
+        }
+    }
+
+    /** 1 if {@code offset} (value minus low) is at most {@code span} as unsigned longs, else 0, without a branch. */
+    private static int inside(long offset, long span) {
+        // no borrow out of span - offset
+        return (int) (((~span & offset) | (~(span ^ offset) & (span - offset))) >>> 63) ^ 1;
+    }
+
+    static int dropNulls(boolean[] nulls, int[] sel, int n) {
+        int out = 0;
+        for (int i = 0; i < n; i++) {
+            int p = sel[i];
+            if (!nulls[p]) sel[out++] = p;
+        }
+        return out;
+    }
+
+    /** Dictionary codes: each distinct code is compared with the literal once per scan. */
+    private int applyCodes(BatchColumn col, int[] sel, int n) {
+        StringVector dict = col.dictionary();
+        if (dict != dictionary) {
+            dictionary = dict;
+            verdicts = new byte[Math.max(16, dict.cardinality())];
+        }
+        int[] codes = col.ints;
+        int base = col.base;
+        int out = 0;
+        for (int i = 0; i < n; i++) {
+            int p = sel[i];
+            int code = codes[base + p];
+            if (code >= verdicts.length) verdicts = Arrays.copyOf(verdicts, Math.max(code + 1, verdicts.length * 2));
+            byte verdict = verdicts[code];
+            if (verdict == 0) {
+                verdict = accept[Integer.signum(dict.word(code).compareTo(stringKey)) + 1] ? (byte) 1 : (byte) 2;
+                verdicts[code] = verdict;
+            }
+            sel[out] = p;
+            out += verdict & 1;
+        }
+        return out;
+    }
+}
+
+final class NullFilter extends BatchFilter {
+    private final int column;
+    private final boolean negated;
+
+    NullFilter(int column, boolean negated) {
+        this.column = column;
+        this.negated = negated;
+    }
+
+    @Override
+    int apply(VectorBatch batch, int[] sel, int n) {
+        BatchColumn col = batch.column(column);
+        if (!col.hasNulls) return negated ? n : 0;
+        boolean[] nulls = col.nulls;
+        boolean wanted = !negated;
+        int out = 0;
+        for (int i = 0; i < n; i++) {
+            int p = sel[i];
+            sel[out] = p;
+            out += nulls[p] == wanted ? 1 : 0;
+        }
+        return out;
+    }
+}
+
+final class AndFilter extends BatchFilter {
+    private final BatchFilter left;
+    private final BatchFilter right;
+
+    AndFilter(BatchFilter left, BatchFilter right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    int apply(VectorBatch batch, int[] sel, int n) {
+        n = left.apply(batch, sel, n);
+        return n == 0 ? 0 : right.apply(batch, sel, n);
+    }
+}
+
+/** Left narrows the selection; right only sees the positions left rejected; the two are merged in order. */
+final class OrFilter extends BatchFilter {
+    private final BatchFilter left;
+    private final BatchFilter right;
+    private final int[] input = new int[VectorBatch.SIZE];
+    private final int[] rest = new int[VectorBatch.SIZE];
+
+    OrFilter(BatchFilter left, BatchFilter right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    int apply(VectorBatch batch, int[] sel, int n) {
+        System.arraycopy(sel, 0, input, 0, n);
+        int matched = left.apply(batch, sel, n);
+        int others = difference(input, n, sel, matched, rest);
+        if (others == 0) return matched;
+        others = right.apply(batch, rest, others);
+        // Merge the two ascending lists back into sel, using input as scratch
+        int i = 0, j = 0, k = 0;
+        while (i < matched && j < others) input[k++] = sel[i] < rest[j] ? sel[i++] : rest[j++];
+        while (i < matched) input[k++] = sel[i++];
+        while (j < others) input[k++] = rest[j++];
+        System.arraycopy(input, 0, sel, 0, k);
+        return k;
+    }
+
+    /** Positions of {@code all[0..n)} not in {@code some[0..m)}, both ascending, into {@code out}. */
+    static int difference(int[] all, int n, int[] some, int m, int[] out) {
+        int count = 0;
+        for (int i = 0, j = 0; i < n; i++) {
+            while (j < m && some[j] < all[i]) j++;
+            if (j < m && some[j] == all[i]) continue;
+            out[count++] = all[i];
+        }
+        return count;
+    }
+}
+
+final class NotFilter extends BatchFilter {
+    private final BatchFilter operand;
+    private final int[] matched = new int[VectorBatch.SIZE];
+
+    NotFilter(BatchFilter operand) {
+        this.operand = operand;
+    }
+
+    @Override
+    int apply(VectorBatch batch, int[] sel, int n) {
+        System.arraycopy(sel, 0, matched, 0, n);
+        int m = operand.apply(batch, matched, n);
+        return OrFilter.difference(sel, n, matched, m, sel);
+    }
+}
@@ -0,0 +1,1552 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Micro-benchmarks for the Database Manager engine.
+ * Author: Eyasu Solomon
+ *
+ * Usage: java Benchmark [wal|checkpoint|concurrency|delete|dictionary|freeze|import|export|parse|scan|parallel|groupby|join|sort|planner|cache|cursor|paged|cancel|console|editor|script] [ops]
+ *
+ *   wal         - durable Table.insert throughput for each SyncPolicy with
+ *                 1, 8 and 32 concurrent writers
+ *   checkpoint  - restart time from log replay alone vs. from a checkpoint,
+ *                 for a table of [ops] rows
+ *   concurrency - stress test: writers update, insert and delete while
+ *                 readers scan; fails (exit 1) on a lost update, an
+ *                 inconsistent snapshot or any exception
+ *   delete      - delete half of an [ops]-row table one key at a time, then
+ *                 wait for background compaction
+ *   dictionary  - heap use and equality filter speed of low-cardinality
+ *                 STRING columns: ROW vs. plain and dictionary COLUMNAR
+ *   freeze      - heap use and equality filter speed of an [ops]-row table
+ *                 before and after freezing it into compressed segments
+ *   import      - load an [ops]-row CSV file with an indexed column: one
+ *                 insert per line vs. BulkLoader with 1 and all workers
+ *   export      - export an [ops]-row table to CSV and binary and load
+ *                 both files back; run with a small -Xmx to check that
+ *                 exports stay within bounded heap
+ *   parse       - statements parsed per second and bytes allocated per
+ *                 statement, for each kind of statement
+ *   scan        - filter and aggregate queries over an [ops]-row COLUMNAR
+ *                 table, row at a time vs. vectorized batches
+ *   parallel    - the same queries on ROW and COLUMNAR tables, on the
+ *                 calling thread vs. split across the scan pool
+ *                 (-Ddbm.scanThreads sets its size)
+ *   groupby     - GROUP BY queries over an [ops]-row table: hash aggregation
+ *                 vs. grouping the selected Records in a HashMap
+ *   join        - joins of an [ops]-row orders table with an [ops]-row
+ *                 people table: hash join in memory and spilled to disk
+ *                 vs. matching the selected Records through a HashMap
+ *   sort        - ORDER BY with and without LIMIT over an [ops]-row table:
+ *                 sorting every selected Record vs. the engine's top-N
+ *                 heap, and an unbounded sort merged from runs on disk
+ *   planner     - indexed filters of an [ops]-row table and a three-table
+ *                 join, with the fixed rules vs. after ANALYZE
+ *   cache       - a dashboard's repeated SELECTs over an [ops]-row table,
+ *                 without and with the query cache, read-only and with
+ *                 one write in ten statements
+ *   cursor      - the first screenful (50 rows) and all rows of SELECTs
+ *                 over an [ops]-row table: a list of every Record vs. a
+ *                 cursor, in time and bytes allocated
+ *   paged       - the GUI's result grid for SELECTs over an [ops]-row
+ *                 table: a DefaultTableModel of every row vs. the paged
+ *                 model, to the first screen, scrolling and heap held
+ *   cancel      - queries over an [ops]-row table with and without a
+ *                 QueryControl counting progress, and how long a
+ *                 cancelled query takes to stop
+ *   console     - [ops] lines logged to the GUI console: appended to the
+ *                 text area one at a time vs. through the bounded
+ *                 ConsoleLog, distinct and repeated messages
+ *   editor      - a script of [ops] INSERT lines in the SQL editor: the old
+ *                 wrapped text area with its rebuilt line numbers vs.
+ *                 SqlEditor, to load, paint and type into
+ *   script      - a migration script of [ops] statements, mostly INSERTs:
+ *                 parsed and run one statement at a time vs. ScriptRunner's
+ *                 batched pipeline, in memory and with a write-ahead log
+ */
+public class Benchmark {
+
+    public static void main(String[] args) throws Exception {
+        String which = args.length > 0 ? args[0] : "wal";
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        switch (which) {
+            case "wal": walBenchmark(ops); break;
+            case "checkpoint": checkpointBenchmark(ops); break;
+            case "concurrency": concurrencyStress(ops); break;
+            case "delete": deleteBenchmark(ops); break;
+            case "dictionary": dictionaryBenchmark(ops); break;
+            case "freeze": freezeBenchmark(ops); break;
+            case "import": importBenchmark(ops); break;
+            case "export": exportBenchmark(ops); break;
+            case "parse": parseBenchmark(ops); break;
+            case "scan": scanBenchmark(ops); break;
+            case "parallel": parallelBenchmark(ops); break;
+            case "groupby": groupByBenchmark(ops); break;
+            case "join": joinBenchmark(ops); break;
+            case "sort": sortBenchmark(ops); break;
+            case "planner": plannerBenchmark(ops); break;
+            case "cache": cacheBenchmark(ops); break;
+            case "cursor": cursorBenchmark(ops); break;
+            case "paged": pagedBenchmark(ops); break;
+            case "cancel": cancelBenchmark(ops); break;
+            case "console": consoleBenchmark(ops); break;
+            case "editor": editorBenchmark(ops); break;
+            case "script": scriptBenchmark(ops); break;
+            default:
+                System.out.println("Unknown benchmark: " + which);
+                System.exit(1);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Write-ahead log
+    // ------------------------------------------------------------------
+
+    private static void walBenchmark(int ops) throws Exception {
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", "John Smith");
+        row.put("department", "IT");
+        row.put("salary", 75000.0);
+        row.put("active", true);
+
+        System.out.println("Durable Table.insert throughput (" + ops + " inserts per run)");
+        System.out.printf("%-14s %8s %14s %12s%n", "Policy", "Threads", "Ops/sec", "Avg us/op");
+        System.out.println("─".repeat(52));
+
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            for (int threads : new int[] {1, 8, 32}) {
+                // fsync-per-op is far slower; keep its runs short
+                int runOps = policy == SyncPolicy.PER_OP ? Math.min(ops, 2_000) : ops;
+                Path dir = Files.createTempDirectory("wal-bench");
+                Database db = new Database("bench", dir, policy, 2);
+                try {
+                    Table table = new Table("bench", Arrays.asList(
+                        new Column("name", DataType.STRING),
+                        new Column("department", DataType.STRING),
+                        new Column("salary", DataType.DOUBLE),
+                        new Column("active", DataType.BOOLEAN)
+                    ));
+                    db.addTable(table);
+                    long elapsed = runWriters(table, row, threads, runOps);
+                    double seconds = elapsed / 1e9;
+                    System.out.printf("%-14s %8d %14.0f %12.1f%n", policy, threads,
+                        runOps / seconds, elapsed / 1e3 / runOps * threads);
+                } finally {
+                    db.close();
+                    deleteRecursively(dir);
+                }
+            }
+        }
+    }
+
+    /** Inserts {@code ops} rows from {@code threads} threads through the table, as the console would. */
+    private static long runWriters(Table table, Map<String, Object> row, int threads, int ops)
+            throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        int perThread = ops / threads;
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    table.insert(row);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        return System.nanoTime() - start;
+    }
+
+    // ------------------------------------------------------------------
+    // Checkpoint
+    // ------------------------------------------------------------------
+
+    private static void checkpointBenchmark(int rows) throws Exception {
+        Path dir = Files.createTempDirectory("checkpoint-bench");
+        try {
+            Database db = new Database("bench", dir, SyncPolicy.OS_BUFFERED, 0);
+            Table table = new Table("orders", Arrays.asList(
+                new Column("customer", DataType.STRING),
+                new Column("amount", DataType.DOUBLE),
+                new Column("quantity", DataType.INTEGER)
+            ), StorageMode.COLUMNAR);
+            db.addTable(table);
+            table.createIndex("customer", IndexType.HASH);
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < rows; i++) {
+                row.put("customer", "customer-" + (i % 1000));
+                row.put("amount", i * 1.5);
+                row.put("quantity", i % 100);
+                table.insert(row);
+            }
+            db.close();
+
+            System.out.println("Restart time for " + rows + " rows");
+            System.out.printf("%-22s %12s %12s%n", "Source", "Load ms", "On disk KB");
+            System.out.println("─".repeat(48));
+            System.out.printf("%-22s %12d %12d%n", "Log replay", timeRestart(dir, rows), directorySize(dir) / 1024);
+
+            db = new Database("bench", dir, SyncPolicy.OS_BUFFERED, 0);
+            long start = System.nanoTime();
+            db.checkpoint();
+            long writeMillis = (System.nanoTime() - start) / 1_000_000;
+            db.close();
+            System.out.printf("%-22s %12d %12d%n", "Checkpoint (mmap)", timeRestart(dir, rows), directorySize(dir) / 1024);
+            System.out.println("Checkpoint written in " + writeMillis + " ms");
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static long timeRestart(Path dir, int rows) throws IOException {
+        long start = System.nanoTime();
+        Database db = new Database("bench", dir, SyncPolicy.OS_BUFFERED, 0);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        int loaded = db.getTable("orders").getRecordCount();
+        db.close();
+        if (loaded != rows) throw new IllegalStateException("Recovered " + loaded + " of " + rows + " rows");
+        return millis;
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir.resolve("bench"))) {
+            for (Path f : files) total += Files.size(f);
+        }
+        return total;
+    }
+
+    // ------------------------------------------------------------------
+    // Concurrency
+    // ------------------------------------------------------------------
+
+    /**
+     * Each writer owns one counter row and bumps it [ops] times, inserting
+     * and deleting scratch rows in between. Readers check every snapshot:
+     * each counter appears exactly once and never goes backwards, and the
+     * indexed and scanned paths agree.
+     */
+    private static void concurrencyStress(int ops) throws Exception {
+        for (StorageMode mode : StorageMode.values()) {
+            int writers = 8;
+            int readers = 8;
+            Table table = new Table("stress", Arrays.asList(
+                new Column("owner", DataType.STRING),
+                new Column("counter", DataType.INTEGER),
+                new Column("kind", DataType.STRING)
+            ), mode);
+            table.createIndex("owner", IndexType.HASH);
+            table.createIndex("counter", IndexType.BTREE);
+            for (int w = 0; w < writers; w++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("owner", "w" + w);
+                row.put("counter", 0);
+                row.put("kind", "counter");
+                table.insert(row);
+            }
+
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+            java.util.concurrent.atomic.AtomicLong reads = new java.util.concurrent.atomic.AtomicLong();
+            int perWriter = ops / writers;
+
+            Thread[] threads = new Thread[writers + readers];
+            for (int w = 0; w < writers; w++) {
+                String owner = "w" + w;
+                threads[w] = new Thread(() -> {
+                    try {
+                        Map<String, Object> scratch = new HashMap<>();
+                        scratch.put("owner", owner + "-scratch");
+                        scratch.put("counter", -1);
+                        scratch.put("kind", "scratch");
+                        for (int i = 1; i <= perWriter; i++) {
+                            if (table.update("owner", owner, "counter", String.valueOf(i)) != 1) {
+                                throw new AssertionError(owner + ": update matched no row at " + i);
+                            }
+                            table.insert(scratch);
+                            if (i % 4 == 0) table.delete("owner", owner + "-scratch");
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                });
+            }
+            for (int r = 0; r < readers; r++) {
+                threads[writers + r] = new Thread(() -> {
+                    try {
+                        int[] seen = new int[writers];
+                        while (!done.get()) {
+                            int[] counters = new int[writers];
+                            Arrays.fill(counters, -1);
+                            for (Record rec : table.selectAll()) {
+                                if (!"counter".equals(rec.get("kind"))) continue;
+                                int w = Integer.parseInt(rec.get("owner").toString().substring(1));
+                                if (counters[w] != -1) throw new AssertionError("w" + w + " visible twice");
+                                counters[w] = (Integer) rec.get("counter");
+                            }
+                            for (int w = 0; w < writers; w++) {
+                                if (counters[w] < seen[w]) {
+                                    throw new AssertionError("w" + w + " went back from " + seen[w] + " to " + counters[w]);
+                                }
+                                seen[w] = counters[w];
+                            }
+                            int w = (int) (reads.get() % writers);
+                            List<Record> own = table.selectWhere("owner", "w" + w);
+                            if (own.size() != 1) throw new AssertionError("w" + w + " matched " + own.size() + " rows");
+                            table.selectRange("counter", "0", true, null, false, true);
+                            reads.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Thread t : threads) t.start();
+            for (int w = 0; w < writers; w++) threads[w].join();
+            long elapsed = System.nanoTime() - start;
+            done.set(true);
+            for (int r = 0; r < readers; r++) threads[writers + r].join();
+
+            for (int w = 0; w < writers; w++) {
+                List<Record> own = table.selectWhere("owner", "w" + w);
+                if (own.size() != 1 || !Integer.valueOf(perWriter).equals(own.get(0).get("counter"))) {
+                    failures.add(new AssertionError("w" + w + " lost updates: " + own));
+                }
+            }
+            int expectedRows = writers + writers * (perWriter % 4);
+            if (table.getRecordCount() != expectedRows || table.selectAll().size() != expectedRows) {
+                failures.add(new AssertionError("Expected " + expectedRows + " rows, count says " +
+                    table.getRecordCount() + ", scan finds " + table.selectAll().size()));
+            }
+
+            double seconds = elapsed / 1e9;
+            System.out.printf("%-9s %d writers: %8.0f writes/s, %d readers: %8.0f snapshot scans/s  %s%n",
+                mode, writers, writers * perWriter * 2.25 / seconds, readers, reads.get() / seconds,
+                failures.isEmpty() ? "OK" : "FAILED");
+            if (!failures.isEmpty()) {
+                for (Throwable t : failures) t.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Delete
+    // ------------------------------------------------------------------
+
+    private static void deleteBenchmark(int rows) throws Exception {
+        System.out.println("Deleting every other row of " + rows + " rows, one key per delete");
+        System.out.printf("%-10s %14s %14s %12s %12s%n", "Storage", "Deletes/sec", "Compaction ms", "Live rows", "Dead rows");
+        System.out.println("─".repeat(67));
+        for (StorageMode mode : StorageMode.values()) {
+            Table table = new Table("bench", Arrays.asList(
+                new Column("key", DataType.INTEGER),
+                new Column("payload", DataType.STRING)
+            ), mode);
+            table.createIndex("key", IndexType.HASH);
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < rows; i++) {
+                row.put("key", i);
+                row.put("payload", "row-" + i);
+                table.insert(row);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i += 2) {
+                table.delete("key", String.valueOf(i));
+            }
+            long deleteNanos = System.nanoTime() - start;
+            // Compaction runs in the background; wait for it to catch up
+            while (table.isCompactionPending()) {
+                Thread.sleep(1);
+            }
+            long totalMillis = (System.nanoTime() - start) / 1_000_000;
+            int deletes = (rows + 1) / 2;
+            if (table.getRecordCount() != rows - deletes || table.selectAll().size() != rows - deletes) {
+                throw new IllegalStateException("Expected " + (rows - deletes) + " live rows");
+            }
+            System.out.printf("%-10s %14.0f %14d %12d %12d%n", mode, deletes / (deleteNanos / 1e9),
+                totalMillis - deleteNanos / 1_000_000, table.getRecordCount(), table.getDeadRows());
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Dictionary encoding
+    // ------------------------------------------------------------------
+
+    private static void dictionaryBenchmark(int rows) {
+        String[] departments = {"IT", "HR", "Sales", "Marketing", "Finance", "Legal", "Support", "Operations"};
+        String[] statuses = {"active", "inactive", "pending"};
+        System.out.println(rows + " rows: department (8 values), status (3 values)");
+        System.out.printf("%-22s %10s %12s %12s%n", "Storage", "Heap MB", "Filter ms", "Select ms");
+        System.out.println("─".repeat(59));
+
+        String[] labels = {"ROW", "COLUMNAR (plain)", "COLUMNAR (dictionary)"};
+        for (int variant = 0; variant < labels.length; variant++) {
+            StringVector.setDictionaryLimit(variant == 1 ? 0 : 4096);
+            long before = usedHeap();
+            Table table = new Table("bench", Arrays.asList(
+                new Column("department", DataType.STRING),
+                new Column("status", DataType.STRING)
+            ), variant == 0 ? StorageMode.ROW : StorageMode.COLUMNAR);
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < rows; i++) {
+                // new String(...) mimics values parsed from input, one object per row
+                row.put("department", new String(departments[i % departments.length]));
+                row.put("status", new String(statuses[i % statuses.length]));
+                table.insert(row);
+            }
+            long heap = usedHeap() - before;
+
+            // Filter: the equality predicate alone; Select: also builds the result records
+            TableSnapshot snapshot = table.snapshot();
+            int queries = 20;
+            long matches = 0;
+            long filterNanos = 0;
+            long selectNanos = 0;
+            for (int round = 0; round < 3; round++) {      // earlier rounds warm up the JIT
+                matches = 0;
+                long start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    java.util.function.IntPredicate p =
+                        snapshot.storage.equalTo("department", departments[q % departments.length]);
+                    for (int slot = 0; slot < snapshot.size; slot++) {
+                        if (p.test(slot)) matches++;
+                    }
+                }
+                filterNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    table.selectWhere("department", departments[q % departments.length]);
+                }
+                selectNanos = System.nanoTime() - start;
+            }
+            System.out.printf("%-22s %10.1f %12.2f %12.2f%n", labels[variant], heap / 1048576.0,
+                filterNanos / 1e6 / queries, selectNanos / 1e6 / queries);
+            if (matches == 0) throw new IllegalStateException("no matches");
+        }
+        StringVector.setDictionaryLimit(4096);
+    }
+
+    // ------------------------------------------------------------------
+    // Frozen segments
+    // ------------------------------------------------------------------
+
+    private static void freezeBenchmark(int rows) {
+        String[] regions = {"North", "South", "East", "West", "Central", "Online"};
+        System.out.println(rows + " rows: order_no (sequential), qty (1-50), price (2 decimals), " +
+            "shipped (two runs), region (6 values)");
+        System.out.printf("%-10s %-8s %10s %12s %12s%n", "Storage", "State", "Heap MB", "qty= ms", "region= ms");
+        System.out.println("─".repeat(56));
+
+        for (StorageMode mode : StorageMode.values()) {
+            long before = usedHeap();
+            Table table = new Table("orders", Arrays.asList(
+                new Column("order_no", DataType.INTEGER),
+                new Column("qty", DataType.INTEGER),
+                new Column("price", DataType.DOUBLE),
+                new Column("shipped", DataType.BOOLEAN),
+                new Column("region", DataType.STRING)
+            ), mode);
+            Random random = new Random(42);
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < rows; i++) {
+                row.put("order_no", 100_000 + i);
+                row.put("qty", 1 + random.nextInt(50));
+                row.put("price", (100 + random.nextInt(99_900)) / 100.0);
+                row.put("shipped", i < rows * 9 / 10);
+                row.put("region", new String(regions[random.nextInt(regions.length)]));
+                table.insert(row);
+            }
+            for (String state : new String[] {"hot", "frozen"}) {
+                if (state.equals("frozen")) {
+                    table.setFreezePolicy(1, 0);
+                    table.freeze();
+                }
+                long heap = usedHeap() - before;
+                double qtyMillis = 0, regionMillis = 0;
+                for (int round = 0; round < 3; round++) {       // earlier rounds warm up the JIT
+                    qtyMillis = filterMillis(table, "qty", new String[] {"7", "25", "49"});
+                    regionMillis = filterMillis(table, "region", regions);
+                }
+                System.out.printf("%-10s %-8s %10.1f %12.2f %12.2f%n", mode, state, heap / 1048576.0,
+                    qtyMillis, regionMillis);
+            }
+            if (mode == StorageMode.COLUMNAR) table.describe();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Bulk import
+    // ------------------------------------------------------------------
+
+    private static void importBenchmark(int rows) throws Exception {
+        Path csv = Files.createTempFile("dbm-import", ".csv");
+        try {
+            Random random = new Random(42);
+            StringBuilder text = new StringBuilder("id:INTEGER,name:STRING,city:STRING,score:DOUBLE,active:BOOLEAN\n");
+            String[] cities = {"Addis Ababa", "Nairobi", "Lagos", "Cairo", "Accra"};
+            for (int i = 0; i < rows; i++) {
+                text.append(i).append(",\"Customer ").append(i).append(", Ltd\",").append(cities[random.nextInt(5)])
+                    .append(',').append(random.nextInt(10_000) / 100.0).append(',').append(i % 3 != 0).append('\n');
+            }
+            Files.write(csv, text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            int cores = Runtime.getRuntime().availableProcessors();
+            System.out.printf("%d rows, %d KB CSV, HASH index on id, %d core(s)%n", rows, Files.size(csv) / 1024, cores);
+            System.out.printf("%-10s %-22s %10s %12s%n", "Storage", "Loader", "Millis", "Rows/sec");
+            System.out.println("─".repeat(57));
+
+            for (StorageMode mode : StorageMode.values()) {
+                for (int round = 0; round < 2; round++) {       // the first round warms up the JIT
+                    long millis = perRowImport(csv, mode);
+                    if (round == 1) System.out.printf("%-10s %-22s %10d %12.0f%n", mode, "insert per line",
+                        millis, rows * 1000.0 / Math.max(1, millis));
+                    for (int threads : cores > 1 ? new int[] {1, cores} : new int[] {1}) {
+                        Database db = new Database("bench", false);
+                        Table table = new Table("people", StatementParser.parseColumns(
+                            "id INTEGER, name VARCHAR, city VARCHAR, score DOUBLE, active BOOLEAN"), mode);
+                        table.createIndex("id", IndexType.HASH);
+                        db.addTable(table);
+                        BulkLoader loader = new BulkLoader(db, threads);
+                        BulkLoader.Result result = loader.loadCsv(csv, "people", null);
+                        if (result.rows != rows || table.selectWhere("id", String.valueOf(rows / 2)).size() != 1) {
+                            throw new IllegalStateException("Import lost rows: " + result);
+                        }
+                        if (round == 1) System.out.printf("%-10s %-22s %10d %12.0f%n", mode,
+                            "BulkLoader x" + threads, result.millis, rows * 1000.0 / Math.max(1, result.millis));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    private static void exportBenchmark(int rows) throws Exception {
+        Path dir = Files.createTempDirectory("dbm-export");
+        try {
+            System.out.printf("%d rows: id, name, city, score, active%n", rows);
+            System.out.printf("%-10s %-8s %10s %10s %12s%n", "Storage", "Format", "Millis", "File MB", "Rows/sec");
+            System.out.println("─".repeat(54));
+            String[] cities = {"Addis Ababa", "Nairobi", "Lagos", "Cairo", "Accra"};
+            for (StorageMode mode : StorageMode.values()) {
+                Database db = new Database("bench", false);
+                Table table = new Table("people", StatementParser.parseColumns(
+                    "id INTEGER NOT NULL, name VARCHAR, city VARCHAR, score DOUBLE, active BOOLEAN"), mode);
+                table.createIndex("id", IndexType.HASH);
+                Random random = new Random(42);
+                List<Object[]> batch = new ArrayList<>();
+                for (int i = 0; i < rows; i++) {
+                    batch.add(new Object[] {i, "Customer " + i + ", \"Ltd\"", cities[random.nextInt(5)],
+                        random.nextInt(10_000) / 100.0, i % 3 != 0 ? Boolean.TRUE : null});
+                    if (batch.size() == 10_000 || i == rows - 1) {
+                        table.insertBatch(batch);
+                        batch.clear();
+                    }
+                }
+                db.addTable(table);
+
+                for (String format : new String[] {"csv", "dbm"}) {
+                    Path file = dir.resolve("people-" + mode + "." + format);
+                    Exporter.Result result = null;
+                    for (int round = 0; round < 2; round++) {       // the first round warms up the JIT
+                        result = new Exporter(db).exportTable("people", file, null);
+                    }
+                    System.out.printf("%-10s %-8s %10d %10.1f %12.0f%n", mode, format.toUpperCase(),
+                        result.millis, result.bytes / 1048576.0, rows * 1000.0 / Math.max(1, result.millis));
+
+                    // Round trip: the file loads back into an equal table
+                    Database copy = new Database("copy", false);
+                    if (format.equals("csv")) new BulkLoader(copy).loadCsv(file, "people", null);
+                    else new BulkLoader(copy).load(file, null);
+                    Table back = copy.getTable("people");
+                    String key = String.valueOf(rows / 2);
+                    if (back.getRecordCount() != rows
+                        || !back.selectWhere("id", key).get(0).getData().equals(table.selectWhere("id", key).get(0).getData())) {
+                        throw new IllegalStateException("Round trip mismatch for " + format);
+                    }
+                }
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // SQL parser
+    // ------------------------------------------------------------------
+
+    private static void parseBenchmark(int ops) {
+        String[][] statements = {
+            {"SELECT *", "SELECT * FROM users WHERE age > 30"},
+            {"SELECT cols", "SELECT id, name, email FROM customers WHERE city = 'Nairobi' AND (score >= 75.5 "
+                + "OR active = true) ORDER BY name DESC"},
+            {"SELECT agg", "SELECT COUNT(*), MIN(price), MAX(price) FROM products WHERE price BETWEEN 10 AND 99.99"},
+            {"INSERT", "INSERT INTO orders (id, customer, total, note) VALUES (1001, 'Abebe', 249.99, 'it''s paid')"},
+            {"INSERT x10", "INSERT INTO t VALUES " + String.join(", ", Collections.nCopies(10, "(1, 'abc', 2.5, NULL)"))},
+            {"UPDATE", "UPDATE users SET status = 'inactive', age = 41 WHERE id = 17 OR name <> 'root'"},
+            {"DELETE", "DELETE FROM sessions WHERE expires < '2024-01-01' AND NOT persistent = true"},
+            {"CREATE TABLE", "CREATE TABLE events (id INT NOT NULL, kind VARCHAR(32), at TIMESTAMP, "
+                + "payload TEXT, PRIMARY KEY (id)) USING COLUMNAR"},
+            {"CREATE INDEX", "CREATE INDEX idx_kind ON events(kind) USING BTREE"},
+        };
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        System.out.printf("%d parses per statement%n", ops);
+        System.out.printf("%-14s %14s %10s %14s%n", "Statement", "Stmts/sec", "ns/stmt", "Bytes/stmt");
+        System.out.println("─".repeat(55));
+        long totalNanos = 0;
+        long sink = 0;
+        for (String[] statement : statements) {
+            String sql = statement[1];
+            for (int i = 0; i < ops; i++) sink += StatementParser.parse(sql).hashCode();     // warm up
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) sink += StatementParser.parse(sql).hashCode();
+            long elapsed = System.nanoTime() - start;
+            bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+            totalNanos += elapsed;
+            System.out.printf("%-14s %14.0f %10.0f %14d%n", statement[0], ops * 1e9 / elapsed,
+                (double) elapsed / ops, bytes / ops);
+        }
+        System.out.println("─".repeat(55));
+        System.out.printf("%-14s %14.0f%n", "Mixed", (double) ops * statements.length * 1e9 / totalNanos);
+        if (sink == 42) System.out.println();      // keeps the parses from being optimized away
+    }
+
+    // ------------------------------------------------------------------
+    // Vectorized scans
+    // ------------------------------------------------------------------
+
+    private static final String[][] SCAN_QUERIES = {
+        {"int range", "COUNT", "age > 60"},
+        {"double between", "COUNT", "salary BETWEEN 40000 AND 60000"},
+        {"string =", "COUNT", "city = 'Lagos'"},
+        {"string range", "COUNT", "name >= 'Customer 5'"},
+        {"and/or", "COUNT", "(age < 30 OR age > 60) AND active = true AND city <> 'Cairo'"},
+        {"max + filter", "MAX", "city = 'Nairobi' AND age >= 40"},
+    };
+
+    private static Table peopleTable(int rows, StorageMode mode) {
+        String[] cities = {"Addis Ababa", "Nairobi", "Lagos", "Cairo", "Accra"};
+        Table table = new Table("people", StatementParser.parseColumns(
+            "id INT NOT NULL, name VARCHAR, city VARCHAR, age INT, salary DOUBLE, active BOOLEAN"), mode);
+        Random random = new Random(42);
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[] {i, "Customer " + i, cities[random.nextInt(5)], 18 + random.nextInt(60),
+                20_000 + random.nextInt(80_000) + 0.5, random.nextBoolean()});
+            if (batch.size() == 10_000 || i == rows - 1) {
+                table.insertBatch(batch);
+                batch.clear();
+            }
+        }
+        return table;
+    }
+
+    private static void scanBenchmark(int rows) {
+        String[][] queries = SCAN_QUERIES;
+        System.out.printf("%d rows, no index; best time per query%n", rows);
+        System.out.printf("%-10s %-16s %12s %12s %9s%n", "Storage", "Query", "Row ms", "Batch ms", "Speedup");
+        System.out.println("─".repeat(63));
+        for (StorageMode mode : new StorageMode[] {StorageMode.COLUMNAR}) {     // ROW tables always scan row at a time
+            Table table = peopleTable(rows, mode);
+            for (String[] query : queries) {
+                Expr where = StatementParser.parseCondition(query[2]);
+                Object[] results = new Object[2];
+                double[] millis = new double[2];
+                for (int vectorized = 0; vectorized < 2; vectorized++) {
+                    BatchScan.setEnabled(vectorized == 1);
+                    millis[vectorized] = Double.MAX_VALUE;
+                    for (int run = 0; run < 12; run++) {        // best of 12, after the JIT has warmed up
+                        long start = System.nanoTime();
+                        results[vectorized] = query[1].equals("MAX")
+                            ? table.max("salary", where) : table.count(null, where);
+                        millis[vectorized] = Math.min(millis[vectorized], (System.nanoTime() - start) / 1e6);
+                    }
+                }
+                BatchScan.setEnabled(true);
+                if (!results[0].equals(results[1])) {
+                    throw new IllegalStateException(query[0] + ": " + results[0] + " vs " + results[1]);
+                }
+                System.out.printf("%-10s %-16s %12.1f %12.1f %8.1fx%n", mode, query[0], millis[0], millis[1],
+                    millis[0] / millis[1]);
+            }
+        }
+    }
+
+    private static void parallelBenchmark(int rows) {
+        int threshold = ParallelScan.getThreshold();
+        System.out.printf("%d rows, no index, %d scan threads, threshold %,d rows; best time per query%n",
+            rows, ParallelScan.getParallelism(), threshold);
+        System.out.printf("%-10s %-16s %12s %12s %9s %8s%n", "Storage", "Query", "Serial ms", "Parallel ms",
+            "Speedup", "Workers");
+        System.out.println("─".repeat(72));
+        for (StorageMode mode : StorageMode.values()) {
+            Table table = peopleTable(rows, mode);
+            for (String[] query : SCAN_QUERIES) {
+                Expr where = StatementParser.parseCondition(query[2]);
+                Object[] results = new Object[2];
+                double[] millis = new double[2];
+                int workers = 0;
+                for (int parallel = 0; parallel < 2; parallel++) {
+                    ParallelScan.setThreshold(parallel == 1 ? threshold : Integer.MAX_VALUE);
+                    millis[parallel] = Double.MAX_VALUE;
+                    for (int run = 0; run < 12; run++) {        // best of 12, after the JIT has warmed up
+                        ParallelScan.resetWorkers();
+                        long start = System.nanoTime();
+                        results[parallel] = query[1].equals("MAX")
+                            ? table.max("salary", where) : table.select(where).size();
+                        millis[parallel] = Math.min(millis[parallel], (System.nanoTime() - start) / 1e6);
+                        if (parallel == 1) workers = Math.max(workers, ParallelScan.workersUsed());
+                    }
+                }
+                ParallelScan.setThreshold(threshold);
+                if (!results[0].equals(results[1])) {
+                    throw new IllegalStateException(query[0] + ": " + results[0] + " vs " + results[1]);
+                }
+                System.out.printf("%-10s %-16s %12.1f %12.1f %8.1fx %8d%n", mode, query[0], millis[0], millis[1],
+                    millis[0] / millis[1], workers);
+            }
+        }
+    }
+
+    private static void groupByBenchmark(int rows) {
+        String[][] queries = {
+            {"5 groups", "city", "SUM", "salary"},
+            {"60 groups", "age", "AVG", "salary"},
+            {"distinct", "active", "COUNT DISTINCT", "city"},
+            {"1 per row", "name", "SUM", "age"},
+        };
+        System.out.printf("%d rows, no filter; best time per query%n", rows);
+        System.out.printf("%-10s %-48s %12s %12s %9s%n", "Storage", "Query", "HashMap ms", "Hash agg ms", "Speedup");
+        System.out.println("─".repeat(95));
+        for (StorageMode mode : StorageMode.values()) {
+            Table table = peopleTable(rows, mode);
+            for (String[] query : queries) {
+                boolean distinct = query[2].equals("COUNT DISTINCT");
+                SelectItem item = new SelectItem(distinct ? "COUNT" : query[2], query[3], distinct);
+                List<String> keys = Collections.singletonList(query[1]);
+                double naive = Double.MAX_VALUE;
+                double hashed = Double.MAX_VALUE;
+                int[] groups = new int[2];
+                for (int run = 0; run < 6; run++) {
+                    long start = System.nanoTime();
+                    groups[0] = naiveGroupBy(table.selectAll(), query[1], query[2], query[3]).size();
+                    naive = Math.min(naive, (System.nanoTime() - start) / 1e6);
+                    start = System.nanoTime();
+                    groups[1] = table.aggregate(null, keys, Collections.singletonList(item)).size();
+                    hashed = Math.min(hashed, (System.nanoTime() - start) / 1e6);
+                }
+                if (groups[0] != groups[1]) {
+                    throw new IllegalStateException(query[0] + ": " + groups[0] + " vs " + groups[1] + " groups");
+                }
+                String text = item + " GROUP BY " + query[1] + " (" + query[0] + ")";
+                System.out.printf("%-10s %-48s %12.1f %12.1f %8.1fx%n", mode, text, naive, hashed, naive / hashed);
+            }
+        }
+    }
+
+    private static void joinBenchmark(int rows) {
+        String[][] queries = {
+            // name, key of orders, key of people, JOIN, WHERE
+            {"INTEGER key", "person_id", "id", "JOIN", null},
+            {"LEFT, filtered", "person_id", "id", "LEFT JOIN", "o.amount > 900"},
+            {"STRING key", "customer", "name", "JOIN", null},
+        };
+        long budget = HashJoin.getMemoryBudget();
+        System.out.printf("%d orders x %d people; best time per query%n", rows, rows);
+        System.out.printf("%-10s %-16s %12s %12s %12s %10s%n", "Storage", "Query", "HashMap ms", "Join ms",
+            "Spilled ms", "Rows");
+        System.out.println("─".repeat(77));
+        for (StorageMode mode : StorageMode.values()) {
+            Database db = new Database("bench", false);
+            db.addTable(peopleTable(rows, mode));
+            db.addTable(ordersTable(rows, rows, mode));
+            SQLParser sql = new SQLParser(db);
+            for (String[] query : queries) {
+                SelectStatement select = (SelectStatement) StatementParser.parse("SELECT o.order_id, p.name, o.amount "
+                    + "FROM orders o " + query[3] + " people p ON o." + query[1] + " = p." + query[2]
+                    + (query[4] != null ? " WHERE " + query[4] : ""));
+                boolean outer = query[3].startsWith("LEFT");
+                double naive = Double.MAX_VALUE;
+                double joined = Double.MAX_VALUE;
+                double spilled = Double.MAX_VALUE;
+                int[] results = new int[3];
+                for (int run = 0; run < 4; run++) {
+                    long start = System.nanoTime();
+                    results[0] = naiveJoin(db, query[1], query[2], outer, query[4]);
+                    naive = Math.min(naive, (System.nanoTime() - start) / 1e6);
+                    HashJoin.setMemoryBudget(budget);
+                    start = System.nanoTime();
+                    results[1] = sql.rows(select).size();
+                    joined = Math.min(joined, (System.nanoTime() - start) / 1e6);
+                    HashJoin.setMemoryBudget(1 << 20);      // forces 16 or more partitions
+                    start = System.nanoTime();
+                    results[2] = sql.rows(select).size();
+                    spilled = Math.min(spilled, (System.nanoTime() - start) / 1e6);
+                }
+                HashJoin.setMemoryBudget(budget);
+                if (results[0] != results[1] || results[1] != results[2]) {
+                    throw new IllegalStateException(query[0] + ": " + Arrays.toString(results) + " rows");
+                }
+                System.out.printf("%-10s %-16s %12.1f %12.1f %12.1f %10d%n", mode, query[0], naive, joined, spilled,
+                    results[1]);
+            }
+        }
+    }
+
+    private static void sortBenchmark(int rows) {
+        String[][] queries = {
+            // name, ORDER BY, LIMIT
+            {"top 10", "salary DESC", "10"},
+            {"top 1000, 2 keys", "city, age DESC", "1000"},
+            {"page 100 at 5000", "name", "100 OFFSET 5000"},
+            {"all rows", "salary", null},
+        };
+        long budget = RowSorter.getMemoryBudget();
+        System.out.printf("%d rows, no filter; best time per query%n", rows);
+        System.out.printf("%-10s %-18s %12s %12s %12s%n", "Storage", "Query", "Sort all ms", "Engine ms", "Spilled ms");
+        System.out.println("─".repeat(70));
+        for (StorageMode mode : StorageMode.values()) {
+            Database db = new Database("bench", false);
+            db.addTable(peopleTable(rows, mode));
+            SQLParser sql = new SQLParser(db);
+            for (String[] query : queries) {
+                SelectStatement select = (SelectStatement) StatementParser.parse("SELECT id, name, salary FROM people "
+                    + "ORDER BY " + query[1] + (query[2] != null ? " LIMIT " + query[2] : ""));
+                double naive = Double.MAX_VALUE;
+                double engine = Double.MAX_VALUE;
+                double spilled = Double.MAX_VALUE;
+                Object[][] results = new Object[3][];
+                for (int run = 0; run < 5; run++) {
+                    long start = System.nanoTime();
+                    results[0] = naiveSort(db.getTable("people"), select).toArray();
+                    naive = Math.min(naive, (System.nanoTime() - start) / 1e6);
+                    RowSorter.setMemoryBudget(budget);
+                    start = System.nanoTime();
+                    results[1] = ids(sql.rows(select));
+                    engine = Math.min(engine, (System.nanoTime() - start) / 1e6);
+                    RowSorter.setMemoryBudget(4 << 20);     // an unbounded sort of 1M rows writes ~30 runs
+                    start = System.nanoTime();
+                    results[2] = ids(sql.rows(select));
+                    spilled = Math.min(spilled, (System.nanoTime() - start) / 1e6);
+                }
+                RowSorter.setMemoryBudget(budget);
+                if (!Arrays.equals(results[0], results[1]) || !Arrays.equals(results[1], results[2])) {
+                    throw new IllegalStateException(query[0] + ": results differ");
+                }
+                System.out.printf("%-10s %-18s %12.1f %12.1f %12.1f%n", mode, query[0], naive, engine, spilled);
+            }
+        }
+    }
+
+    /** Sorts every selected Record and then cuts the page, as code without ORDER BY ... LIMIT would. */
+    private static List<Object> naiveSort(Table table, SelectStatement select) {
+        List<Record> records = table.selectAll();
+        Comparator<Record> order = null;
+        for (OrderItem item : select.orderBy) {
+            DataType type = table.getColumn(item.column).getType();
+            Comparator<Record> key = (a, b) -> type.compare(a.get(item.column), b.get(item.column));
+            if (!item.ascending) key = key.reversed();
+            order = order == null ? key : order.thenComparing(key);
+        }
+        records.sort(order);
+        int from = (int) Math.min(select.offset, records.size());
+        int to = select.limit < 0 ? records.size() : (int) Math.min(from + select.limit, records.size());
+        List<Object> ids = new ArrayList<>();
+        for (Record record : records.subList(from, to)) ids.add(record.get("id"));
+        return ids;
+    }
+
+    private static Object[] ids(List<Object[]> rows) {
+        Object[] ids = new Object[rows.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = rows.get(i)[0];
+        return ids;
+    }
+
+    private static void plannerBenchmark(int rows) {
+        String[] wheres = {"age > 20", "age BETWEEN 30 AND 31", "city = 'Lagos' AND age > 25", "id < 100 AND age > 70"};
+        System.out.printf("%d rows, BTREE on id and age, HASH on city; best time per query%n", rows);
+        System.out.printf("%-10s %-28s %12s %12s  %s%n", "Storage", "Query", "Rules ms", "Costed ms", "Plan");
+        System.out.println("─".repeat(100));
+        for (StorageMode mode : StorageMode.values()) {
+            Database db = new Database("bench", false);
+            Table people = peopleTable(rows, mode);
+            people.createIndex("id", IndexType.BTREE);
+            people.createIndex("age", IndexType.BTREE);
+            people.createIndex("city", IndexType.HASH);
+            db.addTable(people);
+            SQLParser sql = new SQLParser(db);
+            double[] rules = new double[wheres.length];
+            int[] counts = new int[wheres.length];
+            for (String where : wheres) sql.rows((SelectStatement) StatementParser.parse("SELECT id FROM people WHERE " + where));
+            for (int q = 0; q < wheres.length; q++) {
+                SelectStatement select = (SelectStatement) StatementParser.parse("SELECT id FROM people WHERE " + wheres[q]);
+                int[] count = new int[1];
+                rules[q] = bestMillis(() -> count[0] = sql.rows(select).size());
+                counts[q] = count[0];
+            }
+            long start = System.nanoTime();
+            people.analyze();
+            System.out.printf("%-10s ANALYZE in %d ms%n", mode, (System.nanoTime() - start) / 1_000_000);
+            System.gc();
+            for (int q = 0; q < wheres.length; q++) {
+                SelectStatement select = (SelectStatement) StatementParser.parse("SELECT id FROM people WHERE " + wheres[q]);
+                int[] count = new int[1];
+                double costed = bestMillis(() -> {
+                    QueryPlanner.resetPlan();
+                    count[0] = sql.rows(select).size();
+                });
+                if (count[0] != counts[q]) throw new IllegalStateException(wheres[q] + ": results differ");
+                System.out.printf("%-10s %-28s %12.1f %12.1f  %s%n", mode, wheres[q], rules[q], costed, QueryPlanner.lastPlan());
+            }
+        }
+
+        // Written largest table first: the fixed rules join every order before the city filter applies
+        int people = Math.max(1, rows / 10);
+        Database db = new Database("bench", false);
+        db.addTable(ordersTable(rows, people, StorageMode.COLUMNAR));
+        db.addTable(peopleTable(people, StorageMode.COLUMNAR));
+        Table cities = new Table("cities", StatementParser.parseColumns("name VARCHAR, country VARCHAR"));
+        String[][] names = {{"Addis Ababa", "Ethiopia"}, {"Nairobi", "Kenya"}, {"Lagos", "Nigeria"},
+                            {"Cairo", "Egypt"}, {"Accra", "Ghana"}};
+        cities.insertBatch(Arrays.asList((Object[][]) names));
+        db.addTable(cities);
+        SQLParser sql = new SQLParser(db);
+        SelectStatement join = (SelectStatement) StatementParser.parse("SELECT o.order_id, p.name, c.country "
+            + "FROM orders o JOIN people p ON o.person_id = p.id JOIN cities c ON p.city = c.name WHERE c.name = 'Lagos'");
+        int[] counts = new int[2];
+        sql.rows(join);
+        double rules = bestMillis(() -> counts[0] = sql.rows(join).size());
+        for (String table : db.getTableNames()) db.getTable(table).analyze();
+        double costed = bestMillis(() -> {
+            QueryPlanner.resetPlan();
+            counts[1] = sql.rows(join).size();
+        });
+        if (counts[0] != counts[1]) throw new IllegalStateException("join results differ");
+        System.out.printf("%nJoin of %d orders, %d people and 5 cities: rules %.1f ms, costed %.1f ms (%d rows)%n  %s%n",
+            rows, people, rules, costed, counts[1], QueryPlanner.lastPlan());
+    }
+
+    private static void cacheBenchmark(int rows) {
+        String[] dashboard = {
+            "SELECT * FROM people WHERE city = 'Lagos' AND age < 25",
+            "SELECT city, COUNT(*), AVG(salary) FROM people GROUP BY city",
+            "SELECT name, salary FROM people ORDER BY salary DESC LIMIT 20",
+            "SELECT COUNT(*), MAX(age) FROM people WHERE active = true",
+        };
+        System.out.printf("%d rows; %d dashboard queries in a loop, 400 statements%n", rows, dashboard.length);
+        System.out.printf("%-10s %-12s %12s %12s %8s %8s%n", "Storage", "Workload", "Uncached ms", "Cached ms", "Hits", "Misses");
+        System.out.println("─".repeat(68));
+        for (StorageMode mode : StorageMode.values()) {
+            Database db = new Database("bench", false);
+            db.addTable(peopleTable(rows, mode));
+            SQLParser sql = new SQLParser(db);
+            for (int writeEvery : new int[] {0, 10}) {
+                long[] millis = new long[2];
+                long hits = db.getQueryCache().hits(), misses = db.getQueryCache().misses();
+                for (int cached = 0; cached < 2; cached++) {
+                    db.getQueryCache().setEnabled(cached == 1);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < 400; i++) {
+                        if (writeEvery > 0 && i % writeEvery == 0) {
+                            sql.update((UpdateStatement) StatementParser.parse(
+                                "UPDATE people SET salary = " + (30_000 + i) + " WHERE id = " + i));
+                            continue;
+                        }
+                        SelectStatement select = (SelectStatement) StatementParser.parse(dashboard[i % dashboard.length]);
+                        if (select.isAggregate()) sql.aggregate(select);
+                        else sql.rows(select);
+                    }
+                    millis[cached] = (System.nanoTime() - start) / 1_000_000;
+                }
+                System.out.printf("%-10s %-12s %12d %12d %8d %8d%n", mode, writeEvery > 0 ? "1 write/10" : "read-only",
+                    millis[0], millis[1], db.getQueryCache().hits() - hits, db.getQueryCache().misses() - misses);
+                db.getQueryCache().setEnabled(false);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Cursors
+    // ------------------------------------------------------------------
+
+    private static void cursorBenchmark(int rows) {
+        String[][] queries = {{"all rows", null}, {"age > 60", "age > 60"}, {"city = Accra", "city = 'Accra'"}};
+        List<OrderItem> tableOrder = new ArrayList<>();
+
+        System.out.printf("%d rows, no index; best time of 10 runs, bytes allocated by one%n", rows);
+        System.out.printf("%-10s %-14s %-6s %10s %10s %12s %12s%n", "Storage", "Query", "Rows", "List ms", "Cursor ms",
+            "List KB", "Cursor KB");
+        System.out.println("─".repeat(80));
+        for (StorageMode mode : StorageMode.values()) {
+            Table table = peopleTable(rows, mode);
+            for (String[] query : queries) {
+                Expr where = query[1] == null ? null : StatementParser.parseCondition(query[1]);
+                for (int wanted : new int[] {50, Integer.MAX_VALUE}) {
+                    long[] sink = new long[1];
+                    Runnable list = () -> {
+                        List<Record> records = table.select(where, tableOrder, 0, -1);
+                        for (int i = 0; i < records.size() && i < wanted; i++) sink[0] += records.get(i).getId();
+                    };
+                    Runnable cursor = () -> {
+                        try (RecordCursor records = table.open(where, tableOrder, 0, -1)) {
+                            for (int i = 0; i < wanted && records.hasNext(); i++) sink[0] += records.next().getId();
+                        }
+                    };
+                    double listMillis = bestMillis(list);
+                    double cursorMillis = bestMillis(cursor);
+                    long bytes = allocatedBytes();
+                    list.run();
+                    long listBytes = allocatedBytes() - bytes;
+                    bytes = allocatedBytes();
+                    cursor.run();
+                    long cursorBytes = allocatedBytes() - bytes;
+                    System.out.printf("%-10s %-14s %-6s %10.2f %10.2f %12d %12d%n", mode, query[0],
+                        wanted == 50 ? "50" : "all", listMillis, cursorMillis, listBytes >> 10, cursorBytes >> 10);
+                }
+            }
+        }
+    }
+
+    /**
+     * What the results grid costs: building the model and reading the first
+     * screen (40 rows), paging down 200 screens, jumping to the last row,
+     * the middle one and back to the first, and the heap the model holds
+     * afterwards. A paged model reads its pages on a background thread.
+     */
+    private static void pagedBenchmark(int rows) throws Exception {
+        String[][] queries = {{"all rows", "SELECT * FROM people"},
+            {"age > 60", "SELECT * FROM people WHERE age > 60"},
+            {"age > 60 by salary", "SELECT * FROM people WHERE age > 60 ORDER BY salary DESC"}};
+        int screen = 40;
+        System.out.printf("%d rows; %d-row screens; second of two rounds%n", rows, screen);
+        System.out.printf("%-10s %-20s %-8s %10s %10s %10s %10s%n", "Storage", "Query", "Model", "First ms", "Scroll ms",
+            "Jumps ms", "Heap MB");
+        System.out.println("─".repeat(86));
+        ExecutorService pages = Executors.newSingleThreadExecutor();    // reads the pages of a paged model
+        for (StorageMode mode : StorageMode.values()) {
+            Database db = new Database("bench", false);
+            db.addTable(peopleTable(rows, mode));
+            SQLParser sql = new SQLParser(db);
+            for (int round = 0; round < 2; round++) for (String[] query : queries) {     // the first round warms up the JIT
+                SelectStatement select = (SelectStatement) StatementParser.parse(query[1]);
+                String[] columns = new String[sql.columnsOf(select).size()];
+                for (int c = 0; c < columns.length; c++) columns[c] = sql.columnsOf(select).get(c).getName();
+                for (int paged = 0; paged < 2; paged++) {
+                    long before = usedHeap();
+                    long start = System.nanoTime();
+                    javax.swing.table.TableModel model = paged == 1 ? new PagedTableModel(columns, sql.open(select), pages)
+                        : new javax.swing.table.DefaultTableModel(sql.rows(select).toArray(new Object[0][]), columns);
+                    readScreen(model, 0, screen);
+                    long first = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    for (int top = screen; top < 200 * screen; top += screen) readScreen(model, top, screen);
+                    long scroll = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    readScreen(model, model.getRowCount() - screen, screen);
+                    readScreen(model, model.getRowCount() / 2, screen);
+                    readScreen(model, 0, screen);
+                    long jumps = System.nanoTime() - start;
+                    long heap = usedHeap() - before;
+                    if (round == 1) {
+                        System.out.printf("%-10s %-20s %-8s %10.1f %10.1f %10.1f %10.1f%n", mode, query[0],
+                            paged == 1 ? "paged" : "default", first / 1e6, scroll / 1e6, jumps / 1e6, heap / 1048576.0);
+                    }
+                    if (model instanceof PagedTableModel) ((PagedTableModel) model).close();
+                }
+            }
+        }
+        pages.shutdown();
+    }
+
+    // ------------------------------------------------------------------
+    // Cancellation
+    // ------------------------------------------------------------------
+
+    private static void cancelBenchmark(int rows) throws Exception {
+        String[] queries = {
+            "SELECT COUNT(*) FROM people WHERE age > 60",
+            "SELECT * FROM people WHERE city = 'Lagos' AND age < 25",
+            "SELECT city, COUNT(*), AVG(salary) FROM people GROUP BY city",
+            "SELECT name, salary FROM people ORDER BY salary DESC LIMIT 20",
+        };
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        System.out.printf("%d rows; best of 10 runs; stop latency: worst of 10 cancels at random moments%n", rows);
+        System.out.printf("%-10s %-56s %10s %12s %10s%n", "Storage", "Query", "Plain ms", "Control ms", "Stop ms");
+        System.out.println("─".repeat(102));
+        Random random = new Random(3);
+        for (StorageMode mode : StorageMode.values()) {
+            Database db = new Database("bench", false);
+            db.addTable(peopleTable(rows, mode));
+            SQLParser sql = new SQLParser(db);
+            for (String query : queries) {
+                SelectStatement select = (SelectStatement) StatementParser.parse(query);
+                Runnable run = () -> {
+                    if (select.isAggregate()) sql.aggregate(select);
+                    else sql.rows(select);
+                };
+                double plain = bestMillis(run);
+                double controlled = bestMillis(() -> new QueryControl().run(() -> {
+                    run.run();
+                    return null;
+                }));
+                double worstStop = 0;
+                for (int i = 0; i < 10; i++) {
+                    QueryControl control = new QueryControl();
+                    Future<?> running = background.submit(() -> control.run(() -> {
+                        while (true) run.run();
+                    }));
+                    Thread.sleep(1 + random.nextInt((int) Math.max(2, plain)));
+                    long start = System.nanoTime();
+                    control.cancel();
+                    try {
+                        running.get();
+                    } catch (ExecutionException expected) {
+                        // the CancellationException that ends the query
+                    }
+                    worstStop = Math.max(worstStop, (System.nanoTime() - start) / 1e6);
+                }
+                System.out.printf("%-10s %-56s %10.1f %12.1f %10.1f%n", mode, query.replace("FROM people ", ""),
+                    plain, controlled, worstStop);
+            }
+        }
+        background.shutdown();
+    }
+
+    private static void consoleBenchmark(int lines) throws Exception {
+        Path dir = Files.createTempDirectory("dbm-console");
+        System.out.printf("%d lines logged, then shown in a text area%n", lines);
+        System.out.printf("%-12s %-10s %10s %10s %10s %12s %10s%n",
+            "Console", "Messages", "Logger ms", "Shown ms", "EDT ms", "View lines", "Heap MB");
+        System.out.println("─".repeat(80));
+        for (int round = 0; round < 2; round++) {
+            for (boolean repeated : new boolean[] {false, true}) {
+                String appended = appendedConsole(lines, repeated);
+                String bounded = boundedConsole(lines, repeated, dir);
+                if (round == 1) System.out.print(appended + bounded);
+            }
+        }
+        deleteRecursively(dir);
+    }
+
+    /** Every line appended on the event thread as it is logged, with a new formatter each. */
+    private static String appendedConsole(int lines, boolean repeated) throws Exception {
+        long before = usedHeap();
+        javax.swing.JTextArea area = new javax.swing.JTextArea();
+        long start = System.nanoTime();
+        javax.swing.SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < lines; i++) {
+                area.append("[" + new java.text.SimpleDateFormat("HH:mm:ss").format(new Date()) + "] "
+                    + consoleMessage(i, repeated) + "\n");
+            }
+        });
+        double ms = (System.nanoTime() - start) / 1e6;
+        long heap = usedHeap() - before;
+        int shown = area.getLineCount() - 1;
+        // Swing's repaint queue keeps the area, so only dropping its document lets the text go
+        javax.swing.SwingUtilities.invokeAndWait(() -> area.setDocument(new javax.swing.text.PlainDocument()));
+        return String.format("%-12s %-10s %10.0f %10.0f %10.0f %,12d %10.1f%n", "JTextArea",
+            repeated ? "repeated" : "distinct", ms, ms, ms, shown, heap / 1e6);
+    }
+
+    /** Queued from this thread, then shown a frame at a time and trimmed to the lines the log holds. */
+    private static String boundedConsole(int lines, boolean repeated, Path dir) throws Exception {
+        long before = usedHeap();
+        javax.swing.JTextArea view = new javax.swing.JTextArea();
+        long[] edtNanos = new long[1];
+        long[] shown = new long[1];
+        java.util.concurrent.atomic.AtomicBoolean pending = new java.util.concurrent.atomic.AtomicBoolean();
+        ConsoleLog[] log = new ConsoleLog[1];
+        Runnable show = () -> {
+            long from = System.nanoTime();
+            pending.set(false);
+            List<ConsoleLog.Line> batch = new ArrayList<>();
+            shown[0] = log[0].since(shown[0], ConsoleLog.Level.DEBUG, batch);
+            StringBuilder text = new StringBuilder();
+            for (ConsoleLog.Line line : batch) text.append(line.text).append('\n');
+            view.append(text.toString());
+            javax.swing.text.Element root = view.getDocument().getDefaultRootElement();
+            int excess = root.getElementCount() - 1 - log[0].heldLines();
+            if (excess > 0) view.replaceRange("", 0, root.getElement(excess - 1).getEndOffset());
+            edtNanos[0] += System.nanoTime() - from;
+        };
+        log[0] = new ConsoleLog(10_000, dir.resolve("console.log"), 8L << 20, () -> {
+            if (pending.compareAndSet(false, true)) javax.swing.SwingUtilities.invokeLater(show);
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < lines; i++) log[0].log(ConsoleLog.Level.INFO, consoleMessage(i, repeated));
+        double logMs = (System.nanoTime() - start) / 1e6;
+        log[0].sync();
+        javax.swing.SwingUtilities.invokeAndWait(() -> { });
+        double shownMs = (System.nanoTime() - start) / 1e6;
+        long heap = usedHeap() - before;
+        int viewLines = view.getLineCount() - 1;
+        log[0].close();
+        javax.swing.SwingUtilities.invokeAndWait(() -> view.setDocument(new javax.swing.text.PlainDocument()));
+        return String.format("%-12s %-10s %10.0f %10.0f %10.0f %,12d %10.1f%n", "ConsoleLog",
+            repeated ? "repeated" : "distinct", logMs, shownMs, edtNanos[0] / 1e6, viewLines, heap / 1e6);
+    }
+
+    private static void editorBenchmark(int lines) throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            script.append("INSERT INTO people VALUES (").append(i).append(", 'Person ").append(i).append("', ")
+                .append(20 + i % 50).append(");\n");
+        }
+        String text = script.toString();
+        System.out.printf("%,d lines, %.1f MB of SQL; keys typed mid-script, each painted; mean of 10%n",
+            lines, text.length() / 1e6);
+        System.out.printf("%-12s %10s %14s %14s %10s %10s %14s%n",
+            "Editor", "Load ms", "Highlight ms", "1st screen ms", "Key ms", "Enter ms", "Statement ms");
+        System.out.println("─".repeat(90));
+        java.awt.image.BufferedImage image = new java.awt.image.BufferedImage(800, 600,
+            java.awt.image.BufferedImage.TYPE_INT_RGB);
+        java.awt.Font font = new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 14);
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+
+            // The editor as it was: wrapped lines, and every line number rebuilt on each key release
+            javax.swing.JTextArea area = new javax.swing.JTextArea();
+            area.setFont(font);
+            area.setLineWrap(true);
+            javax.swing.JTextArea numbers = new javax.swing.JTextArea();
+            numbers.setFont(font);
+            javax.swing.JPanel panel = new javax.swing.JPanel(new java.awt.BorderLayout());
+            panel.add(numbers, java.awt.BorderLayout.WEST);
+            panel.add(area, java.awt.BorderLayout.CENTER);
+            javax.swing.JScrollPane old = new javax.swing.JScrollPane(panel);
+            long start = System.nanoTime();
+            area.setText(text);
+            double load = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            renumber(area, numbers);
+            paintScreen(old, area, text.length() / 2, image);
+            double screen = (System.nanoTime() - start) / 1e6;
+            double key = typeKeys(old, area, "x", image, () -> renumber(area, numbers));
+            double enter = typeKeys(old, area, "\n", image, () -> renumber(area, numbers));
+            if (print) {
+                System.out.printf("%-12s %10.0f %14s %14.0f %10.1f %10.1f %14s%n", "JTextArea", load, "-", screen,
+                    key, enter, "-");
+            }
+            area.setDocument(new javax.swing.text.PlainDocument());
+            numbers.setDocument(new javax.swing.text.PlainDocument());
+
+            SqlEditor editor = new SqlEditor();
+            editor.setFont(font);
+            javax.swing.JScrollPane pane = editor.inScrollPane();
+            start = System.nanoTime();
+            editor.setText(text);
+            load = (System.nanoTime() - start) / 1e6;
+            int last = editor.getLineCount() - 1;
+            editor.stateAt(last);
+            double highlight = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            paintScreen(pane, editor, text.length() / 2, image);
+            screen = (System.nanoTime() - start) / 1e6;
+            key = typeKeys(pane, editor, "x", image, () -> editor.stateAt(editor.getLineCount() - 1));
+            enter = typeKeys(pane, editor, "\n", image, () -> editor.stateAt(editor.getLineCount() - 1));
+            start = System.nanoTime();
+            int[] statement = editor.statementAt(editor.getDocument().getLength() - 3);
+            double find = (System.nanoTime() - start) / 1e6;
+            if (statement[1] - statement[0] < 20) throw new IllegalStateException("statement not found");
+            if (print) {
+                System.out.printf("%-12s %10.0f %14.0f %14.0f %10.1f %10.1f %14.2f%n", "SqlEditor", load, highlight,
+                    screen, key, enter, find);
+            }
+            editor.setDocument(new javax.swing.text.PlainDocument());
+        }
+    }
+
+    /** The old gutter: the text split into lines, and a number for each. */
+    private static void renumber(javax.swing.JTextArea area, javax.swing.JTextArea numbers) {
+        String[] lines = area.getText().split("\n");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= Math.max(lines.length, 10); i++) sb.append(i).append("\n");
+        numbers.setText(sb.toString());
+    }
+
+    /** Lays out {@code pane}, scrolls it to {@code offset} and paints what shows. */
+    private static void paintScreen(javax.swing.JScrollPane pane, javax.swing.JTextArea area, int offset,
+            java.awt.image.BufferedImage image) throws Exception {
+        pane.setSize(800, 600);
+        layOut(pane);
+        java.awt.geom.Rectangle2D at = area.modelToView2D(offset);
+        pane.getViewport().setViewPosition(new java.awt.Point(0, (int) at.getY()));
+        java.awt.Graphics2D g = image.createGraphics();
+        pane.paint(g);
+        g.dispose();
+    }
+
+    /** Lays out a component and what it contains, as showing it in a window would. */
+    private static void layOut(java.awt.Component component) {
+        if (!(component instanceof java.awt.Container)) return;
+        ((java.awt.Container) component).doLayout();
+        for (java.awt.Component child : ((java.awt.Container) component).getComponents()) layOut(child);
+    }
+
+    /** Mean ms to type {@code key} mid-text, update the gutter and highlighting, and paint the screen. */
+    private static double typeKeys(javax.swing.JScrollPane pane, javax.swing.JTextArea area, String key,
+            java.awt.image.BufferedImage image, Runnable afterKey) throws Exception {
+        int offset = area.getDocument().getLength() / 2;
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            area.getDocument().insertString(offset + i, key, null);
+            afterKey.run();
+            paintScreen(pane, area, offset, image);
+        }
+        return (System.nanoTime() - start) / 1e6 / 10;
+    }
+
+    /** A bulk operation's messages: every one different, or runs of 100 alike. */
+    private static void scriptBenchmark(int statements) throws Exception {
+        Path script = Files.createTempFile("dbm-script", ".sql");
+        try {
+            // Blocks of INSERTs broken up by UPDATEs and DELETEs by key, as a data migration writes them
+            Random random = new Random(7);
+            String[] cities = {"Addis Ababa", "Nairobi", "Lagos", "Cairo", "Accra"};
+            StringBuilder text = new StringBuilder("CREATE TABLE people (id INTEGER NOT NULL, name STRING, city STRING, score DOUBLE);\n");
+            text.append("CREATE INDEX ON people (id) USING HASH;\n");
+            int inserted = 0;
+            for (int n = 2; n < statements; n++) {
+                if (n % 500 < 5 && inserted > 0) {
+                    text.append("UPDATE people SET score = ").append(random.nextInt(100))
+                        .append(" WHERE id = ").append(random.nextInt(inserted)).append(";\n");
+                } else if (n % 500 < 10 && inserted > 0) {
+                    text.append("DELETE FROM people WHERE id = ").append(random.nextInt(inserted)).append(";\n");
+                } else {
+                    text.append("INSERT INTO people (id, name, city, score) VALUES (").append(inserted++)
+                        .append(", 'Customer ").append(inserted).append(", Ltd', '").append(cities[random.nextInt(5)])
+                        .append("', ").append(random.nextInt(10_000) / 100.0).append(");\n");
+                }
+            }
+            Files.write(script, text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            System.out.printf("%d statements (%d INSERTs), %d KB script, HASH index on id%n",
+                statements, inserted, Files.size(script) / 1024);
+            System.out.printf("%-14s %-28s %10s %16s%n", "Log", "Runner", "Millis", "Statements/sec");
+            System.out.println("─".repeat(71));
+            for (int round = 0; round < 2; round++) {       // the first round warms up the JIT
+                for (boolean durable : new boolean[] {false, true}) {
+                    String log = durable ? "GROUP_COMMIT" : "none";
+                    // Each statement waits for its own group commit; keep those runs short
+                    int baseline = durable ? Math.min(statements, 5_000) : statements;
+                    Path dir = Files.createTempDirectory("dbm-script");
+                    try {
+                        Database db = durable ? new Database("bench", dir, SyncPolicy.GROUP_COMMIT, 2)
+                            : new Database("bench", false);
+                        long millis = statementAtATime(db, script, baseline);
+                        long rows = db.getTable("people").getRecordCount();
+                        db.close();
+                        if (round == 1) System.out.printf("%-14s %-28s %10d %16.0f%n", log, baseline < statements
+                            ? "one at a time (first " + baseline + ")" : "one statement at a time",
+                            millis, baseline * 1000.0 / Math.max(1, millis));
+
+                        deleteRecursively(dir);
+                        Files.createDirectories(dir);
+                        db = durable ? new Database("bench", dir, SyncPolicy.GROUP_COMMIT, 2) : new Database("bench", false);
+                        ScriptRunner.Result result = new ScriptRunner(db, statement -> {}).run(script, null);
+                        if (result.failed > 0 || result.statements != statements
+                            || (baseline == statements && db.getTable("people").getRecordCount() != rows)) {
+                            throw new IllegalStateException("Script went wrong: " + result + " " + result.errors);
+                        }
+                        db.close();
+                        if (round == 1) System.out.printf("%-14s %-28s %10d %16.0f%n", log,
+                            "ScriptRunner (" + result.batches + " batches)", result.millis,
+                            statements * 1000.0 / Math.max(1, result.millis));
+                    } finally {
+                        deleteRecursively(dir);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    /** The first {@code statements} statements split, parsed and run in turn on one thread, as the console ran them. */
+    private static long statementAtATime(Database db, Path script, int statements) throws IOException {
+        long start = System.nanoTime();
+        SQLParser sql = new SQLParser(db);
+        try (java.io.Reader in = Files.newBufferedReader(script)) {
+            ScriptRunner.Splitter splitter = new ScriptRunner.Splitter(in);
+            String text;
+            for (int n = 0; n < statements && (text = splitter.next()) != null; n++) {
+                SqlStatement statement = StatementParser.parse(text);
+                if (statement instanceof InsertStatement) sql.insert((InsertStatement) statement);
+                else if (statement instanceof UpdateStatement) sql.update((UpdateStatement) statement);
+                else if (statement instanceof DeleteStatement) sql.delete((DeleteStatement) statement);
+                else if (statement instanceof CreateTableStatement) sql.createTable((CreateTableStatement) statement);
+                else sql.createIndex((CreateIndexStatement) statement);
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static String consoleMessage(int i, boolean repeated) {
+        return repeated ? "Imported batch " + i / 100 + " into people" : "Inserted row " + i + " into people";
+    }
+
+    /** Reads a screen on the event thread, waiting for any page a paged model is still reading. */
+    private static void readScreen(javax.swing.table.TableModel model, int top, int screen) throws Exception {
+        Semaphore arrived = new Semaphore(0);
+        javax.swing.event.TableModelListener listener = e -> arrived.release();
+        model.addTableModelListener(listener);
+        try {
+            boolean[] loading = {true};
+            while (true) {
+                javax.swing.SwingUtilities.invokeAndWait(() -> {
+                    loading[0] = false;
+                    for (int row = Math.max(0, top); row < Math.min(top + screen, model.getRowCount()); row++) {
+                        for (int c = 0; c < model.getColumnCount(); c++) {
+                            loading[0] |= model.getValueAt(row, c) == PagedTableModel.LOADING;
+                        }
+                    }
+                });
+                if (!loading[0]) break;
+                arrived.acquire();
+            }
+        } finally {
+            model.removeTableModelListener(listener);
+        }
+    }
+
+    /** Bytes allocated so far by every live thread, scan workers included. */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long bytes = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) bytes += Math.max(0, allocated);
+        return bytes;
+    }
+
+    private static double bestMillis(Runnable query) {
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            long start = System.nanoTime();
+            query.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+
+    /** Orders of the people of {@link #peopleTable}; a tenth of them name no person or someone unknown. */
+    private static Table ordersTable(int rows, int people, StorageMode mode) {
+        Table table = new Table("orders", StatementParser.parseColumns(
+            "order_id INT NOT NULL, person_id INT, customer VARCHAR, amount DOUBLE"), mode);
+        Random random = new Random(7);
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            int person = random.nextInt(10) == 0 ? people + random.nextInt(people) : random.nextInt(people);
+            Integer id = random.nextInt(50) == 0 ? null : person;
+            batch.add(new Object[] {i, id, id == null ? null : "Customer " + person, random.nextInt(100_000) / 100.0});
+            if (batch.size() == 10_000 || i == rows - 1) {
+                table.insertBatch(batch);
+                batch.clear();
+            }
+        }
+        return table;
+    }
+
+    /** Joins the selected Records through a HashMap of boxed keys, as code without JOIN would. */
+    private static int naiveJoin(Database db, String orderKey, String personKey, boolean outer, String where) {
+        Map<Object, List<Record>> people = new HashMap<>();
+        for (Record person : db.getTable("people").selectAll()) {
+            Object key = person.get(personKey);
+            if (key != null) people.computeIfAbsent(key, k -> new ArrayList<>()).add(person);
+        }
+        Expr filter = where == null ? null : StatementParser.parseCondition(where.replace("o.", ""));
+        List<Object[]> rows = new ArrayList<>();
+        for (Record order : db.getTable("orders").select(filter)) {
+            Object key = order.get(orderKey);
+            List<Record> matches = key == null ? null : people.get(key);
+            if (matches == null) {
+                if (outer) rows.add(new Object[] {order.get("order_id"), null, order.get("amount")});
+                continue;
+            }
+            for (Record person : matches) {
+                rows.add(new Object[] {order.get("order_id"), person.get("name"), order.get("amount")});
+            }
+        }
+        return rows.size();
+    }
+
+    /** Groups records in a HashMap of boxed keys and accumulators, as code without GROUP BY would. */
+    private static Map<Object, Object> naiveGroupBy(List<Record> records, String key, String function, String column) {
+        Map<Object, Object> groups = new HashMap<>();
+        for (Record record : records) {
+            Object value = record.get(column);
+            if (function.equals("COUNT DISTINCT")) {
+                @SuppressWarnings("unchecked")
+                Set<Object> seen = (Set<Object>) groups.computeIfAbsent(record.get(key), k -> new HashSet<>());
+                if (value != null) seen.add(value);
+            } else if (value != null) {
+                double[] acc = (double[]) groups.computeIfAbsent(record.get(key), k -> new double[2]);
+                acc[0] += ((Number) value).doubleValue();
+                acc[1]++;
+            }
+        }
+        return groups;
+    }
+
+    /** Reads the CSV line by line and inserts each row on its own, as a naive importer would. */
+    private static long perRowImport(Path csv, StorageMode mode) throws IOException {
+        long start = System.nanoTime();
+        Table table = new Table("people", StatementParser.parseColumns(
+            "id INTEGER, name VARCHAR, city VARCHAR, score DOUBLE, active BOOLEAN"), mode);
+        table.createIndex("id", IndexType.HASH);
+        String[] names = {"id", "name", "city", "score", "active"};
+        try (java.io.BufferedReader in = Files.newBufferedReader(csv)) {
+            in.readLine();
+            BulkLoader.CsvParser parser;
+            String line;
+            Map<String, Object> row = new HashMap<>();
+            while ((line = in.readLine()) != null) {
+                parser = new BulkLoader.CsvParser(line);
+                List<String> fields = parser.next();
+                for (int c = 0; c < names.length; c++) row.put(names[c], fields.get(c));
+                table.insert(row);
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /** Average time of one full-table equality scan, predicate only. */
+    private static double filterMillis(Table table, String column, String[] literals) {
+        TableSnapshot snapshot = table.snapshot();
+        int queries = 12;
+        long matches = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            java.util.function.IntPredicate p = snapshot.storage.equalTo(column, literals[q % literals.length]);
+            for (int slot = 0; slot < snapshot.size; slot++) {
+                if (p.test(slot)) matches++;
+            }
+        }
+        if (matches == 0) throw new IllegalStateException("no matches");
+        return (System.nanoTime() - start) / 1e6 / queries;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                if (Files.isDirectory(f)) deleteRecursively(f);
+                else Files.delete(f);
+            }
+        }
+        Files.delete(dir);
+    }
+}
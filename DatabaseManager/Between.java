@@ -0,0 +1,20 @@
+/**
+ * column BETWEEN low AND high, both bounds inclusive.
+ * Author: Eyasu Solomon
+ */
+final class Between extends Expr {
+    final String column;
+    final String low;
+    final String high;
+
+    Between(String column, String low, String high) {
+        this.column = column;
+        this.low = low;
+        this.high = high;
+    }
+
+    @Override
+    public String toString() {
+        return name(column) + " BETWEEN " + quote(low) + " AND " + quote(high);
+    }
+}
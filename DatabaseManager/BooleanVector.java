@@ -0,0 +1,57 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * BOOLEAN columns, one bit per slot.
+ * Author: Eyasu Solomon
+ */
+class BooleanVector extends ColumnVector {
+    private volatile long[] bits;
+
+    BooleanVector(Column column, int capacity) {
+        super(column, capacity);
+        bits = new long[words(capacity)];
+    }
+
+    public boolean getBoolean(int slot) {
+        return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    @Override protected Object getValue(int slot) { return getBoolean(slot); }
+
+    @Override
+    protected void setValue(int slot, Object value) {
+        if ((Boolean) value) bits[slot >>> 6] |= 1L << slot;
+        else bits[slot >>> 6] &= ~(1L << slot);
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+        if (words(capacity) > bits.length) bits = Arrays.copyOf(bits, words(capacity));
+    }
+
+    @Override
+    public IntPredicate equalTo(String literal) {
+        Object key = DataType.BOOLEAN.keyOf(literal);
+        if (key == null) return slot -> false;
+        boolean k = (Boolean) key;
+        long[] words = bits;
+        long[] nullBits = nulls;
+        return slot -> ((words[slot >>> 6] & (1L << slot)) != 0) == k && !isNull(nullBits, slot);
+    }
+
+    @Override
+    public void load(int from, int n, BatchColumn out) {
+        long[] words = bits;
+        for (int i = 0; i < n; i++) {
+            int slot = from + i;
+            out.ints[i] = (int) (words[slot >>> 6] >>> slot) & 1;
+        }
+        loadNulls(from, n, out);
+    }
+
+    @Override
+    public long estimateBytes(int size) {
+        return super.estimateBytes(size) + bits.length * 8L;
+    }
+}
@@ -0,0 +1,630 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streaming bulk import of CSV files and SQL INSERT scripts.
+ * Author: Eyasu Solomon
+ *
+ * The file is read through a FileChannel in chunks of about
+ * {@value #CHUNK_BYTES} bytes, each cut after its last complete line. Worker
+ * threads parse the chunks and coerce every value to its column's
+ * DataType; the calling thread appends the finished chunks in file order
+ * through {@link Table#insertBatch}. At most two chunks per worker are in
+ * flight, so memory stays bounded however large the file is. Indexes of
+ * the loaded tables are suspended for the load and rebuilt once at the end.
+ *
+ * CSV: the first line names the columns, optionally typed as
+ * {@code name:TYPE} like the console's CREATE TABLE. A missing table is
+ * created from the header, guessing untyped columns from the first rows.
+ * Quoted fields may contain commas, quotes ("") and line breaks; an empty
+ * unquoted field is NULL.
+ *
+ * SQL: one statement per line, as dump tools write them.
+ * {@code CREATE TABLE} and {@code INSERT INTO t [(cols)] VALUES (...), ...}
+ * are loaded; other statements are counted as skipped.
+ */
+class BulkLoader {
+    static final int CHUNK_BYTES = 4 << 20;
+    private static final int MAX_ERRORS = 10;
+    private static final int SAMPLE_ROWS = 1000;
+
+    /** Reports progress after each chunk is appended. */
+    interface Progress {
+        void update(long bytesDone, long bytesTotal, long rows);
+    }
+
+    /** What a load did. */
+    static final class Result {
+        long rows;
+        long rejected;
+        long skipped;
+        long millis;
+        final Set<String> tables = new LinkedHashSet<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            String text = rows + " row(s) loaded" + (tables.isEmpty() ? "" : " into " + String.join(", ", tables))
+                + " in " + millis + " ms";
+            if (millis > 0) text += " (" + rows * 1000 / millis + " rows/s)";
+            if (rejected > 0) text += ", " + rejected + " rejected";
+            if (skipped > 0) text += ", " + skipped + " statement(s) skipped";
+            return text;
+        }
+    }
+
+    private final Database database;
+    private final int threads;
+    private StorageMode mode = StorageMode.ROW;
+
+    public BulkLoader(Database database) {
+        this(database, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkLoader(Database database, int threads) {
+        this.database = database;
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Storage mode of tables the import creates. */
+    public void setStorageMode(StorageMode mode) {
+        this.mode = mode;
+    }
+
+    /** Loads a .csv file into a table named after it, a binary export, or anything else as SQL. */
+    public Result load(Path file, Progress progress) throws IOException {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0 && name.substring(dot + 1).equalsIgnoreCase("csv")) {
+            return loadCsv(file, name.substring(0, dot).replaceAll("\\W", "_"), progress);
+        }
+        if (name.toLowerCase().endsWith(Exporter.BINARY_EXTENSION)) {
+            return loadBinary(file, progress);
+        }
+        return loadSql(file, progress);
+    }
+
+    /** Adds the tables of a binary export; tables that already exist are skipped. */
+    public Result loadBinary(Path file, Progress progress) throws IOException {
+        long started = System.nanoTime();
+        Result result = new Result();
+        for (Table table : Checkpoint.load(file).tables) {
+            if (database.getTable(table.getName()) != null) {
+                result.skipped++;
+                if (result.errors.size() < MAX_ERRORS) result.errors.add("Table already exists: " + table.getName());
+                continue;
+            }
+            database.addTable(table);
+            result.rows += table.getRecordCount();
+            result.tables.add(table.getName());
+        }
+        long size = Files.size(file);
+        if (progress != null) progress.update(size, size, result.rows);
+        result.millis = (System.nanoTime() - started) / 1_000_000;
+        return result;
+    }
+
+    /** Loads a CSV file with a header line into {@code tableName}, creating the table if needed. */
+    public Result loadCsv(Path file, String tableName, Progress progress) throws IOException {
+        byte[] head = readHead(file);
+        int headerEnd = indexOf(head, head.length, 0, (byte) '\n');
+        if (headerEnd < 0 && head.length == CHUNK_BYTES) {
+            throw new IllegalArgumentException("CSV header line is too long");
+        }
+        int headerLength = headerEnd < 0 ? head.length : headerEnd;
+        List<String> header = new CsvParser(new String(head, 0, headerLength, StandardCharsets.UTF_8)).next();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file is empty: " + file);
+        }
+
+        Table table = database.getTable(tableName);
+        boolean created = false;
+        if (table == null) {
+            int sampleStart = headerEnd < 0 ? head.length : headerEnd + 1;
+            table = new Table(tableName, guessColumns(header, head, sampleStart), mode);
+            created = true;
+        }
+        int[] target = new int[header.size()];
+        for (int i = 0; i < target.length; i++) {
+            String column = header.get(i).split(":")[0].trim();
+            target[i] = indexOfColumn(table, column);
+            if (target[i] < 0) {
+                throw new IllegalArgumentException("Column '" + column + "' is not in table " + tableName);
+            }
+        }
+        if (created) database.addTable(table);
+
+        Table into = table;
+        long start = headerEnd < 0 ? head.length : headerEnd + 1;
+        return run(file, start, 1, true, chunk -> parseCsv(chunk, into, target), progress);
+    }
+
+    /** Loads CREATE TABLE and INSERT statements, one per line. */
+    public Result loadSql(Path file, Progress progress) throws IOException {
+        return run(file, 0, 0, false, this::parseSql, progress);
+    }
+
+    // ------------------------------------------------------------------
+    // Pipeline
+    // ------------------------------------------------------------------
+
+    /** A slice of the file: whole lines only. */
+    private static final class Chunk {
+        final byte[] bytes;
+        final int length;
+
+        Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        String text() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Rows of one table from consecutive lines of a chunk. */
+    private static final class Batch {
+        final String tableName;
+        final Table table;           // null: unknown when parsed, so the rows are not coerced yet
+        final String[] columns;      // null: values in table column order
+        final List<Object[]> rows = new ArrayList<>();
+        final List<Integer> lines = new ArrayList<>();
+
+        Batch(String tableName, Table table, String[] columns) {
+            this.tableName = tableName;
+            this.table = table;
+            this.columns = columns;
+        }
+    }
+
+    /** What a worker made of a chunk, applied in file order. */
+    private static final class Parsed {
+        final List<Object> actions = new ArrayList<>();     // Table to create, or Batch
+        final List<String> errors = new ArrayList<>();      // "<local line>\t<message>"
+        int lines;
+        long rejected;
+        long skipped;
+
+        void reject(int line, String message) {
+            rejected++;
+            if (errors.size() < MAX_ERRORS) errors.add(line + "\t" + message);
+        }
+    }
+
+    private interface ChunkParser {
+        Parsed parse(Chunk chunk);
+    }
+
+    private Result run(Path file, long offset, long linesBefore, boolean csv, ChunkParser parser, Progress progress) throws IOException {
+        long started = System.nanoTime();
+        Result result = new Result();
+        Set<Table> loading = new LinkedHashSet<>();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-load");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Parsed>> inFlight = new ArrayDeque<>();
+        Deque<Long> chunkEnds = new ArrayDeque<>();
+        long[] lineBase = {linesBefore};
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long total = channel.size();
+            long read = offset;
+            channel.position(offset);
+            byte[] carry = new byte[0];
+            boolean eof = false;
+            while (!eof) {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(CHUNK_BYTES, carry.length * 2));
+                buffer.put(carry);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                byte[] bytes = buffer.array();
+                int length = buffer.position();
+                int cut = eof ? length : lastLineEnd(bytes, length, csv);
+                if (cut < 0) {          // a single line longer than the buffer
+                    carry = Arrays.copyOf(bytes, length);
+                    continue;
+                }
+                carry = Arrays.copyOfRange(bytes, cut, length);
+                Chunk chunk = new Chunk(bytes, cut);
+                inFlight.add(workers.submit(() -> parser.parse(chunk)));
+                read += cut;
+                chunkEnds.add(read);
+                while (inFlight.size() >= threads * 2 || (eof && !inFlight.isEmpty())) {
+                    apply(await(inFlight.poll()), result, loading, lineBase);
+                    long done = chunkEnds.poll();
+                    if (progress != null) progress.update(eof && inFlight.isEmpty() ? total : done, total, result.rows);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            for (Table table : loading) table.endBulkLoad();
+        }
+        result.millis = (System.nanoTime() - started) / 1_000_000;
+        return result;
+    }
+
+    private static Parsed await(Future<Parsed> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /** Creates tables and appends batches of one parsed chunk, on the loading thread. */
+    private void apply(Parsed parsed, Result result, Set<Table> loading, long[] lineBase) {
+        for (String error : parsed.errors) {
+            if (result.errors.size() >= MAX_ERRORS) break;
+            int tab = error.indexOf('\t');
+            long line = lineBase[0] + Long.parseLong(error.substring(0, tab));
+            result.errors.add("line " + line + ": " + error.substring(tab + 1));
+        }
+        result.rejected += parsed.rejected;
+        result.skipped += parsed.skipped;
+        for (Object action : parsed.actions) {
+            if (action instanceof Table) {
+                Table table = (Table) action;
+                if (database.getTable(table.getName()) == null) {
+                    database.addTable(table);
+                    result.tables.add(table.getName());
+                } else {
+                    result.skipped++;
+                }
+                continue;
+            }
+            Batch batch = (Batch) action;
+            Table table = batch.table != null ? batch.table : database.getTable(batch.tableName);
+            if (table == null) {
+                result.rejected += batch.rows.size();
+                addError(result, lineBase[0] + batch.lines.get(0), "Table not found: " + batch.tableName);
+                continue;
+            }
+            List<Object[]> rows = batch.rows;
+            if (batch.table == null) rows = coerceLate(table, batch, result, lineBase[0]);
+            if (loading.add(table)) table.beginBulkLoad();
+            result.rows += table.insertBatch(rows);
+            result.tables.add(table.getName());
+        }
+        lineBase[0] += parsed.lines;
+    }
+
+    /** Coerces rows whose table was created by an earlier, not yet applied, chunk. */
+    private List<Object[]> coerceLate(Table table, Batch batch, Result result, long lineBase) {
+        List<Object[]> rows = new ArrayList<>(batch.rows.size());
+        int[] target;
+        try {
+            target = targetColumns(table, batch.columns);
+        } catch (IllegalArgumentException e) {
+            result.rejected += batch.rows.size();
+            addError(result, lineBase + batch.lines.get(0), e.getMessage());
+            return rows;
+        }
+        for (int i = 0; i < batch.rows.size(); i++) {
+            try {
+                rows.add(coerce(table, target, batch.rows.get(i)));
+            } catch (IllegalArgumentException e) {
+                result.rejected++;
+                addError(result, lineBase + batch.lines.get(i), e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    private static void addError(Result result, long line, String message) {
+        if (result.errors.size() < MAX_ERRORS) result.errors.add("line " + line + ": " + message);
+    }
+
+    /** Index just past the last line break (outside quotes for CSV), or -1 if there is none. */
+    private static int lastLineEnd(byte[] bytes, int length, boolean csv) {
+        if (!csv) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') return i + 1;
+            }
+            return -1;
+        }
+        // Every chunk starts at a record boundary, so quote parity is known from its start
+        int last = -1;
+        boolean quoted = false;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b == '"') quoted = !quoted;
+            else if (b == '\n' && !quoted) last = i + 1;
+        }
+        return last;
+    }
+
+    private static byte[] readHead(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHUNK_BYTES, channel.size()));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int length, int from, byte b) {
+        for (int i = from; i < length; i++) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
+    // ------------------------------------------------------------------
+    // CSV
+    // ------------------------------------------------------------------
+
+    private Parsed parseCsv(Chunk chunk, Table table, int[] target) {
+        Parsed parsed = new Parsed();
+        Batch batch = new Batch(table.getName(), table, null);
+        CsvParser csv = new CsvParser(chunk.text());
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            int line = csv.line();
+            if (fields.size() == 1 && fields.get(0) == null) continue;      // blank line
+            if (fields.size() != target.length) {
+                parsed.reject(line, "Expected " + target.length + " fields, found " + fields.size());
+                continue;
+            }
+            try {
+                batch.rows.add(coerce(table, target, fields.toArray()));
+                batch.lines.add(line);
+            } catch (IllegalArgumentException e) {
+                parsed.reject(line, e.getMessage());
+            }
+        }
+        parsed.lines = csv.lines();
+        parsed.actions.add(batch);
+        return parsed;
+    }
+
+    /** Guesses INTEGER, DOUBLE, BOOLEAN or STRING for untyped header columns from the first rows. */
+    private static List<Column> guessColumns(List<String> header, byte[] head, int sampleStart) {
+        int end = lastLineEnd(Arrays.copyOfRange(head, sampleStart, head.length), head.length - sampleStart, true);
+        String sample = end < 0 ? "" : new String(head, sampleStart, end, StandardCharsets.UTF_8);
+        CsvParser csv = new CsvParser(sample);
+        DataType[] guess = new DataType[header.size()];
+        List<String> fields;
+        for (int rows = 0; rows < SAMPLE_ROWS && (fields = csv.next()) != null; rows++) {
+            for (int i = 0; i < guess.length && i < fields.size(); i++) {
+                String value = fields.get(i);
+                if (value == null || guess[i] == DataType.STRING) continue;
+                guess[i] = widen(guess[i], value);
+            }
+        }
+        List<Column> columns = new ArrayList<>();
+        for (int i = 0; i < guess.length; i++) {
+            String[] parts = header.get(i).split(":");
+            DataType type = guess[i] != null ? guess[i] : DataType.STRING;
+            if (parts.length > 1) {
+                try {
+                    type = DataType.valueOf(parts[1].trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid data type in CSV header: " + parts[1]);
+                }
+            }
+            boolean notNull = parts.length > 2 && parts[2].trim().equalsIgnoreCase("notnull");
+            columns.add(new Column(parts[0].trim(), type, !notNull));
+        }
+        return columns;
+    }
+
+    private static DataType widen(DataType current, String value) {
+        for (DataType type : new DataType[] {DataType.INTEGER, DataType.DOUBLE, DataType.BOOLEAN}) {
+            if (current != null && current != type && !(current == DataType.INTEGER && type == DataType.DOUBLE)) continue;
+            try {
+                type.coerce(value);
+                return type;
+            } catch (IllegalArgumentException e) {
+                // try the next type
+            }
+        }
+        return DataType.STRING;
+    }
+
+    /** Splits CSV text into records of fields; quoted fields may span lines. */
+    static final class CsvParser {
+        private final String text;
+        private int pos;
+        private int line;            // lines consumed so far
+        private int recordLine;
+
+        CsvParser(String text) {
+            this.text = text;
+        }
+
+        /** The 1-based line the last record started on. */
+        int line() { return recordLine; }
+        int lines() { return line; }
+
+        List<String> next() {
+            int n = text.length();
+            if (pos >= n) return null;
+            recordLine = line + 1;
+            List<String> fields = new ArrayList<>();
+            while (true) {
+                if (pos < n && text.charAt(pos) == '"') {
+                    StringBuilder value = new StringBuilder();
+                    pos++;
+                    while (pos < n) {
+                        char c = text.charAt(pos++);
+                        if (c == '"') {
+                            if (pos < n && text.charAt(pos) == '"') {
+                                value.append('"');
+                                pos++;
+                            } else {
+                                break;
+                            }
+                        } else {
+                            if (c == '\n') line++;
+                            value.append(c);
+                        }
+                    }
+                    fields.add(value.toString());
+                    while (pos < n && text.charAt(pos) != ',' && text.charAt(pos) != '\n') pos++;
+                } else {
+                    int start = pos;
+                    while (pos < n && text.charAt(pos) != ',' && text.charAt(pos) != '\n') pos++;
+                    int end = pos > start && text.charAt(pos - 1) == '\r' ? pos - 1 : pos;
+                    fields.add(end == start ? null : text.substring(start, end));
+                }
+                if (pos >= n || text.charAt(pos) == '\n') {
+                    pos++;
+                    line++;
+                    return fields;
+                }
+                pos++;      // the comma
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // SQL
+    // ------------------------------------------------------------------
+
+    private Parsed parseSql(Chunk chunk) {
+        Parsed parsed = new Parsed();
+        Map<String, Table> created = new HashMap<>();
+        Batch batch = null;
+        String text = chunk.text();
+        int line = 0;
+        for (int start = 0; start < text.length(); ) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = text.length();
+            String statement = text.substring(start, end).trim();
+            start = end + 1;
+            line++;
+            if (statement.isEmpty() || statement.startsWith("--") || statement.startsWith("#")
+                || statement.startsWith("/*")) {
+                continue;
+            }
+            // Other statements in a dump (SET, LOCK TABLES, DROP TABLE ...) are not parsed at all
+            if (!startsWithWord(statement, "INSERT") && !startsWithWord(statement, "CREATE")) {
+                parsed.skipped++;
+                continue;
+            }
+            SqlStatement parsedStatement;
+            try {
+                parsedStatement = StatementParser.parse(statement, true);
+            } catch (IllegalArgumentException e) {
+                parsed.reject(line, e.getMessage());
+                continue;
+            }
+
+            if (parsedStatement instanceof InsertStatement) {
+                InsertStatement insert = (InsertStatement) parsedStatement;
+                String tableName = insert.table;
+                String[] columns = insert.columns == null ? null : insert.columns.toArray(new String[0]);
+                // A table created earlier in this chunk is not in the database yet
+                Table table = created.containsKey(tableName.toLowerCase()) ? null : database.getTable(tableName);
+                if (batch == null || !batch.tableName.equalsIgnoreCase(tableName)
+                    || !Arrays.equals(batch.columns, columns)) {
+                    batch = new Batch(tableName, table, columns);
+                    parsed.actions.add(batch);
+                }
+                int[] target = null;
+                if (table != null) {
+                    try {
+                        target = targetColumns(table, columns);
+                    } catch (IllegalArgumentException e) {
+                        parsed.reject(line, e.getMessage());
+                        continue;
+                    }
+                }
+                for (Object[] tuple : insert.rows) {
+                    try {
+                        batch.rows.add(table != null ? coerce(table, target, tuple) : tuple);
+                        batch.lines.add(line);
+                    } catch (IllegalArgumentException e) {
+                        parsed.reject(line, e.getMessage());
+                    }
+                }
+            } else if (parsedStatement instanceof CreateTableStatement) {
+                CreateTableStatement create = (CreateTableStatement) parsedStatement;
+                try {
+                    Table table = new Table(create.table, create.columns, mode);
+                    created.put(table.getName().toLowerCase(), table);
+                    parsed.actions.add(table);
+                    batch = null;
+                } catch (IllegalArgumentException e) {
+                    parsed.reject(line, e.getMessage());
+                }
+            } else {
+                parsed.skipped++;
+            }
+        }
+        parsed.lines = line;
+        return parsed;
+    }
+
+    private static boolean startsWithWord(String statement, String word) {
+        return statement.regionMatches(true, 0, word, 0, word.length())
+            && (statement.length() == word.length() || !Character.isLetterOrDigit(statement.charAt(word.length())));
+    }
+
+    // ------------------------------------------------------------------
+    // Coercion
+    // ------------------------------------------------------------------
+
+    /** For each value position, the table column it goes to ({@code columns} null: table order). */
+    private static int[] targetColumns(Table table, String[] columns) {
+        int width = table.getColumns().size();
+        if (columns == null) {
+            int[] target = new int[width];
+            for (int i = 0; i < width; i++) target[i] = i;
+            return target;
+        }
+        int[] target = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            target[i] = indexOfColumn(table, columns[i]);
+            if (target[i] < 0) {
+                throw new IllegalArgumentException("Unknown column: " + columns[i]);
+            }
+        }
+        return target;
+    }
+
+    /** Values placed into table column order and coerced to each column's DataType. */
+    private static Object[] coerce(Table table, int[] target, Object[] values) {
+        if (values.length != target.length) {
+            throw new IllegalArgumentException("Expected " + target.length + " values, found " + values.length);
+        }
+        List<Column> columns = table.getColumns();
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < target.length; i++) {
+            row[target[i]] = columns.get(target[i]).validate(values[i]);
+        }
+        for (int c = 0; c < row.length; c++) {
+            if (row[c] == null && !columns.get(c).isNullable()) {
+                throw new IllegalArgumentException("Column '" + columns.get(c).getName() + "' does not allow NULL");
+            }
+        }
+        return row;
+    }
+
+    private static int indexOfColumn(Table table, String name) {
+        List<Column> columns = table.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equalsIgnoreCase(name)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot (checkpoint) of a whole {@link Database}.
+ * Author: Eyasu Solomon
+ *
+ * A checkpoint file holds every table's schema, rows, indexes and nextId,
+ * together with the first write-ahead log segment that is NOT covered by the
+ * snapshot. Startup loads the newest checkpoint through memory-mapped reads
+ * and replays only the segments from that point on, so restart time is
+ * bounded by snapshot size rather than by log length.
+ *
+ * Layout (big-endian):
+ *
+ *   long magic "DBMSNAP1", int version, long walSegment, int tableCount
+ *   per table:  name, storageMode, nextId,
+ *               columnCount x (name, type, nullable),
+ *               indexCount x (column, type),
+ *               byte analyzed, if 1: rows, analyzedAt,
+ *                 per column (nulls, distinct, min, max, boundCount x bound),
+ *               rowCount x (id, createdAtMillis, value per column,
+ *                           extraCount x (key, value), always 0 now)
+ *   trailer:    long magic "DBMSNEND", int crc32(everything before trailer)
+ *
+ * Strings are length-prefixed UTF-8 and values use the LogBuffer tags.
+ * Version 1 files, written before tables had statistics, still load.
+ */
+final class Checkpoint {
+    private static final long MAGIC = 0x44424D534E415031L;      // "DBMSNAP1"
+    private static final long END_MAGIC = 0x44424D534E454E44L;  // "DBMSNEND"
+    private static final int VERSION = 2;
+    private static final int TRAILER = 12;
+    private static final String PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".snap";
+    private static final int PROGRESS_ROWS = 65536;
+
+    private Checkpoint() {}
+
+    /** A loaded checkpoint: its tables and the first log segment to replay. */
+    static final class Image {
+        final long walSegment;
+        final List<Table> tables;
+        final long rows;
+
+        Image(long walSegment, List<Table> tables, long rows) {
+            this.walSegment = walSegment;
+            this.tables = tables;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Writes a checkpoint covering every log segment before {@code walSegment}
+     * and returns its path. The file is written under a temporary name,
+     * forced to disk and then renamed atomically.
+     */
+    static Path write(Path directory, long walSegment, Collection<Table> tables) throws IOException {
+        Path target = directory.resolve(fileName(walSegment));
+        Path temp = directory.resolve(fileName(walSegment) + ".tmp");
+        try (SnapshotWriter out = new SnapshotWriter(FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            writeImage(out, walSegment, tables, null);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Writes {@code tables} to {@code file} in checkpoint format, as a binary
+     * export that {@link #load} can read back. {@code progress}, if given, is
+     * told the running row count every {@value #PROGRESS_ROWS} rows.
+     */
+    static void export(Path file, Collection<Table> tables, LongConsumer progress) throws IOException {
+        try (SnapshotWriter out = new SnapshotWriter(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            writeImage(out, 0, tables, progress);
+        }
+    }
+
+    private static void writeImage(SnapshotWriter out, long walSegment, Collection<Table> tables,
+                                   LongConsumer progress) throws IOException {
+        out.putLong(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(walSegment);
+        out.putInt(tables.size());
+        long rows = 0;
+        for (Table table : tables) {
+            rows = writeTable(out, table, rows, progress);
+        }
+        out.finish(END_MAGIC);
+    }
+
+    private static long writeTable(SnapshotWriter out, Table table, long rows, LongConsumer progress)
+            throws IOException {
+        List<Column> columns = table.getColumns();
+        out.putString(table.getName());
+        out.putString(table.getStorageMode().name());
+        out.putInt(table.getNextId());
+        out.putInt(columns.size());
+        for (Column col : columns) {
+            out.putString(col.getName());
+            out.putString(col.getType().name());
+            out.put((byte) (col.isNullable() ? 1 : 0));
+        }
+        TableSnapshot snapshot = table.snapshot();
+        List<TableIndex> indexes = table.declaredIndexes();
+        out.putInt(indexes.size());
+        for (TableIndex index : indexes) {
+            out.putString(index.getColumn().getName());
+            out.putString(index.getType());
+        }
+        TableStatistics stats = table.getStatistics();
+        out.put((byte) (stats != null ? 1 : 0));
+        if (stats != null) {
+            out.putLong(stats.rows);
+            out.putLong(stats.analyzedAt);
+            for (int c = 0; c < columns.size(); c++) {
+                ColumnStatistics col = stats.column(c);
+                out.putLong(col.nulls);
+                out.putLong(col.distinct);
+                out.putValue(col.min);
+                out.putValue(col.max);
+                out.putInt(col.bounds.length);
+                for (Object bound : col.bounds) out.putValue(bound);
+            }
+        }
+
+        // Count first, then stream: no per-row state is held unless updates moved rows out of table order
+        TableStorage storage = snapshot.storage;
+        int count = 0;
+        for (int slot = 0; slot < snapshot.size; slot++) {
+            if (snapshot.isVisible(slot)) count++;
+        }
+        out.putInt(count);
+        int[] order = snapshot.inSlotOrder() ? null : snapshot.visibleSlots();
+        for (int i = 0, n = order != null ? order.length : snapshot.size; i < n; i++) {
+            int slot = order != null ? order[i] : i;
+            if (!snapshot.isVisible(slot)) continue;
+            if (++rows % PROGRESS_ROWS == 0 && progress != null) progress.accept(rows);
+            out.putInt(storage.idAt(slot));
+            out.putLong(storage.createdAtMillis(slot));
+            for (int c = 0; c < columns.size(); c++) {
+                out.putValue(storage.valueAt(slot, c));
+            }
+            out.putInt(0);
+        }
+        if (progress != null) progress.accept(rows);
+        return rows;
+    }
+
+    /** Loads a checkpoint through memory-mapped reads after verifying its checksum. */
+    static Image load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 + 4 + 8 + 4 + TRAILER) {
+                throw new IOException("Checkpoint " + file.getFileName() + " is truncated");
+            }
+            MappedInput in = new MappedInput(channel, size - TRAILER);
+            verifyTrailer(channel, size, in.checksum(), file);
+
+            if (in.getLong() != MAGIC) throw new IOException("Not a checkpoint file: " + file.getFileName());
+            int version = in.getInt();
+            if (version != VERSION && version != 1) throw new IOException("Unsupported checkpoint version " + version);
+            long walSegment = in.getLong();
+            int tableCount = in.getInt();
+
+            List<Table> tables = new ArrayList<>(tableCount);
+            long rows = 0;
+            for (int t = 0; t < tableCount; t++) {
+                Table table = readTable(in, version);
+                rows += table.getRecordCount();
+                tables.add(table);
+            }
+            return new Image(walSegment, tables, rows);
+        }
+    }
+
+    private static Table readTable(MappedInput in, int version) throws IOException {
+        String name = in.getString();
+        StorageMode mode = StorageMode.valueOf(in.getString());
+        int nextId = in.getInt();
+        int columnCount = in.getInt();
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            String colName = in.getString();
+            DataType type = DataType.valueOf(in.getString());
+            columns.add(new Column(colName, type, in.get() == 1));
+        }
+        int indexCount = in.getInt();
+        String[][] indexes = new String[indexCount][];
+        for (int i = 0; i < indexCount; i++) {
+            indexes[i] = new String[] { in.getString(), in.getString() };
+        }
+        ColumnStatistics[] stats = null;
+        long analyzedRows = 0, analyzedAt = 0;
+        if (version > 1 && in.get() == 1) {
+            analyzedRows = in.getLong();
+            analyzedAt = in.getLong();
+            stats = new ColumnStatistics[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                long nulls = in.getLong();
+                long distinct = in.getLong();
+                Object min = in.getValue();
+                Object max = in.getValue();
+                Object[] bounds = new Object[in.getInt()];
+                for (int b = 0; b < bounds.length; b++) bounds[b] = in.getValue();
+                stats[c] = new ColumnStatistics(columns.get(c).getType(), analyzedRows, nulls, distinct, min, max, bounds);
+            }
+        }
+
+        Table table = new Table(name, columns, mode);
+        int rows = in.getInt();
+        Object[] values = new Object[columnCount];
+        for (int r = 0; r < rows; r++) {
+            int id = in.getInt();
+            long createdAt = in.getLong();
+            for (int c = 0; c < columnCount; c++) {
+                values[c] = in.getValue();
+            }
+            table.restore(id, createdAt, values);
+            int extra = in.getInt();
+            for (int e = 0; e < extra; e++) {
+                // Older ROW files kept keys outside the schema; storage no longer holds them
+                in.getString();
+                in.getValue();
+            }
+        }
+        table.restoreNextId(nextId);
+
+        // Indexes are rebuilt in one pass after the rows are in place
+        for (String[] index : indexes) {
+            table.createIndex(index[0], IndexType.valueOf(index[1]));
+        }
+        if (stats != null) table.restoreStatistics(analyzedRows, analyzedAt, stats);
+        return table;
+    }
+
+    private static void verifyTrailer(FileChannel channel, long size, int crc, Path file) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, size - TRAILER + trailer.position()) < 0) break;
+        }
+        trailer.flip();
+        if (trailer.remaining() < TRAILER || trailer.getLong() != END_MAGIC || trailer.getInt() != crc) {
+            throw new IOException("Checkpoint " + file.getFileName() + " is corrupt (checksum mismatch)");
+        }
+    }
+
+    /** The newest complete checkpoint in the directory, or null. */
+    static Path latest(Path directory) throws IOException {
+        List<Path> all = list(directory);
+        return all.isEmpty() ? null : all.get(all.size() - 1);
+    }
+
+    /** Deletes every checkpoint older than {@code keep}, plus leftover temp files. */
+    static void deleteOlder(Path directory, Path keep) throws IOException {
+        for (Path p : list(directory)) {
+            if (!p.equals(keep)) Files.deleteIfExists(p);
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX + ".tmp")) {
+            for (Path p : stream) Files.deleteIfExists(p);
+        }
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return result;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path p : stream) result.add(p);
+        }
+        result.sort(Comparator.comparingLong(Checkpoint::segmentOf));
+        return result;
+    }
+
+    private static String fileName(long walSegment) {
+        return String.format("%s%08d%s", PREFIX, walSegment, SUFFIX);
+    }
+
+    private static long segmentOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
+
+/**
+ * Buffered sequential writer over a FileChannel that keeps a running CRC32
+ * of everything written.
+ */
+class SnapshotWriter implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+    private final CRC32 crc = new CRC32();
+
+    SnapshotWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public void put(byte b) throws IOException { ensure(1); buf.put(b); }
+    public void putInt(int v) throws IOException { ensure(4); buf.putInt(v); }
+    public void putLong(long v) throws IOException { ensure(8); buf.putLong(v); }
+    public void putDouble(double v) throws IOException { ensure(8); buf.putDouble(v); }
+
+    public void putString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        if (bytes.length > buf.capacity()) {
+            flush();
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            crc.update(wrapped.duplicate());
+            while (wrapped.hasRemaining()) channel.write(wrapped);
+            return;
+        }
+        ensure(bytes.length);
+        buf.put(bytes);
+    }
+
+    public void putValue(Object value) throws IOException {
+        if (value == null) {
+            put(LogBuffer.NULL);
+        } else if (value instanceof Integer) {
+            put(LogBuffer.INT);
+            putInt((Integer) value);
+        } else if (value instanceof Double) {
+            put(LogBuffer.DOUBLE);
+            putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            put(LogBuffer.BOOLEAN);
+            put((byte) ((Boolean) value ? 1 : 0));
+        } else {
+            put(LogBuffer.STRING);
+            putString(value.toString());
+        }
+    }
+
+    /** Writes the trailer (end magic + CRC of the body) and forces the file. */
+    public void finish(long endMagic) throws IOException {
+        flush();
+        ByteBuffer trailer = ByteBuffer.allocate(12);
+        trailer.putLong(endMagic);
+        trailer.putInt((int) crc.getValue());
+        trailer.flip();
+        while (trailer.hasRemaining()) channel.write(trailer);
+        channel.force(true);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buf.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
+
+/**
+ * Sequential reader over memory-mapped windows of a file, so files larger
+ * than 2 GB can be read without copying them onto the heap.
+ */
+class MappedInput {
+    private static final long WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+    private final long limit;
+    private MappedByteBuffer buf;
+    private long base;
+
+    MappedInput(FileChannel channel, long limit) {
+        this.channel = channel;
+        this.limit = limit;
+    }
+
+    /** CRC32 of [0, limit), computed window by window. */
+    public int checksum() throws IOException {
+        CRC32 crc = new CRC32();
+        for (long pos = 0; pos < limit; pos += WINDOW) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, limit - pos)));
+        }
+        return (int) crc.getValue();
+    }
+
+    public byte get() throws IOException { ensure(1); return buf.get(); }
+    public int getInt() throws IOException { ensure(4); return buf.getInt(); }
+    public long getLong() throws IOException { ensure(8); return buf.getLong(); }
+    public double getDouble() throws IOException { ensure(8); return buf.getDouble(); }
+
+    public String getString() throws IOException {
+        int length = getInt();
+        ensure(length);
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Object getValue() throws IOException {
+        byte tag = get();
+        switch (tag) {
+            case LogBuffer.NULL: return null;
+            case LogBuffer.INT: return getInt();
+            case LogBuffer.DOUBLE: return getDouble();
+            case LogBuffer.BOOLEAN: return get() == 1;
+            case LogBuffer.STRING: return getString();
+            default: throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buf != null && buf.remaining() >= bytes) return;
+        long position = buf == null ? 0 : base + buf.position();
+        long length = Math.min(Math.max(WINDOW, bytes), limit - position);
+        if (length < bytes) throw new EOFException("Unexpected end of checkpoint");
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        base = position;
+    }
+}
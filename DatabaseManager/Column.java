@@ -0,0 +1,37 @@
+/**
+ * A named, typed column of a {@link Table}.
+ * Author: Eyasu Solomon
+ */
+class Column {
+    private String name;
+    private DataType type;
+    private boolean nullable;
+    
+    public Column(String name, DataType type) {
+        this(name, type, true);
+    }
+    
+    public Column(String name, DataType type, boolean nullable) {
+        this.name = name;
+        this.type = type;
+        this.nullable = nullable;
+    }
+    
+    public String getName() { return name; }
+    public DataType getType() { return type; }
+    public boolean isNullable() { return nullable; }
+    
+    /** Coerces a raw value to this column's type, rejecting NULL for NOT NULL columns. */
+    public Object validate(Object raw) {
+        Object value;
+        try {
+            value = type.coerce(raw);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Column '" + name + "': " + e.getMessage());
+        }
+        if (value == null && !nullable) {
+            throw new IllegalArgumentException("Column '" + name + "' does not allow NULL");
+        }
+        return value;
+    }
+}
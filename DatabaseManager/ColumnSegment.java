@@ -0,0 +1,77 @@
+import java.util.function.IntPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * One column of a {@link FrozenSegment}. NULLs are kept in a bitmap that
+ * only exists when the segment has any.
+ * Author: Eyasu Solomon
+ */
+abstract class ColumnSegment {
+    static final int BATCH = 1024;
+
+    protected final int count;
+    private final long[] nulls;
+    private final long rawBytes;
+
+    protected ColumnSegment(int count, long[] nulls, long rawBytes) {
+        this.count = count;
+        this.nulls = nulls;
+        this.rawBytes = rawBytes + nullBytes(nulls);
+    }
+
+    static ColumnSegment encode(DataType type, Object[] values, int count) {
+        long[] nulls = null;
+        for (int i = 0; i < count; i++) {
+            if (values[i] != null) continue;
+            if (nulls == null) nulls = new long[(count + 63) >>> 6];
+            nulls[i >>> 6] |= 1L << i;
+        }
+        switch (type) {
+            case INTEGER:
+            case BOOLEAN: return LongSegment.encode(type, values, count, nulls);
+            case DOUBLE: return DoubleSegment.encode(values, count, nulls);
+            default: return StringSegment.encode(values, count, nulls);
+        }
+    }
+
+    public boolean isNull(int i) {
+        return nulls != null && (nulls[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public Object get(int i) {
+        return isNull(i) ? null : value(i);
+    }
+
+    /** Like {@link ColumnVector#equalTo}, over row numbers within the segment. */
+    public IntPredicate equalTo(String literal) {
+        IntPredicate matches = matches(literal);
+        if (nulls == null) return matches;
+        return i -> matches.test(i) && !isNull(i);
+    }
+
+    public long compressedBytes() { return valueBytes() + nullBytes(nulls); }
+
+    /** Bytes the same values take in a plain COLUMNAR vector. */
+    public long rawBytes() { return rawBytes; }
+
+    public abstract String encoding();
+
+    protected abstract Object value(int i);
+    protected abstract IntPredicate matches(String literal);
+    protected abstract long valueBytes();
+
+    /** NULL slots take the previous value, which keeps runs and deltas small. */
+    protected static long[] toLongs(Object[] values, int count, ToLongFunction<Object> f) {
+        long[] out = new long[count];
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] != null) last = f.applyAsLong(values[i]);
+            out[i] = last;
+        }
+        return out;
+    }
+
+    private static long nullBytes(long[] nulls) {
+        return nulls != null ? nulls.length * 8L : 0;
+    }
+}
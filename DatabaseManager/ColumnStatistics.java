@@ -0,0 +1,67 @@
+/**
+ * Statistics of one column: NULL and distinct counts, range and an
+ * equi-depth histogram of the non-NULL values. Estimates are fractions of
+ * all the table's rows.
+ * Author: Eyasu Solomon
+ */
+final class ColumnStatistics {
+    final DataType type;
+    final long rows;
+    final long nulls;
+    final long distinct;
+    final Object min;                   // null when every value is NULL
+    final Object max;
+    final Object[] bounds;              // ascending bucket bounds; empty without values
+
+    ColumnStatistics(DataType type, long rows, long nulls, long distinct, Object min, Object max, Object[] bounds) {
+        this.type = type;
+        this.rows = rows;
+        this.nulls = nulls;
+        this.distinct = distinct;
+        this.min = min;
+        this.max = max;
+        this.bounds = bounds;
+    }
+
+    /** Share of rows whose value is not NULL. */
+    double nonNullFraction() {
+        return rows == 0 ? 0 : (double) (rows - nulls) / rows;
+    }
+
+    /** Share of rows equal to {@code key} (typed): the non-NULL rows spread evenly over the distinct values. */
+    double equalFraction(Object key) {
+        if (key == null || min == null || type.compare(key, min) < 0 || type.compare(key, max) > 0) return 0;
+        return nonNullFraction() / Math.max(1, distinct);
+    }
+
+    /** Share of rows between typed bounds, null for an open bound. */
+    double rangeFraction(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        if (min == null) return 0;
+        double below = low == null ? 0 : fractionBelow(low, !lowInclusive);
+        double upTo = high == null ? 1 : fractionBelow(high, highInclusive);
+        return Math.max(0, upTo - below) * nonNullFraction();
+    }
+
+    /**
+     * Share of non-NULL values below {@code key} (or at most {@code key}
+     * with {@code inclusive}): whole buckets below it, and for numbers the
+     * part of its own bucket found by linear interpolation.
+     */
+    private double fractionBelow(Object key, boolean inclusive) {
+        if (type.compare(key, min) < 0) return 0;
+        if (type.compare(key, max) > 0) return 1;
+        int buckets = bounds.length - 1;
+        if (buckets < 1) return 0.5;
+        double equal = inclusive ? 1.0 / Math.max(1, distinct) : 0;
+        int b = 0;
+        while (b < buckets - 1 && type.compare(key, bounds[b + 1]) >= 0) b++;
+        double within = 0.5;
+        if (key instanceof Number) {
+            double lo = ((Number) bounds[b]).doubleValue();
+            double hi = ((Number) bounds[b + 1]).doubleValue();
+            double k = ((Number) key).doubleValue();
+            within = hi > lo ? Math.min(1, Math.max(0, (k - lo) / (hi - lo))) : (inclusive ? 1 : 0);
+        }
+        return Math.min(1, (b + within) / buckets + equal);
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * A single column of a ColumnarStorage. Null values are tracked in a bitmap
+ * (one bit per slot) that is only allocated for nullable columns.
+ * Author: Eyasu Solomon
+ */
+abstract class ColumnVector {
+    protected final Column column;
+    protected volatile long[] nulls;
+
+    protected ColumnVector(Column column, int capacity) {
+        this.column = column;
+        this.nulls = column.isNullable() ? new long[words(capacity)] : null;
+    }
+
+    public static ColumnVector create(Column column, int capacity) {
+        switch (column.getType()) {
+            case INTEGER: return new IntVector(column, capacity);
+            case DOUBLE: return new DoubleVector(column, capacity);
+            case BOOLEAN: return new BooleanVector(column, capacity);
+            default: return new StringVector(column, capacity);
+        }
+    }
+
+    public Column getColumn() { return column; }
+
+    public Object validate(Object raw) {
+        return column.validate(raw);
+    }
+
+    /** Stores an already validated value. */
+    public void put(int slot, Object value) {
+        if (nulls != null) {
+            if (value == null) nulls[slot >>> 6] |= 1L << slot;
+            else nulls[slot >>> 6] &= ~(1L << slot);
+        }
+        if (value != null) setValue(slot, value);
+    }
+
+    public boolean isNull(int slot) {
+        long[] bits = nulls;
+        return bits != null && (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /** Null test over a fixed bitmap, for predicates that capture their arrays once. */
+    protected static boolean isNull(long[] bits, int slot) {
+        return bits != null && (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    public Object get(int slot) {
+        return isNull(slot) ? null : getValue(slot);
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (nulls != null && words(capacity) > nulls.length) {
+            nulls = Arrays.copyOf(nulls, words(capacity));
+        }
+        growValues(capacity);
+    }
+
+    public long estimateBytes(int size) {
+        return nulls != null ? nulls.length * 8L : 0;
+    }
+
+    /** How the values are laid out, for describe(). */
+    public String encoding() {
+        return "PLAIN";
+    }
+
+    protected abstract Object getValue(int slot);
+    protected abstract void setValue(int slot, Object value);
+    protected abstract void growValues(int capacity);
+    public abstract IntPredicate equalTo(String literal);
+
+    /** Loads slots {@code [from, from + n)} into a cleared scan batch, sharing the value array where it can. */
+    public abstract void load(int from, int n, BatchColumn out);
+
+    /** Expands the null bits of the slots into the batch, unless none of them is NULL. */
+    protected void loadNulls(int from, int n, BatchColumn out) {
+        long[] bits = nulls;
+        if (bits == null) return;
+        boolean any = false;
+        for (int w = from >>> 6; w <= (from + n - 1) >>> 6 && !any; w++) {
+            any = bits[w] != 0;
+        }
+        if (!any) return;
+        for (int i = 0; i < n; i++) {
+            int slot = from + i;
+            out.nulls[i] = (bits[slot >>> 6] & (1L << slot)) != 0;
+        }
+        out.hasNulls = true;
+    }
+
+    protected static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
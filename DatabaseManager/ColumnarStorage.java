@@ -0,0 +1,157 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Column-oriented storage: one primitive array per column, typed by its
+ * DataType, plus row ids and creation times.
+ * Author: Eyasu Solomon
+ */
+class ColumnarStorage extends TableStorage {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ColumnVector[] vectors;
+    private volatile int[] ids;
+    private volatile long[] createdAt;
+    private volatile int size;
+
+    public ColumnarStorage(List<Column> columns) {
+        super(columns);
+        this.vectors = new ColumnVector[columns.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = ColumnVector.create(columns.get(i), INITIAL_CAPACITY);
+        }
+        this.ids = new int[INITIAL_CAPACITY];
+        this.createdAt = new long[INITIAL_CAPACITY];
+    }
+
+    @Override public StorageMode getMode() { return StorageMode.COLUMNAR; }
+    @Override public int size() { return size; }
+    @Override public int idAt(int slot) { return ids[checkSlot(slot)]; }
+
+    public ColumnVector vector(int column) { return vectors[column]; }
+
+    @Override
+    public Record recordAt(int slot) {
+        checkSlot(slot);
+        Map<String, Object> data = new HashMap<>();
+        for (ColumnVector v : vectors) {
+            Object val = v.get(slot);
+            if (val != null) data.put(v.column.getName(), val);
+        }
+        LocalDateTime created = LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAt[slot]), ZoneId.systemDefault());
+        return new Record(ids[slot], data, created);
+    }
+
+    @Override
+    public Object valueAt(int slot, int column) {
+        return vectors[column].get(checkSlot(slot));
+    }
+
+    @Override
+    public long createdAtMillis(int slot) {
+        return createdAt[checkSlot(slot)];
+    }
+
+    @Override
+    public void load(int column, int from, int n, BatchColumn out) {
+        vectors[column].load(from, n, out);
+    }
+
+    @Override
+    public int append(int id, Map<String, Object> values) {
+        Object[] row = new Object[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            row[i] = values.get(vectors[i].column.getName());
+        }
+        return appendValues(id, System.currentTimeMillis(), row);
+    }
+
+    @Override
+    public int appendValues(int id, long createdAtMillis, Object[] values) {
+        // Coerce every value first so a bad row leaves the table untouched
+        Object[] row = new Object[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            row[i] = vectors[i].validate(values[i]);
+        }
+        ensureCapacity(size + 1);
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i].put(size, row[i]);
+        }
+        ids[size] = id;
+        createdAt[size] = createdAtMillis;
+        return size++;
+    }
+
+    @Override
+    public int appendVersion(int slot, String column, Object value) {
+        checkSlot(slot);
+        int c = columnIndex(column);
+        if (c < 0) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        Object[] row = new Object[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            row[i] = i == c ? value : vectors[i].get(slot);
+        }
+        return appendValues(ids[slot], createdAt[slot], row);
+    }
+
+    @Override
+    public void set(int slot, String column, Object value) {
+        checkSlot(slot);
+        int c = columnIndex(column);
+        if (c < 0) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        vectors[c].put(slot, vectors[c].validate(value));
+    }
+
+    @Override
+    public IntPredicate equalTo(String column, String literal) {
+        int c = columnIndex(column);
+        if (c < 0) return slot -> false;
+        return vectors[c].equalTo(literal);
+    }
+
+    @Override
+    public int appendCopy(TableStorage source, int slot) {
+        if (!(source instanceof ColumnarStorage)) {
+            Object[] row = new Object[vectors.length];
+            for (int c = 0; c < row.length; c++) row[c] = source.valueAt(slot, c);
+            return appendValues(source.idAt(slot), source.createdAtMillis(slot), row);
+        }
+        ColumnarStorage from = (ColumnarStorage) source;
+        ensureCapacity(size + 1);
+        for (int c = 0; c < vectors.length; c++) {
+            vectors[c].put(size, from.vectors[c].get(slot));
+        }
+        ids[size] = from.ids[slot];
+        createdAt[size] = from.createdAt[slot];
+        return size++;
+    }
+
+    @Override
+    public long estimateBytes(int rows) {
+        long bytes = (long) ids.length * 4 + (long) createdAt.length * 8;
+        for (ColumnVector v : vectors) bytes += v.estimateBytes(rows);
+        return bytes;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int capacity = Math.max(needed, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        for (ColumnVector v : vectors) v.ensureCapacity(capacity);
+    }
+
+    private int checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of range for size " + size);
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * The console's own statements: SHOW TABLES, DESCRIBE, ANALYZE, CHECKPOINT, IMPORT, EXPORT and RUN.
+ * Author: Eyasu Solomon
+ */
+final class CommandStatement extends SqlStatement {
+    enum Kind { SHOW_TABLES, DESCRIBE, ANALYZE, CHECKPOINT, IMPORT, EXPORT, RUN }
+
+    final Kind kind;
+    final String table;                 // DESCRIBE, ANALYZE table, IMPORT ... INTO, EXPORT table; else null
+    final String file;                  // IMPORT, EXPORT and RUN
+    final boolean continueOnError;      // RUN ... ON ERROR CONTINUE
+
+    CommandStatement(Kind kind, String table, String file) {
+        this(kind, table, file, false);
+    }
+
+    CommandStatement(Kind kind, String table, String file, boolean continueOnError) {
+        this.kind = kind;
+        this.table = table;
+        this.file = file;
+        this.continueOnError = continueOnError;
+    }
+}
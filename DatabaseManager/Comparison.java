@@ -0,0 +1,46 @@
+/**
+ * column op value, with op one of = &lt;&gt; &lt; &lt;= &gt; &gt;=.
+ * Author: Eyasu Solomon
+ */
+final class Comparison extends Expr {
+    final String column;
+    final TokenType op;
+    final String value;
+
+    Comparison(String column, TokenType op, String value) {
+        this.column = column;
+        this.op = op;
+        this.value = value;
+    }
+
+    boolean isRange() {
+        return op == TokenType.LT || op == TokenType.LE || op == TokenType.GT || op == TokenType.GE;
+    }
+
+    @Override
+    public String toString() {
+        return name(column) + " " + symbol(op) + " " + quote(value);
+    }
+
+    static String symbol(TokenType op) {
+        switch (op) {
+            case EQ: return "=";
+            case NE: return "<>";
+            case LT: return "<";
+            case LE: return "<=";
+            case GT: return ">";
+            default: return ">=";
+        }
+    }
+
+    /** The operator seen from the other side: a &lt; b is b &gt; a. */
+    static TokenType flip(TokenType op) {
+        switch (op) {
+            case LT: return TokenType.GT;
+            case LE: return TokenType.GE;
+            case GT: return TokenType.LT;
+            case GE: return TokenType.LE;
+            default: return op;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The GUI console's log: a bounded ring of recent lines fed from any thread.
+ * Author: Eyasu Solomon
+ *
+ * {@link #log} only queues an event, so it is cheap on any thread. A
+ * background thread drains the queue every {@value #FRAME_MS} ms. Runs of
+ * identical events in one frame become a single line, e.g.
+ * "Query formatted (x12)". Each line is timestamped once per second of
+ * events rather than once per event. The view is then told once per frame
+ * that lines arrived, however many did, and reads them with {@link #since}.
+ *
+ * The {@code dbm.consoleLines} (default 10,000) newest lines are held.
+ * Older lines are written to {@code dbm.consoleLog} (default
+ * {@code logs/console.log}, {@code none} for no file). Once the file
+ * reaches {@code dbm.consoleLogMB} (default 8), it is renamed
+ * {@code console.log.1} and so on, keeping {@value #FILES} old files.
+ * {@link #close} writes the lines still held, so the files hold the whole
+ * session.
+ */
+final class ConsoleLog implements AutoCloseable {
+    static final int FRAME_MS = 50;
+    static final int FILES = 3;
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /** How much a line matters; the view shows a level and those above it. */
+    enum Level { DEBUG, INFO, WARN, ERROR }
+
+    /** A line as the view shows it. */
+    static final class Line {
+        final long seq;
+        final Level level;
+        final String text;
+
+        Line(long seq, Level level, String text) {
+            this.seq = seq;
+            this.level = level;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /** A message not yet drained by the log's thread. */
+    private static final class Event {
+        final long millis;
+        final Level level;
+        final String message;
+
+        Event(long millis, Level level, String message) {
+            this.millis = millis;
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final Line[] ring;
+    private final Path file;
+    private final long maxFileBytes;
+    private final Runnable onFlush;
+    private final ScheduledExecutorService flusher;
+    private long first;                 // seq of the oldest line held
+    private long next;                  // seq of the next line
+    private long spilled;               // lines written to the file
+
+    // Used only by the log's thread
+    private Writer writer;
+    private long fileBytes;
+    private boolean spillDisabled;      // the file failed; lines are dropped instead
+    private long stampSecond = Long.MIN_VALUE;
+    private String stamp;
+
+    /** A log configured from the system properties; {@code onFlush} runs after each frame that added lines. */
+    ConsoleLog(Runnable onFlush) {
+        this(Integer.getInteger("dbm.consoleLines", 10_000), consoleFile(),
+            Long.getLong("dbm.consoleLogMB", 8L) << 20, onFlush);
+    }
+
+    /** A log holding {@code lines} lines, spilling to {@code file} (null: nowhere) in files of {@code maxFileBytes}. */
+    ConsoleLog(int lines, Path file, long maxFileBytes, Runnable onFlush) {
+        if (lines < 1) {
+            throw new IllegalArgumentException("Console must hold at least one line: " + lines);
+        }
+        if (maxFileBytes < 1) {
+            throw new IllegalArgumentException("Console log file size must be positive: " + maxFileBytes);
+        }
+        this.ring = new Line[lines];
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.onFlush = onFlush;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "console-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FRAME_MS, FRAME_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Path consoleFile() {
+        String name = System.getProperty("dbm.consoleLog", "logs/console.log");
+        return name.equals("none") ? null : Paths.get(name);
+    }
+
+    /** Queues {@code message}, timestamped now; a message of several lines becomes several lines. */
+    void log(Level level, String message) {
+        queue.add(new Event(System.currentTimeMillis(), level, message));
+    }
+
+    /**
+     * Adds the lines held from {@code from} on (or from the oldest, if that
+     * is newer) at {@code min} or above to {@code into}. Returns the seq to
+     * pass next time.
+     */
+    synchronized long since(long from, Level min, List<Line> into) {
+        for (long seq = Math.max(from, first); seq < next; seq++) {
+            Line line = ring[(int) (seq % ring.length)];
+            if (line.level.compareTo(min) >= 0) into.add(line);
+        }
+        return next;
+    }
+
+    /** Lines held now: at most {@code dbm.consoleLines}. */
+    synchronized int heldLines() {
+        return (int) (next - first);
+    }
+
+    /** Lines logged so far, after coalescing. */
+    synchronized long loggedLines() {
+        return next;
+    }
+
+    /** Lines written to the file so far. */
+    synchronized long spilledLines() {
+        return spilled;
+    }
+
+    /** Drains the queue now rather than at the next frame; returns once the lines are held. */
+    void sync() {
+        try {
+            flusher.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // Closed, or the frame failed: the next frame retries
+        }
+    }
+
+    /** Moves every line held to the file; the view starts empty. */
+    void clear() {
+        try {
+            flusher.submit(() -> {
+                flush();
+                spillHeld();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // Closed: nothing is held any more
+        }
+    }
+
+    /** Stops the log's thread and writes every line, queued or held, to the file. */
+    @Override
+    public void close() {
+        clear();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeWriter();
+    }
+
+    /** One frame: drains the queue, coalescing repeats, and tells the view. */
+    private void flush() {
+        Event run = null;
+        int repeats = 0;
+        boolean added = false;
+        for (Event event; (event = queue.poll()) != null; ) {
+            if (run != null && run.level == event.level && run.message.equals(event.message)) {
+                repeats++;
+                continue;
+            }
+            if (run != null) add(run, repeats);
+            run = event;
+            repeats = 0;
+            added = true;
+        }
+        if (run != null) add(run, repeats);
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                fileFailed(e);
+            }
+        }
+        if (added && onFlush != null) onFlush.run();
+    }
+
+    private void add(Event event, int repeats) {
+        String prefix = "[" + stamp(event.millis) + "] ";
+        String suffix = repeats > 0 ? " (x" + (repeats + 1) + ")" : "";
+        String message = event.message.endsWith("\n")
+            ? event.message.substring(0, event.message.length() - 1) : event.message;
+        String[] lines = message.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            append(event.level, prefix + lines[i] + (i == lines.length - 1 ? suffix : ""));
+        }
+    }
+
+    private void append(Level level, String text) {
+        Line evicted = null;
+        synchronized (this) {
+            int i = (int) (next % ring.length);
+            if (next - first == ring.length) {
+                evicted = ring[i];
+                first++;
+            }
+            ring[i] = new Line(next++, level, text);
+        }
+        if (evicted != null) spill(evicted);
+    }
+
+    private void spillHeld() {
+        List<Line> held = new ArrayList<>();
+        synchronized (this) {
+            since(first, Level.DEBUG, held);
+            first = next;
+            Arrays.fill(ring, null);
+        }
+        for (Line line : held) spill(line);
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                fileFailed(e);
+            }
+        }
+    }
+
+    /** Writes a line the ring let go of, rotating the file once it is full. */
+    private void spill(Line line) {
+        if (file == null || spillDisabled) return;
+        try {
+            if (writer == null) {
+                if (file.getParent() != null) Files.createDirectories(file.getParent());
+                fileBytes = Files.exists(file) ? Files.size(file) : 0;
+                writer = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                    StandardCharsets.UTF_8), 1 << 16);
+            }
+            String text = line.level + " " + line.text + "\n";
+            writer.write(text);
+            fileBytes += text.length();
+            synchronized (this) {
+                spilled++;
+            }
+            if (fileBytes >= maxFileBytes) rotate();
+        } catch (IOException e) {
+            fileFailed(e);
+        }
+    }
+
+    /** console.log becomes console.log.1, console.log.1 becomes .2, and so on; the oldest is deleted. */
+    private void rotate() throws IOException {
+        closeWriter();
+        Files.deleteIfExists(rotated(FILES));
+        for (int n = FILES - 1; n >= 1; n--) {
+            if (Files.exists(rotated(n))) Files.move(rotated(n), rotated(n + 1));
+        }
+        Files.move(file, rotated(1));
+        fileBytes = 0;
+    }
+
+    /** The {@code n}th newest rotated file. */
+    Path rotated(int n) {
+        return file.resolveSibling(file.getFileName() + "." + n);
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // Lines already written stay; the rest are lost with the file
+        }
+        writer = null;
+    }
+
+    /** Stops writing to the file for the rest of the session, and says so in the console. */
+    private void fileFailed(IOException e) {
+        closeWriter();
+        if (spillDisabled) return;
+        spillDisabled = true;
+        queue.add(new Event(System.currentTimeMillis(), Level.WARN,
+            "Console log file " + file + " disabled: " + e.getMessage()));
+    }
+
+    /** "HH:mm:ss", formatted again only when the second changes. */
+    private String stamp(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != stampSecond) {
+            stampSecond = second;
+            stamp = TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+        }
+        return stamp;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * CREATE INDEX [name] ON table (column) [USING HASH|BTREE].
+ * Author: Eyasu Solomon
+ */
+final class CreateIndexStatement extends SqlStatement {
+    final String table;
+    final String column;
+    final IndexType type;
+
+    CreateIndexStatement(String table, String column, IndexType type) {
+        this.table = table;
+        this.column = column;
+        this.type = type;
+    }
+}
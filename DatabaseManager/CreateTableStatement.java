@@ -0,0 +1,17 @@
+import java.util.*;
+
+/**
+ * CREATE TABLE table (column type [NOT NULL], ...) [USING ROW|COLUMNAR].
+ * Author: Eyasu Solomon
+ */
+final class CreateTableStatement extends SqlStatement {
+    final String table;
+    final List<Column> columns;
+    final StorageMode mode;
+
+    CreateTableStatement(String table, List<Column> columns, StorageMode mode) {
+        this.table = table;
+        this.columns = columns;
+        this.mode = mode;
+    }
+}
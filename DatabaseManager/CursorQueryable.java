@@ -0,0 +1,8 @@
+/**
+ * Same queries as {@link Queryable}, as cursors that build each row only when it is read.
+ * Author: Eyasu Solomon
+ */
+interface CursorQueryable {
+    RecordCursor openAll();
+    RecordCursor openWhere(String column, String value);
+}
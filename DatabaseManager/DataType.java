@@ -0,0 +1,65 @@
+/**
+ * Column types, and how console and SQL literals convert to them.
+ * Author: Eyasu Solomon
+ */
+enum DataType {
+    STRING, INTEGER, DOUBLE, BOOLEAN, DATE;
+    
+    /**
+     * Converts a raw value (typically console input or a boxed literal) into
+     * the Java type used to store this data type. Empty text is treated as
+     * NULL for every type except STRING.
+     */
+    public Object coerce(Object value) {
+        if (value == null) return null;
+        if (this == STRING || this == DATE) return value.toString();
+        if (value instanceof String && ((String) value).trim().isEmpty()) return null;
+        try {
+            switch (this) {
+                case INTEGER:
+                    if (value instanceof Number) return ((Number) value).intValue();
+                    return Integer.parseInt(value.toString().trim());
+                case DOUBLE:
+                    if (value instanceof Number) return ((Number) value).doubleValue();
+                    return Double.parseDouble(value.toString().trim());
+                case BOOLEAN:
+                    if (value instanceof Boolean) return value;
+                    String text = value.toString().trim();
+                    if (text.equalsIgnoreCase("true")) return Boolean.TRUE;
+                    if (text.equalsIgnoreCase("false")) return Boolean.FALSE;
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid " + this + " value: " + value);
+    }
+    
+    /**
+     * Returns the typed key whose {@code toString()} is exactly {@code literal},
+     * or null if no stored value of this type could print as that literal.
+     * This keeps typed comparisons equivalent to the string comparisons used
+     * by {@link Queryable#selectWhere}.
+     */
+    public Object keyOf(String literal) {
+        Object key;
+        try {
+            key = coerce(literal);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return key != null && key.toString().equals(literal) ? key : null;
+    }
+    
+    /** Compares two non-null values of this type: numerically for numbers, lexically otherwise. */
+    public int compare(Object a, Object b) {
+        switch (this) {
+            case INTEGER: return Integer.compare((Integer) a, (Integer) b);
+            case DOUBLE: return Double.compare((Double) a, (Double) b);
+            case BOOLEAN: return Boolean.compare((Boolean) a, (Boolean) b);
+            default: return a.toString().compareTo(b.toString());
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A named set of tables, optionally backed by a write-ahead log and checkpoints.
+ * Author: Eyasu Solomon
+ */
+class Database {
+    private String name;
+    private Map<String, Table> tables;
+    private WriteAheadLog log;
+    private int recoveredRecords;
+    private long checkpointRows = -1;
+    private long checkpointLoadMillis;
+    private ScheduledExecutorService checkpointer;
+    private final QueryCache queryCache = new QueryCache();
+    
+    /** In-memory database pre-loaded with sample data. */
+    public Database(String name) {
+        this(name, true);
+    }
+    
+    public Database(String name, boolean sampleData) {
+        this.name = name;
+        this.tables = new ConcurrentHashMap<>();
+        if (sampleData) initSampleData();
+    }
+    
+    /**
+     * Durable database: loads the newest checkpoint under dataDir/name, if
+     * any, and replays the write-ahead log segments written after it to
+     * rebuild its tables, then logs every later change. A new (empty)
+     * directory starts with the sample data.
+     */
+    public Database(String name, Path dataDir, SyncPolicy policy, long groupCommitMillis) throws IOException {
+        this.name = name;
+        this.tables = new ConcurrentHashMap<>();
+        Path directory = dataDir.resolve(name);
+        WriteAheadLog wal = new WriteAheadLog(directory, policy, groupCommitMillis);
+        try {
+            long replayFrom = 0;
+            Path snapshot = Checkpoint.latest(directory);
+            if (snapshot != null) {
+                long start = System.nanoTime();
+                Checkpoint.Image image = Checkpoint.load(snapshot);
+                for (Table table : image.tables) {
+                    tables.put(table.getName().toLowerCase(), table);
+                }
+                replayFrom = image.walSegment;
+                checkpointRows = image.rows;
+                checkpointLoadMillis = (System.nanoTime() - start) / 1_000_000;
+            }
+            this.recoveredRecords = wal.replay(this, replayFrom);
+        } catch (IOException | RuntimeException e) {
+            wal.close();
+            throw e;
+        }
+        this.log = wal;
+        for (Table table : tables.values()) {
+            table.attachLog(wal);
+        }
+        if (checkpointRows < 0 && recoveredRecords == 0) {
+            initSampleData();
+        }
+    }
+    
+    private void initSampleData() {
+        // Create sample Employees table
+        List<Column> empCols = Arrays.asList(
+            new Column("name", DataType.STRING),
+            new Column("department", DataType.STRING),
+            new Column("salary", DataType.DOUBLE),
+            new Column("active", DataType.BOOLEAN)
+        );
+        Table employees = new Table("employees", empCols);
+        
+        Map<String, Object> emp1 = new HashMap<>();
+        emp1.put("name", "John Smith");
+        emp1.put("department", "IT");
+        emp1.put("salary", 75000.0);
+        emp1.put("active", true);
+        employees.insert(emp1);
+        
+        Map<String, Object> emp2 = new HashMap<>();
+        emp2.put("name", "Jane Doe");
+        emp2.put("department", "HR");
+        emp2.put("salary", 65000.0);
+        emp2.put("active", true);
+        employees.insert(emp2);
+        
+        Map<String, Object> emp3 = new HashMap<>();
+        emp3.put("name", "Bob Wilson");
+        emp3.put("department", "IT");
+        emp3.put("salary", 80000.0);
+        emp3.put("active", false);
+        employees.insert(emp3);
+        
+        addTable(employees);
+        
+        // Create sample Products table
+        List<Column> prodCols = Arrays.asList(
+            new Column("product_name", DataType.STRING),
+            new Column("price", DataType.DOUBLE),
+            new Column("quantity", DataType.INTEGER)
+        );
+        Table products = new Table("products", prodCols);
+        
+        Map<String, Object> prod1 = new HashMap<>();
+        prod1.put("product_name", "Laptop");
+        prod1.put("price", 999.99);
+        prod1.put("quantity", 50);
+        products.insert(prod1);
+        
+        Map<String, Object> prod2 = new HashMap<>();
+        prod2.put("product_name", "Mouse");
+        prod2.put("price", 29.99);
+        prod2.put("quantity", 200);
+        products.insert(prod2);
+        
+        addTable(products);
+    }
+    
+    public String getName() { return name; }
+    
+    public boolean isDurable() { return log != null; }
+    public WriteAheadLog getLog() { return log; }
+    public int getRecoveredRecords() { return recoveredRecords; }
+    /** Rows loaded from a checkpoint at startup, or -1 if none was found. */
+    public long getCheckpointRows() { return checkpointRows; }
+    public long getCheckpointLoadMillis() { return checkpointLoadMillis; }
+    
+    public void addTable(Table table) {
+        if (log == null) {
+            tables.put(table.getName().toLowerCase(), table);
+            return;
+        }
+        Lock gate = log.checkpointGate().readLock();
+        gate.lock();
+        long lsn;
+        try {
+            tables.put(table.getName().toLowerCase(), table);
+            // Log the schema, then any rows and indexes the table already has
+            lsn = log.logCreateTable(table);
+            for (Record r : table.selectAll()) {
+                lsn = log.logInsert(table, r.getId(), r.getData());
+            }
+            for (TableIndex index : table.declaredIndexes()) {
+                lsn = log.logCreateIndex(table, index.getColumn().getName(), 
+                    index instanceof BTreeIndex ? IndexType.BTREE : IndexType.HASH);
+            }
+            table.attachLog(log);
+        } finally {
+            gate.unlock();
+        }
+        log.awaitDurable(lsn);
+    }
+    
+    /**
+     * Writes a checkpoint of every table and drops the log segments and
+     * older checkpoints it covers. Changes wait while the snapshot is
+     * written; reads carry on.
+     */
+    public synchronized Path checkpoint() throws IOException {
+        if (log == null) {
+            throw new IllegalStateException("Checkpoints need a durable database");
+        }
+        Path file;
+        long segment;
+        Lock gate = log.checkpointGate().writeLock();
+        gate.lock();
+        try {
+            segment = log.rotate();
+            file = Checkpoint.write(log.getDirectory(), segment, tables.values());
+        } finally {
+            gate.unlock();
+        }
+        Checkpoint.deleteOlder(log.getDirectory(), file);
+        log.deleteSegmentsBefore(segment);
+        return file;
+    }
+    
+    /** Checkpoints in the background every interval, if anything was logged since the last one. */
+    public void startCheckpoints(long intervalSeconds) {
+        if (log == null || intervalSeconds <= 0 || checkpointer != null) return;
+        checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                if (log.currentSegmentBytes() > 0) checkpoint();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Background checkpoint failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    /** Stops background checkpoints, then flushes and closes the write-ahead log, if any. */
+    public void close() {
+        if (log == null) return;
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Error closing write-ahead log: " + e.getMessage());
+        }
+    }
+    
+    public Table getTable(String name) {
+        return tables.get(name.toLowerCase());
+    }
+    
+    /** Results of recent SELECTs on this database's tables. */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+    
+    public Set<String> getTableNames() {
+        return tables.keySet();
+    }
+}
@@ -4,9 +4,13 @@ import javax.swing.table.*;
 import javax.swing.tree.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
-import java.text.SimpleDateFormat;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Database Manager Pro - A GUI Database Management System Simulator
@@ -15,7 +19,7 @@ import java.text.SimpleDateFormat;
  * Features:
  * - Modern dark theme UI with gradient headers
  * - Database browser with tree structure
- * - SQL Query editor with syntax highlighting simulation
+ * - SQL Query editor with incremental syntax highlighting
  * - Query results in table format
  * - Create/Edit/Delete tables and records
  * - Import/Export functionality
@@ -23,6 +27,7 @@ import java.text.SimpleDateFormat;
  * - Connection management
  */
 public class DatabaseManagerGUI extends JFrame {
+    private static final long serialVersionUID = 1L;
     
     // Color scheme
     private static final Color DARK_BG = new Color(18, 18, 24);
@@ -49,10 +54,32 @@ public class DatabaseManagerGUI extends JFrame {
     private JLabel statusLabel;
     private JLabel connectionStatus;
     private JProgressBar progressBar;
+    private JTabbedPane editorTabs;
+    private final List<QueryTab> queryTabs = new ArrayList<>();
+    private javax.swing.Timer progressTimer;
+    private boolean showingQueryProgress;
     
-    // Data storage (simulated database)
-    private Map<String, Map<String, List<Map<String, Object>>>> databases;
+    // Longer queries are run but not kept in the history list
+    private static final int MAX_HISTORY_CHARS = 4096;
+    
+    // The console shows the log's lines at consoleLevel and above, up to consoleShown
+    private final AtomicBoolean consolePending = new AtomicBoolean();
+    private final ConsoleLog consoleLog = new ConsoleLog(this::consoleFlushed);
+    private ConsoleLog.Level consoleLevel = ConsoleLog.Level.DEBUG;
+    private long consoleShown;
+    
+    // Queries run here, off the event thread; each editor tab runs at most one at a time
+    private final ExecutorService queryPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "query");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Data storage (in-memory engine databases)
+    private Map<String, Database> databases;
     private String currentDatabase = "sample_db";
+    private boolean cacheResults = true;    // re-opening a table reuses its result until the table changes
+    private boolean continueScripts;        // a script skips failed statements rather than stopping
     
     public DatabaseManagerGUI() {
         initializeData();
@@ -63,39 +90,58 @@ public class DatabaseManagerGUI extends JFrame {
         databases = new HashMap<>();
         
         // Create sample database
-        Map<String, List<Map<String, Object>>> sampleDb = new HashMap<>();
+        Database sampleDb = new Database("sample_db", false);
         
         // Users table
-        List<Map<String, Object>> users = new ArrayList<>();
-        users.add(createRow(1, "John Doe", "john@email.com", "Admin", "2024-01-15"));
-        users.add(createRow(2, "Jane Smith", "jane@email.com", "User", "2024-01-20"));
-        users.add(createRow(3, "Bob Wilson", "bob@email.com", "User", "2024-02-01"));
-        users.add(createRow(4, "Alice Brown", "alice@email.com", "Manager", "2024-02-10"));
-        users.add(createRow(5, "Charlie Davis", "charlie@email.com", "User", "2024-02-15"));
-        sampleDb.put("users", users);
+        Table users = new Table("users", Arrays.asList(
+            new Column("id", DataType.INTEGER, false),
+            new Column("name", DataType.STRING),
+            new Column("email", DataType.STRING),
+            new Column("role", DataType.STRING),
+            new Column("created_at", DataType.DATE)
+        ));
+        users.insert(createRow(1, "John Doe", "john@email.com", "Admin", "2024-01-15"));
+        users.insert(createRow(2, "Jane Smith", "jane@email.com", "User", "2024-01-20"));
+        users.insert(createRow(3, "Bob Wilson", "bob@email.com", "User", "2024-02-01"));
+        users.insert(createRow(4, "Alice Brown", "alice@email.com", "Manager", "2024-02-10"));
+        users.insert(createRow(5, "Charlie Davis", "charlie@email.com", "User", "2024-02-15"));
+        sampleDb.addTable(users);
         
         // Products table
-        List<Map<String, Object>> products = new ArrayList<>();
-        products.add(createProductRow(1, "Laptop Pro", "Electronics", 1299.99, 50));
-        products.add(createProductRow(2, "Wireless Mouse", "Accessories", 49.99, 200));
-        products.add(createProductRow(3, "USB-C Hub", "Accessories", 79.99, 150));
-        products.add(createProductRow(4, "Monitor 4K", "Electronics", 599.99, 30));
-        products.add(createProductRow(5, "Keyboard RGB", "Accessories", 129.99, 100));
-        sampleDb.put("products", products);
+        Table products = new Table("products", Arrays.asList(
+            new Column("id", DataType.INTEGER, false),
+            new Column("name", DataType.STRING),
+            new Column("category", DataType.STRING),
+            new Column("price", DataType.DOUBLE),
+            new Column("stock", DataType.INTEGER)
+        ));
+        products.insert(createProductRow(1, "Laptop Pro", "Electronics", 1299.99, 50));
+        products.insert(createProductRow(2, "Wireless Mouse", "Accessories", 49.99, 200));
+        products.insert(createProductRow(3, "USB-C Hub", "Accessories", 79.99, 150));
+        products.insert(createProductRow(4, "Monitor 4K", "Electronics", 599.99, 30));
+        products.insert(createProductRow(5, "Keyboard RGB", "Accessories", 129.99, 100));
+        sampleDb.addTable(products);
         
         // Orders table
-        List<Map<String, Object>> orders = new ArrayList<>();
-        orders.add(createOrderRow(1001, 1, 1, 1, 1299.99, "Completed"));
-        orders.add(createOrderRow(1002, 2, 2, 3, 149.97, "Shipped"));
-        orders.add(createOrderRow(1003, 3, 4, 1, 599.99, "Processing"));
-        orders.add(createOrderRow(1004, 1, 3, 2, 159.98, "Completed"));
-        sampleDb.put("orders", orders);
+        Table orders = new Table("orders", Arrays.asList(
+            new Column("order_id", DataType.INTEGER, false),
+            new Column("user_id", DataType.INTEGER),
+            new Column("product_id", DataType.INTEGER),
+            new Column("quantity", DataType.INTEGER),
+            new Column("total", DataType.DOUBLE),
+            new Column("status", DataType.STRING)
+        ));
+        orders.insert(createOrderRow(1001, 1, 1, 1, 1299.99, "Completed"));
+        orders.insert(createOrderRow(1002, 2, 2, 3, 149.97, "Shipped"));
+        orders.insert(createOrderRow(1003, 3, 4, 1, 599.99, "Processing"));
+        orders.insert(createOrderRow(1004, 1, 3, 2, 159.98, "Completed"));
+        sampleDb.addTable(orders);
         
         databases.put("sample_db", sampleDb);
         
         // Create another database
-        Map<String, List<Map<String, Object>>> testDb = new HashMap<>();
-        testDb.put("test_table", new ArrayList<>());
+        Database testDb = new Database("test_db", false);
+        testDb.addTable(new Table("test_table", new ArrayList<>()));
         databases.put("test_db", testDb);
     }
     
@@ -133,6 +179,13 @@ public class DatabaseManagerGUI extends JFrame {
     private void initializeUI() {
         setTitle("Database Manager Pro | Eyasu Solomon");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                // Writes the console's remaining lines to its log file
+                consoleLog.close();
+            }
+        });
         setSize(1400, 900);
         setLocationRelativeTo(null);
         
@@ -238,6 +291,7 @@ public class DatabaseManagerGUI extends JFrame {
         fileMenu.add(createMenuItem("Open Database", "ctrl O", e -> openDatabase()));
         fileMenu.addSeparator();
         fileMenu.add(createMenuItem("Import SQL", "ctrl I", e -> importSQL()));
+        fileMenu.add(createMenuItem("Run SQL Script...", "ctrl R", e -> runScriptFile()));
         fileMenu.add(createMenuItem("Export Database", "ctrl E", e -> exportDatabase()));
         fileMenu.addSeparator();
         fileMenu.add(createMenuItem("Exit", "alt F4", e -> System.exit(0)));
@@ -256,10 +310,26 @@ public class DatabaseManagerGUI extends JFrame {
         // Query menu
         JMenu queryMenu = createMenu("Query");
         queryMenu.add(createMenuItem("Execute Query", "F5", e -> executeQuery()));
+        queryMenu.add(createMenuItem("Run Statement at Cursor", "ctrl ENTER", e -> runStatementAtCursor()));
+        queryMenu.add(createMenuItem("Run Selection", "ctrl shift ENTER", e -> runSelection()));
         queryMenu.add(createMenuItem("Format Query", "ctrl shift F", e -> formatQuery()));
         queryMenu.addSeparator();
+        queryMenu.add(createMenuItem("Stop Query", "ESCAPE", e -> stopQuery()));
+        queryMenu.add(createMenuItem("New Query Tab", "ctrl T", e -> addQueryTab("")));
+        queryMenu.add(createMenuItem("Close Query Tab", "ctrl W", e -> closeQueryTab()));
+        queryMenu.addSeparator();
         queryMenu.add(createMenuItem("Clear Editor", null, e -> queryEditor.setText("")));
         queryMenu.add(createMenuItem("Clear Results", null, e -> clearResults()));
+        queryMenu.addSeparator();
+        JCheckBoxMenuItem cacheItem = new JCheckBoxMenuItem("Cache Results", cacheResults);
+        cacheItem.addActionListener(e -> {
+            cacheResults = cacheItem.isSelected();
+            for (Database db : databases.values()) db.getQueryCache().setEnabled(cacheResults);
+        });
+        queryMenu.add(cacheItem);
+        JCheckBoxMenuItem continueItem = new JCheckBoxMenuItem("Continue Script on Error", continueScripts);
+        continueItem.addActionListener(e -> continueScripts = continueItem.isSelected());
+        queryMenu.add(continueItem);
         menuBar.add(queryMenu);
         
         // Database menu
@@ -491,6 +561,8 @@ public class DatabaseManagerGUI extends JFrame {
         historyModel = new DefaultListModel<>();
         historyModel.addElement("SELECT * FROM users");
         historyModel.addElement("SELECT * FROM products");
+        historyModel.addElement("SELECT o.order_id, u.name, p.name, o.total FROM orders o "
+            + "JOIN users u ON o.user_id = u.id JOIN products p ON o.product_id = p.id");
         
         historyList = new JList<>(historyModel);
         historyList.setBackground(DARKER_BG);
@@ -523,9 +595,9 @@ public class DatabaseManagerGUI extends JFrame {
         
         for (String dbName : databases.keySet()) {
             DefaultMutableTreeNode dbNode = new DefaultMutableTreeNode(dbName);
-            Map<String, List<Map<String, Object>>> tables = databases.get(dbName);
+            Database db = databases.get(dbName);
             
-            for (String tableName : tables.keySet()) {
+            for (String tableName : db.getTableNames()) {
                 dbNode.add(new DefaultMutableTreeNode(tableName));
             }
             rootNode.add(dbNode);
@@ -551,49 +623,89 @@ public class DatabaseManagerGUI extends JFrame {
         JPanel tabs = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
         tabs.setOpaque(false);
         
-        JButton queryTab = createTabButton("Query Editor", true);
-        tabs.add(queryTab);
-        tabs.add(createTabButton("New Query +", false));
+        JButton newTab = createTabButton("New Query +", false);
+        newTab.addActionListener(e -> addQueryTab(""));
+        tabs.add(newTab);
         
-        header.add(tabs, BorderLayout.WEST);
+        header.add(tabs, BorderLayout.EAST);
         panel.add(header, BorderLayout.NORTH);
         
-        // Query editor
-        queryEditor = new JTextArea();
-        queryEditor.setBackground(new Color(22, 22, 30));
-        queryEditor.setForeground(TEXT_PRIMARY);
-        queryEditor.setCaretColor(TEXT_PRIMARY);
-        queryEditor.setFont(new Font("Consolas", Font.PLAIN, 14));
-        queryEditor.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
-        queryEditor.setLineWrap(true);
-        queryEditor.setText("-- Write your SQL query here\nSELECT * FROM users WHERE role = 'Admin';");
-        
-        // Line numbers
-        JTextArea lineNumbers = new JTextArea("1\n2\n3\n");
-        lineNumbers.setBackground(new Color(18, 18, 24));
-        lineNumbers.setForeground(TEXT_SECONDARY);
-        lineNumbers.setFont(new Font("Consolas", Font.PLAIN, 14));
-        lineNumbers.setBorder(BorderFactory.createEmptyBorder(15, 10, 15, 10));
-        lineNumbers.setEditable(false);
-        
-        queryEditor.addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyReleased(KeyEvent e) {
-                updateLineNumbers(lineNumbers);
-            }
+        // One editor per tab; the results panel shows the selected tab's last result
+        editorTabs = new JTabbedPane();
+        editorTabs.setBackground(CARD_BG);
+        editorTabs.setForeground(TEXT_PRIMARY);
+        editorTabs.setBorder(null);
+        editorTabs.addChangeListener(e -> {
+            if (editorTabs.getSelectedIndex() >= 0) showTab(queryTabs.get(editorTabs.getSelectedIndex()));
         });
-        
-        JPanel editorPanel = new JPanel(new BorderLayout());
-        editorPanel.add(lineNumbers, BorderLayout.WEST);
-        editorPanel.add(queryEditor, BorderLayout.CENTER);
-        
-        JScrollPane scrollPane = new JScrollPane(editorPanel);
-        scrollPane.setBorder(null);
-        panel.add(scrollPane, BorderLayout.CENTER);
+        addQueryTab("-- Write your SQL query here\nSELECT * FROM users WHERE role = 'Admin';");
+        panel.add(editorTabs, BorderLayout.CENTER);
         
         return panel;
     }
     
+    /** An editor tab: its SQL, the query it is running and the result it last showed. */
+    private final class QueryTab {
+        final String title;
+        final SqlEditor editor = new SqlEditor();
+        final JScrollPane view;
+        QueryControl running;                       // the query in progress; null when idle
+        volatile long[] script;                     // chars done, chars total, statements of a running script
+        TableModel result = new DefaultTableModel();
+        String status = "Ready";
+        
+        QueryTab(String title, String text) {
+            this.title = title;
+            editor.setBackground(new Color(22, 22, 30));
+            editor.setForeground(TEXT_PRIMARY);
+            editor.setCaretColor(TEXT_PRIMARY);
+            editor.setFont(new Font("Consolas", Font.PLAIN, 14));
+            editor.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+            editor.setText(text);
+            
+            // Line numbers and highlighting follow edits incrementally; see SqlEditor
+            view = editor.inScrollPane();
+            view.setBorder(null);
+        }
+    }
+    
+    private void addQueryTab(String text) {
+        int number = 1;
+        for (QueryTab tab : queryTabs) {
+            if (tab.title.equals("Query " + number)) number++;
+        }
+        QueryTab tab = new QueryTab("Query " + number, text);
+        queryTabs.add(tab);
+        editorTabs.addTab(tab.title, tab.view);
+        editorTabs.setSelectedIndex(queryTabs.size() - 1);
+        showTab(tab);
+    }
+    
+    /** Closes the selected tab, stopping its query; the last tab stays open. */
+    private void closeQueryTab() {
+        if (queryTabs.size() == 1) return;
+        int index = editorTabs.getSelectedIndex();
+        QueryTab tab = queryTabs.get(index);
+        if (tab.running != null) tab.running.cancel();
+        if (tab.result instanceof PagedTableModel) ((PagedTableModel) tab.result).close();
+        queryTabs.remove(index);
+        editorTabs.removeTabAt(index);
+    }
+    
+    private QueryTab currentTab() {
+        return queryTabs.get(Math.max(0, editorTabs.getSelectedIndex()));
+    }
+    
+    /** Makes {@code tab} the one the editor commands, results grid and status bar refer to. */
+    private void showTab(QueryTab tab) {
+        queryEditor = tab.editor;
+        if (resultsTable != null) resultsTable.setModel(tab.result);
+        if (statusLabel != null) {
+            statusLabel.setText(tab.status);
+            updateProgress();
+        }
+    }
+    
     private JButton createTabButton(String text, boolean active) {
         JButton button = new JButton(text);
         button.setFont(new Font("Segoe UI", Font.PLAIN, 12));
@@ -607,15 +719,6 @@ public class DatabaseManagerGUI extends JFrame {
         return button;
     }
     
-    private void updateLineNumbers(JTextArea lineNumbers) {
-        String[] lines = queryEditor.getText().split("\n");
-        StringBuilder sb = new StringBuilder();
-        for (int i = 1; i <= Math.max(lines.length, 10); i++) {
-            sb.append(i).append("\n");
-        }
-        lineNumbers.setText(sb.toString());
-    }
-    
     private JPanel createResultsPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(CARD_BG);
@@ -687,13 +790,35 @@ public class DatabaseManagerGUI extends JFrame {
         consoleOutput.setFont(new Font("Consolas", Font.PLAIN, 12));
         consoleOutput.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         consoleOutput.setEditable(false);
-        consoleOutput.setText("[" + getTimestamp() + "] Database Manager Pro started\n");
-        consoleOutput.append("[" + getTimestamp() + "] Connected to sample_db\n");
+        log("Database Manager Pro started");
+        log("Connected to sample_db");
         
         JScrollPane consoleScroll = new JScrollPane(consoleOutput);
         consoleScroll.setBorder(null);
         
-        tabbedPane.addTab("📝 Console", consoleScroll);
+        // Level filter; lines below it stay in the log and come back when it is lowered
+        String[] levels = {"All", "Info", "Warnings", "Errors"};
+        JComboBox<String> levelFilter = new JComboBox<>(levels);
+        levelFilter.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        levelFilter.addActionListener(e -> {
+            consoleLevel = ConsoleLog.Level.values()[levelFilter.getSelectedIndex()];
+            consoleOutput.setText("");
+            consoleShown = 0;
+            showConsoleLines();
+        });
+        JLabel levelLabel = new JLabel("Show:");
+        levelLabel.setForeground(TEXT_SECONDARY);
+        levelLabel.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        JPanel consoleBar = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 2));
+        consoleBar.setBackground(DARKER_BG);
+        consoleBar.add(levelLabel);
+        consoleBar.add(levelFilter);
+        
+        JPanel consolePanel = new JPanel(new BorderLayout());
+        consolePanel.add(consoleBar, BorderLayout.NORTH);
+        consolePanel.add(consoleScroll, BorderLayout.CENTER);
+        
+        tabbedPane.addTab("📝 Console", consolePanel);
         
         panel.add(tabbedPane, BorderLayout.CENTER);
         
@@ -723,6 +848,7 @@ public class DatabaseManagerGUI extends JFrame {
         progressBar.setPreferredSize(new Dimension(100, 12));
         progressBar.setVisible(false);
         rightPanel.add(progressBar);
+        progressTimer = new javax.swing.Timer(100, e -> updateProgress());
         
         JLabel dbInfo = new JLabel("Database: sample_db | Tables: 3 | Rows: 13");
         dbInfo.setForeground(TEXT_SECONDARY);
@@ -736,153 +862,299 @@ public class DatabaseManagerGUI extends JFrame {
     
     // Action methods
     private void executeQuery() {
-        String query = queryEditor.getText().trim();
+        executeQuery(currentTab(), currentTab().editor.getText());
+    }
+    
+    /** Runs the statement around the caret: from the semicolon before it to its own. */
+    private void runStatementAtCursor() {
+        QueryTab tab = currentTab();
+        int[] bounds = tab.editor.statementAt(tab.editor.getCaretPosition());
+        tab.editor.select(bounds[0], bounds[1]);
+        executeQuery(tab, tab.editor.getSelectedText());
+    }
+    
+    private void runSelection() {
+        QueryTab tab = currentTab();
+        if (tab.editor.getSelectedText() == null) {
+            showMessage("Select the SQL to run first", "Warning", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        executeQuery(tab, tab.editor.getSelectedText());
+    }
+    
+    private void executeQuery(QueryTab tab, String sql) {
+        String query = sql == null ? "" : sql.trim();
         if (query.isEmpty()) {
             showMessage("Please enter a query", "Warning", JOptionPane.WARNING_MESSAGE);
             return;
         }
+        if (tab.running != null) {
+            showMessage("A query is already running in " + tab.title + "; stop it or use another tab",
+                "Warning", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
         
-        statusLabel.setText("Executing query...");
-        consoleOutput.append("[" + getTimestamp() + "] Executing: " + query + "\n");
+        setStatus(tab, "Executing query...");
+        log("Executing (" + tab.title + "): " + abbreviate(query));
         
-        // Add to history
-        if (!historyModel.contains(query)) {
+        // Add to history; a whole script is left out, as the list would have to render all of it
+        if (query.length() <= MAX_HISTORY_CHARS && !historyModel.contains(query)) {
             historyModel.add(0, query);
             if (historyModel.size() > 10) {
                 historyModel.remove(historyModel.size() - 1);
             }
         }
         
-        // Parse and execute
-        String upperQuery = query.toUpperCase();
-        
-        try {
-            if (upperQuery.startsWith("SELECT")) {
-                executeSelect(query);
-            } else if (upperQuery.startsWith("INSERT")) {
-                executeInsert(query);
-            } else if (upperQuery.startsWith("UPDATE")) {
-                executeUpdate(query);
-            } else if (upperQuery.startsWith("DELETE")) {
-                executeDelete(query);
-            } else if (upperQuery.startsWith("CREATE TABLE")) {
-                executeCreateTable(query);
-            } else {
-                consoleOutput.append("[" + getTimestamp() + "] Unknown query type\n");
-            }
-            
-            statusLabel.setText("Query executed successfully");
-            consoleOutput.append("[" + getTimestamp() + "] Query completed\n");
-        } catch (Exception e) {
-            statusLabel.setText("Query failed: " + e.getMessage());
-            consoleOutput.append("[" + getTimestamp() + "] Error: " + e.getMessage() + "\n");
+        // Parsing and execution run on the query pool; messages go to the console log, the result comes back in done()
+        tab.running = new QueryControl();
+        queryPool.execute(new QueryWorker(tab, query, currentDb()));
+        progressTimer.start();
+        updateProgress();
+    }
+    
+    /** Runs a .sql file in the current tab as {@code RUN 'file'}, streamed rather than loaded into the editor. */
+    private void runScriptFile() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        String file = chooser.getSelectedFile().getPath().replace("'", "''");
+        executeQuery(currentTab(), "RUN '" + file + "'" + (continueScripts ? " ON ERROR CONTINUE" : ""));
     }
     
-    private void executeSelect(String query) {
-        // Parse table name
-        String tableName = extractTableName(query, "FROM");
-        if (tableName == null) {
-            throw new RuntimeException("Invalid SELECT query");
+    /** Runs one tab's statement, or script, off the event thread under the tab's {@link QueryControl}. */
+    private final class QueryWorker extends SwingWorker<TableModel, Void> {
+        private final QueryTab tab;
+        private final String query;
+        private final Database db;
+        private final QueryControl control;
+        private final boolean continueOnError = continueScripts;
+        private volatile boolean tablesChanged;
+        private volatile String summary;            // the status of a script, once it ran
+        
+        QueryWorker(QueryTab tab, String query, Database db) {
+            this.tab = tab;
+            this.query = query;
+            this.db = db;
+            this.control = tab.running;
         }
         
-        Map<String, List<Map<String, Object>>> db = databases.get(currentDatabase);
-        if (db == null || !db.containsKey(tableName)) {
-            throw new RuntimeException("Table not found: " + tableName);
+        @Override
+        protected TableModel doInBackground() {
+            return control.run(() -> ScriptRunner.isScript(query) ? runScript(null)
+                : execute(StatementParser.parse(query)));
         }
         
-        List<Map<String, Object>> data = db.get(tableName);
-        if (data.isEmpty()) {
-            showMessage("No data found", "Info", JOptionPane.INFORMATION_MESSAGE);
-            return;
+        /**
+         * Runs the editor's script, or the file of a RUN statement. Writes are
+         * only counted; the last SELECT's rows are shown.
+         */
+        private TableModel runScript(CommandStatement run) {
+            TableModel[] shown = {null};
+            ScriptRunner runner = new ScriptRunner(db, statement -> {
+                TableModel model = execute(statement);
+                if (model == null) return;
+                if (shown[0] instanceof PagedTableModel) ((PagedTableModel) shown[0]).close();
+                shown[0] = model;
+            });
+            runner.setContinueOnError(run != null ? run.continueOnError : continueOnError);
+            ScriptRunner.Progress progress = (done, total, statements) -> tab.script = new long[] {done, total, statements};
+            ScriptRunner.Result result;
+            try {
+                tab.script = new long[3];
+                result = run != null ? runner.run(Paths.get(run.file), progress) : runner.run(query, progress);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot read script " + run.file + ": " + e.getMessage(), e);
+            } finally {
+                tab.script = null;
+            }
+            tablesChanged = true;
+            log(result.failed > 0 || result.cancelled ? ConsoleLog.Level.WARN : ConsoleLog.Level.INFO,
+                "Script: " + result);
+            for (String error : result.errors) {
+                log(ConsoleLog.Level.ERROR, "  " + error);
+            }
+            summary = result.cancelled ? "Script stopped after " + result.statements + " statement(s)"
+                : result.stopped ? "Script stopped at " + result.errors.get(0)
+                : "Script completed: " + result.statements + " statement(s)"
+                    + (result.failed > 0 ? ", " + result.failed + " failed" : "");
+            return shown[0];
         }
         
-        // Apply WHERE clause if exists
-        String whereClause = extractWhereClause(query);
-        List<Map<String, Object>> filteredData = data;
-        
-        if (whereClause != null) {
-            filteredData = applyWhereFilter(data, whereClause);
+        /** Executes the statement; the model to show, or null to keep the last one. */
+        private TableModel execute(SqlStatement statement) {
+            SQLParser executor = new SQLParser(db);
+            if (statement instanceof SelectStatement) {
+                return executeSelect(executor, db, (SelectStatement) statement);
+            } else if (statement instanceof InsertStatement) {
+                int rows = executor.insert((InsertStatement) statement);
+                log(rows + " row(s) inserted");
+            } else if (statement instanceof UpdateStatement) {
+                int rows = executor.update((UpdateStatement) statement);
+                log(rows + " row(s) updated" + workers());
+            } else if (statement instanceof DeleteStatement) {
+                int rows = executor.delete((DeleteStatement) statement);
+                log(rows + " row(s) deleted" + workers());
+            } else if (statement instanceof CreateTableStatement) {
+                Table table = executor.createTable((CreateTableStatement) statement);
+                tablesChanged = true;
+                log("Table '" + table.getName() + "' created");
+            } else if (statement instanceof CreateIndexStatement) {
+                CreateIndexStatement create = (CreateIndexStatement) statement;
+                executor.createIndex(create);
+                log(create.type + " index created on " + create.table + "(" + create.column + ")");
+            } else if (statement instanceof CommandStatement
+                       && ((CommandStatement) statement).kind == CommandStatement.Kind.ANALYZE) {
+                for (Table table : executor.analyze((CommandStatement) statement)) {
+                    log("Analyzed " + table.getName() + ": " + table.getStatistics().rows + " row(s)");
+                }
+            } else if (statement instanceof CommandStatement
+                       && ((CommandStatement) statement).kind == CommandStatement.Kind.RUN) {
+                return runScript((CommandStatement) statement);
+            } else {
+                log("Statement not supported in the query editor");
+            }
+            return null;
         }
         
-        // Populate table
-        String[] columns = data.get(0).keySet().toArray(new String[0]);
-        Object[][] rowData = new Object[filteredData.size()][columns.length];
-        
-        for (int i = 0; i < filteredData.size(); i++) {
-            Map<String, Object> row = filteredData.get(i);
-            for (int j = 0; j < columns.length; j++) {
-                rowData[i][j] = row.get(columns[j]);
+        @Override
+        protected void done() {
+            tab.running = null;
+            try {
+                TableModel result = get();
+                if (result != null) showResults(tab, result);
+                setStatus(tab, summary != null ? summary : result instanceof PagedTableModel
+                    ? rowCount((PagedTableModel) result) : "Query executed successfully");
+                log("Query completed (" + tab.title + ")");
+            } catch (ExecutionException | InterruptedException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof CancellationException) {
+                    setStatus(tab, "Query stopped");
+                    log(ConsoleLog.Level.WARN, String.format("Query stopped (%s) after %,d of %,d rows scanned",
+                        tab.title, control.scanned(), control.total()));
+                } else {
+                    setStatus(tab, "Query failed: " + cause.getMessage());
+                    log(ConsoleLog.Level.ERROR, "Error: " + cause.getMessage());
+                }
             }
+            if (tablesChanged) populateTree();
+            updateProgress();
         }
-        
-        resultsTable.setModel(new DefaultTableModel(rowData, columns));
-        consoleOutput.append("[" + getTimestamp() + "] " + filteredData.size() + " rows returned\n");
     }
     
-    private List<Map<String, Object>> applyWhereFilter(List<Map<String, Object>> data, String whereClause) {
-        List<Map<String, Object>> filtered = new ArrayList<>();
-        
-        // Simple parsing for column = 'value'
-        String[] parts = whereClause.split("=");
-        if (parts.length == 2) {
-            String column = parts[0].trim();
-            String value = parts[1].trim().replace("'", "").replace(";", "");
-            
-            for (Map<String, Object> row : data) {
-                Object cellValue = row.get(column);
-                if (cellValue != null && cellValue.toString().equalsIgnoreCase(value)) {
-                    filtered.add(row);
-                }
+    /** Runs a SELECT for the results grid, off the event thread. */
+    private TableModel executeSelect(SQLParser executor, Database db, SelectStatement select) {
+        if (select.isAggregate()) {
+            List<Object> values = executor.aggregate(select);
+            String[] columns = new String[values.size()];
+            for (int j = 0; j < columns.length; j++) {
+                columns[j] = select.items.get(j).toString();
             }
+            log("1 row returned" + workers());
+            logCacheStatus(db);
+            return new DefaultTableModel(new Object[][] {values.toArray()}, columns);
         }
         
-        return filtered.isEmpty() ? data : filtered;
+        List<Column> shown = executor.columnsOf(select);
+        
+        // Populate table
+        String[] columns = new String[shown.size()];
+        for (int j = 0; j < columns.length; j++) {
+            columns[j] = shown.get(j).getName();
+        }
+        TableModel model;
+        if (select.isJoin() || select.isGrouped()) {
+            List<Object[]> data = executor.rows(select);
+            model = new DefaultTableModel(data.toArray(new Object[0][]), columns);
+            log(data.size() + " rows returned" + workers());
+        } else {
+            // Plain rows are read from a cursor a page at a time, as the table scrolls to them
+            PagedTableModel paged = new PagedTableModel(columns, executor.open(select), queryPool);
+            model = paged;
+            log(rowCount(paged) + workers());
+        }
+        logCacheStatus(db);
+        if (select.isJoin()) {
+            log(ConsoleLog.Level.DEBUG, "Hash join: " + HashJoin.lastPlan());
+        }
+        if (!QueryPlanner.lastPlan().isEmpty()) {
+            log(ConsoleLog.Level.DEBUG, "Plan: " + QueryPlanner.lastPlan());
+        }
+        if (!RowSorter.lastPlan().isEmpty()) {
+            log(ConsoleLog.Level.DEBUG, "Sort: " + RowSorter.lastPlan());
+        }
+        return model;
     }
     
-    private void executeInsert(String query) {
-        consoleOutput.append("[" + getTimestamp() + "] INSERT executed (simulated)\n");
-        consoleOutput.append("[" + getTimestamp() + "] 1 row affected\n");
-        showMessage("1 row inserted successfully", "Success", JOptionPane.INFORMATION_MESSAGE);
+    /** Makes {@code model} the tab's result, closing the cursor of a paged one it replaces. */
+    private void showResults(QueryTab tab, TableModel model) {
+        if (tab.result instanceof PagedTableModel) {
+            ((PagedTableModel) tab.result).close();
+        }
+        tab.result = model;
+        if (model instanceof PagedTableModel) {
+            PagedTableModel paged = (PagedTableModel) model;
+            paged.addTableModelListener(e -> setStatus(tab, rowCount(paged)));
+        }
+        if (tab == currentTab()) resultsTable.setModel(model);
     }
     
-    private void executeUpdate(String query) {
-        consoleOutput.append("[" + getTimestamp() + "] UPDATE executed (simulated)\n");
-        consoleOutput.append("[" + getTimestamp() + "] Rows affected\n");
-        showMessage("Rows updated successfully", "Success", JOptionPane.INFORMATION_MESSAGE);
+    private void setStatus(QueryTab tab, String status) {
+        tab.status = status;
+        if (tab == currentTab()) statusLabel.setText(status);
     }
     
-    private void executeDelete(String query) {
-        consoleOutput.append("[" + getTimestamp() + "] DELETE executed (simulated)\n");
-        showMessage("Rows deleted successfully", "Success", JOptionPane.INFORMATION_MESSAGE);
+    /**
+     * Shows the selected tab's running query in the status bar, as slots
+     * scanned of those its scans will read; stops the timer once no tab runs one.
+     */
+    private void updateProgress() {
+        QueryControl control = currentTab().running;
+        long[] script = currentTab().script;
+        if (control != null && script != null) {
+            // A script's progress is how far into it the parser has got, not rows scanned
+            progressBar.setValue(script[1] > 0 ? (int) Math.min(100, script[0] * 100 / script[1]) : 0);
+            progressBar.setVisible(true);
+            statusLabel.setText(String.format(control.isCancelled() ? "Stopping script... %,d statement(s) run"
+                : "Running script... %,d statement(s) run", script[2]));
+        } else if (control != null) {
+            progressBar.setValue(control.percent());
+            progressBar.setVisible(true);
+            statusLabel.setText(String.format(control.isCancelled() ? "Stopping query... %,d of %,d rows scanned"
+                : "Executing query... %,d of %,d rows scanned", control.scanned(), control.total()));
+        } else if (showingQueryProgress) {
+            progressBar.setVisible(false);
+        }
+        showingQueryProgress = control != null;
+        boolean running = false;
+        for (QueryTab tab : queryTabs) running |= tab.running != null;
+        if (!running && progressTimer != null) progressTimer.stop();
     }
     
-    private void executeCreateTable(String query) {
-        String tableName = extractTableName(query, "TABLE");
-        if (tableName != null) {
-            Map<String, List<Map<String, Object>>> db = databases.get(currentDatabase);
-            db.put(tableName, new ArrayList<>());
-            populateTree();
-            consoleOutput.append("[" + getTimestamp() + "] Table '" + tableName + "' created\n");
-            showMessage("Table created successfully", "Success", JOptionPane.INFORMATION_MESSAGE);
-        }
+    /** e.g. "1200 rows returned", or "~48000 rows returned (estimated)" until a paged result was read to its end. */
+    private static String rowCount(PagedTableModel model) {
+        return model.isCountExact() ? model.getRowCount() + " rows returned"
+            : "~" + model.getRowCount() + " rows returned (estimated)";
     }
     
-    private String extractTableName(String query, String keyword) {
-        String upper = query.toUpperCase();
-        int idx = upper.indexOf(keyword);
-        if (idx == -1) return null;
-        
-        String rest = query.substring(idx + keyword.length()).trim();
-        String[] parts = rest.split("\\s+|;|\\(");
-        return parts.length > 0 ? parts[0].trim() : null;
+    /** How many threads the last statement's scans ran on. */
+    private String workers() {
+        int n = ParallelScan.workersUsed();
+        return " (" + n + (n == 1 ? " worker)" : " workers)");
+    }
+    
+    /** The connected database, created empty if the connection named a new one. */
+    private Database currentDb() {
+        Database db = databases.computeIfAbsent(currentDatabase, name -> new Database(name, false));
+        db.getQueryCache().setEnabled(cacheResults);
+        return db;
     }
     
-    private String extractWhereClause(String query) {
-        String upper = query.toUpperCase();
-        int idx = upper.indexOf("WHERE");
-        if (idx == -1) return null;
-        return query.substring(idx + 5).replace(";", "").trim();
+    /** Logs whether the last SELECT came from the query cache, and its hit ratio so far. */
+    private void logCacheStatus(Database db) {
+        if (!db.getQueryCache().isEnabled()) return;
+        log(ConsoleLog.Level.DEBUG, "Cache: " + (QueryCache.lastWasHit() ? "hit" : "miss") + "; " +
+            db.getQueryCache().describe());
     }
     
     private void formatQuery() {
@@ -890,34 +1162,45 @@ public class DatabaseManagerGUI extends JFrame {
         // Simple formatting
         query = query.replaceAll("(?i)\\bSELECT\\b", "SELECT")
                      .replaceAll("(?i)\\bFROM\\b", "\nFROM")
+                     .replaceAll("(?i)\\b(LEFT\\s+(OUTER\\s+)?|INNER\\s+)?JOIN\\b", "\n$0")
+                     .replaceAll("(?i)\\bON\\b", "\n  ON")
                      .replaceAll("(?i)\\bWHERE\\b", "\nWHERE")
                      .replaceAll("(?i)\\bAND\\b", "\n  AND")
                      .replaceAll("(?i)\\bOR\\b", "\n  OR")
                      .replaceAll("(?i)\\bORDER BY\\b", "\nORDER BY")
                      .replaceAll("(?i)\\bGROUP BY\\b", "\nGROUP BY")
+                     .replaceAll("(?i)\\bHAVING\\b", "\nHAVING")
                      .replaceAll("(?i)\\bLIMIT\\b", "\nLIMIT");
         queryEditor.setText(query);
-        consoleOutput.append("[" + getTimestamp() + "] Query formatted\n");
+        log("Query formatted");
     }
     
     private void clearResults() {
-        resultsTable.setModel(new DefaultTableModel());
+        showResults(currentTab(), new DefaultTableModel());
     }
     
     private void clearAll() {
         queryEditor.setText("");
         clearResults();
+        consoleLog.clear();
         consoleOutput.setText("");
     }
     
+    /** Cancels the selected tab's query; the engine stops at its next batch of rows. */
     private void stopQuery() {
-        statusLabel.setText("Query stopped");
-        consoleOutput.append("[" + getTimestamp() + "] Query execution stopped\n");
+        QueryTab tab = currentTab();
+        if (tab.running == null) {
+            statusLabel.setText("No query running in " + tab.title);
+            return;
+        }
+        tab.running.cancel();
+        log("Stopping query (" + tab.title + ")");
+        updateProgress();
     }
     
     private void refreshTree() {
         populateTree();
-        consoleOutput.append("[" + getTimestamp() + "] Database explorer refreshed\n");
+        log("Database explorer refreshed");
     }
     
     private void showNewConnectionDialog() {
@@ -947,45 +1230,141 @@ public class DatabaseManagerGUI extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             connectionStatus.setText("● Connected to: " + dbField.getText());
             currentDatabase = dbField.getText();
-            consoleOutput.append("[" + getTimestamp() + "] Connected to " + dbField.getText() + "\n");
+            log("Connected to " + dbField.getText());
         }
     }
     
     private void openDatabase() {
         JFileChooser chooser = new JFileChooser();
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            consoleOutput.append("[" + getTimestamp() + "] Opened: " + chooser.getSelectedFile().getName() + "\n");
+            log("Opened: " + chooser.getSelectedFile().getName());
         }
     }
     
     private void saveQuery() {
         JFileChooser chooser = new JFileChooser();
         if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            consoleOutput.append("[" + getTimestamp() + "] Query saved to: " + chooser.getSelectedFile().getName() + "\n");
+            log("Query saved to: " + chooser.getSelectedFile().getName());
         }
     }
     
     private void importSQL() {
         JFileChooser chooser = new JFileChooser();
-        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            consoleOutput.append("[" + getTimestamp() + "] SQL imported from: " + chooser.getSelectedFile().getName() + "\n");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        File file = chooser.getSelectedFile();
+        Database db = currentDb();
+        log("Importing " + file.getName() + " into " + currentDatabase);
+        statusLabel.setText("Importing " + file.getName() + "...");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        
+        // Parsing and loading run off the event thread; progress comes back through publish()
+        new SwingWorker<BulkLoader.Result, long[]>() {
+            @Override
+            protected BulkLoader.Result doInBackground() throws Exception {
+                return new BulkLoader(db).load(file.toPath(),
+                    (done, total, rows) -> publish(new long[] {done, total, rows}));
+            }
+            
+            @Override
+            protected void process(List<long[]> updates) {
+                long[] last = updates.get(updates.size() - 1);
+                progressBar.setValue(last[1] > 0 ? (int) (last[0] * 100 / last[1]) : 100);
+                statusLabel.setText(String.format("Importing %s... %,d rows", file.getName(), last[2]));
+            }
+            
+            @Override
+            protected void done() {
+                progressBar.setVisible(false);
+                try {
+                    BulkLoader.Result result = get();
+                    log("Imported " + result);
+                    for (String error : result.errors) {
+                        log(ConsoleLog.Level.WARN, "  " + error);
+                    }
+                    statusLabel.setText("Import completed: " + result.rows + " rows");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    log(ConsoleLog.Level.ERROR, "Import failed: " + cause.getMessage());
+                    statusLabel.setText("Import failed");
+                }
+                populateTree();
+            }
+        }.execute();
     }
     
     private void exportDatabase() {
+        // A table selected in the explorer is exported alone, otherwise the whole current database
+        TreePath selected = databaseTree.getSelectionPath();
+        String table = selected != null && selected.getPathCount() == 3
+            ? selected.getLastPathComponent().toString() : null;
+        String dbName = table != null ? selected.getPathComponent(1).toString() : currentDatabase;
+        Database db = databases.get(dbName);
+        if (db == null) {
+            showMessage("No database selected", "Export", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
         JFileChooser chooser = new JFileChooser();
-        if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            consoleOutput.append("[" + getTimestamp() + "] Database exported to: " + chooser.getSelectedFile().getName() + "\n");
-            showMessage("Database exported successfully!", "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+        chooser.setDialogTitle("Export " + (table != null ? "table " + table : "database " + dbName) +
+            " (.csv for CSV, " + Exporter.BINARY_EXTENSION + " for binary)");
+        chooser.setSelectedFile(new File((table != null ? table + ".csv" : dbName + Exporter.BINARY_EXTENSION)));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        File file = chooser.getSelectedFile();
+        log("Exporting " + (table != null ? table : dbName) + " to " + file.getName());
+        statusLabel.setText("Exporting to " + file.getName() + "...");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        
+        new SwingWorker<Exporter.Result, long[]>() {
+            @Override
+            protected Exporter.Result doInBackground() throws Exception {
+                Exporter exporter = new Exporter(db);
+                Exporter.Progress progress = (done, total) -> publish(new long[] {done, total});
+                if (table != null) {
+                    return exporter.exportTable(table, file.toPath(), progress);
+                }
+                if (Exporter.isCsv(file.toPath())) {
+                    // One CSV file per table, in a directory named after the chosen file
+                    String dir = file.getName().substring(0, file.getName().length() - 4);
+                    return exporter.exportDatabase(file.toPath().resolveSibling(dir), true, progress);
+                }
+                return exporter.exportDatabase(file.toPath(), false, progress);
+            }
+            
+            @Override
+            protected void process(List<long[]> updates) {
+                long[] last = updates.get(updates.size() - 1);
+                progressBar.setValue(last[1] > 0 ? (int) (last[0] * 100 / last[1]) : 100);
+                statusLabel.setText(String.format("Exporting to %s... %,d rows", file.getName(), last[0]));
+            }
+            
+            @Override
+            protected void done() {
+                progressBar.setVisible(false);
+                try {
+                    Exporter.Result result = get();
+                    log("Exported " + result);
+                    statusLabel.setText("Export completed: " + result.rows + " rows");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    log(ConsoleLog.Level.ERROR, "Export failed: " + cause.getMessage());
+                    statusLabel.setText("Export failed");
+                }
+            }
+        }.execute();
     }
     
     private void createNewDatabase() {
         String name = JOptionPane.showInputDialog(this, "Enter database name:");
         if (name != null && !name.isEmpty()) {
-            databases.put(name, new HashMap<>());
+            databases.put(name, new Database(name, false));
             populateTree();
-            consoleOutput.append("[" + getTimestamp() + "] Database '" + name + "' created\n");
+            log("Database '" + name + "' created");
         }
     }
     
@@ -1008,10 +1387,14 @@ public class DatabaseManagerGUI extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             String tableName = nameField.getText();
             if (!tableName.isEmpty()) {
-                Map<String, List<Map<String, Object>>> db = databases.get(currentDatabase);
-                db.put(tableName, new ArrayList<>());
+                try {
+                    currentDb().addTable(new Table(tableName, StatementParser.parseColumns(columnsArea.getText())));
+                } catch (IllegalArgumentException e) {
+                    showMessage(e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
                 populateTree();
-                consoleOutput.append("[" + getTimestamp() + "] Table '" + tableName + "' created\n");
+                log("Table '" + tableName + "' created");
             }
         }
     }
@@ -1021,18 +1404,30 @@ public class DatabaseManagerGUI extends JFrame {
         doc.setText("Database Manager Pro - Documentation\n\n" +
                    "SQL Commands Supported:\n" +
                    "- SELECT * FROM table_name WHERE condition;\n" +
+                   "- SELECT ... FROM a [LEFT] JOIN b ON a.column = b.column;\n" +
+                   "- SELECT ... ORDER BY column [DESC], ... LIMIT n [OFFSET m];\n" +
                    "- INSERT INTO table_name VALUES (...);\n" +
                    "- UPDATE table_name SET column = value;\n" +
                    "- DELETE FROM table_name WHERE condition;\n" +
-                   "- CREATE TABLE table_name (columns);\n\n" +
+                   "- CREATE TABLE table_name (columns);\n" +
+                   "- ANALYZE [table_name];\n" +
+                   "- RUN 'file.sql' [ON ERROR STOP|CONTINUE];\n\n" +
                    "Shortcuts:\n" +
                    "- F5: Execute Query\n" +
+                   "- Ctrl+Enter: Run Statement at Cursor\n" +
+                   "- Ctrl+Shift+Enter: Run Selection\n" +
+                   "- Esc: Stop Query\n" +
+                   "- Ctrl+T / Ctrl+W: New / Close Query Tab\n" +
+                   "- Ctrl+R: Run SQL Script file\n" +
                    "- Ctrl+N: New Connection\n" +
                    "- Ctrl+S: Save Query\n" +
                    "- Ctrl+Shift+F: Format Query\n\n" +
                    "Tips:\n" +
                    "- Double-click a table to view all rows\n" +
-                   "- Double-click history to restore query\n");
+                   "- Double-click history to restore query\n" +
+                   "- Query > Cache Results reuses a SELECT's rows until its tables change\n" +
+                   "- Several statements separated by ; run as a script; INSERTs are batched\n" +
+                   "- Query > Continue Script on Error skips failed statements\n");
         doc.setEditable(false);
         doc.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         
@@ -1062,8 +1457,44 @@ public class DatabaseManagerGUI extends JFrame {
         JOptionPane.showMessageDialog(this, message, title, type);
     }
     
-    private String getTimestamp() {
-        return new SimpleDateFormat("HH:mm:ss").format(new Date());
+    /** Called on the log's thread after a frame added lines: shows them at the next chance. */
+    private void consoleFlushed() {
+        if (consolePending.compareAndSet(false, true)) SwingUtilities.invokeLater(this::showConsoleLines);
+    }
+    
+    /**
+     * Appends the lines logged since the last call in one edit, then drops
+     * the view's oldest lines beyond what the log holds.
+     */
+    private void showConsoleLines() {
+        consolePending.set(false);
+        if (consoleOutput == null) return;
+        List<ConsoleLog.Line> lines = new ArrayList<>();
+        consoleShown = consoleLog.since(consoleShown, consoleLevel, lines);
+        if (lines.isEmpty()) return;
+        StringBuilder text = new StringBuilder();
+        for (ConsoleLog.Line line : lines) text.append(line.text).append('\n');
+        consoleOutput.append(text.toString());
+        javax.swing.text.Element root = consoleOutput.getDocument().getDefaultRootElement();
+        int excess = root.getElementCount() - 1 - consoleLog.heldLines();
+        if (excess > 0) consoleOutput.replaceRange("", 0, root.getElement(excess - 1).getEndOffset());
+    }
+    
+    /** The first line of {@code sql}, cut to 200 characters, for the console. */
+    private static String abbreviate(String sql) {
+        int end = sql.indexOf('\n');
+        if (end < 0) end = sql.length();
+        end = Math.min(end, 200);
+        return end == sql.length() ? sql : sql.substring(0, end).trim() + " ... (" + sql.length() + " characters)";
+    }
+    
+    /** Adds a line to the console; safe on any thread. */
+    private void log(String message) {
+        log(ConsoleLog.Level.INFO, message);
+    }
+    
+    private void log(ConsoleLog.Level level, String message) {
+        consoleLog.log(level, message);
     }
     
     public static void main(String[] args) {
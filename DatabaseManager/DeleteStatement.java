@@ -0,0 +1,13 @@
+/**
+ * DELETE FROM table [WHERE condition].
+ * Author: Eyasu Solomon
+ */
+final class DeleteStatement extends SqlStatement {
+    final String table;
+    final Expr where;
+
+    DeleteStatement(String table, Expr where) {
+        this.table = table;
+        this.where = where;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * DELTA: zigzag encoded differences to the previous value, bit-packed.
+ * Author: Eyasu Solomon
+ */
+class DeltaLongs extends LongColumn {
+    static final int STRIDE = 128;       // an absolute value every STRIDE entries bounds get()
+
+    private final long[] anchors;
+    private final PackedLongs deltas;
+
+    DeltaLongs(long[] values, int count, int bits) {
+        super(count);
+        this.anchors = new long[(count + STRIDE - 1) / STRIDE];
+        long[] zigzag = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (i % STRIDE == 0) {
+                anchors[i / STRIDE] = values[i];
+            } else {
+                long d = values[i] - values[i - 1];
+                zigzag[i] = (d << 1) ^ (d >> 63);
+            }
+        }
+        this.deltas = new PackedLongs(zigzag, count, bits);
+    }
+
+    @Override
+    long get(int i) {
+        int first = i - i % STRIDE;
+        long v = anchors[first / STRIDE];
+        for (int j = first + 1; j <= i; j++) v += unzigzag(deltas.get(j));
+        return v;
+    }
+
+    @Override
+    void decode(int from, int n, long[] out) {
+        deltas.unpack(from, n, out, 0);
+        long v = 0;
+        for (int k = 0; k < n; k++) {
+            int i = from + k;
+            if (k == 0) v = get(i);
+            else if (i % STRIDE == 0) v = anchors[i / STRIDE];
+            else v += unzigzag(out[k]);
+            out[k] = v;
+        }
+    }
+
+    @Override long bytes() { return anchors.length * 8L + deltas.bytes(); }
+    @Override String encoding() { return "DELTA(" + deltas.bits + " bits)"; }
+
+    private static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+}
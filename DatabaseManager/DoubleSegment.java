@@ -0,0 +1,72 @@
+import java.util.function.IntPredicate;
+
+/**
+ * DOUBLE values: scaled to longs when every value has few decimal places, else plain.
+ * Author: Eyasu Solomon
+ */
+class DoubleSegment extends ColumnSegment {
+    private static final long[] POWERS = {1, 10, 100, 1_000, 10_000};
+
+    private final int scale;              // -1 when plain
+    private final LongColumn scaled;
+    private final double[] plain;
+
+    private DoubleSegment(int count, long[] nulls, int scale, LongColumn scaled, double[] plain) {
+        super(count, nulls, count * 8L);
+        this.scale = scale;
+        this.scaled = scaled;
+        this.plain = plain;
+    }
+
+    static DoubleSegment encode(Object[] values, int count, long[] nulls) {
+        for (int scale = 0; scale < POWERS.length; scale++) {
+            long p = POWERS[scale];
+            long[] longs = new long[count];
+            long last = 0;
+            boolean exact = true;
+            for (int i = 0; i < count && exact; i++) {
+                if (values[i] != null) {
+                    double v = (Double) values[i];
+                    last = Math.round(v * p);
+                    exact = Math.abs(last) < 1L << 53
+                        && Double.doubleToLongBits(last / (double) p) == Double.doubleToLongBits(v);
+                }
+                longs[i] = last;
+            }
+            if (exact) return new DoubleSegment(count, nulls, scale, LongColumn.encode(longs, count), null);
+        }
+        double[] plain = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (values[i] != null) plain[i] = (Double) values[i];
+        }
+        return new DoubleSegment(count, nulls, -1, null, plain);
+    }
+
+    @Override
+    protected Object value(int i) {
+        return scale < 0 ? plain[i] : scaled.get(i) / (double) POWERS[scale];
+    }
+
+    @Override
+    protected IntPredicate matches(String literal) {
+        Object key = DataType.DOUBLE.keyOf(literal);
+        if (key == null) return i -> false;
+        double k = (Double) key;
+        long bits = Double.doubleToLongBits(k);
+        if (scale < 0) return i -> Double.doubleToLongBits(plain[i]) == bits;
+        // Stored values decode exactly, so a key that does not is stored nowhere
+        long m = Math.round(k * POWERS[scale]);
+        if (Double.doubleToLongBits(m / (double) POWERS[scale]) != bits) return i -> false;
+        return scaled.matcher(m);
+    }
+
+    @Override
+    public String encoding() {
+        return scale < 0 ? "PLAIN" : "DECIMAL(" + scale + ") " + scaled.encoding();
+    }
+
+    @Override
+    protected long valueBytes() {
+        return scale < 0 ? plain.length * 8L : scaled.bytes();
+    }
+}
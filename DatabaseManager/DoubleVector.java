@@ -0,0 +1,42 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * DOUBLE columns.
+ * Author: Eyasu Solomon
+ */
+class DoubleVector extends ColumnVector {
+    private volatile double[] values;
+
+    DoubleVector(Column column, int capacity) {
+        super(column, capacity);
+        values = new double[capacity];
+    }
+
+    public double getDouble(int slot) { return values[slot]; }
+
+    @Override protected Object getValue(int slot) { return values[slot]; }
+    @Override protected void setValue(int slot, Object value) { values[slot] = (Double) value; }
+    @Override protected void growValues(int capacity) { values = Arrays.copyOf(values, capacity); }
+
+    @Override
+    public IntPredicate equalTo(String literal) {
+        Object key = DataType.DOUBLE.keyOf(literal);
+        if (key == null) return slot -> false;
+        long bits = Double.doubleToLongBits((Double) key);
+        double[] vals = values;
+        long[] nullBits = nulls;
+        return slot -> Double.doubleToLongBits(vals[slot]) == bits && !isNull(nullBits, slot);
+    }
+
+    @Override
+    public void load(int from, int n, BatchColumn out) {
+        out.wrap(values, from);
+        loadNulls(from, n, out);
+    }
+
+    @Override
+    public long estimateBytes(int size) {
+        return super.estimateBytes(size) + values.length * 8L;
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Streaming export of a table or a whole database to CSV or binary files.
+ * Author: Eyasu Solomon
+ *
+ * Rows are read straight from a {@link TableSnapshot}, so an export sees
+ * one consistent state of each table without blocking writers. CSV text is
+ * built a few hundred KB at a time, encoded into a direct buffer and
+ * written through a FileChannel; nothing proportional to the table size is
+ * kept on the heap. Files are written under a temporary name and renamed
+ * when complete.
+ *
+ * CSV: a header of {@code name:TYPE[:notnull]} and one line per row, the
+ * format {@link BulkLoader} reads. NULL is an empty field and an empty
+ * string is {@code ""}. A database exports to a directory with one
+ * {@code <table>.csv} per table.
+ *
+ * Binary ({@value #BINARY_EXTENSION}): the checkpoint format, holding
+ * schemas, rows, indexes and ids of every table in one checksummed file.
+ */
+class Exporter {
+    static final String BINARY_EXTENSION = ".dbm";
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int CHUNK_CHARS = 256 << 10;
+    private static final int PROGRESS_ROWS = 65536;
+
+    /** Reports the number of rows written so far. */
+    interface Progress {
+        void update(long rowsDone, long rowsTotal);
+    }
+
+    /** What an export wrote. */
+    static final class Result {
+        long rows;
+        long bytes;
+        long millis;
+        final List<Path> files = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            String text = rows + " row(s), " + (bytes + 1023) / 1024 + " KB in " + files.size() + " file(s), "
+                + millis + " ms";
+            if (millis > 0) text += " (" + rows * 1000 / millis + " rows/s)";
+            return text;
+        }
+    }
+
+    private final Database database;
+
+    public Exporter(Database database) {
+        this.database = database;
+    }
+
+    /** True if {@code file} names a CSV export, false for binary. */
+    static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    /** Exports one table: CSV if the file name ends in .csv, binary otherwise. */
+    public Result exportTable(String tableName, Path file, Progress progress) throws IOException {
+        Table table = database.getTable(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("Table not found: " + tableName);
+        }
+        return export(Collections.singletonList(table), file, isCsv(file), progress);
+    }
+
+    /**
+     * Exports every table: to one binary file, or with {@code csv} to one CSV
+     * file per table in the directory {@code target}.
+     */
+    public Result exportDatabase(Path target, boolean csv, Progress progress) throws IOException {
+        List<Table> tables = new ArrayList<>();
+        for (String name : new TreeSet<>(database.getTableNames())) {
+            Table table = database.getTable(name);
+            if (table != null) tables.add(table);
+        }
+        if (csv) Files.createDirectories(target);
+        return export(tables, target, csv, progress);
+    }
+
+    private Result export(List<Table> tables, Path target, boolean csv, Progress progress) throws IOException {
+        long started = System.nanoTime();
+        Result result = new Result();
+        long total = 0;
+        for (Table table : tables) total += table.getRecordCount();
+        long totalRows = total;
+
+        if (csv) {
+            for (Table table : tables) {
+                Path file = Files.isDirectory(target) ? target.resolve(table.getName() + ".csv") : target;
+                long before = result.rows;
+                result.rows += writeAtomically(file, temp -> writeCsv(table, temp, done -> {
+                    if (progress != null) progress.update(before + done, totalRows);
+                }));
+                result.files.add(file);
+                result.bytes += Files.size(file);
+            }
+        } else {
+            long[] rows = {0};
+            writeAtomically(target, temp -> {
+                Checkpoint.export(temp, tables, done -> {
+                    rows[0] = done;
+                    if (progress != null) progress.update(done, totalRows);
+                });
+                return rows[0];
+            });
+            result.rows = rows[0];
+            result.files.add(target);
+            result.bytes = Files.size(target);
+        }
+        if (progress != null) progress.update(result.rows, result.rows);
+        result.millis = (System.nanoTime() - started) / 1_000_000;
+        return result;
+    }
+
+    private interface FileWriter {
+        long write(Path temp) throws IOException;
+    }
+
+    private interface RowCounter {
+        void rows(long done) throws IOException;
+    }
+
+    private static long writeAtomically(Path file, FileWriter writer) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            long rows = writer.write(temp);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return rows;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // CSV
+    // ------------------------------------------------------------------
+
+    private static long writeCsv(Table table, Path file, RowCounter progress) throws IOException {
+        TableSnapshot snapshot = table.snapshot();
+        TableStorage storage = snapshot.storage;
+        List<Column> columns = table.getColumns();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        StringBuilder text = new StringBuilder(CHUNK_CHARS + 4096);
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int c = 0; c < columns.size(); c++) {
+                Column col = columns.get(c);
+                if (c > 0) text.append(',');
+                appendField(text, col.getName() + ":" + col.getType() + (col.isNullable() ? "" : ":notnull"));
+            }
+            text.append('\n');
+
+            long rows = 0;
+            int[] order = snapshot.inSlotOrder() ? null : snapshot.visibleSlots();     // rows updates moved
+            int count = order != null ? order.length : snapshot.size;
+            for (int i = 0; i < count; i++) {
+                int slot = order != null ? order[i] : i;
+                if (!snapshot.isVisible(slot)) continue;
+                for (int c = 0; c < columns.size(); c++) {
+                    if (c > 0) text.append(',');
+                    Object value = storage.valueAt(slot, c);
+                    if (value != null) appendField(text, value.toString());
+                }
+                text.append('\n');
+                if (text.length() >= CHUNK_CHARS) encode(channel, encoder, text, out);
+                if (++rows % PROGRESS_ROWS == 0) {
+                    if (Thread.interrupted()) throw new InterruptedIOException("Export cancelled");
+                    progress.rows(rows);
+                }
+            }
+            encode(channel, encoder, text, out);
+            flush(channel, out);
+            progress.rows(rows);
+            return rows;
+        }
+    }
+
+    /** Appends a field, quoted if it is empty or holds a comma, quote or line break. */
+    private static void appendField(StringBuilder text, String value) {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            text.append(value);
+            return;
+        }
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') text.append('"');
+            text.append(ch);
+        }
+        text.append('"');
+    }
+
+    /** Encodes {@code text} into the direct buffer, writing it out whenever it fills, then clears text. */
+    private static void encode(FileChannel channel, CharsetEncoder encoder, StringBuilder text, ByteBuffer out)
+            throws IOException {
+        CharBuffer in = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(in, out, true);
+            if (result.isOverflow()) {
+                flush(channel, out);
+            } else if (result.isError()) {
+                throw new CharacterCodingException();
+            } else {
+                break;
+            }
+        }
+        encoder.flush(out);     // UTF-8 keeps no state, so this never overflows
+        encoder.reset();
+        text.setLength(0);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.*;
+
+/**
+ * A WHERE or HAVING condition.
+ * Author: Eyasu Solomon
+ */
+abstract class Expr {
+    /** Adds the conditions that must all hold for this one to hold: itself, or both sides of an AND. */
+    void conjuncts(List<Expr> out) {
+        out.add(this);
+    }
+
+    static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    static String name(String column) {
+        return column.matches("[A-Za-z_][A-Za-z0-9_]*") ? column : "\"" + column.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.function.IntPredicate;
+
+/**
+ * FOR: each value minus the minimum, bit-packed.
+ * Author: Eyasu Solomon
+ */
+class ForLongs extends LongColumn {
+    private final long base;
+    private final PackedLongs packed;
+
+    ForLongs(long[] values, int count, long base, int bits) {
+        super(count);
+        this.base = base;
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) offsets[i] = values[i] - base;
+        this.packed = new PackedLongs(offsets, count, bits);
+    }
+
+    @Override long get(int i) { return base + packed.get(i); }
+
+    @Override
+    void decode(int from, int n, long[] out) {
+        packed.unpack(from, n, out, base);
+    }
+
+    @Override long bytes() { return 8 + packed.bytes(); }
+    @Override String encoding() { return "FOR(" + packed.bits + " bits)"; }
+
+    @Override
+    IntPredicate matcher(long key) {
+        // Keys outside [base, base + 2^bits) cannot occur
+        if (packed.bits < 64 && Long.compareUnsigned(key - base, 1L << packed.bits) >= 0) return i -> false;
+        return super.matcher(key);
+    }
+}
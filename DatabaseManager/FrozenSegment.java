@@ -0,0 +1,99 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Frozen rows: an immutable, compressed copy of a run of table slots.
+ * Author: Eyasu Solomon
+ *
+ * Rows that are old enough (see {@link Table#setFreezePolicy}) move out of
+ * the mutable storage into segments of up to {@value TieredStorage#SEGMENT_ROWS}
+ * rows. They keep their slots, so indexes and deletion stamps stay valid.
+ * Every column of a segment picks the smallest of these encodings:
+ *
+ *   FOR     - frame of reference: value minus the segment minimum, bit-packed
+ *   DELTA   - difference to the previous value, zigzag encoded and bit-packed
+ *   RLE     - one value and end position per run of equal values
+ *   DECIMAL - DOUBLEs with up to four decimal places, scaled to longs first
+ *   DICT    - STRING and DATE values stored once, row codes encoded as above
+ *   BLOB    - all strings of the segment in one UTF-8 array plus offsets
+ *
+ * Ids and creation times are encoded the same way. Scans decode a segment
+ * {@value ColumnSegment#BATCH} values at a time.
+ */
+final class FrozenSegment {
+    private final List<Column> columns;
+    private final int count;
+    private final LongColumn ids;
+    private final LongColumn createdAt;
+    private final ColumnSegment[] values;
+
+    private FrozenSegment(List<Column> columns, int count, LongColumn ids, LongColumn createdAt,
+                          ColumnSegment[] values) {
+        this.columns = columns;
+        this.count = count;
+        this.ids = ids;
+        this.createdAt = createdAt;
+        this.values = values;
+    }
+
+    /** Encodes the rows at {@code slots[from..to)} of {@code source}. */
+    static FrozenSegment encode(TableStorage source, List<Column> columns, int[] slots, int from, int to) {
+        int n = to - from;
+        long[] rowIds = new long[n];
+        long[] created = new long[n];
+        Object[][] cols = new Object[columns.size()][n];
+        for (int i = 0; i < n; i++) {
+            int slot = slots[from + i];
+            rowIds[i] = source.idAt(slot);
+            created[i] = source.createdAtMillis(slot);
+            for (int c = 0; c < cols.length; c++) {
+                cols[c][i] = source.valueAt(slot, c);
+            }
+        }
+        ColumnSegment[] segments = new ColumnSegment[cols.length];
+        for (int c = 0; c < cols.length; c++) {
+            segments[c] = ColumnSegment.encode(columns.get(c).getType(), cols[c], n);
+        }
+        return new FrozenSegment(columns, n, LongColumn.encode(rowIds, n), LongColumn.encode(created, n),
+            segments);
+    }
+
+    int size() { return count; }
+    ColumnSegment column(int c) { return values[c]; }
+
+    int idAt(int i) { return (int) ids.get(i); }
+    long createdAtMillis(int i) { return createdAt.get(i); }
+
+    Object valueAt(int i, int c) {
+        return values[c].get(i);
+    }
+
+    /** A new Record for row {@code i}; callers may change it freely. */
+    Record recordAt(int i) {
+        LocalDateTime created = LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAt.get(i)), ZoneId.systemDefault());
+        Map<String, Object> data = new HashMap<>();
+        for (int c = 0; c < values.length; c++) {
+            Object val = values[c].get(i);
+            if (val != null) data.put(columns.get(c).getName(), val);
+        }
+        return new Record((int) ids.get(i), data, created);
+    }
+
+    /**
+     * Row predicate for {@code column=literal} over column {@code c} (-1 if
+     * the column is not in the schema). Decodes in batches, so it belongs to
+     * one scan on one thread.
+     */
+    IntPredicate equalTo(int c, String literal) {
+        return c >= 0 ? values[c].equalTo(literal) : i -> false;
+    }
+
+    long bytes() {
+        long bytes = ids.bytes() + createdAt.bytes();
+        for (ColumnSegment v : values) bytes += v.compressedBytes();
+        return bytes;
+    }
+}
@@ -0,0 +1,694 @@
+import java.util.*;
+
+/**
+ * Hash aggregation for GROUP BY: COUNT, COUNT(DISTINCT), SUM, AVG, MIN and
+ * MAX per group of rows.
+ * Author: Eyasu Solomon
+ *
+ * Rows arrive a batch at a time from {@link BatchScan}. Each group column
+ * is encoded as a long (integers and booleans as themselves, doubles by
+ * their bits, text as a number given to each distinct string once, or to
+ * each dictionary code once), and the encoded key is looked up in an
+ * open-addressing table with linear probing. A single text key needs no
+ * table: its string's number indexes the group directly. Every aggregate
+ * keeps a primitive array indexed by group number, so adding a row boxes
+ * nothing.
+ *
+ * Groups are numbered in the order their first row appears. Aggregations
+ * of consecutive slot ranges {@link #merge} left to right, which keeps that
+ * order when a scan runs in parallel.
+ */
+final class HashAggregation {
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final int[] keyColumns;
+    private final DataType[] keyTypes;
+    private final TextIds[] keyText;
+    private final Accumulator[] accumulators;
+    private final Interner strings = new Interner();
+
+    // Group g has key k at keys[g * width + k]; bit k of nullKeys[g] is set when that key is NULL
+    private final int width;
+    private long[] keys;
+    private long[] nullKeys;
+    private int[] hashes;
+    private int groups;
+    private int[] table;                // group + 1 per hash slot, 0 when empty
+    private final boolean textKey;      // one STRING or DATE key, grouped through textGroups
+    private int[] textGroups = new int[0];      // group + 1 per string number, 0 when none yet
+    private int nullGroup = -1;
+
+    // Scratch for one batch
+    private final long[][] encoded;
+    private final long[] nullBits = new long[VectorBatch.SIZE];
+    private final int[] groupOf = new int[VectorBatch.SIZE];
+
+    /**
+     * Groups by {@code keyColumns} and computes {@code items}, each over
+     * column {@code itemColumns[i]} (-1 for COUNT(*)). Without key columns
+     * there is exactly one group, even when no row is added.
+     */
+    HashAggregation(List<Column> columns, int[] keyColumns, List<SelectItem> items, int[] itemColumns) {
+        this.keyColumns = keyColumns;
+        this.width = keyColumns.length;
+        if (width > 64) {
+            throw new IllegalArgumentException("Too many GROUP BY columns: " + width);
+        }
+        this.keyTypes = new DataType[width];
+        this.keyText = new TextIds[width];
+        for (int k = 0; k < width; k++) {
+            keyTypes[k] = columns.get(keyColumns[k]).getType();
+            keyText[k] = new TextIds();
+        }
+        this.accumulators = new Accumulator[items.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            SelectItem item = items.get(i);
+            int c = itemColumns[i];
+            DataType type = c < 0 ? null : columns.get(c).getType();
+            accumulators[i] = accumulator(item, c, type);
+        }
+        this.textKey = width == 1 && isText(keyTypes[0]);
+        this.encoded = new long[width][VectorBatch.SIZE];
+        this.keys = new long[16 * Math.max(1, width)];
+        this.nullKeys = new long[16];
+        this.hashes = new int[16];
+        this.table = new int[32];
+        for (Accumulator a : accumulators) a.grow(16);
+        if (width == 0) addGroup(0, 0);
+    }
+
+    private Accumulator accumulator(SelectItem item, int c, DataType type) {
+        switch (item.function) {
+            case "COUNT":
+                return item.distinct ? new DistinctCount(c, type) : new Count(c);
+            case "SUM":
+            case "AVG":
+                if (type != DataType.INTEGER && type != DataType.DOUBLE) {
+                    throw new IllegalArgumentException(item.function + " needs a numeric column: " + item.column);
+                }
+                return new Sum(c, type, item.function.equals("AVG"));
+            default:
+                return new Extreme(c, type, item.function.equals("MIN"));
+        }
+    }
+
+    /** Type of the value an aggregate of a {@code column} column produces; COUNT(*) passes null. */
+    static DataType resultType(SelectItem item, DataType column) {
+        switch (item.function) {
+            case "COUNT": return DataType.INTEGER;
+            case "AVG": return DataType.DOUBLE;
+            default: return column;
+        }
+    }
+
+    /** Adds the rows at positions {@code sel[0..n)} of the batch. */
+    void add(VectorBatch batch, int[] sel, int n) {
+        if (width == 0) {
+            Arrays.fill(groupOf, 0, n, 0);
+        } else {
+            Arrays.fill(nullBits, 0, n, 0L);
+            for (int k = 0; k < width; k++) {
+                encode(batch.column(keyColumns[k]), keyTypes[k], keyText[k], sel, n, encoded[k], nullBits, 1L << k);
+            }
+            for (int i = 0; i < n; i++) {
+                groupOf[i] = find(i);
+            }
+        }
+        for (Accumulator a : accumulators) {
+            a.add(a.column < 0 ? null : batch.column(a.column), sel, groupOf, n);
+        }
+    }
+
+    /** Folds {@code other}, which aggregated the rows after this one's, into this one. */
+    HashAggregation merge(HashAggregation other) {
+        int[] map = new int[other.groups];
+        long[] key = new long[width];
+        for (int g = 0; g < other.groups; g++) {
+            for (int k = 0; k < width; k++) {
+                long v = other.keys[g * width + k];
+                boolean isNull = (other.nullKeys[g] & (1L << k)) != 0;
+                key[k] = isText(keyTypes[k]) && !isNull ? strings.intern(other.strings.word((int) v)) : v;
+            }
+            map[g] = findOrAdd(key, other.nullKeys[g]);
+        }
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i].merge(other.accumulators[i], map, other);
+        }
+        return this;
+    }
+
+    /** One row per group, in order: the key values, then one value per aggregate. */
+    List<Object[]> rows() {
+        List<Object[]> rows = new ArrayList<>(groups);
+        for (int g = 0; g < groups; g++) {
+            Object[] row = new Object[width + accumulators.length];
+            for (int k = 0; k < width; k++) {
+                boolean isNull = (nullKeys[g] & (1L << k)) != 0;
+                row[k] = isNull ? null : decode(keys[g * width + k], keyTypes[k]);
+            }
+            for (int i = 0; i < accumulators.length; i++) {
+                row[width + i] = accumulators[i].result(g);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // ------------------------------------------------------------------
+    // Keys
+    // ------------------------------------------------------------------
+
+    private static boolean isText(DataType type) {
+        return type == DataType.STRING || type == DataType.DATE;
+    }
+
+    /**
+     * Encodes the values at {@code sel[0..n)} into {@code out} and sets
+     * {@code nullBit} in {@code nulls} for each NULL.
+     */
+    private void encode(BatchColumn col, DataType type, TextIds text, int[] sel, int n,
+                        long[] out, long[] nulls, long nullBit) {
+        int base = col.base;
+        switch (type) {
+            case INTEGER:
+            case BOOLEAN: {
+                int[] v = col.ints;
+                for (int i = 0; i < n; i++) out[i] = v[base + sel[i]];
+                break;
+            }
+            case DOUBLE: {
+                double[] v = col.doubles;
+                for (int i = 0; i < n; i++) out[i] = Double.doubleToLongBits(v[base + sel[i]]);
+                break;
+            }
+            default:
+                if (col.dictionary() != null) {
+                    int[] codes = col.ints;
+                    text.use(col.dictionary());
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (!col.hasNulls || !col.nulls[p]) out[i] = text.id(codes[base + p], strings);
+                    }
+                } else {
+                    String[] v = col.strings;
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (!col.hasNulls || !col.nulls[p]) out[i] = strings.intern(v[base + p]);
+                    }
+                }
+                break;
+        }
+        if (col.hasNulls) {
+            boolean[] isNull = col.nulls;
+            for (int i = 0; i < n; i++) {
+                if (isNull[sel[i]]) {
+                    out[i] = 0;
+                    nulls[i] |= nullBit;
+                }
+            }
+        }
+    }
+
+    private Object decode(long key, DataType type) {
+        switch (type) {
+            case INTEGER: return (int) key;
+            case BOOLEAN: return key != 0;
+            case DOUBLE: return Double.longBitsToDouble(key);
+            default: return strings.word((int) key);
+        }
+    }
+
+    private static int hash(long h) {
+        h *= MIX;
+        return (int) (h ^ (h >>> 29) ^ (h >>> 47));
+    }
+
+    /** The group of batch position {@code i}, added if new. */
+    private int find(int i) {
+        long nulls = nullBits[i];
+        if (textKey) return findText(i, nulls);
+        long h = nulls;
+        for (int k = 0; k < width; k++) h = (h ^ encoded[k][i]) * MIX;
+        int hash = hash(h);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int g = table[slot] - 1;
+            if (g < 0) {
+                g = newGroup(i, hash, nulls);
+                table[slot] = g + 1;
+                if (groups * 2 > table.length) rehash();
+                return g;
+            }
+            if (hashes[g] == hash && nullKeys[g] == nulls && sameKey(g, i)) return g;
+        }
+    }
+
+    private int findText(int i, long nulls) {
+        if (nulls != 0) {
+            if (nullGroup < 0) nullGroup = newGroup(i, 0, nulls);
+            return nullGroup;
+        }
+        int id = (int) encoded[0][i];
+        if (id >= textGroups.length) textGroups = Arrays.copyOf(textGroups, Math.max(id + 1, textGroups.length * 2));
+        int g = textGroups[id] - 1;
+        if (g < 0) {
+            g = newGroup(i, 0, nulls);
+            textGroups[id] = g + 1;
+        }
+        return g;
+    }
+
+    private int newGroup(int i, int hash, long nulls) {
+        int g = addGroup(hash, nulls);
+        for (int k = 0; k < width; k++) keys[g * width + k] = encoded[k][i];
+        return g;
+    }
+
+    private boolean sameKey(int g, int i) {
+        for (int k = 0; k < width; k++) {
+            if (keys[g * width + k] != encoded[k][i]) return false;
+        }
+        return true;
+    }
+
+    private int findOrAdd(long[] key, long nulls) {
+        if (width == 0) return 0;
+        for (int k = 0; k < width; k++) encoded[k][0] = key[k];
+        nullBits[0] = nulls;
+        return find(0);
+    }
+
+    private int addGroup(int hash, long nulls) {
+        int g = groups;
+        if (g == hashes.length) {
+            int capacity = g * 2;
+            keys = Arrays.copyOf(keys, capacity * Math.max(1, width));
+            nullKeys = Arrays.copyOf(nullKeys, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            for (Accumulator a : accumulators) a.grow(capacity);
+        }
+        hashes[g] = hash;
+        nullKeys[g] = nulls;
+        groups = g + 1;
+        return g;
+    }
+
+    private void rehash() {
+        int[] bigger = new int[table.length * 2];
+        int mask = bigger.length - 1;
+        for (int g = 0; g < groups; g++) {
+            int slot = hashes[g] & mask;
+            while (bigger[slot] != 0) slot = (slot + 1) & mask;
+            bigger[slot] = g + 1;
+        }
+        table = bigger;
+    }
+
+    // ------------------------------------------------------------------
+    // Aggregates
+    // ------------------------------------------------------------------
+
+    /** One aggregate over column {@code column} (-1: none), with a value per group. */
+    private abstract static class Accumulator {
+        final int column;
+
+        Accumulator(int column) {
+            this.column = column;
+        }
+
+        abstract void grow(int capacity);
+
+        /** Adds the rows at {@code sel[0..n)}, row i to group {@code groupOf[i]}; {@code col} is null for COUNT(*). */
+        abstract void add(BatchColumn col, int[] sel, int[] groupOf, int n);
+
+        /** Adds group g of {@code other} to group {@code map[g]} of this one. */
+        abstract void merge(Accumulator other, int[] map, HashAggregation from);
+
+        abstract Object result(int g);
+    }
+
+    private static final class Count extends Accumulator {
+        private long[] counts = new long[0];
+
+        Count(int column) {
+            super(column);
+        }
+
+        @Override
+        void grow(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(BatchColumn col, int[] sel, int[] groupOf, int n) {
+            long[] c = counts;
+            if (col == null || !col.hasNulls) {
+                for (int i = 0; i < n; i++) c[groupOf[i]]++;
+                return;
+            }
+            boolean[] nulls = col.nulls;
+            for (int i = 0; i < n; i++) {
+                if (!nulls[sel[i]]) c[groupOf[i]]++;
+            }
+        }
+
+        @Override
+        void merge(Accumulator other, int[] map, HashAggregation from) {
+            long[] theirs = ((Count) other).counts;
+            for (int g = 0; g < map.length; g++) counts[map[g]] += theirs[g];
+        }
+
+        @Override
+        Object result(int g) {
+            return counts[g];
+        }
+    }
+
+    /** SUM or AVG; NULL for a group without a non-NULL value. */
+    private static final class Sum extends Accumulator {
+        private final boolean integers;
+        private final boolean average;
+        private long[] longSums = new long[0];
+        private double[] doubleSums = new double[0];
+        private long[] counts = new long[0];
+
+        Sum(int column, DataType type, boolean average) {
+            super(column);
+            this.integers = type == DataType.INTEGER;
+            this.average = average;
+        }
+
+        @Override
+        void grow(int capacity) {
+            if (integers) longSums = Arrays.copyOf(longSums, capacity);
+            else doubleSums = Arrays.copyOf(doubleSums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(BatchColumn col, int[] sel, int[] groupOf, int n) {
+            boolean[] nulls = col.hasNulls ? col.nulls : null;
+            int base = col.base;
+            long[] c = counts;
+            if (integers) {
+                int[] v = col.ints;
+                long[] sums = longSums;
+                for (int i = 0; i < n; i++) {
+                    int p = sel[i];
+                    if (nulls != null && nulls[p]) continue;
+                    int g = groupOf[i];
+                    sums[g] += v[base + p];
+                    c[g]++;
+                }
+            } else {
+                double[] v = col.doubles;
+                double[] sums = doubleSums;
+                for (int i = 0; i < n; i++) {
+                    int p = sel[i];
+                    if (nulls != null && nulls[p]) continue;
+                    int g = groupOf[i];
+                    sums[g] += v[base + p];
+                    c[g]++;
+                }
+            }
+        }
+
+        @Override
+        void merge(Accumulator other, int[] map, HashAggregation from) {
+            Sum theirs = (Sum) other;
+            for (int g = 0; g < map.length; g++) {
+                int to = map[g];
+                if (integers) longSums[to] += theirs.longSums[g];
+                else doubleSums[to] += theirs.doubleSums[g];
+                counts[to] += theirs.counts[g];
+            }
+        }
+
+        @Override
+        Object result(int g) {
+            if (counts[g] == 0) return null;
+            if (average) return (integers ? (double) longSums[g] : doubleSums[g]) / counts[g];
+            return integers ? (Object) longSums[g] : (Object) doubleSums[g];
+        }
+    }
+
+    /** MIN or MAX, ordered as {@link DataType#compare} orders values. */
+    private static final class Extreme extends Accumulator {
+        private final DataType type;
+        private final boolean min;
+        private long[] longs = new long[0];
+        private double[] doubles = new double[0];
+        private String[] texts = new String[0];
+        private boolean[] found = new boolean[0];
+
+        Extreme(int column, DataType type, boolean min) {
+            super(column);
+            this.type = type;
+            this.min = min;
+        }
+
+        @Override
+        void grow(int capacity) {
+            switch (type) {
+                case INTEGER:
+                case BOOLEAN: longs = Arrays.copyOf(longs, capacity); break;
+                case DOUBLE: doubles = Arrays.copyOf(doubles, capacity); break;
+                default: texts = Arrays.copyOf(texts, capacity); break;
+            }
+            found = Arrays.copyOf(found, capacity);
+        }
+
+        @Override
+        void add(BatchColumn col, int[] sel, int[] groupOf, int n) {
+            boolean[] nulls = col.hasNulls ? col.nulls : null;
+            int base = col.base;
+            switch (type) {
+                case INTEGER:
+                case BOOLEAN: {
+                    int[] v = col.ints;
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (nulls != null && nulls[p]) continue;
+                        offer(groupOf[i], v[base + p]);
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double[] v = col.doubles;
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (nulls != null && nulls[p]) continue;
+                        offer(groupOf[i], v[base + p]);
+                    }
+                    break;
+                }
+                default:
+                    for (int i = 0; i < n; i++) {
+                        int p = sel[i];
+                        if (nulls != null && nulls[p]) continue;
+                        offer(groupOf[i], col.string(p));
+                    }
+                    break;
+            }
+        }
+
+        private void offer(int g, long v) {
+            if (!found[g] || (min ? v < longs[g] : v > longs[g])) longs[g] = v;
+            found[g] = true;
+        }
+
+        private void offer(int g, double v) {
+            if (!found[g] || (min ? Double.compare(v, doubles[g]) < 0 : Double.compare(v, doubles[g]) > 0)) {
+                doubles[g] = v;
+            }
+            found[g] = true;
+        }
+
+        private void offer(int g, String v) {
+            if (!found[g] || (min ? v.compareTo(texts[g]) < 0 : v.compareTo(texts[g]) > 0)) texts[g] = v;
+            found[g] = true;
+        }
+
+        @Override
+        void merge(Accumulator other, int[] map, HashAggregation from) {
+            Extreme theirs = (Extreme) other;
+            for (int g = 0; g < map.length; g++) {
+                if (!theirs.found[g]) continue;
+                switch (type) {
+                    case INTEGER:
+                    case BOOLEAN: offer(map[g], theirs.longs[g]); break;
+                    case DOUBLE: offer(map[g], theirs.doubles[g]); break;
+                    default: offer(map[g], theirs.texts[g]); break;
+                }
+            }
+        }
+
+        @Override
+        Object result(int g) {
+            if (!found[g]) return null;
+            switch (type) {
+                case INTEGER: return (int) longs[g];
+                case BOOLEAN: return longs[g] != 0;
+                case DOUBLE: return doubles[g];
+                default: return texts[g];
+            }
+        }
+    }
+
+    /**
+     * COUNT(DISTINCT column): one open-addressing set of (group, encoded
+     * value) pairs for all groups, and a count per group.
+     */
+    private final class DistinctCount extends Accumulator {
+        private final DataType type;
+        private final TextIds text = new TextIds();
+        private long[] counts = new long[0];
+        private int[] pairGroups = new int[16];
+        private long[] pairValues = new long[16];
+        private int pairs;
+        private int[] set = new int[32];        // pair + 1 per hash slot, 0 when empty
+        private final long[] values = new long[VectorBatch.SIZE];
+        private final long[] nulls = new long[VectorBatch.SIZE];
+
+        DistinctCount(int column, DataType type) {
+            super(column);
+            this.type = type;
+        }
+
+        @Override
+        void grow(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(BatchColumn col, int[] sel, int[] groupOf, int n) {
+            Arrays.fill(nulls, 0, n, 0L);
+            encode(col, type, text, sel, n, values, nulls, 1L);
+            for (int i = 0; i < n; i++) {
+                if (nulls[i] == 0) insert(groupOf[i], values[i]);
+            }
+        }
+
+        private void insert(int g, long value) {
+            int mask = set.length - 1;
+            for (int slot = hash(value * 31 + g) & mask; ; slot = (slot + 1) & mask) {
+                int pair = set[slot] - 1;
+                if (pair < 0) {
+                    if (pairs == pairGroups.length) {
+                        pairGroups = Arrays.copyOf(pairGroups, pairs * 2);
+                        pairValues = Arrays.copyOf(pairValues, pairs * 2);
+                    }
+                    pairGroups[pairs] = g;
+                    pairValues[pairs] = value;
+                    set[slot] = ++pairs;
+                    counts[g]++;
+                    if (pairs * 2 > set.length) rehash();
+                    return;
+                }
+                if (pairGroups[pair] == g && pairValues[pair] == value) return;
+            }
+        }
+
+        private void rehash() {
+            int[] bigger = new int[set.length * 2];
+            int mask = bigger.length - 1;
+            for (int pair = 0; pair < pairs; pair++) {
+                int slot = hash(pairValues[pair] * 31 + pairGroups[pair]) & mask;
+                while (bigger[slot] != 0) slot = (slot + 1) & mask;
+                bigger[slot] = pair + 1;
+            }
+            set = bigger;
+        }
+
+        @Override
+        void merge(Accumulator other, int[] map, HashAggregation from) {
+            DistinctCount theirs = (DistinctCount) other;
+            boolean textual = isText(type);
+            for (int pair = 0; pair < theirs.pairs; pair++) {
+                long value = theirs.pairValues[pair];
+                if (textual) value = strings.intern(from.strings.word((int) value));
+                insert(map[theirs.pairGroups[pair]], value);
+            }
+        }
+
+        @Override
+        Object result(int g) {
+            return counts[g];
+        }
+    }
+
+    /**
+     * Numbers for distinct strings, in first-seen order, kept in an
+     * open-addressing table whose slots hold each string's hash code next to
+     * its number, so a probe only touches a string whose hash matches.
+     */
+    private static final class Interner {
+        private String[] words = new String[16];
+        private int size;
+        private long[] table = new long[32];    // hash << 32 | number + 1 per slot, 0 when empty
+
+        int intern(String word) {
+            int h = word.hashCode();
+            int mask = table.length - 1;
+            for (int slot = spread(h) & mask; ; slot = (slot + 1) & mask) {
+                long entry = table[slot];
+                if (entry == 0) {
+                    if (size == words.length) words = Arrays.copyOf(words, size * 2);
+                    words[size] = word;
+                    table[slot] = (long) h << 32 | ++size;
+                    if (size * 2 > table.length) rehash();
+                    return size - 1;
+                }
+                if ((int) (entry >>> 32) == h) {
+                    int id = (int) entry - 1;
+                    String known = words[id];
+                    if (known == word || known.equals(word)) return id;
+                }
+            }
+        }
+
+        String word(int id) {
+            return words[id];
+        }
+
+        private static int spread(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private void rehash() {
+            long[] bigger = new long[table.length * 2];
+            int mask = bigger.length - 1;
+            for (long entry : table) {
+                if (entry == 0) continue;
+                int slot = spread((int) (entry >>> 32)) & mask;
+                while (bigger[slot] != 0) slot = (slot + 1) & mask;
+                bigger[slot] = entry;
+            }
+            table = bigger;
+        }
+    }
+
+    /** Interned numbers of the codes of one dictionary, looked up once per code. */
+    private static final class TextIds {
+        private StringVector dictionary;
+        private int[] ids = new int[0];         // id + 1 per code, 0 when not looked up yet
+
+        void use(StringVector dictionary) {
+            if (dictionary != this.dictionary) {
+                this.dictionary = dictionary;
+                ids = new int[Math.max(16, dictionary.cardinality())];
+            }
+        }
+
+        int id(int code, Interner strings) {
+            if (code >= ids.length) ids = Arrays.copyOf(ids, Math.max(code + 1, ids.length * 2));
+            int id = ids[code] - 1;
+            if (id < 0) {
+                id = strings.intern(dictionary.word(code));
+                ids[code] = id + 1;
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash index for equality lookups: O(1) to find the posting list of a key.
+ * Readers never wait: the map is concurrent and posting lists only grow.
+ * Author: Eyasu Solomon
+ */
+class HashIndex extends TableIndex {
+    private final Map<Object, SlotList> entries = new ConcurrentHashMap<>();
+
+    public HashIndex(Column column) {
+        super(column);
+    }
+
+    @Override public String getType() { return "HASH"; }
+    @Override public int distinctKeys() { return entries.size(); }
+
+    @Override
+    public void add(Object value, int slot) {
+        Object key = keyFor(column.getType(), value);
+        if (key == null) return;
+        entries.computeIfAbsent(key, k -> new SlotList()).add(slot);
+    }
+
+    @Override
+    public int[] lookup(String literal) {
+        SlotList list = entries.get(keyFor(column.getType(), literal));
+        return list == null ? new int[0] : list.toArray();
+    }
+}
@@ -0,0 +1,489 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Equi-joins of tables: INNER and LEFT JOIN by building a hash table on one
+ * input and probing it with the other.
+ * Author: Eyasu Solomon
+ *
+ * Rows being joined are {@link Tuples}: one slot per table, so a join
+ * copies no values until the result is read. The input with fewer rows
+ * is the build side, whichever side of the JOIN it is on. Its keys go into
+ * a chained hash table of primitive arrays: INTEGER keys (and DOUBLE, or
+ * a mix of both) as longs, read straight from a COLUMNAR table's vector
+ * without boxing; other types as text. NULL keys never match. The probe
+ * side is split across the {@link ParallelScan} pool.
+ *
+ * A build side whose table would need more than the memory budget is
+ * joined as a grace hash join instead: the keys of both inputs are written
+ * to temporary files, one per hash partition, and the partitions are
+ * joined one at a time. Set the budget with {@code -Ddbm.joinMemoryMB}
+ * (default 64) or {@link #setMemoryBudget}.
+ */
+final class HashJoin {
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+    private static final int LONG_ENTRY_BYTES = 24;     // key, row, chain link and bucket
+    private static final int TEXT_ENTRY_BYTES = 40;     // the same with a String reference and hash
+    private static final int MAX_PARTITIONS = 256;
+
+    private static volatile long memoryBudget = Long.getLong("dbm.joinMemoryMB", 64L) << 20;
+
+    // How each join of this thread's current query ran, since resetPlan()
+    private static final ThreadLocal<List<String>> PLAN = ThreadLocal.withInitial(ArrayList::new);
+
+    /** How keys of the two join columns compare. */
+    private enum KeyMode { INTEGER, NUMBER, TEXT }
+
+    /** Rows joined so far: for each table, one slot per row; -1 where a LEFT JOIN found no match. */
+    static final class Tuples {
+        final String name;
+        final TableSnapshot[] snapshots;
+        final int[][] slots;
+        final int count;
+
+        Tuples(String name, TableSnapshot[] snapshots, int[][] slots, int count) {
+            this.name = name;
+            this.snapshots = snapshots;
+            this.slots = slots;
+            this.count = count;
+        }
+
+        /** The given slots of one table, named {@code name} in the query plan. */
+        static Tuples of(String name, TableSnapshot snapshot, int[] slots) {
+            return new Tuples(name, new TableSnapshot[] {snapshot}, new int[][] {slots}, slots.length);
+        }
+    }
+
+    /** A join column: column {@code column} of the table at position {@code table} of a {@link Tuples}. */
+    static final class Key {
+        final int table;
+        final int column;
+        final DataType type;
+
+        Key(int table, int column, DataType type) {
+            this.table = table;
+            this.column = column;
+            this.type = type;
+        }
+    }
+
+    private HashJoin() {
+    }
+
+    static long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /** Build sides whose hash table would need more than {@code bytes} are joined through disk. */
+    static void setMemoryBudget(long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Join memory budget must be positive: " + bytes);
+        }
+        memoryBudget = bytes;
+    }
+
+    /** Starts a new query plan on this thread. */
+    static void resetPlan() {
+        PLAN.get().clear();
+    }
+
+    /** How each join of this thread's current query ran, e.g. "built users (5 rows) in memory". */
+    static String lastPlan() {
+        return String.join("; ", PLAN.get());
+    }
+
+    /**
+     * Joins {@code left} and {@code right} where {@code leftKey} equals
+     * {@code rightKey}. Each result row holds the slots of the left tables,
+     * then those of the right. With {@code outer}, a left row without a
+     * match is kept once, with -1 for every right table.
+     */
+    static Tuples join(Tuples left, Key leftKey, Tuples right, Key rightKey, boolean outer) {
+        KeyMode mode = mode(leftKey.type, rightKey.type);
+        boolean buildLeft = left.count < right.count;
+        Tuples build = buildLeft ? left : right;
+        Tuples probe = buildLeft ? right : left;
+        Key buildKey = buildLeft ? leftKey : rightKey;
+        Key probeKey = buildLeft ? rightKey : leftKey;
+        long bytes = (long) build.count * (mode == KeyMode.TEXT ? TEXT_ENTRY_BYTES : LONG_ENTRY_BYTES);
+        Pairs pairs;
+        if (bytes <= memoryBudget) {
+            pairs = inMemory(mode, build, buildKey, probe, probeKey, outer && buildLeft, outer && !buildLeft);
+            PLAN.get().add("built " + describe(build) + " in memory");
+        } else {
+            int partitions = 2;
+            while (partitions < MAX_PARTITIONS && (long) partitions * memoryBudget < bytes) partitions *= 2;
+            try {
+                pairs = spilled(mode, build, buildKey, probe, probeKey, outer && buildLeft, outer && !buildLeft,
+                    partitions);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Join spill failed", e);
+            }
+            PLAN.get().add("built " + describe(build) + " in " + partitions + " partitions on disk");
+        }
+        return buildLeft ? combine(left, pairs.build, right, pairs.probe, pairs.count)
+                         : combine(left, pairs.probe, right, pairs.build, pairs.count);
+    }
+
+    /**
+     * The values of {@code columns[i]} of table {@code tables[i]} for every
+     * row, in row order; NULL for a table a LEFT JOIN left unmatched.
+     */
+    static List<Object[]> values(Tuples rows, int[] tables, int[] columns) {
+        return ParallelScan.list(rows.count, (from, to) -> {
+            List<Object[]> out = new ArrayList<>(to - from);
+            for (int r = from; r < to; r++) out.add(row(rows, r, tables, columns));
+            return out;
+        });
+    }
+
+    /** The same values as {@link #values}, passed to {@code action} one row at a time on this thread. */
+    static void forEach(Tuples rows, int[] tables, int[] columns, Consumer<Object[]> action) {
+        for (int r = 0; r < rows.count; r++) action.accept(row(rows, r, tables, columns));
+    }
+
+    private static Object[] row(Tuples rows, int r, int[] tables, int[] columns) {
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int slot = rows.slots[tables[i]][r];
+            row[i] = slot < 0 ? null : rows.snapshots[tables[i]].storage.valueAt(slot, columns[i]);
+        }
+        return row;
+    }
+
+    private static String describe(Tuples rows) {
+        return rows.name + " (" + rows.count + (rows.count == 1 ? " row)" : " rows)");
+    }
+
+    private static KeyMode mode(DataType a, DataType b) {
+        if (a == DataType.INTEGER && b == DataType.INTEGER) return KeyMode.INTEGER;
+        boolean numbers = (a == DataType.INTEGER || a == DataType.DOUBLE) && (b == DataType.INTEGER || b == DataType.DOUBLE);
+        return numbers ? KeyMode.NUMBER : KeyMode.TEXT;
+    }
+
+    private static Pairs inMemory(KeyMode mode, Tuples build, Key buildKey, Tuples probe, Key probeKey,
+                                  boolean keepBuild, boolean keepProbe) {
+        BuildTable table = new BuildTable(mode == KeyMode.TEXT, build.count, keepBuild ? new boolean[build.count] : null);
+        KeyReader keys = new KeyReader(mode, build, buildKey);
+        // Added last row first, so each bucket chains its rows in input order
+        for (int row = build.count - 1; row >= 0; row--) {
+            if (keys.isNull(row)) continue;
+            if (table.text) table.add(keys.textKey(), row);
+            else table.add(keys.longKey(row), row);
+        }
+        Pairs pairs = ParallelScan.run(probe.count, (from, to) -> {
+            KeyReader probeKeys = new KeyReader(mode, probe, probeKey);
+            Pairs out = new Pairs();
+            for (int row = from; row < to; row++) {
+                boolean found = !probeKeys.isNull(row) && (table.text ? table.probe(probeKeys.textKey(), row, out)
+                                                                      : table.probe(probeKeys.longKey(row), row, out));
+                if (!found && keepProbe) out.add(-1, row);
+            }
+            return out;
+        }, Pairs::append);
+        if (keepBuild) table.addUnmatched(pairs);
+        return pairs;
+    }
+
+    /** Joins the inputs one hash partition at a time, keeping only one partition's build table in memory. */
+    private static Pairs spilled(KeyMode mode, Tuples build, Key buildKey, Tuples probe, Key probeKey,
+                                 boolean keepBuild, boolean keepProbe, int partitions) throws IOException {
+        boolean text = mode == KeyMode.TEXT;
+        int shift = 32 - Integer.numberOfTrailingZeros(partitions);
+        Pairs pairs = new Pairs();
+        Path dir = Files.createTempDirectory("dbm-join");
+        Path[] buildFiles = new Path[partitions];
+        Path[] probeFiles = new Path[partitions];
+        try {
+            int[] counts = partition(dir, "build", build, new KeyReader(mode, build, buildKey), shift, buildFiles, null);
+            partition(dir, "probe", probe, new KeyReader(mode, probe, probeKey), shift, probeFiles,
+                keepProbe ? pairs : null);
+            boolean[] matched = keepBuild ? new boolean[build.count] : null;
+            BuildTable table = null;
+            for (int p = 0; p < partitions; p++) {
+                QueryControl.checkCancelled();
+                table = new BuildTable(text, counts[p], matched);
+                try (DataInputStream in = open(buildFiles[p])) {
+                    for (int i = 0; i < counts[p]; i++) {
+                        if (text) table.add(readText(in), in.readInt());
+                        else table.add(in.readLong(), in.readInt());
+                    }
+                }
+                try (DataInputStream in = open(probeFiles[p])) {
+                    while (true) {
+                        String textKey = null;
+                        long longKey = 0;
+                        try {
+                            if (text) textKey = readText(in);
+                            else longKey = in.readLong();
+                        } catch (EOFException end) {
+                            break;
+                        }
+                        int row = in.readInt();
+                        boolean found = text ? table.probe(textKey, row, pairs) : table.probe(longKey, row, pairs);
+                        if (!found && keepProbe) pairs.add(-1, row);
+                    }
+                }
+            }
+            if (keepBuild) table.addUnmatched(pairs);
+            return pairs;
+        } finally {
+            for (int p = 0; p < partitions; p++) {
+                if (buildFiles[p] != null) Files.deleteIfExists(buildFiles[p]);
+                if (probeFiles[p] != null) Files.deleteIfExists(probeFiles[p]);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Writes each row's key and row number to the file of its hash
+     * partition and returns how many rows each partition got. Rows with a
+     * NULL key go to {@code nulls} as unmatched probe rows, or are dropped.
+     */
+    private static int[] partition(Path dir, String side, Tuples rows, KeyReader keys, int shift, Path[] files,
+                                   Pairs nulls) throws IOException {
+        int[] counts = new int[files.length];
+        DataOutputStream[] out = new DataOutputStream[files.length];
+        try {
+            for (int p = 0; p < files.length; p++) {
+                files[p] = dir.resolve(side + "-" + p);
+                out[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[p]), 1 << 14));
+            }
+            for (int row = 0; row < rows.count; row++) {
+                if (keys.isNull(row)) {
+                    if (nulls != null) nulls.add(-1, row);
+                    continue;
+                }
+                int p;
+                if (keys.text) {
+                    String key = keys.textKey();
+                    p = hash(key) >>> shift;
+                    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                    out[p].writeInt(bytes.length);
+                    out[p].write(bytes);
+                } else {
+                    long key = keys.longKey(row);
+                    p = hash(key) >>> shift;
+                    out[p].writeLong(key);
+                }
+                out[p].writeInt(row);
+                counts[p]++;
+            }
+        } finally {
+            for (DataOutputStream stream : out) {
+                if (stream != null) stream.close();
+            }
+        }
+        return counts;
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 14));
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Rows of {@code left} and {@code right} paired up; -1 pairs a row with NULLs. */
+    private static Tuples combine(Tuples left, int[] leftRows, Tuples right, int[] rightRows, int count) {
+        int tables = left.slots.length + right.slots.length;
+        TableSnapshot[] snapshots = new TableSnapshot[tables];
+        int[][] slots = new int[tables][];
+        for (int t = 0; t < tables; t++) {
+            boolean fromLeft = t < left.slots.length;
+            Tuples in = fromLeft ? left : right;
+            int[] source = in.slots[fromLeft ? t : t - left.slots.length];
+            int[] rows = fromLeft ? leftRows : rightRows;
+            int[] out = new int[count];
+            for (int i = 0; i < count; i++) {
+                out[i] = rows[i] < 0 ? -1 : source[rows[i]];
+            }
+            snapshots[t] = in.snapshots[fromLeft ? t : t - left.slots.length];
+            slots[t] = out;
+        }
+        return new Tuples(left.name + ", " + right.name, snapshots, slots, count);
+    }
+
+    private static int hash(long key) {
+        long h = key * MIX;
+        return (int) (h ^ (h >>> 29) ^ (h >>> 47));
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Reads the join key of each row. {@link #isNull} must come first; it
+     * also loads a non-NULL key for {@link #longKey} or {@link #textKey}.
+     * A reader belongs to one thread.
+     */
+    private static final class KeyReader {
+        final boolean text;
+        private final KeyMode mode;
+        private final TableStorage storage;
+        private final int[] slots;
+        private final int column;
+        private final DataType type;
+        private final IntVector ints;       // INTEGER keys of a COLUMNAR table, read without boxing
+        private Object key;
+
+        KeyReader(KeyMode mode, Tuples rows, Key key) {
+            this.text = mode == KeyMode.TEXT;
+            this.mode = mode;
+            this.storage = rows.snapshots[key.table].storage;
+            this.slots = rows.slots[key.table];
+            this.column = key.column;
+            this.type = key.type;
+            ColumnVector vector = storage instanceof ColumnarStorage ? ((ColumnarStorage) storage).vector(column) : null;
+            this.ints = mode == KeyMode.INTEGER && vector instanceof IntVector ? (IntVector) vector : null;
+        }
+
+        boolean isNull(int row) {
+            int slot = slots[row];
+            if (slot < 0) return true;
+            if (ints != null) return ints.isNull(slot);
+            Object value = storage.valueAt(slot, column);
+            if (value == null) return true;
+            if (text) {
+                key = value.toString();
+                return false;
+            }
+            value = Table.typed(type, value);
+            if (value == null) return true;
+            if (mode == KeyMode.INTEGER) {
+                key = ((Number) value).longValue();
+            } else {
+                double d = ((Number) value).doubleValue();
+                key = Double.doubleToLongBits(d == 0 ? 0.0 : d);     // -0.0 joins 0.0
+            }
+            return false;
+        }
+
+        long longKey(int row) {
+            return ints != null ? ints.getInt(slots[row]) : (Long) key;
+        }
+
+        String textKey() {
+            return (String) key;
+        }
+    }
+
+    /**
+     * Build-side keys and row numbers, chained per bucket. When unmatched
+     * build rows are kept, {@code matched} marks every row a probe found;
+     * the tables of a spilled join share one such array.
+     */
+    private static final class BuildTable {
+        final boolean text;
+        private final long[] longKeys;
+        private final String[] textKeys;
+        private final int[] rows;
+        private final int[] next;
+        private final int[] buckets;        // first entry per bucket, -1 when empty
+        private final int mask;
+        private final boolean[] matched;    // per build row; null unless unmatched rows are kept
+        private int count;
+
+        BuildTable(boolean text, int capacity, boolean[] matched) {
+            this.text = text;
+            this.longKeys = text ? null : new long[capacity];
+            this.textKeys = text ? new String[capacity] : null;
+            this.rows = new int[capacity];
+            this.next = new int[capacity];
+            this.buckets = new int[Integer.highestOneBit(Math.max(1, capacity) * 2 - 1)];
+            Arrays.fill(buckets, -1);
+            this.mask = buckets.length - 1;
+            this.matched = matched;
+        }
+
+        void add(long key, int row) {
+            longKeys[count] = key;
+            link(hash(key), row);
+        }
+
+        void add(String key, int row) {
+            textKeys[count] = key;
+            link(hash(key), row);
+        }
+
+        private void link(int hash, int row) {
+            int b = hash & mask;
+            rows[count] = row;
+            next[count] = buckets[b];
+            buckets[b] = count++;
+        }
+
+        /** Pairs probe row {@code row} with every build row of key {@code key}; false if there is none. */
+        boolean probe(long key, int row, Pairs out) {
+            boolean found = false;
+            for (int e = buckets[hash(key) & mask]; e >= 0; e = next[e]) {
+                if (longKeys[e] == key) {
+                    found = true;
+                    match(e, row, out);
+                }
+            }
+            return found;
+        }
+
+        boolean probe(String key, int row, Pairs out) {
+            boolean found = false;
+            for (int e = buckets[hash(key) & mask]; e >= 0; e = next[e]) {
+                if (key.equals(textKeys[e])) {
+                    found = true;
+                    match(e, row, out);
+                }
+            }
+            return found;
+        }
+
+        private void match(int e, int row, Pairs out) {
+            out.add(rows[e], row);
+            // Probe ranges on other threads only ever set this, and the pool's join publishes it
+            if (matched != null) matched[rows[e]] = true;
+        }
+
+        /** Adds every build row no probe row matched, NULL keys included, in input order. */
+        void addUnmatched(Pairs out) {
+            for (int row = 0; row < matched.length; row++) {
+                if (!matched[row]) out.add(row, -1);
+            }
+        }
+    }
+
+    /** Row numbers of the build and probe inputs that belong together; -1 for NULLs. */
+    private static final class Pairs {
+        int[] build = new int[16];
+        int[] probe = new int[16];
+        int count;
+
+        void add(int buildRow, int probeRow) {
+            if (count == build.length) {
+                build = Arrays.copyOf(build, count * 2);
+                probe = Arrays.copyOf(probe, count * 2);
+            }
+            build[count] = buildRow;
+            probe[count] = probeRow;
+            count++;
+        }
+
+        Pairs append(Pairs other) {
+            if (count + other.count > build.length) {
+                build = Arrays.copyOf(build, count + other.count);
+                probe = Arrays.copyOf(probe, count + other.count);
+            }
+            System.arraycopy(other.build, 0, build, count, other.count);
+            System.arraycopy(other.probe, 0, probe, count, other.count);
+            count += other.count;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * The kinds of {@link TableIndex} a column can have.
+ * Author: Eyasu Solomon
+ */
+enum IndexType {
+    HASH, BTREE
+}
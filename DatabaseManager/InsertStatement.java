@@ -0,0 +1,17 @@
+import java.util.*;
+
+/**
+ * INSERT INTO table [(columns)] VALUES (...), (...).
+ * Author: Eyasu Solomon
+ */
+final class InsertStatement extends SqlStatement {
+    final String table;
+    final List<String> columns;         // null: every column in table order
+    final List<String[]> rows;          // literal text per value, null for NULL
+
+    InsertStatement(String table, List<String> columns, List<String[]> rows) {
+        this.table = table;
+        this.columns = columns;
+        this.rows = rows;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * INTEGER columns.
+ * Author: Eyasu Solomon
+ */
+class IntVector extends ColumnVector {
+    private volatile int[] values;
+
+    IntVector(Column column, int capacity) {
+        super(column, capacity);
+        values = new int[capacity];
+    }
+
+    public int getInt(int slot) { return values[slot]; }
+
+    @Override protected Object getValue(int slot) { return values[slot]; }
+    @Override protected void setValue(int slot, Object value) { values[slot] = (Integer) value; }
+    @Override protected void growValues(int capacity) { values = Arrays.copyOf(values, capacity); }
+
+    @Override
+    public IntPredicate equalTo(String literal) {
+        Object key = DataType.INTEGER.keyOf(literal);
+        if (key == null) return slot -> false;
+        int k = (Integer) key;
+        int[] vals = values;
+        long[] nullBits = nulls;
+        return slot -> vals[slot] == k && !isNull(nullBits, slot);
+    }
+
+    @Override
+    public void load(int from, int n, BatchColumn out) {
+        out.wrap(values, from);
+        loadNulls(from, n, out);
+    }
+
+    @Override
+    public long estimateBytes(int size) {
+        return super.estimateBytes(size) + values.length * 4L;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * column IS [NOT] NULL.
+ * Author: Eyasu Solomon
+ */
+final class IsNull extends Expr {
+    final String column;
+    final boolean negated;
+
+    IsNull(String column, boolean negated) {
+        this.column = column;
+        this.negated = negated;
+    }
+
+    @Override
+    public String toString() {
+        return name(column) + (negated ? " IS NOT NULL" : " IS NULL");
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * [INNER | LEFT [OUTER]] JOIN table [alias] ON column = column, after FROM or another JOIN.
+ * Author: Eyasu Solomon
+ */
+final class JoinClause {
+    final String table;
+    final String alias;                 // null: the table's name
+    final boolean outer;                // LEFT JOIN: rows without a match are kept, with NULLs
+    final String leftKey;               // the two columns of ON, as written
+    final String rightKey;
+
+    JoinClause(String table, String alias, boolean outer, String leftKey, String rightKey) {
+        this.table = table;
+        this.alias = alias;
+        this.outer = outer;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+    }
+
+    @Override
+    public String toString() {
+        return (outer ? "LEFT JOIN " : "JOIN ") + Expr.name(table) + (alias != null ? " " + Expr.name(alias) : "")
+            + " ON " + leftKey + " = " + rightKey;
+    }
+}
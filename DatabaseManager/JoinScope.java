@@ -0,0 +1,130 @@
+import java.util.*;
+
+/**
+ * The tables of a joined SELECT and how its column names resolve: as
+ * name.column, with a table's alias or else its name, or as a bare column
+ * name that only one of the tables has. Columns are numbered across the
+ * tables in the order they appear in FROM and JOIN.
+ * Author: Eyasu Solomon
+ */
+final class JoinScope {
+    final List<Table> tables = new ArrayList<>();
+    final List<String> names = new ArrayList<>();
+    private final List<Integer> starts = new ArrayList<>();
+    private int width;
+
+    void add(Table table, String alias) {
+        if (tables.size() == 64) {
+            throw new IllegalArgumentException("Too many tables in one SELECT: " + tables.size());
+        }
+        String name = alias != null ? alias : table.getName();
+        for (String other : names) {
+            if (other.equalsIgnoreCase(name)) {
+                throw new IllegalArgumentException("Table appears twice in FROM, give it an alias: " + name);
+            }
+        }
+        tables.add(table);
+        names.add(name);
+        starts.add(width);
+        width += table.getColumns().size();
+    }
+
+    int width() {
+        return width;
+    }
+
+    /** The number of a column reference. */
+    int resolve(String reference) {
+        int dot = reference.indexOf('.');
+        if (dot > 0) {
+            String qualifier = reference.substring(0, dot);
+            for (int t = 0; t < tables.size(); t++) {
+                if (!names.get(t).equalsIgnoreCase(qualifier)) continue;
+                int c = tables.get(t).snapshot().storage.columnIndex(reference.substring(dot + 1));
+                if (c < 0) throw new IllegalArgumentException("Unknown column: " + reference);
+                return starts.get(t) + c;
+            }
+        }
+        int found = -1;
+        for (int t = 0; t < tables.size(); t++) {
+            int c = tables.get(t).snapshot().storage.columnIndex(reference);
+            if (c < 0) continue;
+            if (found >= 0) throw new IllegalArgumentException("Ambiguous column: " + reference);
+            found = starts.get(t) + c;
+        }
+        if (found < 0) throw new IllegalArgumentException("Unknown column: " + reference);
+        return found;
+    }
+
+    /** The position in FROM of the table a column number belongs to. */
+    int tableOf(int column) {
+        int t = starts.size() - 1;
+        while (starts.get(t) > column) t--;
+        return t;
+    }
+
+    /** A column number's index among its own table's columns. */
+    int indexOf(int column) {
+        return column - starts.get(tableOf(column));
+    }
+
+    Column column(int column) {
+        return tables.get(tableOf(column)).getColumns().get(indexOf(column));
+    }
+
+    /** A column's name in a SELECT * result: bare if no other table has it, else qualified. */
+    String label(int column) {
+        String name = column(column).getName();
+        for (int t = 0; t < tables.size(); t++) {
+            if (t != tableOf(column) && tables.get(t).snapshot().storage.columnIndex(name) >= 0) {
+                return names.get(tableOf(column)) + "." + name;
+            }
+        }
+        return name;
+    }
+
+    /** The numbers of the columns a condition reads. */
+    List<Integer> columnsOf(Expr e) {
+        List<Integer> out = new ArrayList<>();
+        addColumns(e, out);
+        return out;
+    }
+
+    private void addColumns(Expr e, List<Integer> out) {
+        if (e instanceof Logical) {
+            addColumns(((Logical) e).left, out);
+            addColumns(((Logical) e).right, out);
+        } else if (e instanceof Not) {
+            addColumns(((Not) e).operand, out);
+        } else {
+            out.add(resolve(columnOf(e)));
+        }
+    }
+
+    /** The tables a condition reads, one bit per position in FROM. */
+    long tablesOf(Expr e) {
+        long tables = 0;
+        for (int c : columnsOf(e)) tables |= 1L << tableOf(c);
+        return tables;
+    }
+
+    /** A condition on one table, with its columns named as that table names them. */
+    Expr local(Expr e) {
+        if (e instanceof Logical) {
+            Logical l = (Logical) e;
+            return new Logical(l.and, local(l.left), local(l.right));
+        }
+        if (e instanceof Not) return new Not(local(((Not) e).operand));
+        String name = column(resolve(columnOf(e))).getName();
+        if (e instanceof IsNull) return new IsNull(name, ((IsNull) e).negated);
+        if (e instanceof Between) return new Between(name, ((Between) e).low, ((Between) e).high);
+        Comparison c = (Comparison) e;
+        return new Comparison(name, c.op, c.value);
+    }
+
+    static String columnOf(Expr e) {
+        if (e instanceof IsNull) return ((IsNull) e).column;
+        if (e instanceof Between) return ((Between) e).column;
+        return ((Comparison) e).column;
+    }
+}
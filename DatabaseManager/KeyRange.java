@@ -0,0 +1,108 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * A range of typed column values, resolved once from the literals of a
+ * WHERE condition, so row predicates, BTREE ranges, batch filters and the
+ * planner all agree on what the condition matches.
+ * Author: Eyasu Solomon
+ *
+ * Numbers compare by value: on an INTEGER column {@code > 1.5} becomes
+ * {@code >= 2}, and a bound beyond the int range leaves that end open or
+ * the range empty. A literal that reads as NULL (empty text for any type
+ * but STRING and DATE) matches no row, as a comparison with NULL never
+ * holds. A literal that is not a value of the column type is an error.
+ */
+final class KeyRange {
+    private static final BigDecimal INT_MIN = BigDecimal.valueOf(Integer.MIN_VALUE);
+    private static final BigDecimal INT_MAX = BigDecimal.valueOf(Integer.MAX_VALUE);
+
+    final Object low;               // null: open
+    final boolean lowInclusive;
+    final Object high;              // null: open
+    final boolean highInclusive;
+    final boolean empty;            // matches no row
+
+    private KeyRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, boolean empty) {
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.high = high;
+        this.highInclusive = highInclusive;
+        this.empty = empty;
+    }
+
+    /** {@code column op literal} for op one of &lt;, &lt;=, &gt; and &gt;=. */
+    static KeyRange of(DataType type, TokenType op, String literal) {
+        switch (op) {
+            case GT: return of(type, literal, false, null, true);
+            case GE: return of(type, literal, true, null, true);
+            case LT: return of(type, null, true, literal, false);
+            case LE: return of(type, null, true, literal, true);
+            default: throw new IllegalArgumentException("Not a range operator: " + op);
+        }
+    }
+
+    /** {@code column BETWEEN low AND high}. */
+    static KeyRange between(DataType type, String low, String high) {
+        return of(type, low, true, high, true);
+    }
+
+    /** Values between two literals; a null literal leaves its end open. */
+    static KeyRange of(DataType type, String low, boolean lowInclusive, String high, boolean highInclusive) {
+        Object lo = null, hi = null;
+        if (type == DataType.INTEGER) {
+            // Whole-number bounds: each end becomes inclusive
+            long l = low == null ? Integer.MIN_VALUE : integerBound(low, true, lowInclusive);
+            long h = high == null ? Integer.MAX_VALUE : integerBound(high, false, highInclusive);
+            if (l > h) return new KeyRange(null, true, null, true, true);
+            // Every int lies at or beyond MIN_VALUE and MAX_VALUE, so those ends stay open
+            if (l > Integer.MIN_VALUE) lo = (int) l;
+            if (h < Integer.MAX_VALUE) hi = (int) h;
+            return new KeyRange(lo, true, hi, true, false);
+        }
+        if (low != null) lo = type.coerce(low);
+        if (high != null) hi = type.coerce(high);
+        if (low != null && lo == null || high != null && hi == null) {
+            return new KeyRange(null, true, null, true, true);
+        }
+        boolean empty = lo != null && hi != null
+            && (type.compare(lo, hi) > 0 || type.compare(lo, hi) == 0 && !(lowInclusive && highInclusive));
+        return new KeyRange(lo, lowInclusive, hi, highInclusive, empty);
+    }
+
+    /**
+     * The inclusive int bound equivalent to a numeric literal, as a long so
+     * a bound past the int range is kept: below MIN_VALUE or above
+     * MAX_VALUE it empties or opens the range. A NULL literal empties it.
+     */
+    private static long integerBound(String literal, boolean lower, boolean inclusive) {
+        String text = literal.trim();
+        if (text.isEmpty()) return lower ? Long.MAX_VALUE : Long.MIN_VALUE;
+        BigDecimal value;
+        try {
+            value = new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + DataType.INTEGER + " value: " + literal);
+        }
+        if (value.compareTo(INT_MIN) < 0) return lower ? Integer.MIN_VALUE : Long.MIN_VALUE;
+        if (value.compareTo(INT_MAX) > 0) return lower ? Long.MAX_VALUE : Integer.MAX_VALUE;
+        boolean whole = value.signum() == 0 || value.stripTrailingZeros().scale() <= 0;
+        long bound = value.setScale(0, lower ? RoundingMode.CEILING : RoundingMode.FLOOR).longValueExact();
+        if (whole && !inclusive) bound += lower ? 1 : -1;
+        return bound;
+    }
+
+    /** Whether a non-NULL value of the column type lies in the range. */
+    boolean contains(DataType type, Object value) {
+        if (empty) return false;
+        if (low != null) {
+            int cmp = type.compare(value, low);
+            if (cmp < 0 || cmp == 0 && !lowInclusive) return false;
+        }
+        if (high != null) {
+            int cmp = type.compare(value, high);
+            if (cmp > 0 || cmp == 0 && !highInclusive) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Growable heap buffer with the value encoding shared by the log.
+ * Author: Eyasu Solomon
+ */
+class LogBuffer {
+    static final byte NULL = 0;
+    static final byte INT = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+
+    private ByteBuffer buf = ByteBuffer.allocate(256);
+
+    public void reset() { buf.clear(); }
+
+    public void skip(int bytes) {
+        ensure(bytes);
+        buf.position(buf.position() + bytes);
+    }
+
+    /** The encoded bytes, flipped for writing. */
+    public ByteBuffer frame() {
+        buf.flip();
+        return buf;
+    }
+
+    public void put(byte b) {
+        ensure(1);
+        buf.put(b);
+    }
+
+    public void putInt(int v) {
+        ensure(4);
+        buf.putInt(v);
+    }
+
+    public void putLong(long v) {
+        ensure(8);
+        buf.putLong(v);
+    }
+
+    public void putDouble(double v) {
+        ensure(8);
+        buf.putDouble(v);
+    }
+
+    public void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    public void putValue(Object value) {
+        if (value == null) {
+            put(NULL);
+        } else if (value instanceof Integer) {
+            put(INT);
+            putInt((Integer) value);
+        } else if (value instanceof Double) {
+            put(DOUBLE);
+            putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            put(BOOLEAN);
+            put((byte) ((Boolean) value ? 1 : 0));
+        } else {
+            put(STRING);
+            putString(value.toString());
+        }
+    }
+
+    public static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    public static Object getValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL: return null;
+            case INT: return in.getInt();
+            case DOUBLE: return in.getDouble();
+            case BOOLEAN: return in.get() == 1;
+            case STRING: return getString(in);
+            default: throw new IllegalStateException("Unknown value tag " + tag);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (buf.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import java.util.*;
+
+/**
+ * AND or OR of two conditions.
+ * Author: Eyasu Solomon
+ */
+final class Logical extends Expr {
+    final boolean and;
+    final Expr left;
+    final Expr right;
+
+    Logical(boolean and, Expr left, Expr right) {
+        this.and = and;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    void conjuncts(List<Expr> out) {
+        if (!and) {
+            out.add(this);
+            return;
+        }
+        left.conjuncts(out);
+        right.conjuncts(out);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + (and ? " AND " : " OR ") + right + ")";
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable sequence of longs in the smallest of FOR, DELTA and RLE
+ * form. get() is random access; decode() and matcher() serve scans.
+ * Author: Eyasu Solomon
+ */
+abstract class LongColumn {
+    protected final int count;
+
+    protected LongColumn(int count) {
+        this.count = count;
+    }
+
+    static LongColumn encode(long[] values, int count) {
+        if (count == 0) return new ForLongs(values, 0, 0, 0);
+        long min = values[0];
+        long max = values[0];
+        long zigzags = 0;
+        int runs = 1;
+        for (int i = 1; i < count; i++) {
+            long v = values[i];
+            if (v < min) min = v;
+            if (v > max) max = v;
+            long d = v - values[i - 1];
+            zigzags |= (d << 1) ^ (d >> 63);
+            if (d != 0) runs++;
+        }
+        int forBits = PackedLongs.bitsFor(max - min);
+        int deltaBits = PackedLongs.bitsFor(zigzags);
+        long forBytes = ((long) count * forBits + 7) / 8;
+        long deltaBytes = ((long) count * deltaBits + 7) / 8 + ((count + DeltaLongs.STRIDE - 1) / DeltaLongs.STRIDE) * 8L;
+        long rleBytes = runs * 12L;
+        if (rleBytes < forBytes && rleBytes < deltaBytes) return new RleLongs(values, count, runs);
+        if (deltaBytes < forBytes) return new DeltaLongs(values, count, deltaBits);
+        return new ForLongs(values, count, min, forBits);
+    }
+
+    abstract long get(int i);
+    abstract long bytes();
+    abstract String encoding();
+
+    /** Decodes values {@code [from, from + n)} into {@code out[0..n)}. */
+    void decode(int from, int n, long[] out) {
+        for (int k = 0; k < n; k++) out[k] = get(from + k);
+    }
+
+    /** Predicate for {@code get(i) == key} that decodes one batch at a time. */
+    IntPredicate matcher(long key) {
+        return new IntPredicate() {
+            private final long[] batch = new long[ColumnSegment.BATCH];
+            private int start = -1;
+
+            @Override
+            public boolean test(int i) {
+                int b = i & -ColumnSegment.BATCH;
+                if (b != start) {
+                    decode(b, Math.min(ColumnSegment.BATCH, count - b), batch);
+                    start = b;
+                }
+                return batch[i - b] == key;
+            }
+        };
+    }
+}
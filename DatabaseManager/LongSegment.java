@@ -0,0 +1,38 @@
+import java.util.function.IntPredicate;
+
+/**
+ * INTEGER and BOOLEAN (as 0/1) values.
+ * Author: Eyasu Solomon
+ */
+class LongSegment extends ColumnSegment {
+    private final DataType type;
+    private final LongColumn values;
+
+    private LongSegment(DataType type, int count, long[] nulls, LongColumn values) {
+        super(count, nulls, type == DataType.INTEGER ? count * 4L : ((count + 63) >>> 6) * 8L);
+        this.type = type;
+        this.values = values;
+    }
+
+    static LongSegment encode(DataType type, Object[] values, int count, long[] nulls) {
+        long[] longs = toLongs(values, count,
+            v -> type == DataType.INTEGER ? (Integer) v : ((Boolean) v ? 1 : 0));
+        return new LongSegment(type, count, nulls, LongColumn.encode(longs, count));
+    }
+
+    @Override
+    protected Object value(int i) {
+        long v = values.get(i);
+        return type == DataType.INTEGER ? (Object) (int) v : (Object) (v != 0);
+    }
+
+    @Override
+    protected IntPredicate matches(String literal) {
+        Object key = type.keyOf(literal);
+        if (key == null) return i -> false;
+        return values.matcher(type == DataType.INTEGER ? (Integer) key : ((Boolean) key ? 1 : 0));
+    }
+
+    @Override public String encoding() { return values.encoding(); }
+    @Override protected long valueBytes() { return values.bytes(); }
+}
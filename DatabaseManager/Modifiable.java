@@ -0,0 +1,11 @@
+import java.util.*;
+
+/**
+ * Row changes by single-column equality.
+ * Author: Eyasu Solomon
+ */
+interface Modifiable {
+    void insert(Map<String, Object> values);
+    int update(String whereCol, String whereVal, String setCol, String setVal);
+    int delete(String column, String value);
+}
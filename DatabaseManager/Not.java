@@ -0,0 +1,16 @@
+/**
+ * NOT of a condition.
+ * Author: Eyasu Solomon
+ */
+final class Not extends Expr {
+    final Expr operand;
+
+    Not(Expr operand) {
+        this.operand = operand;
+    }
+
+    @Override
+    public String toString() {
+        return "NOT " + operand;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * One key of ORDER BY: a column, or in a grouped SELECT also an aggregate named by its text.
+ * Author: Eyasu Solomon
+ */
+final class OrderItem {
+    final String column;
+    final boolean ascending;
+
+    OrderItem(String column, boolean ascending) {
+        this.column = column;
+        this.ascending = ascending;
+    }
+
+    @Override
+    public String toString() {
+        return column + (ascending ? "" : " DESC");
+    }
+}
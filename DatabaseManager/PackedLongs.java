@@ -0,0 +1,60 @@
+import java.util.*;
+
+/**
+ * Fixed-width unsigned values packed back to back into longs.
+ * Author: Eyasu Solomon
+ */
+final class PackedLongs {
+    final int bits;
+    private final long[] words;
+
+    PackedLongs(long[] values, int count, int bits) {
+        this.bits = bits;
+        this.words = new long[(int) (((long) count * bits + 63) >>> 6)];
+        if (bits == 0) return;
+        for (int i = 0; i < count; i++) {
+            long bit = (long) i * bits;
+            int w = (int) (bit >>> 6);
+            int off = (int) (bit & 63);
+            words[w] |= values[i] << off;
+            if (off + bits > 64) words[w + 1] |= values[i] >>> (64 - off);
+        }
+    }
+
+    /** Bits needed for {@code value} read as unsigned. */
+    static int bitsFor(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    long get(int i) {
+        if (bits == 0) return 0;
+        long bit = (long) i * bits;
+        int w = (int) (bit >>> 6);
+        int off = (int) (bit & 63);
+        long v = words[w] >>> off;
+        if (off + bits > 64) v |= words[w + 1] << (64 - off);
+        return bits == 64 ? v : v & ((1L << bits) - 1);
+    }
+
+    /** Sets {@code out[k] = base + get(from + k)} for k below n, walking the words once. */
+    void unpack(int from, int n, long[] out, long base) {
+        if (bits == 0) {
+            Arrays.fill(out, 0, n, base);
+            return;
+        }
+        long mask = bits == 64 ? -1L : (1L << bits) - 1;
+        long bit = (long) from * bits;
+        int w = (int) (bit >>> 6);
+        int off = (int) (bit & 63);
+        for (int k = 0; k < n; k++) {
+            long v = words[w] >>> off;
+            if (off + bits > 64) v |= words[w + 1] << (64 - off);
+            out[k] = base + (v & mask);
+            off += bits;
+            w += off >>> 6;
+            off &= 63;
+        }
+    }
+
+    long bytes() { return 16 + words.length * 8L; }
+}
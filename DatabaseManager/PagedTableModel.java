@@ -0,0 +1,270 @@
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * A table model that reads its rows from a {@link RecordCursor} a page at
+ * a time, as the table shows them.
+ * Author: Eyasu Solomon
+ *
+ * Only the pages the table asks for are fetched, and never on the event
+ * thread: a missing page is read on the given executor while its cells show
+ * {@link #LOADING}, and the table is told once it arrives. Pages asked for
+ * last are read first, so a fast scroll does not queue every page it passed.
+ * Scrolling forward reads on from the cursor and passes over the rows it
+ * jumps without building them. Every few pages the cursor is forked, so
+ * scrolling back to a page that is no longer held resumes from the nearest
+ * fork before it instead of rescanning from the first row. The
+ * {@code dbm.guiPages} (default 64) most recently shown pages of
+ * {@value #PAGE_ROWS} rows, and as many forks, are kept, so memory stays
+ * bounded however large the result. Until the cursor reaches its end, the
+ * row count is its estimate, corrected as pages arrive.
+ *
+ * Like any Swing model it is used on the event dispatch thread.
+ */
+final class PagedTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final int PAGE_ROWS = 256;
+
+    /** Shown in the cells of a page that is still being read. */
+    static final String LOADING = "...";
+
+    private final String[] columns;
+    private final Executor executor;
+    private final int maxPages;
+
+    // Event thread only
+    private final LinkedHashMap<Integer, Object[][]> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    private int rowCount;
+    private boolean exact;
+    private volatile boolean closed;
+
+    // Pages asked for and not yet being read, oldest first
+    private final ArrayDeque<Integer> wanted = new ArrayDeque<>();
+    private boolean draining;
+
+    // Reader state, guarded by itself: one page is read at a time
+    private final Object reader = new Object();
+    private RecordCursor cursor;
+    private long position;                  // row the cursor returns next
+    private long total = -1;                // rows of the result, once the cursor reached its end
+    private final TreeMap<Long, RecordCursor> forks = new TreeMap<>();
+    private long forkRows = 16L * PAGE_ROWS;
+    private volatile long fetches;
+
+    PagedTableModel(String[] columns, RecordCursor cursor, Executor executor) {
+        this(columns, cursor, executor, Integer.getInteger("dbm.guiPages", 64));
+    }
+
+    /** Reads the first page on the calling thread, so a new model shows rows at once. */
+    PagedTableModel(String[] columns, RecordCursor cursor, Executor executor, int maxPages) {
+        if (maxPages < 1) {
+            throw new IllegalArgumentException("A paged model must hold at least one page: " + maxPages);
+        }
+        this.columns = columns.clone();
+        this.executor = executor;
+        this.maxPages = maxPages;
+        this.cursor = cursor;
+        this.pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+                return size() > maxPages;
+            }
+        };
+        Page first = read(0);
+        pages.put(0, first.rows);
+        rowCount = first.rowCount;
+        exact = first.exact;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (closed) return null;
+        int p = row / PAGE_ROWS;
+        Object[][] page = pages.get(p);
+        if (page == null) {
+            request(p);
+            return LOADING;
+        }
+        int i = row % PAGE_ROWS;
+        return i < page.length ? page[i][column] : null;
+    }
+
+    /** True once the cursor was read to its end, so {@link #getRowCount} is exact. */
+    boolean isCountExact() {
+        return exact;
+    }
+
+    /** Pages held now: at most {@code dbm.guiPages}. */
+    int heldPages() {
+        return pages.size();
+    }
+
+    /** Pages read from the cursor so far, counting pages read again after eviction. */
+    long fetchedPages() {
+        return fetches;
+    }
+
+    /**
+     * Closes the cursor and drops every page; the model then shows empty
+     * cells. A page being read finishes first, on the executor.
+     */
+    void close() {
+        if (closed) return;
+        closed = true;
+        pages.clear();
+        loading.clear();
+        synchronized (wanted) {
+            wanted.clear();
+        }
+        executor.execute(() -> {
+            synchronized (reader) {
+                cursor.close();
+                for (RecordCursor fork : forks.values()) fork.close();
+                forks.clear();
+            }
+        });
+    }
+
+    /** Queues page {@code p} unless it is already on its way. */
+    private void request(int p) {
+        if (!loading.add(p)) return;
+        synchronized (wanted) {
+            wanted.addLast(p);
+            // Pages scrolled past long ago are no longer worth reading
+            if (wanted.size() > maxPages) loading.remove(wanted.pollFirst());
+            if (draining) return;
+            draining = true;
+        }
+        executor.execute(this::drain);
+    }
+
+    /** Reads queued pages, newest first, until none is left. */
+    private void drain() {
+        while (true) {
+            int p;
+            synchronized (wanted) {
+                if (wanted.isEmpty() || closed) {
+                    draining = false;
+                    return;
+                }
+                p = wanted.pollLast();
+            }
+            Page page;
+            try {
+                page = read(p);
+            } catch (RuntimeException e) {
+                // The cells of a page that cannot be read stay empty
+                page = new Page(new Object[0][], -1, false);
+            }
+            Page read = page;
+            SwingUtilities.invokeLater(() -> deliver(p, read));
+        }
+    }
+
+    /** Shows page {@code p} and the row count read with it. Event thread. */
+    private void deliver(int p, Page page) {
+        if (closed) return;
+        loading.remove(p);
+        pages.put(p, page.rows);
+        if (page.rowCount >= 0) {
+            exact = page.exact;
+            int old = rowCount;
+            rowCount = page.rowCount;
+            if (rowCount > old) fireTableRowsInserted(old, rowCount - 1);
+            else if (rowCount < old) fireTableRowsDeleted(rowCount, old - 1);
+        }
+        int first = p * PAGE_ROWS;
+        int last = Math.min(first + PAGE_ROWS, rowCount) - 1;
+        if (first <= last) fireTableRowsUpdated(first, last);
+    }
+
+    /**
+     * Reads page {@code p} from the cursor. A page behind the cursor resumes
+     * from the nearest fork before it, or from the first row if there is none.
+     */
+    private Page read(int p) {
+        synchronized (reader) {
+            long first = (long) p * PAGE_ROWS;
+            if (first < position) {
+                Map.Entry<Long, RecordCursor> fork = forks.floorEntry(first);
+                RecordCursor resumed = fork != null ? fork.getValue().fork() : cursor.reopen();
+                cursor.close();
+                cursor = resumed;
+                position = fork != null ? fork.getKey() : 0;
+            }
+            while (position < first) {
+                // Stop at every fork point on the way, so a jump leaves forks behind it
+                long to = Math.min(first, (position / forkRows + 1) * forkRows);
+                long skipped = cursor.skip(to - position);
+                position += skipped;
+                if (position < to) break;
+                fork();
+            }
+            List<Object[]> rows = new ArrayList<>(PAGE_ROWS);
+            while (rows.size() < PAGE_ROWS && cursor.hasNext()) {
+                Record record = cursor.next();
+                Object[] row = new Object[columns.length];
+                for (int c = 0; c < row.length; c++) row[c] = record.get(columns[c]);
+                rows.add(row);
+            }
+            position += rows.size();
+            if (!cursor.hasNext()) total = position;
+            else fork();
+            fetches++;
+            long count = total >= 0 ? total : Math.max(position, cursor.estimatedRows());
+            return new Page(rows.toArray(new Object[0][]), (int) Math.min(count, Integer.MAX_VALUE), total >= 0);
+        }
+    }
+
+    /**
+     * Forks the cursor if it stands on a fork point. Past {@code maxPages}
+     * forks every other one is dropped and the spacing doubles.
+     */
+    private void fork() {
+        if (position % forkRows != 0 || forks.containsKey(position)) return;
+        RecordCursor fork = cursor.fork();
+        if (fork == null) return;
+        forks.put(position, fork);
+        if (forks.size() <= maxPages) return;
+        forkRows *= 2;
+        for (Iterator<Map.Entry<Long, RecordCursor>> it = forks.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, RecordCursor> entry = it.next();
+            if (entry.getKey() % forkRows != 0) {
+                entry.getValue().close();
+                it.remove();
+            }
+        }
+    }
+
+    /** Rows of one page and the row count as it stood when they were read (-1: unknown). */
+    private static final class Page {
+        final Object[][] rows;
+        final int rowCount;
+        final boolean exact;
+
+        Page(Object[][] rows, int rowCount, boolean exact) {
+            this.rows = rows;
+            this.rowCount = rowCount;
+            this.exact = exact;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BinaryOperator;
+
+/**
+ * Splits a scan over the slots of a table into ranges run on a shared
+ * ForkJoinPool.
+ * Author: Eyasu Solomon
+ *
+ * A scan of more than {@code threshold} slots is halved, on batch
+ * boundaries, until each range holds at most the larger of
+ * {@code threshold} slots and four ranges per pool thread. Each range is
+ * scanned on its own and the partial results are merged left to right, so
+ * rows come back in slot order exactly as from a single-threaded scan.
+ * Smaller scans run on the calling thread and never touch the pool.
+ *
+ * Set the pool size with {@code -Ddbm.scanThreads} (default: one per
+ * core) and the threshold with {@code -Ddbm.parallelThreshold} or
+ * {@link #setThreshold}.
+ *
+ * Under a {@link QueryControl} each range is scanned {@value #BATCH} slots
+ * at a time, so the query's progress is counted and it can be cancelled
+ * between batches.
+ */
+final class ParallelScan {
+    /** A scan of slots {@code [from, to)}. */
+    interface Range<T> {
+        T scan(int from, int to);
+    }
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+        Integer.getInteger("dbm.scanThreads", Runtime.getRuntime().availableProcessors()));
+
+    private static volatile int threshold = Integer.getInteger("dbm.parallelThreshold", 65_536);
+
+    /** Slots a controlled scan reads between checks; whole vector batches. */
+    static final int BATCH = 16 * VectorBatch.SIZE;
+
+    // Most workers any scan used on this thread since resetWorkers()
+    private static final ThreadLocal<int[]> WORKERS = ThreadLocal.withInitial(() -> new int[1]);
+
+    private ParallelScan() {
+    }
+
+    static int getThreshold() {
+        return threshold;
+    }
+
+    /** Scans of at most {@code slots} slots run on the calling thread. */
+    static void setThreshold(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("Threshold must be positive: " + slots);
+        }
+        threshold = slots;
+    }
+
+    static int getParallelism() {
+        return POOL.getParallelism();
+    }
+
+    /** Starts counting workers for a new query on this thread. */
+    static void resetWorkers() {
+        WORKERS.get()[0] = 0;
+    }
+
+    /** Most threads any scan of this thread's current query ran on; 1 if none scanned. */
+    static int workersUsed() {
+        return Math.max(1, WORKERS.get()[0]);
+    }
+
+    /** Runs {@code range} over slots {@code [0, size)} and merges the partial results in slot order. */
+    static <T> T run(int size, Range<T> range, BinaryOperator<T> merge) {
+        QueryControl control = QueryControl.current();
+        if (control != null) control.startScan(size);
+        int limit = threshold;
+        if (size <= limit) {
+            record(1);
+            return scan(range, merge, 0, size, control);
+        }
+        int tasks = POOL.getParallelism() * 4;
+        int grain = Math.max(limit, (size + tasks - 1) / tasks);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        T result;
+        try {
+            result = POOL.invoke(new Split<>(range, merge, 0, size, grain, threads, control));
+        } catch (RuntimeException e) {
+            // Joins rethrow a worker's exception as a copy that wraps it; report the original
+            RuntimeException original = e;
+            while (original.getCause() != null && original.getCause().getClass() == original.getClass()) {
+                original = (RuntimeException) original.getCause();
+            }
+            throw original;
+        }
+        record(threads.size());
+        return result;
+    }
+
+    /** Matching slots of every range, concatenated in order. */
+    static int[] slots(int size, Range<int[]> range) {
+        return run(size, range, (a, b) -> {
+            int[] all = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, all, a.length, b.length);
+            return all;
+        });
+    }
+
+    static <T> List<T> list(int size, Range<List<T>> range) {
+        return run(size, range, (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+    }
+
+    /** {@code range} over {@code [from, to)}: at once, or in batches under a control. */
+    private static <T> T scan(Range<T> range, BinaryOperator<T> merge, int from, int to, QueryControl control) {
+        if (control == null) return range.scan(from, to);
+        T result = null;
+        for (int start = from; start < to || result == null; start += BATCH) {
+            int end = Math.min(to, start + BATCH);
+            T part = range.scan(start, end);
+            control.scanned(end - start);
+            result = result == null ? part : merge.apply(result, part);
+        }
+        return result;
+    }
+
+    private static void record(int workers) {
+        int[] most = WORKERS.get();
+        most[0] = Math.max(most[0], workers);
+    }
+
+    private static final class Split<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final Range<T> range;
+        private final BinaryOperator<T> merge;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final Set<Thread> threads;
+        private final QueryControl control;
+
+        Split(Range<T> range, BinaryOperator<T> merge, int from, int to, int grain, Set<Thread> threads,
+              QueryControl control) {
+            this.range = range;
+            this.merge = merge;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.threads = threads;
+            this.control = control;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= grain) {
+                threads.add(Thread.currentThread());
+                return scan(range, merge, from, to, control);
+            }
+            // Split on a batch boundary so vectorized ranges keep whole batches
+            int mid = from + ((to - from) / 2 + VectorBatch.SIZE - 1) / VectorBatch.SIZE * VectorBatch.SIZE;
+            if (mid >= to) mid = from + (to - from) / 2;
+            Split<T> left = new Split<>(range, merge, from, mid, grain, threads, control);
+            left.fork();
+            T right = new Split<>(range, merge, mid, to, grain, threads, control).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Results of recent SELECTs, reused while the tables they read are unchanged.
+ * Author: Eyasu Solomon
+ *
+ * Entries are keyed by the statement rendered back to SQL, so spacing,
+ * keyword case and a trailing semicolon do not matter. Each remembers the
+ * tables it read and their change counts when it was computed; an insert,
+ * update or delete of any of them (from SQL, the menus, an import or log
+ * replay) changes the count, and the entry is dropped the next time it is
+ * looked up. Dropping or re-creating a table does the same. The least
+ * recently used entries go first once there are more than
+ * {@code dbm.queryCacheEntries} (default 256) or they would need more than
+ * {@code dbm.queryCacheMB} (default 32). Caching is off unless
+ * {@code -Ddbm.queryCache=true} or {@link #setEnabled} turns it on.
+ *
+ * Cached results are shared by every caller and must not be changed.
+ */
+final class QueryCache {
+    private static final int ROW_BYTES = 64;        // list slot, row array or Record and its map
+    private static final int VALUE_BYTES = 24;      // a reference and a boxed value
+    private static final int ENTRY_BYTES = 200;     // key, entry and map node
+
+    // Whether the current thread's last lookup was answered from a cache
+    private static final ThreadLocal<Boolean> LAST_HIT = ThreadLocal.withInitial(() -> false);
+
+    /** A result and the tables it was computed from. */
+    private static final class Entry {
+        final Object result;
+        final Table[] tables;
+        final long[] changes;
+        final long bytes;
+
+        Entry(Object result, Table[] tables, long[] changes, long bytes) {
+            this.result = result;
+            this.tables = tables;
+            this.changes = changes;
+            this.bytes = bytes;
+        }
+
+        /** True if every table is still the one named and unchanged. */
+        boolean isCurrent(Table[] current) {
+            for (int t = 0; t < tables.length; t++) {
+                if (tables[t] != current[t] || tables[t].getChangeCount() != changes[t]) return false;
+            }
+            return true;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile boolean enabled = Boolean.getBoolean("dbm.queryCache");
+    private volatile long memoryBudget = Long.getLong("dbm.queryCacheMB", 32L) << 20;
+    private volatile int maxEntries = Integer.getInteger("dbm.queryCacheEntries", 256);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Turns caching on or off; turning it off drops every entry. */
+    void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+        this.enabled = enabled;
+        if (!enabled) clear();
+    }
+
+    /** Entries needing more than {@code bytes} together evict the least recently used. */
+    void setMemoryBudget(long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Query cache memory budget must be positive: " + bytes);
+        }
+        memoryBudget = bytes;
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    void setMaxEntries(int entries) {
+        if (entries < 1) {
+            throw new IllegalArgumentException("Query cache must hold at least one entry: " + entries);
+        }
+        maxEntries = entries;
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /** True if the current thread's last {@link #get} was answered from the cache. */
+    static boolean lastWasHit() {
+        return LAST_HIT.get();
+    }
+
+    /**
+     * The cached result of {@code key} if none of {@code tables} changed
+     * since it was computed, else {@code query}'s result, which is cached
+     * unless a table changed while it ran. Table change counts are read
+     * before the query, so a result never outlives a change it missed.
+     */
+    <T> T get(String key, Table[] tables, Supplier<T> query) {
+        LAST_HIT.set(false);
+        if (!enabled) return query.get();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isCurrent(tables)) {
+                hits++;
+                LAST_HIT.set(true);
+                @SuppressWarnings("unchecked")
+                T result = (T) entry.result;
+                return result;
+            }
+            if (entry != null) {
+                remove(key);
+                invalidations++;
+            }
+            misses++;
+        }
+        long[] changes = new long[tables.length];
+        for (int t = 0; t < tables.length; t++) changes[t] = tables[t].getChangeCount();
+        T result = query.get();
+        if (result instanceof List) {
+            @SuppressWarnings("unchecked")
+            T shared = (T) Collections.unmodifiableList((List<?>) result);
+            result = shared;
+        }
+        long size = ENTRY_BYTES + 2L * key.length() + estimateBytes(result);
+        synchronized (this) {
+            Entry entry = new Entry(result, tables.clone(), changes, size);
+            if (enabled && size <= memoryBudget && entry.isCurrent(tables)) {
+                Entry old = entries.put(key, entry);
+                if (old != null) bytes -= old.bytes;
+                bytes += size;
+                evict();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The cached result of {@code key} if there is a current one, else null.
+     * Unlike {@link #get} a miss computes and caches nothing, for callers that
+     * stream their rows instead.
+     */
+    <T> T peek(String key, Table[] tables) {
+        LAST_HIT.set(false);
+        if (!enabled) return null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.isCurrent(tables)) return null;
+            hits++;
+            LAST_HIT.set(true);
+            @SuppressWarnings("unchecked")
+            T result = (T) entry.result;
+            return result;
+        }
+    }
+
+    /** Drops every entry; the counters keep running. */
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /** e.g. "12 hits, 3 misses (80% hit ratio), 4 entries, 18 KB". */
+    synchronized String describe() {
+        long lookups = hits + misses;
+        return hits + (hits == 1 ? " hit, " : " hits, ") + misses + (misses == 1 ? " miss" : " misses")
+            + " (" + (lookups == 0 ? 0 : Math.round(100.0 * hits / lookups)) + "% hit ratio), "
+            + entries.size() + (entries.size() == 1 ? " entry, " : " entries, ") + (bytes + 1023) / 1024 + " KB"
+            + (invalidations + evictions > 0 ? ", " + invalidations + " invalidated, " + evictions + " evicted" : "");
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) bytes -= entry.bytes;
+    }
+
+    /** Drops least recently used entries until both bounds hold. */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > memoryBudget) && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /** Rough heap footprint of a result: a list of rows, Records or values. */
+    private static long estimateBytes(Object result) {
+        if (!(result instanceof List)) return VALUE_BYTES;
+        long size = ROW_BYTES;
+        for (Object item : (List<?>) result) {
+            if (item instanceof Object[]) {
+                size += ROW_BYTES;
+                for (Object value : (Object[]) item) size += valueBytes(value);
+            } else if (item instanceof Record) {
+                size += 2 * ROW_BYTES;
+                for (Object value : ((Record) item).getData().values()) size += 32 + valueBytes(value);
+            } else {
+                size += valueBytes(item);
+            }
+        }
+        return size;
+    }
+
+    private static long valueBytes(Object value) {
+        return value instanceof String ? VALUE_BYTES + 16 + 2L * ((String) value).length() : VALUE_BYTES;
+    }
+}
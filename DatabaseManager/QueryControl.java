@@ -0,0 +1,90 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cancellation and progress of a query running on another thread.
+ * Author: Eyasu Solomon
+ *
+ * A front end runs a statement through {@link #run} on a background thread
+ * and may call {@link #cancel} from any thread. While it runs, every
+ * {@link ParallelScan} and {@link TableCursor} of the statement counts the
+ * slots it will scan and has scanned. Between batches of
+ * {@value ParallelScan#BATCH} slots (a cursor's chunks, rows added to a
+ * sort, spilled sort runs and join partitions) it stops with a
+ * {@link CancellationException} once the query is cancelled. Writes check only while they look for their
+ * rows, so a cancelled UPDATE or DELETE changes nothing. Threads are never
+ * interrupted: that would close the log's file channel under a writer.
+ */
+final class QueryControl {
+    private static final ThreadLocal<QueryControl> CURRENT = new ThreadLocal<>();
+
+    private volatile boolean cancelled;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+
+    /** Runs {@code query} on this thread under this control. */
+    <T> T run(Supplier<T> query) {
+        QueryControl outer = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            check();
+            return query.get();
+        } finally {
+            CURRENT.set(outer);
+        }
+    }
+
+    /** The control of the query running on this thread, or null. */
+    static QueryControl current() {
+        return CURRENT.get();
+    }
+
+    /** Stops the query at its next batch boundary. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Slots scanned so far. */
+    long scanned() {
+        return scanned.get();
+    }
+
+    /** Slots of every scan started so far; grows as a join or sort starts further scans. */
+    long total() {
+        return total.get();
+    }
+
+    /** Percent of {@link #total} scanned, 0 to 100. */
+    int percent() {
+        long all = total.get();
+        return all == 0 ? 0 : (int) Math.min(100, scanned.get() * 100 / all);
+    }
+
+    /** Counts a scan of {@code slots} slots about to start. */
+    void startScan(long slots) {
+        check();
+        total.addAndGet(slots);
+    }
+
+    /** Counts {@code slots} scanned, then stops if the query was cancelled. */
+    void scanned(long slots) {
+        scanned.addAndGet(slots);
+        check();
+    }
+
+    /** Throws a CancellationException once the query was cancelled. */
+    void check() {
+        if (cancelled) throw new CancellationException("Query cancelled");
+    }
+
+    /** {@link #check} for the query running on this thread, if any. */
+    static void checkCancelled() {
+        QueryControl control = CURRENT.get();
+        if (control != null) control.check();
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.*;
+
+/**
+ * Cost-based choices from {@link TableStatistics}: which index, if any,
+ * should answer a WHERE clause, and in which order a chain of INNER JOINs
+ * should run.
+ * Author: Eyasu Solomon
+ *
+ * Costs are in rows read. A scan reads every slot, a fraction of a row
+ * each when it runs as vectorized batches; an index probe reads its
+ * matching rows one at a time and out of order, so each costs more than a
+ * scanned row. A table without statistics keeps the fixed rules: the
+ * first AND-ed condition an index answers, and joins in the order written.
+ */
+final class QueryPlanner {
+    private static final double INDEX_ROW_COST = 1.5;       // a row fetched through an index, vs. one scanned
+    private static final double BATCH_ROW_COST = 0.4;       // a row of a vectorized scan
+    private static final double DEFAULT_FRACTION = 1.0 / 3; // an estimate for conditions the statistics do not cover
+
+    // What the planner decided for this thread's current query, since resetPlan()
+    private static final ThreadLocal<Set<String>> PLAN = ThreadLocal.withInitial(LinkedHashSet::new);
+
+    /** A join of the chain: table {@code table} joined ON its column to a column of table {@code other}. */
+    static final class Edge {
+        final int table;
+        final int column;
+        final int other;
+        final int otherColumn;
+
+        Edge(int table, int column, int other, int otherColumn) {
+            this.table = table;
+            this.column = column;
+            this.other = other;
+            this.otherColumn = otherColumn;
+        }
+    }
+
+    private QueryPlanner() {
+    }
+
+    /** Starts a new query plan on this thread. */
+    static void resetPlan() {
+        PLAN.get().clear();
+    }
+
+    /** What the planner decided for the current query, e.g. "index on age (~120 rows)". */
+    static String lastPlan() {
+        return String.join("; ", PLAN.get());
+    }
+
+    /**
+     * Estimated share of the table's rows that satisfy {@code e}. AND
+     * multiplies, as if the conditions were independent; OR adds what the
+     * right side matches outside the left.
+     */
+    static double selectivity(TableStatistics stats, List<Column> columns, Expr e) {
+        if (e instanceof Logical) {
+            Logical l = (Logical) e;
+            double left = selectivity(stats, columns, l.left);
+            double right = selectivity(stats, columns, l.right);
+            return l.and ? left * right : left + right - left * right;
+        }
+        if (e instanceof Not) {
+            return 1 - selectivity(stats, columns, ((Not) e).operand);
+        }
+        String column = e instanceof Comparison ? ((Comparison) e).column
+            : e instanceof Between ? ((Between) e).column : ((IsNull) e).column;
+        ColumnStatistics col = column(stats, columns, column);
+        if (col == null) return DEFAULT_FRACTION;
+        if (e instanceof IsNull) {
+            double nulls = 1 - col.nonNullFraction();
+            return ((IsNull) e).negated ? 1 - nulls : nulls;
+        }
+        try {
+            KeyRange range;
+            if (e instanceof Between) {
+                range = KeyRange.between(col.type, ((Between) e).low, ((Between) e).high);
+            } else {
+                Comparison cmp = (Comparison) e;
+                switch (cmp.op) {
+                    case EQ: return col.equalFraction(col.type.keyOf(cmp.value));
+                    case NE: return Math.max(0, col.nonNullFraction() - col.equalFraction(col.type.keyOf(cmp.value)));
+                    default: range = KeyRange.of(col.type, cmp.op, cmp.value); break;
+                }
+            }
+            return range.empty ? 0 : col.rangeFraction(range.low, range.lowInclusive, range.high, range.highInclusive);
+        } catch (IllegalArgumentException invalid) {
+            return DEFAULT_FRACTION;
+        }
+    }
+
+    /**
+     * Of the conditions an index can answer, those worth probing, most
+     * selective first; empty when scanning {@code rows} rows is cheaper
+     * than fetching any of them through its index.
+     */
+    static List<Expr> accessPaths(String table, TableStatistics stats, List<Column> columns, List<Expr> indexed,
+                                  int rows, boolean batches) {
+        double scan = rows * (batches ? BATCH_ROW_COST : 1.0);
+        List<Expr> paths = new ArrayList<>(indexed);
+        Map<Expr, Double> estimate = new IdentityHashMap<>();
+        for (Expr e : indexed) estimate.put(e, selectivity(stats, columns, e) * rows);
+        paths.sort(Comparator.comparingDouble(estimate::get));
+        paths.removeIf(e -> estimate.get(e) * INDEX_ROW_COST > scan);
+        if (paths.isEmpty()) {
+            Expr best = indexed.stream().min(Comparator.comparingDouble(estimate::get)).get();
+            PLAN.get().add("scan " + table + " (~" + rows + " rows; " + best + " would fetch ~"
+                + Math.round(estimate.get(best)) + " through its index)");
+        } else {
+            PLAN.get().add("index for " + table + "." + paths.get(0) + " (~" + Math.round(estimate.get(paths.get(0)))
+                + " of " + rows + " rows)");
+        }
+        return paths;
+    }
+
+    /**
+     * A join order for a chain of INNER JOINs: {@code rows[t]} rows of
+     * table t after its own filters, joined along {@code edges}, which
+     * connect every table. It starts with the pair of tables whose join is
+     * estimated smallest and adds, each time, the connected table that
+     * keeps the intermediate result smallest. A join of a and b is
+     * estimated at |a| x |b| / max(distinct keys of a, of b).
+     */
+    static int[] joinOrder(String[] names, long[] rows, double[][] distinct, List<Edge> edges) {
+        int tables = rows.length;
+        int[] order = new int[tables];
+        boolean[] joined = new boolean[tables];
+        Edge first = null;
+        double size = Double.MAX_VALUE;
+        for (Edge e : edges) {
+            double estimate = joinSize(rows[e.table], keys(distinct, rows, e.table, e.column),
+                                       rows[e.other], keys(distinct, rows, e.other, e.otherColumn));
+            if (estimate < size || estimate == size && Math.min(e.table, e.other) < Math.min(first.table, first.other)) {
+                first = e;
+                size = estimate;
+            }
+        }
+        boolean otherFirst = rows[first.other] <= rows[first.table];
+        order[0] = otherFirst ? first.other : first.table;
+        order[1] = otherFirst ? first.table : first.other;
+        joined[first.table] = joined[first.other] = true;
+        for (int n = 2; n < tables; n++) {
+            int next = -1;
+            double best = Double.MAX_VALUE;
+            for (Edge e : edges) {
+                for (int side = 0; side < 2; side++) {
+                    int t = side == 0 ? e.table : e.other;
+                    int from = side == 0 ? e.other : e.table;
+                    if (joined[t] || !joined[from]) continue;
+                    double joinedKeys = Math.min(keys(distinct, rows, from, side == 0 ? e.otherColumn : e.column), size);
+                    double estimate = joinSize((long) Math.ceil(size), joinedKeys, rows[t],
+                                               keys(distinct, rows, t, side == 0 ? e.column : e.otherColumn));
+                    if (estimate < best || estimate == best && t < next) {
+                        next = t;
+                        best = estimate;
+                    }
+                }
+            }
+            order[n] = next;
+            joined[next] = true;
+            size = best;
+        }
+        StringBuilder plan = new StringBuilder("join order ");
+        for (int n = 0; n < tables; n++) plan.append(n > 0 ? ", " : "").append(names[order[n]]);
+        PLAN.get().add(plan.append(" (~").append(Math.round(size)).append(" rows)").toString());
+        return order;
+    }
+
+    private static double joinSize(long leftRows, double leftKeys, long rightRows, double rightKeys) {
+        return (double) leftRows * rightRows / Math.max(1, Math.max(leftKeys, rightKeys));
+    }
+
+    /** Distinct keys of a join column among a table's filtered rows; unique when unknown. */
+    private static double keys(double[][] distinct, long[] rows, int table, int column) {
+        double known = distinct[table] == null ? Double.NaN : distinct[table][column];
+        return Double.isNaN(known) ? rows[table] : Math.min(known, rows[table]);
+    }
+
+    private static ColumnStatistics column(TableStatistics stats, List<Column> columns, String name) {
+        for (int c = 0; c < columns.size() && c < stats.columnCount(); c++) {
+            if (columns.get(c).getName().equalsIgnoreCase(name)) return stats.column(c);
+        }
+        return null;
+    }
+}
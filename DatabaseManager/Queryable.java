@@ -0,0 +1,10 @@
+import java.util.*;
+
+/**
+ * Whole-table and single-column equality queries.
+ * Author: Eyasu Solomon
+ */
+interface Queryable {
+    List<Record> selectAll();
+    List<Record> selectWhere(String column, String value);
+}
@@ -0,0 +1,28 @@
+import java.util.*;
+import java.time.LocalDateTime;
+
+/**
+ * One row: its id, column values and creation time.
+ * Author: Eyasu Solomon
+ */
+class Record {
+    private int id;
+    private Map<String, Object> data;
+    private LocalDateTime createdAt;
+    
+    public Record(int id, Map<String, Object> data) {
+        this(id, data, LocalDateTime.now());
+    }
+    
+    public Record(int id, Map<String, Object> data, LocalDateTime createdAt) {
+        this.id = id;
+        this.data = new HashMap<>(data);
+        this.createdAt = createdAt;
+    }
+    
+    public int getId() { return id; }
+    public Object get(String column) { return data.get(column); }
+    public void set(String column, Object value) { data.put(column, value); }
+    public Map<String, Object> getData() { return data; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
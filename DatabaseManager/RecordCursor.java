@@ -0,0 +1,80 @@
+import java.util.*;
+
+/**
+ * Rows read one at a time. Closing a cursor before its end stops the
+ * query; a cursor that is not read to its end should be closed.
+ * Author: Eyasu Solomon
+ */
+interface RecordCursor extends Iterator<Record>, AutoCloseable {
+    @Override
+    void close();
+    
+    /** A new cursor over the same rows from the first, read from the same snapshot. */
+    RecordCursor reopen();
+    
+    /** Rows of the whole cursor, from the first: exact once it was read to its end, else an estimate. */
+    long estimatedRows();
+    
+    /** Passes over up to {@code n} rows without building them; returns how many were passed. */
+    default long skip(long n) {
+        long skipped = 0;
+        while (skipped < n && hasNext()) {
+            next();
+            skipped++;
+        }
+        return skipped;
+    }
+    
+    /**
+     * A new cursor on the same snapshot that returns the rows this one has
+     * not returned yet, and whose {@link #reopen} still starts from the
+     * first; null if this cursor cannot fork. Reading or closing either
+     * leaves the other where it is.
+     */
+    default RecordCursor fork() {
+        return null;
+    }
+    
+    /** A cursor over rows already in a list. */
+    static RecordCursor of(List<Record> records) {
+        return of(records, 0);
+    }
+    
+    private static RecordCursor of(List<Record> records, int from) {
+        return new RecordCursor() {
+            private int next = from;
+            private boolean closed;
+            
+            @Override
+            public boolean hasNext() {
+                return !closed && next < records.size();
+            }
+            
+            @Override
+            public Record next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return records.get(next++);
+            }
+            
+            @Override
+            public RecordCursor fork() {
+                return of(records, next);
+            }
+            
+            @Override
+            public void close() {
+                closed = true;
+            }
+            
+            @Override
+            public RecordCursor reopen() {
+                return of(records);
+            }
+            
+            @Override
+            public long estimatedRows() {
+                return records.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.*;
+
+/**
+ * RLE: one value and end position per run of equal values.
+ * Author: Eyasu Solomon
+ */
+class RleLongs extends LongColumn {
+    private final long[] values;
+    private final int[] ends;            // exclusive end of each run
+
+    RleLongs(long[] source, int count, int runs) {
+        super(count);
+        this.values = new long[runs];
+        this.ends = new int[runs];
+        int r = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i == count || source[i] != source[i - 1]) {
+                values[r] = source[i - 1];
+                ends[r++] = i;
+            }
+        }
+    }
+
+    @Override
+    long get(int i) {
+        return values[runOf(i)];
+    }
+
+    @Override
+    void decode(int from, int n, long[] out) {
+        int r = runOf(from);
+        for (int k = 0; k < n; k++) {
+            while (from + k >= ends[r]) r++;
+            out[k] = values[r];
+        }
+    }
+
+    private int runOf(int i) {
+        int r = Arrays.binarySearch(ends, i);
+        return r >= 0 ? r + 1 : -r - 1;
+    }
+
+    @Override long bytes() { return values.length * 12L; }
+    @Override String encoding() { return "RLE(" + values.length + " runs)"; }
+}
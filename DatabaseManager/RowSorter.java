@@ -0,0 +1,317 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * ORDER BY, LIMIT and OFFSET over rows of values.
+ * Author: Eyasu Solomon
+ *
+ * Rows are added one at a time and come back sorted, without the first
+ * {@code offset} of them and at most {@code limit} long. With a LIMIT only
+ * the best offset + limit rows seen so far are kept, in a heap whose root
+ * is the worst of them: sorting n rows costs O(n log k) time and memory
+ * for k rows. Without one, rows are sorted in memory until they would
+ * need more than the memory budget; from then on each full buffer is
+ * sorted and written to a temporary file as a run, and the runs are
+ * merged. Set the budget with {@code -Ddbm.sortMemoryMB} (default 64) or
+ * {@link #setMemoryBudget}.
+ *
+ * The sort is stable: rows that compare equal keep the order they were
+ * added in.
+ */
+final class RowSorter {
+    private static final int ROW_BYTES = 64;        // entry, row array and the references to them
+    private static final int VALUE_BYTES = 24;      // a reference and a boxed value
+
+    // Tags of the values in a run file
+    private static final byte NULL = 0, INTEGER = 1, LONG = 2, DOUBLE = 3, BOOLEAN = 4, TEXT = 5;
+
+    private static volatile long memoryBudget = Long.getLong("dbm.sortMemoryMB", 64L) << 20;
+
+    // How each sort of this thread's current query ran, since resetPlan()
+    private static final ThreadLocal<List<String>> PLAN = ThreadLocal.withInitial(ArrayList::new);
+
+    /** A row and its position in the input, which breaks ties. */
+    private static final class Entry {
+        final Object[] row;
+        final long seq;
+
+        Entry(Object[] row, long seq) {
+            this.row = row;
+            this.seq = seq;
+        }
+    }
+
+    private final Comparator<Object[]> order;
+    private final Comparator<Entry> entries;
+    private final long offset;
+    private final long limit;
+    private final long keep;                // rows that can reach the output; -1 for all
+    private PriorityQueue<Entry> heap;      // worst kept row first; null once rows are buffered instead
+    private List<Entry> buffer;
+    private final List<Path> runs = new ArrayList<>();
+    private long bytes;
+    private long added;
+
+    /**
+     * A sorter returning rows in {@code order}, skipping the first
+     * {@code offset} and returning at most {@code limit} (-1: all).
+     */
+    RowSorter(Comparator<Object[]> order, long offset, long limit) {
+        this.order = order;
+        this.entries = (a, b) -> {
+            int cmp = order.compare(a.row, b.row);
+            return cmp != 0 ? cmp : Long.compare(a.seq, b.seq);
+        };
+        this.offset = offset;
+        this.limit = limit;
+        this.keep = limit < 0 ? -1 : limit + offset < 0 ? Long.MAX_VALUE : limit + offset;
+        if (keep >= 0) heap = new PriorityQueue<>(11, entries.reversed());
+        else buffer = new ArrayList<>();
+    }
+
+    static long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /** Sorts needing more than {@code bytes} without a small enough LIMIT are merged from runs on disk. */
+    static void setMemoryBudget(long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Sort memory budget must be positive: " + bytes);
+        }
+        memoryBudget = bytes;
+    }
+
+    /** Starts a new query plan on this thread. */
+    static void resetPlan() {
+        PLAN.get().clear();
+    }
+
+    /** How each sort of this thread's current query ran, e.g. "top 10 of 5000 rows in a heap". */
+    static String lastPlan() {
+        return String.join("; ", PLAN.get());
+    }
+
+    /**
+     * Orders rows by the values at {@code positions}, each key deciding
+     * only where the ones before it are equal. Values are compared as
+     * {@code types[k]} (values that do not convert count as NULL), or for
+     * a null type as numbers by value, else as text. NULLs sort last
+     * ascending and first descending.
+     */
+    static Comparator<Object[]> order(int[] positions, DataType[] types, boolean[] ascending) {
+        return (a, b) -> {
+            for (int k = 0; k < positions.length; k++) {
+                Object x = key(types[k], a[positions[k]]);
+                Object y = key(types[k], b[positions[k]]);
+                int cmp;
+                if (x == null || y == null) cmp = x == y ? 0 : (x == null ? 1 : -1);
+                else cmp = types[k] == null ? compareValues(x, y) : types[k].compare(x, y);
+                if (cmp != 0) return ascending[k] ? cmp : -cmp;
+            }
+            return 0;
+        };
+    }
+
+    /** Orders two non-NULL values of one result column; integer and decimal numbers compare by value. */
+    static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            boolean whole = !(a instanceof Double) && !(b instanceof Double);
+            return whole ? Long.compare(((Number) a).longValue(), ((Number) b).longValue())
+                         : Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Boolean && b instanceof Boolean) {
+            return Boolean.compare((Boolean) a, (Boolean) b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    /** The rows of {@code rows} that OFFSET and LIMIT (-1: all) keep, for rows that need no sorting. */
+    static <T> List<T> page(List<T> rows, long offset, long limit) {
+        int from = (int) Math.min(offset, rows.size());
+        int to = limit < 0 ? rows.size() : (int) Math.min(from + limit, rows.size());
+        return from == 0 && to == rows.size() ? rows : new ArrayList<>(rows.subList(from, to));
+    }
+
+    /** Adds a row; the sorter keeps it, so it must not change afterwards. */
+    void add(Object[] row) {
+        long seq = added++;
+        if ((seq & (ParallelScan.BATCH - 1)) == 0) QueryControl.checkCancelled();
+        if (heap != null) {
+            if (heap.size() < keep) {
+                heap.add(new Entry(row, seq));
+                bytes += size(row);
+            } else if (keep > 0 && order.compare(row, heap.peek().row) < 0) {
+                bytes -= size(heap.poll().row);
+                heap.add(new Entry(row, seq));
+                bytes += size(row);
+            }
+            if (bytes > memoryBudget) {
+                // A LIMIT too large to keep in memory: sort through disk and cut the output instead
+                buffer = new ArrayList<>(heap);
+                heap = null;
+                spill();
+            }
+            return;
+        }
+        buffer.add(new Entry(row, seq));
+        bytes += size(row);
+        if (bytes > memoryBudget) spill();
+    }
+
+    /** The rows added so far, sorted, with OFFSET and LIMIT applied. Temporary files are gone afterwards. */
+    List<Object[]> rows() {
+        try {
+            if (runs.isEmpty()) {
+                List<Entry> sorted = heap != null ? new ArrayList<>(heap) : buffer;
+                sorted.sort(entries);
+                PLAN.get().add(heap != null ? "top " + keep + " of " + describe(added) + " in a heap"
+                                            : "sorted " + describe(added) + " in memory");
+                List<Object[]> out = new ArrayList<>();
+                long end = limit < 0 ? sorted.size() : Math.min(sorted.size(), offset + limit);
+                for (long i = offset; i < end; i++) out.add(sorted.get((int) i).row);
+                return out;
+            }
+            if (!buffer.isEmpty()) spill();
+            PLAN.get().add("sorted " + describe(added) + " in " + runs.size() + " runs on disk");
+            return merge();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sort spill failed", e);
+        } finally {
+            for (Path run : runs) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    // a leftover temporary file is harmless
+                }
+            }
+            runs.clear();
+        }
+    }
+
+    private static String describe(long rows) {
+        return rows + (rows == 1 ? " row" : " rows");
+    }
+
+    private static Object key(DataType type, Object value) {
+        if (type == null || value == null) return value;
+        switch (type) {
+            case INTEGER: if (value instanceof Integer) return value; break;
+            case DOUBLE: if (value instanceof Double) return value; break;
+            case BOOLEAN: if (value instanceof Boolean) return value; break;
+            default: if (value instanceof String) return value; break;
+        }
+        return Table.typed(type, value);
+    }
+
+    /** Rough heap footprint of a kept row. */
+    private static long size(Object[] row) {
+        long size = ROW_BYTES;
+        for (Object value : row) {
+            size += value instanceof String ? VALUE_BYTES + 16 + 2L * ((String) value).length() : VALUE_BYTES;
+        }
+        return size;
+    }
+
+    /** Sorts the buffer and writes it as the next run; only the rows that could reach the output. */
+    private void spill() {
+        QueryControl.checkCancelled();
+        buffer.sort(entries);
+        long count = keep < 0 ? buffer.size() : Math.min(keep, buffer.size());
+        try {
+            Path run = Files.createTempFile("dbm-sort", ".run");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                for (int i = 0; i < count; i++) writeRow(out, buffer.get(i).row);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sort spill failed", e);
+        }
+        buffer.clear();
+        bytes = 0;
+    }
+
+    /** Merges the runs; ties go to the earlier run, which holds the earlier rows. */
+    private List<Object[]> merge() throws IOException {
+        List<DataInputStream> inputs = new ArrayList<>();
+        try {
+            Object[][] heads = new Object[runs.size()][];
+            PriorityQueue<Integer> next = new PriorityQueue<>(runs.size(), (a, b) -> {
+                int cmp = order.compare(heads[a], heads[b]);
+                return cmp != 0 ? cmp : Integer.compare(a, b);
+            });
+            for (int r = 0; r < runs.size(); r++) {
+                inputs.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(r)), 1 << 16)));
+                heads[r] = readRow(inputs.get(r));
+                if (heads[r] != null) next.add(r);
+            }
+            List<Object[]> out = new ArrayList<>();
+            long skip = offset;
+            while (!next.isEmpty() && (limit < 0 || out.size() < limit)) {
+                int r = next.poll();
+                if (skip > 0) skip--;
+                else out.add(heads[r]);
+                heads[r] = readRow(inputs.get(r));
+                if (heads[r] != null) next.add(r);
+            }
+            return out;
+        } finally {
+            for (DataInputStream in : inputs) in.close();
+        }
+    }
+
+    private static void writeRow(DataOutputStream out, Object[] row) throws IOException {
+        out.writeInt(row.length);
+        for (Object value : row) {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                byte[] text = value.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(TEXT);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        }
+    }
+
+    /** The next row of a run, or null at its end. */
+    private static Object[] readRow(DataInputStream in) throws IOException {
+        int width;
+        try {
+            width = in.readInt();
+        } catch (EOFException end) {
+            return null;
+        }
+        Object[] row = new Object[width];
+        for (int i = 0; i < width; i++) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL: break;
+                case INTEGER: row[i] = in.readInt(); break;
+                case LONG: row[i] = in.readLong(); break;
+                case DOUBLE: row[i] = in.readDouble(); break;
+                case BOOLEAN: row[i] = in.readBoolean(); break;
+                default:
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    row[i] = new String(text, StandardCharsets.UTF_8);
+                    break;
+            }
+        }
+        return row;
+    }
+}
@@ -0,0 +1,113 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Row-oriented storage: one Record (and one HashMap) per row.
+ * Author: Eyasu Solomon
+ */
+class RowStorage extends TableStorage {
+    private volatile Record[] records;
+    private int size;
+
+    public RowStorage(List<Column> columns) {
+        super(columns);
+        this.records = new Record[16];
+    }
+
+    @Override public StorageMode getMode() { return StorageMode.ROW; }
+    @Override public int size() { return size; }
+    @Override public int idAt(int slot) { return records[slot].getId(); }
+    @Override public Record recordAt(int slot) { return records[slot]; }
+
+    @Override
+    public Object valueAt(int slot, int column) {
+        return records[slot].get(columns.get(column).getName());
+    }
+
+    @Override
+    public long createdAtMillis(int slot) {
+        return records[slot].getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public int append(int id, Map<String, Object> values) {
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = values.get(columns.get(i).getName());
+        }
+        return appendValues(id, System.currentTimeMillis(), row);
+    }
+
+    @Override
+    public int appendValues(int id, long createdAtMillis, Object[] values) {
+        // Coerce every value first so a bad row leaves the table untouched
+        Map<String, Object> data = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            Object value = columns.get(i).validate(values[i]);
+            if (value != null) data.put(columns.get(i).getName(), value);
+        }
+        LocalDateTime created = LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAtMillis), ZoneId.systemDefault());
+        return add(new Record(id, data, created));
+    }
+
+    @Override
+    public int appendVersion(int slot, String column, Object value) {
+        Record old = records[slot];
+        Record copy = new Record(old.getId(), new HashMap<>(old.getData()), old.getCreatedAt());
+        put(copy, column, value);
+        return add(copy);
+    }
+
+    @Override
+    public void set(int slot, String column, Object value) {
+        put(records[slot], column, value);
+    }
+
+    private void put(Record record, String column, Object value) {
+        int c = columnIndex(column);
+        if (c < 0) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        record.set(columns.get(c).getName(), columns.get(c).validate(value));
+    }
+
+    private int add(Record record) {
+        Record[] rows = records;
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size + (size >> 1));
+            records = rows;
+        }
+        rows[size] = record;
+        return size++;
+    }
+
+    @Override
+    public IntPredicate equalTo(String column, String literal) {
+        String key = resolve(column);
+        Record[] rows = records;
+        return slot -> {
+            Object val = rows[slot].get(key);
+            return val != null && val.toString().equals(literal);
+        };
+    }
+
+    @Override
+    public int appendCopy(TableStorage source, int slot) {
+        // Published records are never changed, so the copy can share them
+        return add(source.recordAt(slot));
+    }
+
+    private String resolve(String column) {
+        int c = columnIndex(column);
+        return c >= 0 ? columns.get(c).getName() : column;
+    }
+
+    @Override
+    public long estimateBytes(int rows) {
+        // Record header + HashMap table + one entry and boxed value per column
+        return (long) rows * (64 + columns.size() * 56L);
+    }
+}
@@ -0,0 +1,819 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Runs SQL statements and console commands against a {@link Database}.
+ * Author: Eyasu Solomon
+ */
+class SQLParser {
+    private Database database;
+    
+    public SQLParser(Database database) {
+        this.database = database;
+    }
+    
+    /** Parses and runs one statement, or a script of several, printing its result or error. */
+    public void execute(String sql) {
+        if (ScriptRunner.isScript(sql)) {
+            executeScript(sql);
+            return;
+        }
+        try {
+            execute(StatementParser.parse(sql));
+        } catch (IllegalArgumentException e) {
+            System.out.println(Colors.RED + e.getMessage() + Colors.RESET);
+        }
+    }
+    
+    /** Runs a parsed statement, printing its result; throws IllegalArgumentException on error. */
+    public void execute(SqlStatement statement) {
+        if (statement instanceof SelectStatement) {
+            executeSelect((SelectStatement) statement);
+        } else if (statement instanceof InsertStatement) {
+            int rows = insert((InsertStatement) statement);
+            System.out.println(Colors.GREEN + rows + " row(s) inserted" + Colors.RESET);
+        } else if (statement instanceof UpdateStatement) {
+            int rows = update((UpdateStatement) statement);
+            System.out.println(Colors.GREEN + rows + " row(s) updated" + workers() + Colors.RESET);
+        } else if (statement instanceof DeleteStatement) {
+            int rows = delete((DeleteStatement) statement);
+            System.out.println(Colors.GREEN + rows + " row(s) deleted" + workers() + Colors.RESET);
+        } else if (statement instanceof CreateTableStatement) {
+            Table table = createTable((CreateTableStatement) statement);
+            System.out.println(Colors.GREEN + "Table '" + table.getName() + "' created (" + 
+                table.getStorageMode() + " storage)" + Colors.RESET);
+        } else if (statement instanceof CreateIndexStatement) {
+            CreateIndexStatement create = (CreateIndexStatement) statement;
+            TableIndex index = createIndex(create);
+            System.out.println(Colors.GREEN + create.type + " index created on " + create.table + "(" + 
+                index.getColumn().getName() + ")" + Colors.RESET);
+        } else {
+            executeCommand((CommandStatement) statement);
+        }
+    }
+    
+    // ------------------------------------------------------------------
+    // Statements, shared with the GUI
+    // ------------------------------------------------------------------
+    
+    /**
+     * Rows of a SELECT without aggregates, filtered and ordered. This and the
+     * other statements that scan start a new count for
+     * {@link ParallelScan#workersUsed}.
+     */
+    public List<Record> select(SelectStatement select) {
+        Table table = recordsTable(select);
+        return database.getQueryCache().get("records: " + select, new Table[] {table}, () ->
+            table.select(select.where, select.orderBy, select.offset, select.limit));
+    }
+    
+    /**
+     * The rows of {@link #select} as a cursor, built as they are read. A
+     * result already in the query cache is read from there, but a miss
+     * streams from the table and caches nothing, so a large result is never
+     * held in memory whole.
+     */
+    public RecordCursor open(SelectStatement select) {
+        Table table = recordsTable(select);
+        List<Record> cached = database.getQueryCache().peek("records: " + select, new Table[] {table});
+        if (cached != null) return RecordCursor.of(cached);
+        return table.open(select.where, select.orderBy, select.offset, select.limit);
+    }
+    
+    /** Starts a query returning records: the table read, if the SELECT returns records. */
+    private Table recordsTable(SelectStatement select) {
+        ParallelScan.resetWorkers();
+        QueryPlanner.resetPlan();
+        if (select.isGrouped()) {
+            throw new IllegalArgumentException("GROUP BY and HAVING return groups, not records");
+        }
+        if (select.isJoin()) {
+            throw new IllegalArgumentException("A JOIN returns rows of several tables, not records");
+        }
+        RowSorter.resetPlan();
+        return requireTable(select.table);
+    }
+    
+    /**
+     * Rows of a SELECT without aggregates as arrays of the {@link #columnsOf shown} values.
+     * Like {@link #select} and {@link #aggregate}, the result may come from the
+     * database's {@link QueryCache} and must not be changed.
+     */
+    public List<Object[]> rows(SelectStatement select) {
+        ParallelScan.resetWorkers();
+        QueryPlanner.resetPlan();
+        RowSorter.resetPlan();
+        return database.getQueryCache().get("rows: " + select, tablesOf(select), () -> {
+            if (select.isJoin()) return joined(select);
+            if (select.isGrouped()) return grouped(select);
+            List<String> names = new ArrayList<>();
+            for (Column col : columnsOf(select)) names.add(col.getName());
+            return requireTable(select.table).project(select.where, names, select.orderBy, select.offset, select.limit);
+        });
+    }
+    
+    /** One value per item of an all-aggregate SELECT. */
+    public List<Object> aggregate(SelectStatement select) {
+        ParallelScan.resetWorkers();
+        QueryPlanner.resetPlan();
+        Table table = requireTable(select.table);
+        return database.getQueryCache().get("values: " + select, new Table[] {table}, () -> aggregate(table, select));
+    }
+    
+    private static List<Object> aggregate(Table table, SelectStatement select) {
+        for (SelectItem item : select.items) {
+            if (!item.isSimple()) {
+                // SUM, AVG or COUNT(DISTINCT): one hash aggregation pass computes every item
+                return Arrays.asList(table.aggregate(select.where, Collections.emptyList(), select.items).get(0));
+            }
+        }
+        List<Object> values = new ArrayList<>();
+        for (SelectItem item : select.items) {
+            String column = item.column.equals("*") ? null : table.getColumn(item.column).getName();
+            switch (item.function) {
+                case "MIN": values.add(table.min(column, select.where)); break;
+                case "MAX": values.add(table.max(column, select.where)); break;
+                default: values.add(table.count(column, select.where)); break;
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * The columns a SELECT shows: all of them for *, else the listed ones.
+     * A grouped SELECT shows group columns and aggregates, each aggregate
+     * named by its text. A joined SELECT names its columns as written, and
+     * for * qualifies the names more than one table has.
+     */
+    public List<Column> columnsOf(SelectStatement select) {
+        if (select.isJoin()) {
+            JoinScope scope = scope(select);
+            int[] columns = joinedColumns(scope, select);
+            List<Column> shown = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) {
+                String name = select.items.isEmpty() ? scope.label(columns[i]) : select.items.get(i).column;
+                shown.add(new Column(name, scope.column(columns[i]).getType()));
+            }
+            return shown;
+        }
+        Table table = requireTable(select.table);
+        if (select.isGrouped()) return groupedColumns(table, select);
+        if (select.items.isEmpty()) return table.getColumns();
+        List<Column> shown = new ArrayList<>();
+        for (SelectItem item : select.items) {
+            if (item.isAggregate()) {
+                throw new IllegalArgumentException("Aggregates cannot be mixed with columns: " + item);
+            }
+            shown.add(table.getColumn(item.column));
+        }
+        return shown;
+    }
+    
+    public int insert(InsertStatement insert) {
+        Table table = requireTable(insert.table);
+        List<Column> columns = table.getColumns();
+        int[] target = new int[insert.columns == null ? columns.size() : insert.columns.size()];
+        for (int i = 0; i < target.length; i++) {
+            target[i] = insert.columns == null ? i : columns.indexOf(table.getColumn(insert.columns.get(i)));
+        }
+        List<Object[]> rows = new ArrayList<>(insert.rows.size());
+        for (String[] values : insert.rows) {
+            if (values.length != target.length) {
+                throw new IllegalArgumentException("Expected " + target.length + " values, found " + values.length);
+            }
+            Object[] row = new Object[columns.size()];
+            for (int i = 0; i < target.length; i++) {
+                row[target[i]] = values[i];
+            }
+            rows.add(row);
+        }
+        return table.insertBatch(rows);
+    }
+    
+    public int update(UpdateStatement update) {
+        ParallelScan.resetWorkers();
+        QueryPlanner.resetPlan();
+        return requireTable(update.table).update(update.where, update.columns, update.values);
+    }
+    
+    public int delete(DeleteStatement delete) {
+        ParallelScan.resetWorkers();
+        QueryPlanner.resetPlan();
+        return requireTable(delete.table).delete(delete.where);
+    }
+    
+    public Table createTable(CreateTableStatement create) {
+        if (database.getTable(create.table) != null) {
+            throw new IllegalArgumentException("Table already exists: " + create.table);
+        }
+        Table table = new Table(create.table, create.columns, create.mode);
+        database.addTable(table);
+        return table;
+    }
+    
+    public TableIndex createIndex(CreateIndexStatement create) {
+        return requireTable(create.table).createIndex(create.column, create.type);
+    }
+    
+    /** ANALYZE [table]: collects planner statistics of the table, or of every table. */
+    public List<Table> analyze(CommandStatement analyze) {
+        List<Table> tables = new ArrayList<>();
+        if (analyze.table != null) {
+            tables.add(requireTable(analyze.table));
+        } else {
+            for (String name : database.getTableNames()) tables.add(database.getTable(name));
+        }
+        for (Table table : tables) table.analyze();
+        return tables;
+    }
+    
+    private Table requireTable(String name) {
+        Table table = database.getTable(name);
+        if (table == null) {
+            throw new IllegalArgumentException("Table not found: " + name);
+        }
+        return table;
+    }
+    
+    /** The tables a SELECT reads: FROM, then each JOIN. */
+    private Table[] tablesOf(SelectStatement select) {
+        Table[] tables = new Table[1 + select.joins.size()];
+        tables[0] = requireTable(select.table);
+        for (int j = 0; j < select.joins.size(); j++) tables[j + 1] = requireTable(select.joins.get(j).table);
+        return tables;
+    }
+    
+    private List<Column> groupedColumns(Table table, SelectStatement select) {
+        if (select.items.isEmpty()) {
+            throw new IllegalArgumentException("SELECT * cannot be used with GROUP BY");
+        }
+        Set<String> keys = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        keys.addAll(select.groupBy);
+        List<Column> shown = new ArrayList<>();
+        for (SelectItem item : select.items) {
+            if (item.isAggregate()) {
+                DataType type = item.column.equals("*") ? null : table.getColumn(item.column).getType();
+                shown.add(new Column(item.toString(), HashAggregation.resultType(item, type)));
+            } else if (keys.contains(item.column)) {
+                shown.add(table.getColumn(item.column));
+            } else {
+                throw new IllegalArgumentException("Column must appear in GROUP BY: " + item.column);
+            }
+        }
+        return shown;
+    }
+    
+    /** One row per group that passes HAVING, ordered, as the {@link #columnsOf shown} values. */
+    private List<Object[]> grouped(SelectStatement select) {
+        Table table = requireTable(select.table);
+        List<Column> shown = columnsOf(select);
+        List<String> keys = new ArrayList<>();
+        for (String name : select.groupBy) keys.add(table.getColumn(name).getName());
+        List<SelectItem> aggregates = new ArrayList<>();
+        for (SelectItem item : select.items) {
+            if (item.isAggregate()) aggregates.add(item);
+        }
+        aggregates.addAll(select.hidden);
+        List<Object[]> groups = table.aggregate(select.where, keys, aggregates);
+    
+        // Where each group column and aggregate is in a group's row, by name
+        Map<String, Integer> positions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int k = 0; k < keys.size(); k++) positions.putIfAbsent(keys.get(k), k);
+        for (int i = 0; i < aggregates.size(); i++) positions.putIfAbsent(aggregates.get(i).toString(), keys.size() + i);
+    
+        if (select.having != null) {
+            Predicate<Object[]> having = groupCondition(select.having, positions);
+            groups.removeIf(having.negate());
+        }
+        if (!select.orderBy.isEmpty()) {
+            int[] sortKeys = new int[select.orderBy.size()];
+            boolean[] ascending = new boolean[sortKeys.length];
+            for (int k = 0; k < sortKeys.length; k++) {
+                sortKeys[k] = position(positions, select.orderBy.get(k).column, "ORDER BY");
+                ascending[k] = select.orderBy.get(k).ascending;
+            }
+            // Group columns and aggregates alike compare numbers by value
+            RowSorter sorter = new RowSorter(RowSorter.order(sortKeys, new DataType[sortKeys.length], ascending),
+                select.offset, select.limit);
+            groups.forEach(sorter::add);
+            groups = sorter.rows();
+        } else {
+            groups = RowSorter.page(groups, select.offset, select.limit);
+        }
+        int[] columns = new int[shown.size()];
+        for (int i = 0; i < columns.length; i++) columns[i] = positions.get(shown.get(i).getName());
+        List<Object[]> rows = new ArrayList<>(groups.size());
+        for (Object[] group : groups) {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) row[i] = group[columns[i]];
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    /** The tables of a joined SELECT in FROM order. */
+    private JoinScope scope(SelectStatement select) {
+        JoinScope scope = new JoinScope();
+        scope.add(requireTable(select.table), select.alias);
+        for (JoinClause join : select.joins) {
+            scope.add(requireTable(join.table), join.alias);
+        }
+        return scope;
+    }
+    
+    /** The numbers of the columns a joined SELECT shows. */
+    private static int[] joinedColumns(JoinScope scope, SelectStatement select) {
+        if (select.isGrouped()) {
+            throw new IllegalArgumentException("GROUP BY and HAVING cannot be used with JOIN");
+        }
+        int[] columns = new int[select.items.isEmpty() ? scope.width() : select.items.size()];
+        for (int i = 0; i < columns.length; i++) {
+            if (select.items.isEmpty()) {
+                columns[i] = i;
+                continue;
+            }
+            SelectItem item = select.items.get(i);
+            if (item.isAggregate()) {
+                throw new IllegalArgumentException("Aggregates cannot be used with JOIN: " + item);
+            }
+            columns[i] = scope.resolve(item.column);
+        }
+        return columns;
+    }
+    
+    /**
+     * Rows of a SELECT with JOINs as the {@link #columnsOf shown} values.
+     * Tables are hash joined left to right. A WHERE condition on a single
+     * table filters that table before the joins, unless a LEFT JOIN brings
+     * it in; the rest of WHERE is checked on the joined rows.
+     */
+    private List<Object[]> joined(SelectStatement select) {
+        JoinScope scope = scope(select);
+        int[] shown = joinedColumns(scope, select);
+        int tables = scope.tables.size();
+        Expr[] filters = new Expr[tables];
+        List<Expr> after = new ArrayList<>();
+        if (select.where != null) {
+            List<Expr> conjuncts = new ArrayList<>();
+            select.where.conjuncts(conjuncts);
+            for (Expr e : conjuncts) {
+                long refers = scope.tablesOf(e);
+                int t = Long.numberOfTrailingZeros(refers);
+                if (Long.bitCount(refers) == 1 && (t == 0 || !select.joins.get(t - 1).outer)) {
+                    Expr local = scope.local(e);
+                    filters[t] = filters[t] == null ? local : new Logical(true, filters[t], local);
+                } else {
+                    after.add(e);
+                }
+            }
+        }
+    
+        HashJoin.resetPlan();
+        HashJoin.Tuples[] inputs = new HashJoin.Tuples[tables];
+        List<QueryPlanner.Edge> edges = new ArrayList<>();
+        boolean inner = true;
+        for (int t = 0; t < tables; t++) {
+            Table table = scope.tables.get(t);
+            TableSnapshot s = table.snapshot();
+            inputs[t] = HashJoin.Tuples.of(scope.names.get(t), s, table.matchingSlots(s, filters[t]));
+            if (t == 0) continue;
+            JoinClause join = select.joins.get(t - 1);
+            int a = scope.resolve(join.leftKey);
+            int b = scope.resolve(join.rightKey);
+            if (scope.tableOf(a) == t) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (scope.tableOf(b) != t || scope.tableOf(a) >= t) {
+                throw new IllegalArgumentException("JOIN " + scope.names.get(t)
+                    + " must be ON one of its columns = a column of a table before it");
+            }
+            edges.add(new QueryPlanner.Edge(t, b, scope.tableOf(a), a));
+            inner &= !join.outer;
+        }
+    
+        // Joins run in the order written, unless the planner can reorder a chain of INNER JOINs
+        int[] order = inner && tables > 2 ? joinOrder(scope, inputs, edges) : null;
+        if (order == null) {
+            order = new int[tables];
+            for (int t = 0; t < tables; t++) order[t] = t;
+        }
+        int[] position = new int[tables];       // where each table's slots are in the joined rows
+        boolean[] joined = new boolean[tables];
+        HashJoin.Tuples rows = inputs[order[0]];
+        joined[order[0]] = true;
+        for (int n = 1; n < tables; n++) {
+            int t = order[n];
+            for (QueryPlanner.Edge e : edges) {
+                int a, b;                       // the key in the rows joined so far, and in table t
+                if (e.table == t && joined[e.other]) {
+                    a = e.otherColumn;
+                    b = e.column;
+                } else if (e.other == t && joined[e.table]) {
+                    a = e.column;
+                    b = e.otherColumn;
+                } else {
+                    continue;
+                }
+                rows = HashJoin.join(rows, joinKey(scope, a, position[scope.tableOf(a)]), inputs[t], joinKey(scope, b, 0),
+                    e.table == t && select.joins.get(t - 1).outer);
+                break;
+            }
+            position[t] = n;
+            joined[t] = true;
+        }
+    
+        // Values to read from the joined rows: the shown columns, then those the rest of WHERE or ORDER BY needs
+        Map<Integer, Integer> positions = new LinkedHashMap<>();
+        for (int c : shown) positions.putIfAbsent(c, positions.size());
+        for (Expr e : after) {
+            for (int c : scope.columnsOf(e)) positions.putIfAbsent(c, positions.size());
+        }
+        for (OrderItem item : select.orderBy) positions.putIfAbsent(scope.resolve(item.column), positions.size());
+        int[] tableAt = new int[positions.size()];
+        int[] columnAt = new int[positions.size()];
+        for (Map.Entry<Integer, Integer> e : positions.entrySet()) {
+            tableAt[e.getValue()] = position[scope.tableOf(e.getKey())];
+            columnAt[e.getValue()] = scope.indexOf(e.getKey());
+        }
+        Predicate<Object[]> condition = row -> true;
+        for (Expr e : after) condition = condition.and(joinCondition(e, scope, positions));
+    
+        List<Object[]> values;
+        if (select.orderBy.isEmpty()) {
+            values = HashJoin.values(rows, tableAt, columnAt);
+            if (!after.isEmpty()) values.removeIf(condition.negate());
+            values = RowSorter.page(values, select.offset, select.limit);
+        } else {
+            // Joined rows stream into the sorter, so ORDER BY ... LIMIT keeps only the rows it returns
+            int[] keys = new int[select.orderBy.size()];
+            DataType[] types = new DataType[keys.length];
+            boolean[] ascending = new boolean[keys.length];
+            for (int k = 0; k < keys.length; k++) {
+                int column = scope.resolve(select.orderBy.get(k).column);
+                keys[k] = positions.get(column);
+                types[k] = scope.column(column).getType();
+                ascending[k] = select.orderBy.get(k).ascending;
+            }
+            RowSorter sorter = new RowSorter(RowSorter.order(keys, types, ascending), select.offset, select.limit);
+            Predicate<Object[]> matches = condition;
+            HashJoin.forEach(rows, tableAt, columnAt, row -> {
+                if (matches.test(row)) sorter.add(row);
+            });
+            values = sorter.rows();
+        }
+        if (positions.size() == shown.length) return values;     // nothing extra was read
+        List<Object[]> result = new ArrayList<>(values.size());
+        for (Object[] value : values) {
+            Object[] row = new Object[shown.length];
+            for (int i = 0; i < row.length; i++) row[i] = value[positions.get(shown[i])];
+            result.add(row);
+        }
+        return result;
+    }
+    
+    /**
+     * The planner's order for a chain of INNER JOINs, by the filtered row
+     * counts and the distinct counts of the join columns; null unless
+     * every table has statistics.
+     */
+    private static int[] joinOrder(JoinScope scope, HashJoin.Tuples[] inputs, List<QueryPlanner.Edge> edges) {
+        int tables = inputs.length;
+        String[] names = new String[tables];
+        long[] rows = new long[tables];
+        double[][] distinct = new double[tables][];
+        for (int t = 0; t < tables; t++) {
+            TableStatistics stats = scope.tables.get(t).getStatistics();
+            if (stats == null) return null;
+            names[t] = scope.names.get(t);
+            rows[t] = inputs[t].count;
+            distinct[t] = new double[stats.columnCount()];
+            for (int c = 0; c < distinct[t].length; c++) {
+                // Filters keep about their share of each column's distinct values
+                double kept = stats.rows == 0 ? 0 : Math.min(1, (double) rows[t] / stats.rows);
+                distinct[t][c] = Math.max(1, stats.column(c).distinct * kept);
+            }
+        }
+        List<QueryPlanner.Edge> local = new ArrayList<>();
+        for (QueryPlanner.Edge e : edges) {
+            local.add(new QueryPlanner.Edge(e.table, scope.indexOf(e.column), e.other, scope.indexOf(e.otherColumn)));
+        }
+        return QueryPlanner.joinOrder(names, rows, distinct, local);
+    }
+    
+    private static HashJoin.Key joinKey(JoinScope scope, int column, int table) {
+        return new HashJoin.Key(table, scope.indexOf(column), scope.column(column).getType());
+    }
+    
+    /**
+     * Compiles a condition over joined rows, comparing values as WHERE does
+     * on one table: = and &lt;&gt; by text, ranges by typed value.
+     */
+    private static Predicate<Object[]> joinCondition(Expr e, JoinScope scope, Map<Integer, Integer> positions) {
+        if (e instanceof Logical) {
+            Logical l = (Logical) e;
+            Predicate<Object[]> left = joinCondition(l.left, scope, positions);
+            Predicate<Object[]> right = joinCondition(l.right, scope, positions);
+            return l.and ? left.and(right) : left.or(right);
+        }
+        if (e instanceof Not) {
+            return joinCondition(((Not) e).operand, scope, positions).negate();
+        }
+        int column = scope.resolve(JoinScope.columnOf(e));
+        int p = positions.get(column);
+        DataType type = scope.column(column).getType();
+        if (e instanceof IsNull) {
+            boolean negated = ((IsNull) e).negated;
+            return row -> (row[p] == null) != negated;
+        }
+        KeyRange range;
+        if (e instanceof Between) {
+            range = KeyRange.between(type, ((Between) e).low, ((Between) e).high);
+        } else {
+            Comparison cmp = (Comparison) e;
+            String literal = cmp.value;
+            if (cmp.op == TokenType.EQ) return row -> row[p] != null && row[p].toString().equals(literal);
+            if (cmp.op == TokenType.NE) return row -> row[p] != null && !row[p].toString().equals(literal);
+            range = KeyRange.of(type, cmp.op, literal);
+        }
+        if (range.empty) return row -> false;
+        return row -> {
+            Object v = Table.typed(type, row[p]);
+            return v != null && range.contains(type, v);
+        };
+    }
+    
+    private static int position(Map<String, Integer> positions, String name, String clause) {
+        Integer p = positions.get(name);
+        if (p == null) {
+            throw new IllegalArgumentException("Unknown column in " + clause + ": " + name);
+        }
+        return p;
+    }
+    
+    /**
+     * Compiles a HAVING condition over group rows. Numbers compare as
+     * numbers, also for = and &lt;&gt;; other values as in WHERE.
+     */
+    private static Predicate<Object[]> groupCondition(Expr e, Map<String, Integer> positions) {
+        if (e instanceof Logical) {
+            Logical l = (Logical) e;
+            Predicate<Object[]> left = groupCondition(l.left, positions);
+            Predicate<Object[]> right = groupCondition(l.right, positions);
+            return l.and ? left.and(right) : left.or(right);
+        }
+        if (e instanceof Not) {
+            return groupCondition(((Not) e).operand, positions).negate();
+        }
+        if (e instanceof IsNull) {
+            int p = position(positions, ((IsNull) e).column, "HAVING");
+            boolean negated = ((IsNull) e).negated;
+            return row -> (row[p] == null) != negated;
+        }
+        if (e instanceof Between) {
+            Between b = (Between) e;
+            int p = position(positions, b.column, "HAVING");
+            return row -> row[p] != null && compareValue(row[p], b.low) >= 0 && compareValue(row[p], b.high) <= 0;
+        }
+        Comparison cmp = (Comparison) e;
+        int p = position(positions, cmp.column, "HAVING");
+        String literal = cmp.value;
+        switch (cmp.op) {
+            case EQ: return row -> row[p] != null && equalsValue(row[p], literal);
+            case NE: return row -> row[p] != null && !equalsValue(row[p], literal);
+            case LT: return row -> row[p] != null && compareValue(row[p], literal) < 0;
+            case LE: return row -> row[p] != null && compareValue(row[p], literal) <= 0;
+            case GT: return row -> row[p] != null && compareValue(row[p], literal) > 0;
+            default: return row -> row[p] != null && compareValue(row[p], literal) >= 0;
+        }
+    }
+    
+    private static boolean equalsValue(Object value, String literal) {
+        if (!(value instanceof Number)) return value.toString().equals(literal);
+        try {
+            return compareValue(value, literal) == 0;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    /** Compares a group value with a literal of the same kind; a number or boolean cannot be compared with NULL. */
+    private static int compareValue(Object value, String literal) {
+        if (!(value instanceof Number) && !(value instanceof Boolean)) {
+            return value.toString().compareTo(literal);
+        }
+        Object key = (value instanceof Number ? DataType.DOUBLE : DataType.BOOLEAN).coerce(literal);
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot compare " + value + " with an empty value in HAVING");
+        }
+        return RowSorter.compareValues(value, key);
+    }
+    
+    // ------------------------------------------------------------------
+    // Console output
+    // ------------------------------------------------------------------
+    
+    private void executeSelect(SelectStatement select) {
+        if (select.isJoin()) {
+            printRows(columnsOf(select), rows(select), "row");
+            System.out.println(Colors.CYAN + "Hash join: " + HashJoin.lastPlan() + workers() + Colors.RESET);
+            printPlan();
+            printCache();
+            return;
+        }
+        if (select.isGrouped()) {
+            printRows(columnsOf(select), rows(select), "group");
+            System.out.println(Colors.CYAN + "Scanned" + workers() + Colors.RESET);
+            printPlan();
+            printCache();
+            return;
+        }
+        if (select.isAggregate()) {
+            // MIN/MAX without WHERE are served by the first or last leaf of a BTREE index when one exists
+            List<Object> values = aggregate(select);
+            System.out.println();
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                System.out.println(select.items.get(i) + " = " + (value != null ? value : "NULL"));
+            }
+            System.out.println(Colors.CYAN + "Scanned" + workers() + Colors.RESET);
+            printCache();
+            return;
+        }
+        List<Column> shown = columnsOf(select);
+        requireTable(select.table).printRecords(open(select), shown);
+        System.out.println(Colors.CYAN + "Scanned" + workers() + Colors.RESET);
+        printPlan();
+        printCache();
+    }
+    
+    /**
+     * What the cost-based planner chose, for analyzed tables, and how
+     * ORDER BY ran, when the statement sorted rather than read an index in order.
+     */
+    private static void printPlan() {
+        String plan = QueryPlanner.lastPlan();
+        if (!plan.isEmpty()) System.out.println(Colors.CYAN + "Plan: " + plan + Colors.RESET);
+        String sort = RowSorter.lastPlan();
+        if (!sort.isEmpty()) System.out.println(Colors.CYAN + "Sort: " + sort + Colors.RESET);
+    }
+    
+    /** Whether the result came from the query cache, and its hit ratio so far, when caching is on. */
+    private void printCache() {
+        QueryCache cache = database.getQueryCache();
+        if (!cache.isEnabled()) return;
+        System.out.println(Colors.CYAN + "Cache: " + (QueryCache.lastWasHit() ? "hit" : "miss") + "; " +
+            cache.describe() + Colors.RESET);
+    }
+    
+    /** Prints result rows, each one a {@code noun} ("row", "group") in the summary. */
+    private static void printRows(List<Column> shown, List<Object[]> rows, String noun) {
+        if (rows.isEmpty()) {
+            System.out.println(Colors.YELLOW + "\nNo " + noun + "s found." + Colors.RESET);
+            return;
+        }
+        System.out.println();
+        for (Column col : shown) {
+            System.out.print(String.format("%-15s", col.getName()));
+        }
+        System.out.println();
+        System.out.println("─".repeat(shown.size() * 15));
+        for (Object[] row : rows) {
+            for (Object val : row) {
+                String strVal = val != null ? val.toString() : "NULL";
+                if (strVal.length() > 12) strVal = strVal.substring(0, 12) + "..";
+                System.out.print(String.format("%-15s", strVal));
+            }
+            System.out.println();
+        }
+        System.out.println("\n" + Colors.GREEN + rows.size() + " " + noun + "(s) returned." + Colors.RESET);
+    }
+    
+    /** How many threads the last statement's scans ran on. */
+    private static String workers() {
+        int n = ParallelScan.workersUsed();
+        return " (" + n + (n == 1 ? " worker)" : " workers)");
+    }
+    
+    private void executeCommand(CommandStatement command) {
+        switch (command.kind) {
+            case SHOW_TABLES:
+                for (String name : database.getTableNames()) {
+                    System.out.println("  " + name);
+                }
+                break;
+            case DESCRIBE:
+                requireTable(command.table).describe();
+                break;
+            case ANALYZE:
+                long start = System.nanoTime();
+                for (Table table : analyze(command)) {
+                    System.out.println(Colors.GREEN + "Analyzed " + table.getName() + ": " +
+                        table.getStatistics().rows + " row(s)" + Colors.RESET);
+                }
+                System.out.println(Colors.CYAN + "Took " + (System.nanoTime() - start) / 1_000_000 + " ms" + Colors.RESET);
+                break;
+            case CHECKPOINT:
+                executeCheckpoint();
+                break;
+            case IMPORT:
+                executeImport(command);
+                break;
+            case RUN:
+                executeRun(command);
+                break;
+            default:
+                executeExport(command);
+                break;
+        }
+    }
+    
+    private void executeCheckpoint() {
+        if (!database.isDurable()) {
+            System.out.println(Colors.RED + "CHECKPOINT needs a write-ahead log (dbm.dataDir)" + Colors.RESET);
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            Path file = database.checkpoint();
+            System.out.printf(Colors.GREEN + "Checkpoint written to %s (%d KB) in %d ms" + Colors.RESET + "%n",
+                file.getFileName(), (Files.size(file) + 1023) / 1024, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            System.out.println(Colors.RED + "Checkpoint failed: " + e.getMessage() + Colors.RESET);
+        }
+    }
+    
+    private void executeImport(CommandStatement command) {
+        // IMPORT 'file' [INTO table]: CSV files need a header line, anything else is read as SQL
+        Path file = Paths.get(command.file);
+        BulkLoader loader = new BulkLoader(database);
+        BulkLoader.Progress progress = (done, total, rows) ->
+            System.out.printf("\r  %3d%%  %,d row(s)", total > 0 ? done * 100 / total : 100, rows);
+        try {
+            BulkLoader.Result result = command.table != null
+                ? loader.loadCsv(file, command.table, progress)
+                : loader.load(file, progress);
+            System.out.println();
+            System.out.println(Colors.GREEN + "Imported " + result + Colors.RESET);
+            for (String error : result.errors) {
+                System.out.println(Colors.YELLOW + "  " + error + Colors.RESET);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println();
+            System.out.println(Colors.RED + "Import failed: " + e.getMessage() + Colors.RESET);
+        }
+    }
+    
+    /** Several statements typed at once: stops at the first that fails. */
+    private void executeScript(String sql) {
+        printScript(new ScriptRunner(database, this::execute).run(sql, null));
+    }
+    
+    private void executeRun(CommandStatement command) {
+        // RUN 'file' [ON ERROR STOP|CONTINUE]: the file is streamed, not read whole
+        ScriptRunner runner = new ScriptRunner(database, this::execute);
+        runner.setContinueOnError(command.continueOnError);
+        ScriptRunner.Progress progress = (done, total, statements) ->
+            System.out.printf("\r  %3d%%  %,d statement(s)", total > 0 ? Math.min(100, done * 100 / total) : 100, statements);
+        try {
+            ScriptRunner.Result result = runner.run(Paths.get(command.file), progress);
+            System.out.println();
+            printScript(result);
+        } catch (IOException | RuntimeException e) {
+            System.out.println();
+            System.out.println(Colors.RED + "Script failed: " + e.getMessage() + Colors.RESET);
+        }
+    }
+    
+    private static void printScript(ScriptRunner.Result result) {
+        String color = result.failed > 0 || result.cancelled ? Colors.YELLOW : Colors.GREEN;
+        System.out.println(color + "Script: " + result + Colors.RESET);
+        for (String error : result.errors) {
+            System.out.println(Colors.RED + "  " + error + Colors.RESET);
+        }
+    }
+    
+    private void executeExport(CommandStatement command) {
+        // EXPORT [table] TO 'file': .csv writes CSV, anything else the binary format;
+        // a whole database exported to a path without .dbm becomes a directory of CSV files
+        Path target = Paths.get(command.file);
+        Exporter exporter = new Exporter(database);
+        Exporter.Progress progress = (done, total) ->
+            System.out.printf("\r  %3d%%  %,d row(s)", total > 0 ? done * 100 / total : 100, done);
+        try {
+            Exporter.Result result = command.table != null
+                ? exporter.exportTable(command.table, target, progress)
+                : exporter.exportDatabase(target, !target.toString().endsWith(Exporter.BINARY_EXTENSION), progress);
+            System.out.println();
+            System.out.println(Colors.GREEN + "Exported " + result + Colors.RESET);
+        } catch (IOException | RuntimeException e) {
+            System.out.println();
+            System.out.println(Colors.RED + "Export failed: " + e.getMessage() + Colors.RESET);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs SQL scripts: statements separated by semicolons, from a file or the
+ * editor.
+ * Author: Eyasu Solomon
+ *
+ * The script is read as a stream and never held whole. A parser thread
+ * splits it at semicolons outside quotes and comments, parses each
+ * statement and queues it; the calling thread executes the queue in script
+ * order, so parsing the next statements overlaps running this one. At most
+ * {@value #QUEUE} units wait in the queue. Consecutive INSERTs into the
+ * same table and columns are merged into one unit of up to
+ * {@value #BATCH_ROWS} rows, applied with a single
+ * {@link Table#insertBatch} and a single log record. A batch that fails is
+ * run again one INSERT at a time, so every statement before the bad one is
+ * applied and the error names its line. With a write-ahead log, statements
+ * do not wait for their changes to be durable; the script waits once, at
+ * its end.
+ *
+ * INSERT, UPDATE, DELETE, CREATE TABLE and CREATE INDEX run here and are
+ * only counted. Every other statement (SELECT, SHOW TABLES, IMPORT ...) is
+ * passed to the front end's {@link Handler}. A statement that fails with
+ * an IllegalArgumentException stops the script, or with
+ * {@link #setContinueOnError} is counted and skipped. Under a
+ * {@link QueryControl} the script stops between units once cancelled.
+ */
+final class ScriptRunner {
+    static final int QUEUE = 256;
+    static final int BATCH_ROWS = 1024;
+    private static final int MAX_ERRORS = 10;
+    private static final long PROGRESS_MS = 100;
+
+    /** Runs the statements a script does not run itself; throws IllegalArgumentException on error. */
+    interface Handler {
+        void execute(SqlStatement statement);
+    }
+
+    /** Reports progress at most every {@value #PROGRESS_MS} ms, and once at the end. */
+    interface Progress {
+        void update(long charsDone, long charsTotal, long statements);
+    }
+
+    /** What a script did. */
+    static final class Result {
+        long statements;            // run without error
+        long failed;
+        long rows;                  // inserted, updated or deleted
+        long inserts;               // INSERT statements among statements
+        long batches;               // insertBatch calls they took
+        long millis;
+        boolean stopped;            // an error ended the script early
+        boolean cancelled;
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            String text = statements + " statement(s) run in " + millis + " ms";
+            if (millis > 0) text += " (" + statements * 1000 / millis + " statements/s)";
+            text += ", " + rows + " row(s) changed";
+            if (inserts > 0) text += ", " + inserts + " INSERT(s) in " + batches + " batch(es)";
+            if (failed > 0) text += ", " + failed + " failed";
+            if (stopped) text += "; stopped at the first error";
+            if (cancelled) text += "; cancelled";
+            return text;
+        }
+    }
+
+    private final Database database;
+    private final SQLParser executor;
+    private final Handler handler;
+    private boolean continueOnError;
+
+    /** A runner over {@code database}; {@code handler} runs the statements other than writes. */
+    ScriptRunner(Database database, Handler handler) {
+        this.database = database;
+        this.executor = new SQLParser(database);
+        this.handler = handler;
+    }
+
+    /** Skip failed statements instead of stopping at the first. */
+    void setContinueOnError(boolean continueOnError) {
+        this.continueOnError = continueOnError;
+    }
+
+    /** True if {@code sql} holds more than one statement. */
+    static boolean isScript(String sql) {
+        try {
+            Splitter splitter = new Splitter(new StringReader(sql));
+            return splitter.next() != null && splitter.next() != null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);      // a StringReader does not fail
+        }
+    }
+
+    /** Runs the script in a UTF-8 file; progress is counted against its size in bytes. */
+    Result run(Path file, Progress progress) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return run(in, Files.size(file), progress);
+        }
+    }
+
+    /** Runs the script in {@code sql}. */
+    Result run(String sql, Progress progress) {
+        try {
+            return run(new StringReader(sql), sql.length(), progress);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Pipeline
+    // ------------------------------------------------------------------
+
+    /** Statements queued together: one statement, a merged run of INSERTs, or a syntax error. */
+    private static final class Unit {
+        static final Unit END = new Unit();
+
+        final List<SqlStatement> statements = new ArrayList<>(1);
+        final List<Integer> lines = new ArrayList<>(1);
+        List<String[]> rows;        // every row of a merged run of INSERTs; null otherwise
+        String error;               // the statement at lines[0] did not parse
+        IOException failure;        // reading the script failed; ends it
+        long charsDone;
+    }
+
+    /** Splits and parses the script on its own thread, stopping early if the runner says so. */
+    private static final class ParserTask implements Runnable {
+        private final Splitter splitter;
+        private final BlockingQueue<Unit> queue;
+        private volatile boolean stopped;
+
+        ParserTask(Reader in, BlockingQueue<Unit> queue) {
+            this.splitter = new Splitter(in);
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            Unit pending = null;
+            try {
+                String text;
+                while ((text = splitter.next()) != null) {
+                    int line = splitter.line();
+                    SqlStatement statement;
+                    try {
+                        statement = StatementParser.parse(text);
+                    } catch (IllegalArgumentException e) {
+                        if (!put(pending)) return;
+                        pending = new Unit();
+                        pending.lines.add(line);
+                        pending.error = e.getMessage();
+                        pending.charsDone = splitter.charsRead();
+                        continue;
+                    }
+                    if (pending != null && joins(pending, statement)) {
+                        InsertStatement insert = (InsertStatement) statement;
+                        if (pending.rows == null) {
+                            pending.rows = new ArrayList<>(((InsertStatement) pending.statements.get(0)).rows);
+                        }
+                        pending.rows.addAll(insert.rows);
+                    } else {
+                        if (!put(pending)) return;
+                        pending = new Unit();
+                    }
+                    pending.statements.add(statement);
+                    pending.lines.add(line);
+                    pending.charsDone = splitter.charsRead();
+                }
+                if (put(pending)) put(Unit.END);
+            } catch (IOException e) {
+                Unit failed = new Unit();
+                failed.failure = e;
+                if (put(pending)) put(failed);
+            }
+        }
+
+        /** Whether {@code statement} is an INSERT that can join the INSERTs of {@code unit}. */
+        private static boolean joins(Unit unit, SqlStatement statement) {
+            if (!(statement instanceof InsertStatement) || unit.error != null) return false;
+            SqlStatement first = unit.statements.get(0);
+            if (!(first instanceof InsertStatement)) return false;
+            InsertStatement insert = (InsertStatement) statement;
+            InsertStatement batch = (InsertStatement) first;
+            int rows = unit.rows == null ? batch.rows.size() : unit.rows.size();
+            return rows + insert.rows.size() <= BATCH_ROWS && batch.table.equalsIgnoreCase(insert.table)
+                && Objects.equals(batch.columns, insert.columns);
+        }
+
+        /** Queues {@code unit} unless null; false once the runner stopped listening. */
+        private boolean put(Unit unit) {
+            if (unit == null) return true;
+            try {
+                while (!stopped) {
+                    if (queue.offer(unit, PROGRESS_MS, TimeUnit.MILLISECONDS)) return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    private Result run(Reader in, long total, Progress progress) throws IOException {
+        long started = System.nanoTime();
+        Result result = new Result();
+        BlockingQueue<Unit> queue = new ArrayBlockingQueue<>(QUEUE);
+        ParserTask parser = new ParserTask(in, queue);
+        Thread thread = new Thread(parser, "script-parser");
+        thread.setDaemon(true);
+        thread.start();
+        List<Unit> units = new ArrayList<>(QUEUE);
+        long charsDone = 0;
+        long reported = System.nanoTime();
+        WriteAheadLog log = database.getLog();
+        if (log != null) log.beginDeferredSync();
+        try {
+            loop:
+            while (true) {
+                units.add(queue.take());
+                queue.drainTo(units, QUEUE - 1);
+                for (Unit unit : units) {
+                    if (unit == Unit.END) break loop;
+                    if (unit.failure != null) throw unit.failure;
+                    QueryControl.checkCancelled();
+                    if (!apply(unit, result)) break loop;
+                    charsDone = unit.charsDone;
+                }
+                units.clear();
+                if (progress != null && System.nanoTime() - reported >= PROGRESS_MS * 1_000_000) {
+                    progress.update(charsDone, total, result.statements);
+                    reported = System.nanoTime();
+                }
+            }
+            if (progress != null) progress.update(result.stopped ? charsDone : total, total, result.statements);
+        } catch (CancellationException e) {
+            result.cancelled = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Script interrupted");
+        } finally {
+            parser.stopped = true;
+            if (log != null) log.endDeferredSync();
+        }
+        result.millis = (System.nanoTime() - started) / 1_000_000;
+        return result;
+    }
+
+    /** Runs one unit; false if an error stops the script. */
+    private boolean apply(Unit unit, Result result) {
+        if (unit.error != null) return failed(result, unit.lines.get(0), unit.error);
+        if (unit.rows != null) {
+            InsertStatement first = (InsertStatement) unit.statements.get(0);
+            try {
+                result.rows += executor.insert(new InsertStatement(first.table, first.columns, unit.rows));
+                result.statements += unit.statements.size();
+                result.inserts += unit.statements.size();
+                result.batches++;
+                return true;
+            } catch (IllegalArgumentException e) {
+                // Nothing of the batch was applied: run it again statement by statement to find the bad one
+            }
+        }
+        for (int i = 0; i < unit.statements.size(); i++) {
+            try {
+                execute(unit.statements.get(i), result);
+                result.statements++;
+            } catch (IllegalArgumentException e) {
+                if (!failed(result, unit.lines.get(i), e.getMessage())) return false;
+            }
+        }
+        return true;
+    }
+
+    private void execute(SqlStatement statement, Result result) {
+        if (statement instanceof InsertStatement) {
+            result.rows += executor.insert((InsertStatement) statement);
+            result.inserts++;
+            result.batches++;
+        } else if (statement instanceof UpdateStatement) {
+            result.rows += executor.update((UpdateStatement) statement);
+        } else if (statement instanceof DeleteStatement) {
+            result.rows += executor.delete((DeleteStatement) statement);
+        } else if (statement instanceof CreateTableStatement) {
+            executor.createTable((CreateTableStatement) statement);
+        } else if (statement instanceof CreateIndexStatement) {
+            executor.createIndex((CreateIndexStatement) statement);
+        } else {
+            handler.execute(statement);
+        }
+    }
+
+    /** Records a failed statement; false if it stops the script. */
+    private boolean failed(Result result, int line, String message) {
+        result.failed++;
+        if (result.errors.size() < MAX_ERRORS) result.errors.add("line " + line + ": " + message);
+        if (continueOnError) return true;
+        result.stopped = true;
+        return false;
+    }
+
+    // ------------------------------------------------------------------
+    // Splitting
+    // ------------------------------------------------------------------
+
+    /**
+     * Cuts a stream of SQL into statements at semicolons outside 'strings',
+     * "names", `names`, -- comments and block comments. Quotes are doubled
+     * to escape them, as the lexer reads them.
+     */
+    static final class Splitter {
+        private final Reader in;
+        private final char[] buffer = new char[1 << 16];
+        private final StringBuilder text = new StringBuilder();
+        private int pos;
+        private int limit;
+        private long read;              // chars consumed
+        private int line = 1;
+        private int startLine;
+
+        Splitter(Reader in) {
+            this.in = in;
+        }
+
+        /** The 1-based line the last statement started on. */
+        int line() { return startLine; }
+
+        /** Chars consumed so far. */
+        long charsRead() { return read; }
+
+        /**
+         * The next statement, from its first token to before its semicolon,
+         * or null at the end. Statements holding only comments are skipped.
+         */
+        String next() throws IOException {
+            text.setLength(0);
+            for (int c; (c = read()) >= 0; ) {
+                if (c == ';') {
+                    if (text.length() > 0) return text.toString();
+                } else if (c == '-' && peek() == '-') {
+                    lineComment();
+                } else if (c == '/' && peek() == '*') {
+                    blockComment();
+                } else if (c == '\'' || c == '"' || c == '`') {
+                    start();
+                    text.append((char) c);
+                    quoted((char) c);
+                } else if (!Character.isWhitespace(c)) {
+                    start();
+                    text.append((char) c);
+                } else if (text.length() > 0) {
+                    text.append((char) c);
+                }
+            }
+            return text.length() > 0 ? text.toString() : null;
+        }
+
+        /** Notes the line of a statement's first token. */
+        private void start() {
+            if (text.length() == 0) startLine = line;
+        }
+
+        private void lineComment() throws IOException {
+            boolean keep = text.length() > 0;
+            if (keep) text.append('-');
+            for (int c; (c = peek()) >= 0 && c != '\n'; ) {
+                read();
+                if (keep) text.append((char) c);
+            }
+        }
+
+        private void blockComment() throws IOException {
+            boolean keep = text.length() > 0;
+            read();                             // the '*', so "/*/" does not close itself
+            if (keep) text.append("/*");
+            int previous = -1;
+            for (int c; (c = read()) >= 0; previous = c) {
+                if (keep) text.append((char) c);
+                if (previous == '*' && c == '/') break;
+            }
+        }
+
+        private void quoted(char quote) throws IOException {
+            for (int c; (c = read()) >= 0; ) {
+                text.append((char) c);
+                if (c == quote) return;         // a doubled quote reopens on the next char
+            }
+        }
+
+        private int read() throws IOException {
+            if (pos == limit && !fill()) return -1;
+            char c = buffer[pos++];
+            read++;
+            if (c == '\n') line++;
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (pos == limit && !fill()) return -1;
+            return buffer[pos];
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer);
+            if (n <= 0) return false;
+            pos = 0;
+            limit = n;
+            return true;
+        }
+    }
+}
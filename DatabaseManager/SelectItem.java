@@ -0,0 +1,36 @@
+/**
+ * One item of a SELECT list: a column, or COUNT, SUM, AVG, MIN or MAX of
+ * one ("*" for COUNT(*)). Its text is also the name of its result column,
+ * which is how HAVING and ORDER BY refer to an aggregate.
+ * Author: Eyasu Solomon
+ */
+final class SelectItem {
+    final String function;      // null for a plain column
+    final String column;
+    final boolean distinct;     // COUNT(DISTINCT column)
+
+    SelectItem(String function, String column) {
+        this(function, column, false);
+    }
+
+    SelectItem(String function, String column, boolean distinct) {
+        this.function = function;
+        this.column = column;
+        this.distinct = distinct;
+    }
+
+    boolean isAggregate() {
+        return function != null;
+    }
+
+    /** MIN, MAX, COUNT(*) and COUNT(column), which {@link Table} answers directly. */
+    boolean isSimple() {
+        return !distinct && (function.equals("MIN") || function.equals("MAX") || function.equals("COUNT"));
+    }
+
+    @Override
+    public String toString() {
+        if (function == null) return column;
+        return function + "(" + (distinct ? "DISTINCT " : "") + column + ")";
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.*;
+
+/**
+ * SELECT, optionally with joins, GROUP BY, HAVING, ORDER BY and LIMIT.
+ * Author: Eyasu Solomon
+ */
+final class SelectStatement extends SqlStatement {
+    final List<SelectItem> items;       // empty for SELECT *
+    final String table;
+    final String alias;                 // of the FROM table; null: its name
+    final List<JoinClause> joins;       // empty: a single table
+    final Expr where;                   // null: every row
+    final List<String> groupBy;         // empty: no GROUP BY
+    final Expr having;                  // null: every group
+    final List<SelectItem> hidden;      // aggregates HAVING or ORDER BY use that the list does not show
+    final List<OrderItem> orderBy;      // empty: table order
+    final long limit;                   // -1: no LIMIT
+    final long offset;
+
+    SelectStatement(List<SelectItem> items, String table, Expr where, List<OrderItem> orderBy) {
+        this(items, table, null, Collections.emptyList(), where, Collections.emptyList(), null,
+            Collections.emptyList(), orderBy, -1, 0);
+    }
+
+    SelectStatement(List<SelectItem> items, String table, String alias, List<JoinClause> joins, Expr where,
+                    List<String> groupBy, Expr having, List<SelectItem> hidden, List<OrderItem> orderBy,
+                    long limit, long offset) {
+        this.items = items;
+        this.table = table;
+        this.alias = alias;
+        this.joins = joins;
+        this.where = where;
+        this.groupBy = groupBy;
+        this.having = having;
+        this.hidden = hidden;
+        this.orderBy = orderBy;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    /** True if LIMIT or OFFSET drops rows. */
+    boolean isLimited() {
+        return limit >= 0 || offset > 0;
+    }
+
+    boolean isJoin() {
+        return !joins.isEmpty();
+    }
+
+    /** True for GROUP BY or HAVING: the result has one row per group. */
+    boolean isGrouped() {
+        return !groupBy.isEmpty() || having != null;
+    }
+
+    /** True if the result is a single row of aggregates over every matching row of one table. */
+    boolean isAggregate() {
+        if (items.isEmpty() || isGrouped() || isJoin()) return false;
+        for (SelectItem item : items) {
+            if (!item.isAggregate()) return false;
+        }
+        return true;
+    }
+
+    /** The statement as SQL in one canonical spelling; the {@link QueryCache} keys results by it. */
+    @Override
+    public String toString() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (items.isEmpty()) sql.append('*');
+        for (int i = 0; i < items.size(); i++) sql.append(i > 0 ? ", " : "").append(items.get(i));
+        sql.append(" FROM ").append(Expr.name(table));
+        if (alias != null) sql.append(' ').append(Expr.name(alias));
+        for (JoinClause join : joins) sql.append(' ').append(join);
+        if (where != null) sql.append(" WHERE ").append(where);
+        if (!groupBy.isEmpty()) sql.append(" GROUP BY ").append(String.join(", ", groupBy));
+        if (having != null) sql.append(" HAVING ").append(having);
+        for (int i = 0; i < orderBy.size(); i++) sql.append(i > 0 ? ", " : " ORDER BY ").append(orderBy.get(i));
+        if (limit >= 0) sql.append(" LIMIT ").append(limit);
+        if (offset > 0) sql.append(" OFFSET ").append(offset);
+        return sql.toString();
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.*;
+
+/**
+ * Growable list of slots without boxing. One thread appends while others
+ * read: the size is published after the slot is written, so a reader sees
+ * a consistent prefix.
+ * Author: Eyasu Solomon
+ */
+class SlotList {
+    private volatile int[] slots = new int[2];
+    private volatile int size;
+
+    public int size() { return size; }
+    public int get(int i) { return slots[i]; }
+
+    public void add(int slot) {
+        int n = size;
+        int[] array = slots;
+        if (n == array.length) {
+            array = Arrays.copyOf(array, n * 2);
+            slots = array;
+        }
+        array[n] = slot;
+        size = n + 1;
+    }
+
+    public void addAll(SlotList other) {
+        int n = size;
+        int count = other.size;
+        int[] array = slots;
+        if (n + count > array.length) {
+            array = Arrays.copyOf(array, Math.max(n + count, n * 2));
+            slots = array;
+        }
+        System.arraycopy(other.slots, 0, array, n, count);
+        size = n + count;
+    }
+
+    public int[] toArray() {
+        int n = size;
+        return Arrays.copyOf(slots, n);
+    }
+}
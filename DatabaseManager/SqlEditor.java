@@ -0,0 +1,521 @@
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The GUI's SQL editor: a text area that stays responsive on scripts of
+ * many megabytes.
+ * Author: Eyasu Solomon
+ *
+ * No edit does work over the whole text. A document listener keeps the
+ * lexical state each line starts in (code, inside a block comment, a
+ * string or a quoted name), shifting it as lines come and go. A background
+ * thread then rescans from the first edited line until the states it finds
+ * match the ones kept, which is usually the edited line itself. Painting
+ * colors keywords, strings, numbers and comments by tokenizing only the
+ * lines in view from their kept state, and the line-number gutter paints
+ * only the numbers in view. Lines are not wrapped, so every line is one
+ * row high and rows map to lines without measuring text.
+ */
+final class SqlEditor extends JTextArea {
+    private static final long serialVersionUID = 1L;
+
+    private static final Color KEYWORD_COLOR = new Color(129, 140, 248);
+    private static final Color STRING_COLOR = new Color(134, 239, 172);
+    private static final Color NUMBER_COLOR = new Color(251, 191, 36);
+    private static final Color COMMENT_COLOR = new Color(100, 116, 139);
+    private static final Color GUTTER_BG = new Color(18, 18, 24);
+    private static final Color GUTTER_FG = new Color(148, 163, 184);
+
+    // Lexical states a line can start in
+    static final int CODE = 0, BLOCK_COMMENT = 1, STRING = 2, DOUBLE_QUOTED = 3, BACK_QUOTED = 4;
+
+    // Kinds of tokens
+    static final int WORD = 0, KEYWORD = 1, NUMBER = 2, TEXT = 3, NAME = 4, COMMENT = 5, SEMICOLON = 6, OTHER = 7;
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "ALL", "ANALYZE", "AND", "AS", "ASC", "AVG", "BETWEEN", "BIGINT", "BOOL", "BOOLEAN", "BTREE", "BY",
+        "CHAR", "CHECK", "CHECKPOINT", "COLUMNAR", "CONSTRAINT", "COUNT", "CREATE", "DATE", "DATETIME",
+        "DECIMAL", "DELETE", "DESC", "DESCRIBE", "DISTINCT", "DOUBLE", "DROP", "EXISTS", "EXPORT", "FALSE",
+        "FLOAT", "FOREIGN", "FROM", "GROUP", "HASH", "HAVING", "IF", "IMPORT", "IN", "INDEX", "INNER",
+        "INSERT", "INT", "INTEGER", "INTO", "IS", "JOIN", "KEY", "LEFT", "LIKE", "LIMIT", "MAX", "MIN",
+        "NOT", "NULL", "NUMERIC", "OFFSET", "ON", "OR", "ORDER", "OUTER", "PRIMARY", "REAL", "ROW",
+        "SELECT", "SET", "SHOW", "SMALLINT", "SUM", "TABLE", "TABLES", "TEXT", "TIMESTAMP", "TINYINT",
+        "TO", "TRUE", "UNIQUE", "UPDATE", "USING", "VALUES", "VARCHAR", "WHERE"));
+
+    // Scans of every editor's line states share one background thread
+    private static final ExecutorService SCANNER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-editor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Receives the tokens of a line, as offsets into its text. */
+    interface TokenSink {
+        void token(int kind, int start, int end);
+    }
+
+    private final LineStates states = new LineStates();
+    private final Gutter gutter = new Gutter();
+
+    SqlEditor() {
+        setLineWrap(false);
+        getDocument().addDocumentListener(states);
+        getDocument().addDocumentListener(gutter);
+        addPropertyChangeListener("document", e -> {
+            ((Document) e.getOldValue()).removeDocumentListener(states);
+            ((Document) e.getOldValue()).removeDocumentListener(gutter);
+            states.reset(getDocument());
+            getDocument().addDocumentListener(states);
+            getDocument().addDocumentListener(gutter);
+            gutter.changedUpdate(null);
+        });
+    }
+
+    @Override
+    public void updateUI() {
+        // Only the view differs from a plain text area's
+        setUI(new BasicTextAreaUI() {
+            @Override
+            public View create(Element element) {
+                return new SqlView(element);
+            }
+        });
+    }
+
+    /** The editor in a scroll pane, with the line numbers beside it. */
+    JScrollPane inScrollPane() {
+        JScrollPane view = new JScrollPane(this);
+        view.setRowHeaderView(gutter);
+        return view;
+    }
+
+    /**
+     * Bounds {start, end} of the statement at {@code offset}: from after the
+     * semicolon before it up to and including its own semicolon, or the end
+     * of the text. Semicolons in strings and comments do not count. With the
+     * offset past the last statement's semicolon, that statement.
+     */
+    int[] statementAt(int offset) {
+        Document doc = getDocument();
+        Element root = doc.getDefaultRootElement();
+        int line = root.getElementIndex(offset);
+        states.scan(line);
+        int[] before = semicolonBefore(line, offset);          // {semicolon or -1, 1 if code lies between}
+        int[] after = semicolonAfter(line, offset);            // {semicolon or -1, 1 if code lies between}
+        if (before[0] >= 0 && before[1] == 0 && (after[1] == 0 || root.getElementIndex(before[0]) == line)) {
+            // Just past a statement's semicolon, or only comments follow it: run that statement
+            int end = before[0] + 1;
+            return new int[] {semicolonBefore(root.getElementIndex(before[0]), before[0])[0] + 1, end};
+        }
+        return new int[] {before[0] + 1, after[0] >= 0 ? after[0] + 1 : doc.getLength()};
+    }
+
+    /** The lexical state {@code line} starts in, scanning up to it first if an edit is pending. */
+    int stateAt(int line) {
+        states.scan(line);
+        return states.stateAt(line);
+    }
+
+    /** The last code semicolon before {@code offset}, searching back from {@code line}. */
+    private int[] semicolonBefore(int line, int offset) {
+        Element root = getDocument().getDefaultRootElement();
+        boolean code = false;
+        for (; line >= 0; line--) {
+            Element element = root.getElement(line);
+            int start = element.getStartOffset();
+            List<int[]> tokens = lineTokens(start, Math.min(element.getEndOffset(), offset), states.stateAt(line));
+            for (int t = tokens.size() - 1; t >= 0; t--) {
+                int[] token = tokens.get(t);
+                if (token[0] == SEMICOLON) return new int[] {start + token[1], code ? 1 : 0};
+                if (token[0] != COMMENT) code = true;
+            }
+        }
+        return new int[] {-1, code ? 1 : 0};
+    }
+
+    /** The first code semicolon at or after {@code offset}, searching on from {@code line}. */
+    private int[] semicolonAfter(int line, int offset) {
+        Element root = getDocument().getDefaultRootElement();
+        boolean code = false;
+        int state = states.stateAt(line);
+        for (; line < root.getElementCount(); line++) {
+            Element element = root.getElement(line);
+            int start = element.getStartOffset();
+            List<int[]> tokens = new ArrayList<>();
+            state = tokenize(text(start, element.getEndOffset()), state,
+                (kind, from, to) -> tokens.add(new int[] {kind, from, to}));
+            for (int[] token : tokens) {
+                if (start + token[2] <= offset) continue;
+                if (token[0] == SEMICOLON) return new int[] {start + token[1], code ? 1 : 0};
+                if (token[0] != COMMENT) code = true;
+            }
+        }
+        return new int[] {-1, code ? 1 : 0};
+    }
+
+    private List<int[]> lineTokens(int start, int end, int state) {
+        List<int[]> tokens = new ArrayList<>();
+        tokenize(text(start, end), state, (kind, from, to) -> tokens.add(new int[] {kind, from, to}));
+        return tokens;
+    }
+
+    private Segment text(int start, int end) {
+        Segment text = new Segment();
+        try {
+            getDocument().getText(start, Math.max(0, Math.min(end, getDocument().getLength()) - start), text);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        return text;
+    }
+
+    /**
+     * Tokens of one line, which starts in lexical {@code state}, to
+     * {@code sink} (null: none); returns the state the next line starts in.
+     * Whitespace is skipped. Only words of tokens passed on are looked up
+     * as keywords, so finding the next state allocates nothing.
+     */
+    static int tokenize(Segment line, int state, TokenSink sink) {
+        char[] a = line.array;
+        int base = line.offset;
+        int end = base + line.count;
+        int i = base;
+        while (i < end) {
+            int start = i;
+            char c = a[i];
+            if (state == BLOCK_COMMENT) {
+                int close = commentEnd(a, i, end);
+                i = close < 0 ? end : close;
+                if (close >= 0) state = CODE;
+                emit(sink, COMMENT, start, i, base);
+            } else if (state != CODE) {
+                char quote = state == STRING ? '\'' : state == DOUBLE_QUOTED ? '"' : '`';
+                int close = quoteEnd(a, i, end, quote);
+                i = close < 0 ? end : close;
+                if (close >= 0) state = CODE;
+                emit(sink, quote == '\'' ? TEXT : NAME, start, i, base);
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < end && a[i + 1] == '-') {
+                i = end;
+                emit(sink, COMMENT, start, i, base);
+            } else if (c == '/' && i + 1 < end && a[i + 1] == '*') {
+                int close = commentEnd(a, i + 2, end);
+                i = close < 0 ? end : close;
+                if (close < 0) state = BLOCK_COMMENT;
+                emit(sink, COMMENT, start, i, base);
+            } else if (c == '\'' || c == '"' || c == '`') {
+                int close = quoteEnd(a, i + 1, end, c);
+                i = close < 0 ? end : close;
+                if (close < 0) state = c == '\'' ? STRING : c == '"' ? DOUBLE_QUOTED : BACK_QUOTED;
+                emit(sink, c == '\'' ? TEXT : NAME, start, i, base);
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < end && (Character.isLetterOrDigit(a[i]) || a[i] == '_')) i++;
+                if (sink != null) {
+                    boolean keyword = i - start <= 10
+                        && KEYWORDS.contains(new String(a, start, i - start).toUpperCase(Locale.ROOT));
+                    emit(sink, keyword ? KEYWORD : WORD, start, i, base);
+                }
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < end && Character.isDigit(a[i + 1]))) {
+                i++;
+                while (i < end && (Character.isLetterOrDigit(a[i]) || a[i] == '.')) i++;
+                emit(sink, NUMBER, start, i, base);
+            } else {
+                i++;
+                emit(sink, c == ';' ? SEMICOLON : OTHER, start, i, base);
+            }
+        }
+        return state;
+    }
+
+    /** Index just past the first {@code *}{@code /} at or after {@code i}, or -1 if the line has none. */
+    private static int commentEnd(char[] a, int i, int end) {
+        for (; i + 1 < end; i++) {
+            if (a[i] == '*' && a[i + 1] == '/') return i + 2;
+        }
+        return -1;
+    }
+
+    /** Index just past the closing {@code quote} at or after {@code i}, skipping doubled quotes; -1 if none. */
+    private static int quoteEnd(char[] a, int i, int end, char quote) {
+        while (i < end) {
+            if (a[i++] != quote) continue;
+            if (i < end && a[i] == quote) {
+                i++;
+            } else {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void emit(TokenSink sink, int kind, int start, int end, int base) {
+        if (sink != null) sink.token(kind, start - base, end - base);
+    }
+
+    /** The lexical state each line starts in, kept current by a background scan after edits. */
+    private final class LineStates implements DocumentListener {
+        private static final int SLICE = 4096;      // lines scanned per read lock
+
+        private byte[] states = new byte[1024];     // state at the start of each line
+        private int lines = 1;
+        private int dirtyFrom = Integer.MAX_VALUE;  // first edited line not rescanned yet; MAX_VALUE: none
+        private int dirtyTo = -1;                   // last edited line; the rescan goes at least this far
+        private long version;                       // edits so far
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final Object scanning = new Object();
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            changed(e);
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            changed(e);
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+
+        /** Shifts the states of the lines after an edit and marks the edited lines for the scan. */
+        private void changed(DocumentEvent e) {
+            Element root = e.getDocument().getDefaultRootElement();
+            DocumentEvent.ElementChange change = e.getChange(root);
+            int line = change != null ? change.getIndex() : root.getElementIndex(e.getOffset());
+            int removed = change != null ? change.getChildrenRemoved().length : 1;
+            int added = change != null ? change.getChildrenAdded().length : 1;
+            synchronized (this) {
+                int count = root.getElementCount();
+                byte[] old = states;
+                if (count > states.length) states = Arrays.copyOf(states, Math.max(count, states.length * 2));
+                System.arraycopy(old, line + removed, states, line + added, lines - line - removed);
+                if (added > 1) Arrays.fill(states, line + 1, line + added, states[line]);
+                lines = count;
+                if (dirtyTo >= line + removed) dirtyTo += added - removed;
+                dirtyFrom = Math.min(dirtyFrom, line);
+                dirtyTo = Math.min(Math.max(dirtyTo, line + added - 1), count - 1);
+                version++;
+            }
+            schedule();
+        }
+
+        /** Starts over on a new document, every line of which needs a scan. */
+        void reset(Document doc) {
+            synchronized (this) {
+                lines = doc.getDefaultRootElement().getElementCount();
+                states = new byte[Math.max(1024, lines)];
+                dirtyFrom = 0;
+                dirtyTo = lines - 1;
+                version++;
+            }
+            schedule();
+        }
+
+        synchronized int stateAt(int line) {
+            return line < lines ? states[line] : CODE;
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            SCANNER.execute(() -> {
+                scheduled.set(false);
+                scan(Integer.MAX_VALUE);
+            });
+        }
+
+        /**
+         * Rescans from the first edited line until the states found match the
+         * kept ones past the last edited line, or at least through
+         * {@code untilLine}. A slice read while an edit came in is scanned again.
+         */
+        void scan(int untilLine) {
+            synchronized (scanning) {
+                byte[] ends = new byte[SLICE];
+                while (true) {
+                    int from;
+                    long seen;
+                    int state;
+                    synchronized (this) {
+                        if (dirtyFrom >= lines || dirtyFrom > untilLine) return;
+                        from = dirtyFrom;
+                        seen = version;
+                        state = states[from];
+                    }
+                    int[] scanned = new int[1];
+                    getDocument().render(() -> {
+                        Element root = getDocument().getDefaultRootElement();
+                        Segment text = new Segment();
+                        int next = state;
+                        int to = Math.min(root.getElementCount(), from + SLICE);
+                        for (int line = from; line < to; line++) {
+                            Element element = root.getElement(line);
+                            try {
+                                getDocument().getText(element.getStartOffset(),
+                                    element.getEndOffset() - element.getStartOffset(), text);
+                            } catch (BadLocationException e) {
+                                return;                 // the scan is repeated after the edit
+                            }
+                            next = tokenize(text, next, null);
+                            ends[line - from] = (byte) next;
+                            scanned[0]++;
+                        }
+                    });
+                    boolean changed = false;
+                    boolean done = false;
+                    synchronized (this) {
+                        if (version != seen) continue;
+                        for (int k = 0; k < scanned[0] && !done; k++) {
+                            int line = from + k;
+                            if (line + 1 >= lines || (line >= dirtyTo && states[line + 1] == ends[k])) {
+                                done = true;
+                            } else {
+                                changed |= states[line + 1] != ends[k];
+                                states[line + 1] = ends[k];
+                            }
+                        }
+                        if (done || scanned[0] == 0) {
+                            dirtyFrom = Integer.MAX_VALUE;
+                            dirtyTo = -1;
+                        } else {
+                            dirtyFrom = from + scanned[0];
+                        }
+                    }
+                    // A comment or quote opened or closed: lines below now color differently
+                    if (changed) repaint();
+                }
+            }
+        }
+    }
+
+    /** Paints each line's tokens in their colors; selected text keeps the selection color. */
+    private final class SqlView extends PlainView {
+        SqlView(Element element) {
+            super(element);
+        }
+
+        @Override
+        protected float drawUnselectedText(Graphics2D g, float x, float y, int p0, int p1)
+                throws BadLocationException {
+            Document doc = getDocument();
+            Element root = doc.getDefaultRootElement();
+            int line = root.getElementIndex(p0);
+            Element element = root.getElement(line);
+            int lineStart = element.getStartOffset();
+            Segment text = getLineBuffer();
+            doc.getText(lineStart, Math.min(element.getEndOffset(), doc.getLength()) - lineStart, text);
+            List<int[]> tokens = new ArrayList<>();
+            tokenize(text, states.stateAt(line), (kind, start, end) -> {
+                if (kind != WORD && kind != OTHER && kind != SEMICOLON) tokens.add(new int[] {kind, start, end});
+            });
+            // Only p0 to p1 of the line is drawn here; the selection's part is drawn separately
+            int at = p0 - lineStart;
+            int to = p1 - lineStart;
+            for (int[] token : tokens) {
+                if (token[2] <= at) continue;
+                if (token[1] >= to) break;
+                x = draw(g, x, y, text, at, token[1], getForeground(), lineStart);
+                at = Math.max(at, token[1]);
+                x = draw(g, x, y, text, at, Math.min(token[2], to), color(token[0]), lineStart);
+                at = Math.min(token[2], to);
+            }
+            return draw(g, x, y, text, at, to, getForeground(), lineStart);
+        }
+
+        private float draw(Graphics2D g, float x, float y, Segment line, int from, int to, Color color, int lineStart) {
+            if (to <= from) return x;
+            g.setColor(color);
+            Segment part = new Segment(line.array, line.offset + from, to - from);
+            return Utilities.drawTabbedText(part, x, y, g, this, lineStart + from);
+        }
+
+        private Color getForeground() {
+            return SqlEditor.this.isEnabled() ? SqlEditor.this.getForeground() : SqlEditor.this.getDisabledTextColor();
+        }
+
+        private Color color(int kind) {
+            switch (kind) {
+                case KEYWORD: return KEYWORD_COLOR;
+                case NUMBER: return NUMBER_COLOR;
+                case TEXT: return STRING_COLOR;
+                case COMMENT: return COMMENT_COLOR;
+                default: return getForeground();
+            }
+        }
+    }
+
+    /** Line numbers for the rows in view; widens only when the line count gains a digit. */
+    private final class Gutter extends JComponent implements DocumentListener {
+        private static final long serialVersionUID = 1L;
+
+        private int digits;
+        private int lines = 1;
+
+        Gutter() {
+            setOpaque(true);
+            setBackground(GUTTER_BG);
+            setForeground(GUTTER_FG);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            FontMetrics metrics = getFontMetrics(SqlEditor.this.getFont());
+            digits = Math.max(2, digits(lineCount()));
+            return new Dimension(20 + digits * metrics.charWidth('0'), SqlEditor.this.getPreferredSize().height);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setFont(SqlEditor.this.getFont());
+            g.setColor(getForeground());
+            FontMetrics metrics = g.getFontMetrics();
+            int top = SqlEditor.this.getInsets().top;
+            int height = SqlEditor.this.getRowHeight();
+            int first = Math.max(0, (clip.y - top) / height);
+            int last = Math.min(lineCount() - 1, (clip.y + clip.height - top) / height);
+            for (int line = first; line <= last; line++) {
+                String number = Integer.toString(line + 1);
+                g.drawString(number, getWidth() - 10 - metrics.stringWidth(number),
+                    top + line * height + metrics.getAscent());
+            }
+        }
+
+        private int lineCount() {
+            return SqlEditor.this.getDocument().getDefaultRootElement().getElementCount();
+        }
+
+        private int digits(int n) {
+            return Integer.toString(n).length();
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            changedUpdate(e);
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            changedUpdate(e);
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            // Edits within a line change no number
+            if (lineCount() == lines) return;
+            lines = lineCount();
+            revalidate();
+            repaint();
+        }
+    }
+}
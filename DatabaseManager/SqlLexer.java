@@ -0,0 +1,218 @@
+/**
+ * Hand-written SQL tokenizer.
+ * Author: Eyasu Solomon
+ *
+ * The lexer is a cursor over the statement text rather than a token list:
+ * {@link #next()} advances to the following token and exposes its type and
+ * bounds, and text is only copied out when the parser asks for it. Words
+ * are not classified as keywords here; the parser compares them in place,
+ * ignoring case, so lexing a statement allocates nothing but the
+ * identifiers and literals it keeps.
+ */
+class SqlLexer {
+    private final String sql;
+    private final boolean backslashEscapes;
+    private int pos;
+
+    private TokenType type;
+    private int start;
+    private int end;
+    private boolean escaped;        // the STRING or QUOTED_NAME contains doubled quotes or escapes
+
+    SqlLexer(String sql) {
+        this(sql, false);
+    }
+
+    /**
+     * With {@code backslashEscapes}, string literals also accept \' \\ \n \t
+     * \r and \0 as MySQL dumps write them; otherwise a backslash is an
+     * ordinary character, so Windows paths survive.
+     */
+    SqlLexer(String sql, boolean backslashEscapes) {
+        this.sql = sql;
+        this.backslashEscapes = backslashEscapes;
+        next();
+    }
+
+    TokenType type() { return type; }
+    int start() { return start; }
+
+    /** Advances to the next token. */
+    void next() {
+        int n = sql.length();
+        pos = skipSpace(pos);
+        start = pos;
+        escaped = false;
+        if (pos >= n) {
+            type = TokenType.EOF;
+            end = pos;
+            return;
+        }
+        char c = sql.charAt(pos);
+        if (Character.isLetter(c) || c == '_') {
+            pos++;
+            while (pos < n && (Character.isLetterOrDigit(sql.charAt(pos)) || sql.charAt(pos) == '_')) pos++;
+            finish(TokenType.WORD);
+        } else if (Character.isDigit(c) || (c == '.' && pos + 1 < n && Character.isDigit(sql.charAt(pos + 1)))) {
+            lexNumber();
+        } else if (c == '\'') {
+            lexQuoted('\'', TokenType.STRING, backslashEscapes);
+        } else if (c == '"' || c == '`') {
+            lexQuoted(c, TokenType.QUOTED_NAME, false);
+        } else {
+            pos++;
+            switch (c) {
+                case ',': finish(TokenType.COMMA); break;
+                case '.': finish(TokenType.DOT); break;
+                case '(': finish(TokenType.LPAREN); break;
+                case ')': finish(TokenType.RPAREN); break;
+                case '*': finish(TokenType.STAR); break;
+                case ';': finish(TokenType.SEMICOLON); break;
+                case '-': finish(TokenType.MINUS); break;
+                case '+': finish(TokenType.PLUS); break;
+                case '=': finish(TokenType.EQ); break;
+                case '!':
+                    if (pos < n && sql.charAt(pos) == '=') {
+                        pos++;
+                        finish(TokenType.NE);
+                        break;
+                    }
+                    throw error("Unexpected character '!'");
+                case '<':
+                    if (pos < n && sql.charAt(pos) == '=') {
+                        pos++;
+                        finish(TokenType.LE);
+                    } else if (pos < n && sql.charAt(pos) == '>') {
+                        pos++;
+                        finish(TokenType.NE);
+                    } else {
+                        finish(TokenType.LT);
+                    }
+                    break;
+                case '>':
+                    if (pos < n && sql.charAt(pos) == '=') {
+                        pos++;
+                        finish(TokenType.GE);
+                    } else {
+                        finish(TokenType.GT);
+                    }
+                    break;
+                default:
+                    throw error("Unexpected character '" + c + "'");
+            }
+        }
+    }
+
+    /** True if the token after the current one starts with {@code c}; reads nothing. */
+    boolean isFollowedBy(char c) {
+        int at = skipSpace(pos);
+        return at < sql.length() && sql.charAt(at) == c;
+    }
+
+    /** The position of the first character at or after {@code at} that is not blank or in a comment. */
+    private int skipSpace(int at) {
+        int n = sql.length();
+        while (at < n) {
+            char c = sql.charAt(at);
+            if (Character.isWhitespace(c)) {
+                at++;
+            } else if (c == '-' && at + 1 < n && sql.charAt(at + 1) == '-') {
+                while (at < n && sql.charAt(at) != '\n') at++;
+            } else if (c == '/' && at + 1 < n && sql.charAt(at + 1) == '*') {
+                int close = sql.indexOf("*/", at + 2);
+                at = close < 0 ? n : close + 2;
+            } else {
+                break;
+            }
+        }
+        return at;
+    }
+
+    private void finish(TokenType type) {
+        this.type = type;
+        this.end = pos;
+    }
+
+    private void lexNumber() {
+        int n = sql.length();
+        while (pos < n && Character.isDigit(sql.charAt(pos))) pos++;
+        if (pos < n && sql.charAt(pos) == '.') {
+            pos++;
+            while (pos < n && Character.isDigit(sql.charAt(pos))) pos++;
+        }
+        if (pos < n && (sql.charAt(pos) == 'e' || sql.charAt(pos) == 'E')) {
+            int mark = pos++;
+            if (pos < n && (sql.charAt(pos) == '+' || sql.charAt(pos) == '-')) pos++;
+            if (pos < n && Character.isDigit(sql.charAt(pos))) {
+                while (pos < n && Character.isDigit(sql.charAt(pos))) pos++;
+            } else {
+                pos = mark;
+            }
+        }
+        finish(TokenType.NUMBER);
+    }
+
+    private void lexQuoted(char quote, TokenType type, boolean backslash) {
+        int n = sql.length();
+        pos++;
+        while (true) {
+            if (pos >= n) throw error("Unterminated " + (type == TokenType.STRING ? "string" : "name"));
+            char c = sql.charAt(pos++);
+            if (c == quote) {
+                if (pos < n && sql.charAt(pos) == quote) {
+                    pos++;
+                    escaped = true;
+                    continue;
+                }
+                break;
+            }
+            if (c == '\\' && backslash && pos < n) {
+                pos++;
+                escaped = true;
+            }
+        }
+        finish(type);
+    }
+
+    /** True if the current token is the word {@code keyword}, ignoring case. */
+    boolean isWord(String keyword) {
+        return type == TokenType.WORD && end - start == keyword.length()
+            && sql.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    /** The token's text: names and strings without their quotes and escapes. */
+    String text() {
+        if (type != TokenType.STRING && type != TokenType.QUOTED_NAME) {
+            return sql.substring(start, end);
+        }
+        if (!escaped) return sql.substring(start + 1, end - 1);
+        char quote = sql.charAt(start);
+        StringBuilder out = new StringBuilder(end - start);
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = sql.charAt(i);
+            if (c == quote) {
+                i++;                        // doubled quote
+            } else if (c == '\\' && backslashEscapes && type == TokenType.STRING) {
+                c = sql.charAt(++i);
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case '0': c = '\0'; break;
+                    default: break;
+                }
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    /** The current token as it appears in the statement, for error messages. */
+    String describe() {
+        return type == TokenType.EOF ? "end of statement" : "'" + sql.substring(start, end) + "'";
+    }
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + (start + 1));
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Syntax tree produced by {@link StatementParser}.
+ * Author: Eyasu Solomon
+ *
+ * Statements hold names and literal text exactly as written; values are
+ * coerced to column types only when a statement runs against a table.
+ * {@code toString()} renders a node back to SQL, which is how the
+ * write-ahead log records the WHERE clause of an UPDATE or DELETE.
+ */
+abstract class SqlStatement {
+}
@@ -0,0 +1,597 @@
+import java.util.*;
+
+/**
+ * Recursive-descent parser from SQL text to {@link SqlStatement} trees.
+ * Author: Eyasu Solomon
+ *
+ * Grammar (keywords in any case, one optional trailing semicolon):
+ *
+ *   SELECT (* | item, ...) FROM table [alias] [join ...] [WHERE condition]
+ *       [GROUP BY column, ...] [HAVING condition] [ORDER BY column [ASC|DESC], ...]
+ *       [LIMIT count [OFFSET skip] | LIMIT skip, count]
+ *       item: column | COUNT(* | [DISTINCT] column) | SUM|AVG|MIN|MAX(column)
+ *       join: [INNER | LEFT [OUTER]] JOIN table [alias] ON column = column
+ *       alias: [AS] name
+ *   INSERT INTO table [(column, ...)] VALUES (value, ...), ...
+ *   UPDATE table SET column = value, ... [WHERE condition]
+ *   DELETE FROM table [WHERE condition]
+ *   CREATE TABLE [IF NOT EXISTS] table (column type [NOT NULL] ..., ...) [USING ROW|COLUMNAR]
+ *   CREATE INDEX [name] ON table (column) [USING HASH|BTREE]
+ *   SHOW TABLES | DESC[RIBE] table | ANALYZE [table] | CHECKPOINT
+ *   IMPORT 'file' [INTO table] | EXPORT [table] TO 'file'
+ *   RUN 'file' [ON ERROR STOP|CONTINUE]
+ *
+ *   condition:  term [OR term]...      term: factor [AND factor]...
+ *   factor:     NOT factor | (condition) | column op value | value op column
+ *             | column [NOT] BETWEEN value AND value | column IS [NOT] NULL
+ *
+ * Values are quoted strings, numbers, TRUE, FALSE and NULL. As in the
+ * console's earlier parser, an unquoted word or a "double-quoted" name on
+ * the value side of a comparison is taken as text. In HAVING and ORDER BY a
+ * column may also be an aggregate item, which then names its result. A
+ * word like COUNT is only an aggregate when '(' follows it, so columns may
+ * be named count, sum, min, max or avg. A column of a SELECT may be
+ * qualified by a table name or alias: u.name, also when it reads one table.
+ */
+class StatementParser {
+    private static final String[] AGGREGATES = {"MIN", "MAX", "COUNT", "SUM", "AVG"};
+    // Words that may follow a table name in FROM, so they are never read as its alias
+    private static final Set<String> CLAUSES = new HashSet<>(Arrays.asList(
+        "WHERE", "GROUP", "HAVING", "ORDER", "LIMIT", "JOIN", "INNER", "LEFT", "ON"));
+
+    private final SqlLexer lexer;
+    private List<SelectItem> aggregates;    // collects aggregates named in HAVING and ORDER BY; else null
+    private String[] qualifiers;            // the table name and alias of a statement on one table; else null
+
+    private StatementParser(String sql, boolean backslashEscapes) {
+        this.lexer = new SqlLexer(sql, backslashEscapes);
+    }
+
+    /** Parses one statement; throws IllegalArgumentException with the position of a syntax error. */
+    static SqlStatement parse(String sql) {
+        return parse(sql, false);
+    }
+
+    /** Same as {@link #parse(String)}, optionally accepting MySQL backslash escapes in strings. */
+    static SqlStatement parse(String sql, boolean backslashEscapes) {
+        StatementParser parser = new StatementParser(sql, backslashEscapes);
+        SqlStatement statement = parser.statement();
+        parser.accept(TokenType.SEMICOLON);
+        parser.expectEnd();
+        return statement;
+    }
+
+    /** Parses a condition on its own, as the write-ahead log stores WHERE clauses. */
+    static Expr parseCondition(String sql) {
+        StatementParser parser = new StatementParser(sql, false);
+        Expr condition = parser.condition();
+        parser.expectEnd();
+        return condition;
+    }
+
+    /** Column definitions as in CREATE TABLE, without the parentheses. */
+    static List<Column> parseColumns(String definitions) {
+        StatementParser parser = new StatementParser(definitions, false);
+        List<Column> columns = parser.columnDefinitions(TokenType.EOF);
+        parser.expectEnd();
+        return columns;
+    }
+
+    // ------------------------------------------------------------------
+    // Statements
+    // ------------------------------------------------------------------
+
+    private SqlStatement statement() {
+        if (acceptWord("SELECT")) return select();
+        if (acceptWord("INSERT")) return insert();
+        if (acceptWord("UPDATE")) return update();
+        if (acceptWord("DELETE")) {
+            expectWord("FROM");
+            String table = name();
+            return new DeleteStatement(table, optionalWhere());
+        }
+        if (acceptWord("CREATE")) {
+            if (acceptWord("TABLE")) return createTable();
+            if (acceptWord("INDEX")) return createIndex();
+            throw unexpected("TABLE or INDEX");
+        }
+        if (acceptWord("SHOW")) {
+            expectWord("TABLES");
+            return new CommandStatement(CommandStatement.Kind.SHOW_TABLES, null, null);
+        }
+        if (acceptWord("DESC") || acceptWord("DESCRIBE")) {
+            return new CommandStatement(CommandStatement.Kind.DESCRIBE, name(), null);
+        }
+        if (acceptWord("ANALYZE")) {
+            boolean all = lexer.type() == TokenType.EOF || lexer.type() == TokenType.SEMICOLON;
+            String table = all ? null : name();
+            return new CommandStatement(CommandStatement.Kind.ANALYZE, table, null);
+        }
+        if (acceptWord("CHECKPOINT")) {
+            return new CommandStatement(CommandStatement.Kind.CHECKPOINT, null, null);
+        }
+        if (acceptWord("IMPORT")) {
+            String file = string();
+            String table = acceptWord("INTO") ? name() : null;
+            return new CommandStatement(CommandStatement.Kind.IMPORT, table, file);
+        }
+        if (acceptWord("EXPORT")) {
+            String table = lexer.isWord("TO") ? null : name();
+            expectWord("TO");
+            return new CommandStatement(CommandStatement.Kind.EXPORT, table, string());
+        }
+        if (acceptWord("RUN")) {
+            String file = string();
+            boolean continueOnError = false;
+            if (acceptWord("ON")) {
+                expectWord("ERROR");
+                continueOnError = acceptWord("CONTINUE");
+                if (!continueOnError) expectWord("STOP");
+            }
+            return new CommandStatement(CommandStatement.Kind.RUN, null, file, continueOnError);
+        }
+        throw unexpected("a statement");
+    }
+
+    private SelectStatement select() {
+        List<SelectItem> items = new ArrayList<>();
+        if (!accept(TokenType.STAR)) {
+            do {
+                items.add(selectItem());
+            } while (accept(TokenType.COMMA));
+        }
+        expectWord("FROM");
+        String table = name();
+        String alias = alias();
+        List<JoinClause> joins = new ArrayList<>();
+        while (lexer.isWord("JOIN") || lexer.isWord("INNER") || lexer.isWord("LEFT")) {
+            joins.add(join());
+        }
+        if (joins.isEmpty()) {
+            // One table: t.column and alias.column name its own columns, here and in later clauses
+            qualifiers = alias != null ? new String[] {table, alias} : new String[] {table};
+            items.replaceAll(item -> new SelectItem(item.function, unqualified(item.column), item.distinct));
+        }
+        Expr where = optionalWhere();
+        List<String> groupBy = new ArrayList<>();
+        if (acceptWord("GROUP")) {
+            expectWord("BY");
+            do {
+                groupBy.add(reference());
+            } while (accept(TokenType.COMMA));
+        }
+        aggregates = new ArrayList<>();
+        Expr having = acceptWord("HAVING") ? condition() : null;
+        List<OrderItem> orderBy = new ArrayList<>();
+        if (acceptWord("ORDER")) {
+            expectWord("BY");
+            do {
+                String column = column();
+                boolean ascending = !acceptWord("DESC");
+                if (ascending) acceptWord("ASC");
+                orderBy.add(new OrderItem(column, ascending));
+            } while (accept(TokenType.COMMA));
+        }
+        long limit = -1;
+        long offset = 0;
+        if (acceptWord("LIMIT")) {
+            limit = count();
+            if (accept(TokenType.COMMA)) {
+                offset = limit;
+                limit = count();
+            } else if (acceptWord("OFFSET")) {
+                offset = count();
+            }
+        }
+        List<SelectItem> hidden = new ArrayList<>();
+        for (SelectItem item : aggregates) {
+            if (!named(items, item) && !named(hidden, item)) hidden.add(item);
+        }
+        aggregates = null;
+        qualifiers = null;
+        return new SelectStatement(items, table, alias, joins, where, groupBy, having, hidden, orderBy, limit, offset);
+    }
+
+    private JoinClause join() {
+        boolean outer = acceptWord("LEFT");
+        if (outer) acceptWord("OUTER");
+        else acceptWord("INNER");
+        expectWord("JOIN");
+        String table = name();
+        String alias = alias();
+        expectWord("ON");
+        String leftKey = reference();
+        expect(TokenType.EQ);
+        return new JoinClause(table, alias, outer, leftKey, reference());
+    }
+
+    /** An optional alias after a table name; null if none. */
+    private String alias() {
+        if (acceptWord("AS")) return name();
+        if (lexer.type() == TokenType.QUOTED_NAME
+            || lexer.type() == TokenType.WORD && !CLAUSES.contains(lexer.text().toUpperCase())) {
+            return name();
+        }
+        return null;
+    }
+
+    private static boolean named(List<SelectItem> items, SelectItem item) {
+        for (SelectItem other : items) {
+            if (other.toString().equalsIgnoreCase(item.toString())) return true;
+        }
+        return false;
+    }
+
+    /** An aggregate call, or a column: a column may be named like a function if no '(' follows. */
+    private SelectItem selectItem() {
+        for (String function : AGGREGATES) {
+            if (lexer.isWord(function) && lexer.isFollowedBy('(')) {
+                lexer.next();
+                expect(TokenType.LPAREN);
+                boolean count = function.equals("COUNT");
+                boolean distinct = count && acceptWord("DISTINCT");
+                String column = count && !distinct && accept(TokenType.STAR) ? "*" : reference();
+                expect(TokenType.RPAREN);
+                return new SelectItem(function, column, distinct);
+            }
+        }
+        return new SelectItem(null, reference());
+    }
+
+    /** A column name, or in HAVING and ORDER BY also an aggregate item, named by its text. */
+    private String column() {
+        if (aggregates == null) return reference();
+        SelectItem item = selectItem();
+        if (item.isAggregate()) aggregates.add(item);
+        return item.toString();
+    }
+
+    private InsertStatement insert() {
+        expectWord("INTO");
+        String table = name();
+        List<String> columns = null;
+        if (accept(TokenType.LPAREN)) {
+            columns = new ArrayList<>();
+            do {
+                columns.add(name());
+            } while (accept(TokenType.COMMA));
+            expect(TokenType.RPAREN);
+        }
+        expectWord("VALUES");
+        List<String[]> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        do {
+            expect(TokenType.LPAREN);
+            row.clear();
+            do {
+                row.add(value());
+            } while (accept(TokenType.COMMA));
+            expect(TokenType.RPAREN);
+            if (columns != null && row.size() != columns.size()) {
+                throw lexer.error("Expected " + columns.size() + " values, found " + row.size());
+            }
+            rows.add(row.toArray(new String[0]));
+        } while (accept(TokenType.COMMA));
+        return new InsertStatement(table, columns, rows);
+    }
+
+    private UpdateStatement update() {
+        String table = name();
+        expectWord("SET");
+        List<String> columns = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        do {
+            columns.add(name());
+            expect(TokenType.EQ);
+            values.add(value());
+        } while (accept(TokenType.COMMA));
+        return new UpdateStatement(table, columns, values, optionalWhere());
+    }
+
+    private CreateTableStatement createTable() {
+        if (acceptWord("IF")) {
+            expectWord("NOT");
+            expectWord("EXISTS");
+        }
+        String table = name();
+        expect(TokenType.LPAREN);
+        List<Column> columns = columnDefinitions(TokenType.RPAREN);
+        expect(TokenType.RPAREN);
+        StorageMode mode = StorageMode.ROW;
+        if (acceptWord("USING")) {
+            mode = option(StorageMode.class, "ROW or COLUMNAR");
+        }
+        // Table options written by dump tools (ENGINE=..., CHARSET=...) are ignored
+        while (lexer.type() != TokenType.EOF && lexer.type() != TokenType.SEMICOLON) lexer.next();
+        return new CreateTableStatement(table, columns, mode);
+    }
+
+    /** Column definitions up to {@code end}; table constraints such as PRIMARY KEY (...) are skipped. */
+    private List<Column> columnDefinitions(TokenType end) {
+        List<Column> columns = new ArrayList<>();
+        do {
+            if (lexer.type() == end) break;
+            if (lexer.isWord("PRIMARY") || lexer.isWord("UNIQUE") || lexer.isWord("KEY")
+                || lexer.isWord("INDEX") || lexer.isWord("CONSTRAINT") || lexer.isWord("FOREIGN")
+                || lexer.isWord("CHECK")) {
+                skipDefinition(end);
+                continue;
+            }
+            String column = name();
+            if (lexer.type() != TokenType.WORD) throw unexpected("a data type");
+            DataType type = dataType(lexer.text());
+            lexer.next();
+            boolean nullable = true;
+            // Type arguments (VARCHAR(100)) and constraints other than NOT NULL are skipped
+            int depth = 0;
+            while (lexer.type() != TokenType.EOF && !(depth == 0 && (lexer.type() == TokenType.COMMA
+                    || lexer.type() == end))) {
+                if (lexer.type() == TokenType.LPAREN) depth++;
+                else if (lexer.type() == TokenType.RPAREN) depth--;
+                else if (depth == 0 && lexer.isWord("NOT")) {
+                    lexer.next();
+                    if (lexer.isWord("NULL")) nullable = false;
+                    continue;
+                }
+                lexer.next();
+            }
+            columns.add(new Column(column, type, nullable));
+        } while (accept(TokenType.COMMA));
+        if (columns.isEmpty()) throw unexpected("a column definition");
+        return columns;
+    }
+
+    private void skipDefinition(TokenType end) {
+        int depth = 0;
+        while (lexer.type() != TokenType.EOF && !(depth == 0 && (lexer.type() == TokenType.COMMA
+                || lexer.type() == end))) {
+            if (lexer.type() == TokenType.LPAREN) depth++;
+            else if (lexer.type() == TokenType.RPAREN) depth--;
+            lexer.next();
+        }
+    }
+
+    /** Maps SQL type names onto the five data types; unknown names become STRING. */
+    private static DataType dataType(String name) {
+        switch (name.toUpperCase()) {
+            case "INT": case "INTEGER": case "SMALLINT": case "TINYINT": case "MEDIUMINT": case "BIGINT":
+                return DataType.INTEGER;
+            case "DOUBLE": case "FLOAT": case "REAL": case "DECIMAL": case "NUMERIC":
+                return DataType.DOUBLE;
+            case "BOOLEAN": case "BOOL":
+                return DataType.BOOLEAN;
+            case "DATE": case "DATETIME": case "TIMESTAMP":
+                return DataType.DATE;
+            default:
+                return DataType.STRING;
+        }
+    }
+
+    private CreateIndexStatement createIndex() {
+        if (!lexer.isWord("ON")) name();        // the index name is not kept
+        expectWord("ON");
+        String table = name();
+        expect(TokenType.LPAREN);
+        String column = name();
+        expect(TokenType.RPAREN);
+        IndexType type = IndexType.HASH;
+        if (acceptWord("USING")) {
+            type = option(IndexType.class, "HASH or BTREE");
+        }
+        return new CreateIndexStatement(table, column, type);
+    }
+
+    private <E extends Enum<E>> E option(Class<E> type, String expected) {
+        if (lexer.type() == TokenType.WORD) {
+            for (E constant : type.getEnumConstants()) {
+                if (lexer.isWord(constant.name())) {
+                    lexer.next();
+                    return constant;
+                }
+            }
+        }
+        throw unexpected(expected);
+    }
+
+    // ------------------------------------------------------------------
+    // Conditions
+    // ------------------------------------------------------------------
+
+    private Expr optionalWhere() {
+        return acceptWord("WHERE") ? condition() : null;
+    }
+
+    private Expr condition() {
+        Expr left = term();
+        while (acceptWord("OR")) {
+            left = new Logical(false, left, term());
+        }
+        return left;
+    }
+
+    private Expr term() {
+        Expr left = factor();
+        while (acceptWord("AND")) {
+            left = new Logical(true, left, factor());
+        }
+        return left;
+    }
+
+    private Expr factor() {
+        if (acceptWord("NOT")) return new Not(factor());
+        if (accept(TokenType.LPAREN)) {
+            Expr inner = condition();
+            expect(TokenType.RPAREN);
+            return inner;
+        }
+        // value op column: a literal first, then the operator flipped around the column
+        if (isLiteral()) {
+            String value = notNull(value());
+            TokenType op = operator();
+            return new Comparison(column(), Comparison.flip(op), value);
+        }
+        String column = column();
+        if (acceptWord("IS")) {
+            boolean negated = acceptWord("NOT");
+            expectWord("NULL");
+            return new IsNull(column, negated);
+        }
+        boolean negated = acceptWord("NOT");
+        if (acceptWord("BETWEEN")) {
+            String low = notNull(value());
+            expectWord("AND");
+            Expr between = new Between(column, low, notNull(value()));
+            return negated ? new Not(between) : between;
+        }
+        if (negated) throw unexpected("BETWEEN");
+        TokenType op = operator();
+        return new Comparison(column, op, notNull(operand()));
+    }
+
+    private String notNull(String value) {
+        if (value == null) throw lexer.error("Use IS NULL or IS NOT NULL to compare with NULL");
+        return value;
+    }
+
+    private TokenType operator() {
+        TokenType op = lexer.type();
+        if (op != TokenType.EQ && op != TokenType.NE && op != TokenType.LT && op != TokenType.LE
+            && op != TokenType.GT && op != TokenType.GE) {
+            throw unexpected("a comparison operator");
+        }
+        lexer.next();
+        return op;
+    }
+
+    /** The value side of a comparison: a literal, or a bare word or quoted name taken as text. */
+    private String operand() {
+        if (lexer.type() == TokenType.WORD && !isLiteral() || lexer.type() == TokenType.QUOTED_NAME) {
+            String text = lexer.text();
+            lexer.next();
+            return text;
+        }
+        return value();
+    }
+
+    private boolean isLiteral() {
+        TokenType type = lexer.type();
+        return type == TokenType.STRING || type == TokenType.NUMBER || type == TokenType.MINUS
+            || type == TokenType.PLUS || lexer.isWord("TRUE") || lexer.isWord("FALSE") || lexer.isWord("NULL");
+    }
+
+    // ------------------------------------------------------------------
+    // Tokens
+    // ------------------------------------------------------------------
+
+    /** A literal value as text; null for NULL. */
+    private String value() {
+        TokenType type = lexer.type();
+        if (type == TokenType.MINUS || type == TokenType.PLUS) {
+            lexer.next();
+            if (lexer.type() != TokenType.NUMBER) throw unexpected("a number");
+            String number = lexer.text();
+            lexer.next();
+            return type == TokenType.MINUS ? "-" + number : number;
+        }
+        if (type == TokenType.STRING || type == TokenType.NUMBER) {
+            String text = lexer.text();
+            lexer.next();
+            return text;
+        }
+        if (lexer.isWord("NULL")) {
+            lexer.next();
+            return null;
+        }
+        if (lexer.isWord("TRUE") || lexer.isWord("FALSE")) {
+            String text = lexer.text().toLowerCase();
+            lexer.next();
+            return text;
+        }
+        throw unexpected("a value");
+    }
+
+    private String name() {
+        if (lexer.type() != TokenType.WORD && lexer.type() != TokenType.QUOTED_NAME) {
+            throw unexpected("a name");
+        }
+        String text = lexer.text();
+        lexer.next();
+        return text;
+    }
+
+    /**
+     * A column name, optionally qualified by a table name or alias:
+     * table.column. The qualifier is dropped where it names the only table.
+     */
+    private String reference() {
+        String name = name();
+        return accept(TokenType.DOT) ? unqualified(name + "." + name()) : name;
+    }
+
+    private String unqualified(String reference) {
+        int dot = reference.indexOf('.');
+        if (dot < 0 || qualifiers == null) return reference;
+        for (String qualifier : qualifiers) {
+            if (qualifier.equalsIgnoreCase(reference.substring(0, dot))) return reference.substring(dot + 1);
+        }
+        return reference;
+    }
+
+    /** A whole number of rows, as in LIMIT and OFFSET. */
+    private long count() {
+        if (lexer.type() != TokenType.NUMBER) throw unexpected("a number of rows");
+        String text = lexer.text();
+        try {
+            long count = Long.parseLong(text);
+            lexer.next();
+            return count;
+        } catch (NumberFormatException e) {
+            throw lexer.error("Expected a whole number of rows but found " + text);
+        }
+    }
+
+    private String string() {
+        if (lexer.type() != TokenType.STRING) throw unexpected("a quoted file name");
+        String text = lexer.text();
+        lexer.next();
+        return text;
+    }
+
+    private boolean accept(TokenType type) {
+        if (lexer.type() != type) return false;
+        lexer.next();
+        return true;
+    }
+
+    private void expect(TokenType type) {
+        if (!accept(type)) throw unexpected(describe(type));
+    }
+
+    private boolean acceptWord(String keyword) {
+        if (!lexer.isWord(keyword)) return false;
+        lexer.next();
+        return true;
+    }
+
+    private void expectWord(String keyword) {
+        if (!acceptWord(keyword)) throw unexpected(keyword);
+    }
+
+    private void expectEnd() {
+        if (lexer.type() != TokenType.EOF) throw unexpected("end of statement");
+    }
+
+    private IllegalArgumentException unexpected(String expected) {
+        return lexer.error("Expected " + expected + " but found " + lexer.describe());
+    }
+
+    private static String describe(TokenType type) {
+        switch (type) {
+            case LPAREN: return "'('";
+            case RPAREN: return "')'";
+            case COMMA: return "','";
+            case EQ: return "'='";
+            default: return type.name();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * How a {@link Table} lays out its rows; see {@link TableStorage}.
+ * Author: Eyasu Solomon
+ */
+enum StorageMode {
+    ROW, COLUMNAR
+}
@@ -0,0 +1,95 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * STRING and DATE values: a dictionary when values repeat, otherwise one UTF-8 blob.
+ * Author: Eyasu Solomon
+ */
+class StringSegment extends ColumnSegment {
+    private final String[] words;         // DICT
+    private final LongColumn codes;
+    private final byte[] blob;            // BLOB
+    private final LongColumn offsets;     // count + 1 entries
+
+    private StringSegment(int count, long[] nulls, long rawBytes, String[] words, LongColumn codes,
+                          byte[] blob, LongColumn offsets) {
+        super(count, nulls, rawBytes);
+        this.words = words;
+        this.codes = codes;
+        this.blob = blob;
+        this.offsets = offsets;
+    }
+
+    static StringSegment encode(Object[] values, int count, long[] nulls) {
+        long raw = count * 4L;
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) continue;
+            String s = (String) values[i];
+            raw += 40 + s.length();
+            if (dictionary.size() <= count / 2) dictionary.putIfAbsent(s, dictionary.size());
+        }
+        if (dictionary.size() <= count / 2) {
+            long[] rowCodes = toLongs(values, count, dictionary::get);
+            return new StringSegment(count, nulls, raw, dictionary.keySet().toArray(new String[0]),
+                LongColumn.encode(rowCodes, count), null, null);
+        }
+        byte[][] bytes = new byte[count][];
+        long[] ends = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = values[i] == null ? new byte[0] : ((String) values[i]).getBytes(StandardCharsets.UTF_8);
+            ends[i + 1] = ends[i] + bytes[i].length;
+        }
+        byte[] blob = new byte[(int) ends[count]];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(bytes[i], 0, blob, (int) ends[i], bytes[i].length);
+        }
+        return new StringSegment(count, nulls, raw, null, null, blob, LongColumn.encode(ends, count + 1));
+    }
+
+    @Override
+    protected Object value(int i) {
+        if (words != null) return words[(int) codes.get(i)];
+        int from = (int) offsets.get(i);
+        return new String(blob, from, (int) offsets.get(i + 1) - from, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected IntPredicate matches(String literal) {
+        if (words != null) {
+            int code = Arrays.asList(words).indexOf(literal);
+            return code < 0 ? i -> false : codes.matcher(code);
+        }
+        byte[] key = literal.getBytes(StandardCharsets.UTF_8);
+        return new IntPredicate() {
+            private final long[] ends = new long[BATCH + 1];
+            private int start = -1;
+
+            @Override
+            public boolean test(int i) {
+                int b = i & -BATCH;
+                if (b != start) {
+                    offsets.decode(b, Math.min(BATCH, count - b) + 1, ends);
+                    start = b;
+                }
+                int from = (int) ends[i - b];
+                int to = (int) ends[i - b + 1];
+                return Arrays.equals(blob, from, to, key, 0, key.length);
+            }
+        };
+    }
+
+    @Override
+    public String encoding() {
+        return words != null ? "DICT(" + words.length + ") " + codes.encoding() : "BLOB";
+    }
+
+    @Override
+    protected long valueBytes() {
+        if (words == null) return blob.length + offsets.bytes();
+        long bytes = codes.bytes() + words.length * 4L;
+        for (String w : words) bytes += 40 + w.length();
+        return bytes;
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * STRING and DATE columns. DATE values are kept as their string form,
+ * matching how the console parses them.
+ * Author: Eyasu Solomon
+ *
+ * A column starts out dictionary encoded: each distinct value is stored once
+ * and every row holds an int code, so repeated values cost four bytes and
+ * equality filters compare ints. When the column passes the dictionary
+ * limit it is decoded into a plain String[] for good.
+ */
+class StringVector extends ColumnVector {
+    private static final int NULL_CODE = -1;
+    private static volatile int dictionaryLimit = 4096;
+
+    private final int limit;
+    private volatile boolean encoded;
+    private volatile int[] codes;
+    private volatile String[] words;
+    private final Map<String, Integer> dictionary = new ConcurrentHashMap<>();
+    private int wordCount;
+    private volatile String[] values;
+
+    StringVector(Column column, int capacity) {
+        super(column, capacity);
+        limit = dictionaryLimit;
+        encoded = limit > 0;
+        if (encoded) {
+            codes = new int[capacity];
+            words = new String[16];
+        } else {
+            values = new String[capacity];
+        }
+    }
+
+    /** Most distinct values a new STRING column keeps dictionary encoded (0 disables encoding). */
+    static void setDictionaryLimit(int limit) {
+        dictionaryLimit = Math.max(0, limit);
+    }
+
+    public String getString(int slot) { return (String) getValue(slot); }
+
+    public boolean isEncoded() { return encoded; }
+
+    /** Number of distinct values in the dictionary. */
+    public int cardinality() { return dictionary.size(); }
+
+    /** Dictionary code of a slot (NULL_CODE for NULL); only meaningful while encoded. */
+    public int codeAt(int slot) { return codes[slot]; }
+
+    public String word(int code) { return code == NULL_CODE ? null : words[code]; }
+
+    /** Code of a value, or -1 if the dictionary does not hold it. */
+    public int codeOf(String value) {
+        Integer code = dictionary.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    @Override
+    public String encoding() {
+        return encoded ? "DICTIONARY (" + dictionary.size() + " values)" : "PLAIN";
+    }
+
+    @Override
+    protected Object getValue(int slot) {
+        // codes is dropped only after values holds every slot, so either array will do
+        int[] c = codes;
+        if (c != null) return word(c[slot]);
+        return values[slot];
+    }
+
+    @Override
+    protected void setValue(int slot, Object value) {
+        String s = (String) value;
+        if (encoded) {
+            Integer code = dictionary.get(s);
+            if (code == null && wordCount < limit) {
+                code = wordCount++;
+                String[] w = words;
+                if (code == w.length) {
+                    w = Arrays.copyOf(w, code * 2);
+                    words = w;
+                }
+                w[code] = s;
+                dictionary.put(s, code);
+            }
+            if (code != null) {
+                codes[slot] = code;
+                return;
+            }
+            decode();
+        }
+        values[slot] = s;
+    }
+
+    /** Switches to plain encoding once the column has too many distinct values. */
+    private void decode() {
+        int[] c = codes;
+        String[] plain = new String[c.length];
+        for (int i = 0; i < c.length; i++) {
+            plain[i] = word(c[i]);
+        }
+        values = plain;
+        encoded = false;
+        codes = null;
+    }
+
+    @Override
+    protected void growValues(int capacity) {
+        if (encoded) codes = Arrays.copyOf(codes, capacity);
+        else values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    public void put(int slot, Object value) {
+        super.put(slot, value);
+        if (value != null) return;
+        if (encoded) codes[slot] = NULL_CODE;
+        else values[slot] = null;
+    }
+
+    @Override
+    public IntPredicate equalTo(String literal) {
+        int[] c = codes;
+        if (c != null) {
+            int code = codeOf(literal);
+            if (code == NULL_CODE) return slot -> false;
+            return slot -> c[slot] == code;
+        }
+        String[] vals = values;
+        return slot -> literal.equals(vals[slot]);
+    }
+
+    /** Encoded columns load their codes, so filters compare ints; plain ones load the strings. */
+    @Override
+    public void load(int from, int n, BatchColumn out) {
+        int[] c = codes;
+        if (c != null) {
+            out.wrap(c, from);
+            out.useDictionary(this);
+        } else {
+            out.wrap(values, from);
+        }
+        loadNulls(from, n, out);
+    }
+
+    @Override
+    public long estimateBytes(int size) {
+        int[] c = codes;
+        if (c != null) {
+            String[] w = words;
+            long bytes = super.estimateBytes(size) + c.length * 4L + w.length * 4L;
+            for (String word : w) {
+                if (word != null) bytes += 40 + word.length();
+            }
+            return bytes;
+        }
+        String[] vals = values;
+        long bytes = super.estimateBytes(size) + vals.length * 4L;
+        for (int i = 0; i < size; i++) {
+            if (vals[i] != null) bytes += 40 + vals[i].length();
+        }
+        return bytes;
+    }
+}
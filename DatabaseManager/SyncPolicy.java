@@ -0,0 +1,9 @@
+/**
+ * When the {@link WriteAheadLog} forces appended records to disk.
+ * Author: Eyasu Solomon
+ */
+enum SyncPolicy {
+    PER_OP,         // fsync after every operation
+    GROUP_COMMIT,   // one fsync per time window, shared by all waiting writers
+    OS_BUFFERED     // leave flushing to the operating system
+}
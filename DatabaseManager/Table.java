@@ -0,0 +1,1298 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * A table that many sessions can use at once. Writers take the table's
+ * write lock and never change a published row: an update appends a new
+ * version of the row and stamps the old one deleted, a delete only stamps
+ * (a tombstone). Each change then publishes a new {@link TableSnapshot}.
+ * Readers take the current snapshot and never lock, so selects never wait
+ * for writers and always see a consistent table.
+ * Author: Eyasu Solomon
+ *
+ * Dead row versions are reclaimed by a background compaction once they
+ * make up {@code compactionRatio} of the slots. Old rows can also be frozen
+ * into compressed, read-only segments in the background (see
+ * {@link #setFreezePolicy}). Once {@link #analyze} has collected
+ * statistics for the planner, they are collected again in the background
+ * whenever {@code analyzeFraction} of the rows has changed since.
+ */
+class Table implements Queryable, CursorQueryable, Modifiable {
+    private static final int MIN_DEAD_ROWS = 64;
+    private static final int MIN_ANALYZE_ROWS = 1000;
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "table-compaction");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private String name;
+    private List<Column> columns;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile TableSnapshot snapshot;
+    private volatile int nextId;
+    private WriteAheadLog log;
+    private volatile double compactionRatio = 0.3;
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+    private volatile int hotRowLimit = Integer.getInteger("dbm.freezeRows", 0);
+    private volatile long freezeAgeMillis = Long.getLong("dbm.freezeAgeSeconds", 0L) * 1000;
+    private final AtomicBoolean freezePending = new AtomicBoolean();
+    private volatile TableStatistics statistics;        // null until analyzed
+    private volatile double analyzeFraction = Double.parseDouble(System.getProperty("dbm.analyzeFraction", "0.1"));
+    private final AtomicLong changedRows = new AtomicLong();
+    private final AtomicBoolean analyzePending = new AtomicBoolean();
+    private Map<String, TableIndex> deferredIndexes;    // indexes a bulk load rebuilds at its end
+    private int bulkLoads;                              // guarded by writeLock
+    
+    public Table(String name, List<Column> columns) {
+        this(name, columns, StorageMode.ROW);
+    }
+    
+    public Table(String name, List<Column> columns, StorageMode mode) {
+        this.name = name;
+        this.columns = new ArrayList<>(columns);
+        this.snapshot = new TableSnapshot(TableStorage.create(mode, this.columns),
+            Collections.emptyMap(), 0, 0, 0);
+        this.nextId = 1;
+    }
+    
+    public String getName() { return name; }
+    public List<Column> getColumns() { return columns; }
+    public StorageMode getStorageMode() { return snapshot.storage.getMode(); }
+    public int getRecordCount() { return snapshot.liveRows; }
+    /** Deleted or superseded row versions not yet reclaimed by compaction. */
+    public int getDeadRows() { TableSnapshot s = snapshot; return s.size - s.liveRows; }
+    public Collection<TableIndex> getIndexes() { return snapshot.indexes.values(); }
+    public Column getColumn(String name) { return columns.get(requireColumn(name)); }
+    public int getNextId() { return nextId; }
+    
+    /** The current consistent view of the table; never blocks. */
+    TableSnapshot snapshot() { return snapshot; }
+    
+    /**
+     * Every index the table has, including those a bulk load has taken out
+     * of the snapshot until it ends. Checkpoints and exports persist these,
+     * so an index survives a checkpoint taken during an import.
+     */
+    List<TableIndex> declaredIndexes() {
+        writeLock.lock();
+        try {
+            List<TableIndex> indexes = new ArrayList<>(snapshot.indexes.values());
+            if (deferredIndexes != null) {
+                for (TableIndex index : deferredIndexes.values()) {
+                    if (!snapshot.indexes.containsKey(index.getColumn().getName())) indexes.add(index);
+                }
+            }
+            return indexes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public boolean isCompactionPending() { return compactionPending.get(); }
+    
+    /** Fraction of dead slots (0 to 1) that triggers a background compaction. */
+    public void setCompactionRatio(double ratio) {
+        if (ratio <= 0 || ratio > 1) {
+            throw new IllegalArgumentException("Compaction ratio must be in (0, 1]: " + ratio);
+        }
+        this.compactionRatio = ratio;
+    }
+    
+    /**
+     * Freezes rows once more than {@code hotRows} rows follow them, or once
+     * they are older than {@code maxAgeMillis}; 0 turns a rule off. The
+     * background freeze runs on writes, one full segment at a time.
+     */
+    public void setFreezePolicy(int hotRows, long maxAgeMillis) {
+        if (hotRows < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Freeze limits must not be negative");
+        }
+        this.hotRowLimit = hotRows;
+        this.freezeAgeMillis = maxAgeMillis;
+    }
+    
+    public int getFrozenRows() { return snapshot.storage.frozenRows(); }
+    
+    /** Rows inserted, updated or deleted since the table was created or loaded; results read before a change are stale. */
+    public long getChangeCount() { return changedRows.get(); }
+    
+    /** Statistics of the last {@link #analyze}, or null if the table was never analyzed. */
+    public TableStatistics getStatistics() { return statistics; }
+    
+    /** Share of rows (0 to 1) that may change before statistics are collected again; 0 never refreshes them. */
+    public void setAnalyzeFraction(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Analyze fraction must be in [0, 1]: " + fraction);
+        }
+        this.analyzeFraction = fraction;
+    }
+    
+    /**
+     * Collects the planner's statistics of every column from the current
+     * snapshot (see {@link TableStatistics}). Writers are not held up while
+     * the rows are read.
+     */
+    public TableStatistics analyze() {
+        TableStatistics stats = TableStatistics.collect(snapshot, columns, changedRows.get());
+        statistics = stats;
+        WriteAheadLog wal = log;
+        if (wal != null) wal.awaitDurable(wal.logAnalyze(this));
+        return stats;
+    }
+    
+    /** Installs statistics read back from a checkpoint, as if collected now. */
+    void restoreStatistics(long rows, long analyzedAt, ColumnStatistics[] stats) {
+        statistics = new TableStatistics(rows, changedRows.get(), analyzedAt, stats);
+    }
+    
+    /** Counts changed rows and refreshes the statistics in the background once enough have changed. */
+    private void noteChanges(int rows) {
+        long changed = changedRows.addAndGet(rows);
+        TableStatistics stats = statistics;
+        double fraction = analyzeFraction;
+        if (stats == null || fraction <= 0 || bulkLoads > 0) return;
+        if (changed - stats.changes < fraction * Math.max(stats.rows, MIN_ANALYZE_ROWS)) return;
+        if (!analyzePending.compareAndSet(false, true)) return;
+        COMPACTOR.execute(() -> {
+            try {
+                statistics = TableStatistics.collect(snapshot, columns, changedRows.get());
+            } catch (RuntimeException e) {
+                System.err.println("Analyze of " + name + " failed: " + e);
+            } finally {
+                analyzePending.set(false);
+            }
+        });
+    }
+    
+    /** Records every later change of this table in the given log (null to detach). */
+    void attachLog(WriteAheadLog log) {
+        this.log = log;
+    }
+    
+    /**
+     * Holds off checkpoints while a change is applied and logged, so a
+     * snapshot never contains a change whose log record lands after it,
+     * then takes the table's write lock.
+     */
+    private Lock beginChange() {
+        Lock gate = null;
+        if (log != null) {
+            gate = log.checkpointGate().readLock();
+            gate.lock();
+        }
+        writeLock.lock();
+        return gate;
+    }
+    
+    /**
+     * Releases what {@link #beginChange} took, then waits until the change
+     * logged at {@code lsn} (0: none) is durable. Writers wait outside the
+     * locks, so the ones waiting at the same time share a group commit.
+     */
+    private void endChange(Lock gate, long lsn) {
+        writeLock.unlock();
+        if (gate != null) gate.unlock();
+        WriteAheadLog wal = log;
+        if (lsn > 0 && wal != null) wal.awaitDurable(lsn);
+    }
+    
+    public TableIndex createIndex(String column) {
+        return createIndex(column, IndexType.HASH);
+    }
+    
+    /**
+     * Builds an index on the given column. The index is maintained on every
+     * insert, update and delete; HASH indexes serve the equality paths, BTREE
+     * indexes also serve range predicates, ORDER BY and MIN/MAX.
+     */
+    public TableIndex createIndex(String column, IndexType type) {
+        int c = requireColumn(column);
+        Column col = columns.get(c);
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            TableSnapshot s = snapshot;
+            if (s.indexes.containsKey(col.getName()) || (deferredIndexes != null && deferredIndexes.containsKey(col.getName()))) {
+                throw new IllegalArgumentException("Index already exists on " + name + "(" + col.getName() + ")");
+            }
+            TableIndex index = TableIndex.create(col, type);
+            for (int slot = 0; slot < s.size; slot++) {
+                index.add(s.storage.valueAt(slot, c), slot);
+            }
+            Map<String, TableIndex> indexes = new LinkedHashMap<>(s.indexes);
+            indexes.put(col.getName(), index);
+            snapshot = new TableSnapshot(s.storage, Collections.unmodifiableMap(indexes), s.size, s.version, s.liveRows);
+            if (log != null) lsn = log.logCreateIndex(this, col.getName(), type);
+            return index;
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    @Override
+    public void insert(Map<String, Object> values) {
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            int id = nextId;
+            TableSnapshot s = snapshot;
+            int slot = s.storage.append(id, values);
+            indexSlot(s, slot);
+            nextId = id + 1;
+            snapshot = new TableSnapshot(s.storage, s.indexes, slot + 1, s.version + 1, s.liveRows + 1);
+            noteChanges(1);
+            if (log != null) lsn = log.logInsert(this, id, values);
+            scheduleFreeze(snapshot);
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    /**
+     * Appends rows given in column order under one lock, one log write and
+     * one snapshot publish, and returns how many were added. Every value is
+     * validated first, so a bad row rejects the batch before anything
+     * changes.
+     */
+    public int insertBatch(List<Object[]> rows) {
+        List<Object[]> typed = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (row.length != columns.size()) {
+                throw new IllegalArgumentException("Expected " + columns.size() + " values, got " + row.length);
+            }
+            Object[] values = new Object[row.length];
+            for (int c = 0; c < values.length; c++) {
+                values[c] = columns.get(c).validate(row[c]);
+            }
+            typed.add(values);
+        }
+        if (typed.isEmpty()) return 0;
+        
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            TableSnapshot s = snapshot;
+            int firstId = nextId;
+            long now = System.currentTimeMillis();
+            int slot = -1;
+            for (int i = 0; i < typed.size(); i++) {
+                slot = s.storage.appendValues(firstId + i, now, typed.get(i));
+                indexSlot(s, slot);
+            }
+            nextId = firstId + typed.size();
+            snapshot = new TableSnapshot(s.storage, s.indexes, slot + 1, s.version + 1, s.liveRows + typed.size());
+            noteChanges(typed.size());
+            if (log != null) lsn = log.logInserts(this, firstId, typed);
+            scheduleFreeze(snapshot);
+            return typed.size();
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    /**
+     * Stops maintaining the indexes until the matching {@link #endBulkLoad}.
+     * They are taken out of the published snapshot meanwhile, so lookups
+     * fall back to scans and stay correct. Calls may nest.
+     */
+    public void beginBulkLoad() {
+        writeLock.lock();
+        try {
+            if (bulkLoads++ > 0) return;
+            TableSnapshot s = snapshot;
+            deferredIndexes = s.indexes;
+            snapshot = new TableSnapshot(s.storage, Collections.emptyMap(), s.size, s.version, s.liveRows);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** Rebuilds the indexes deferred by {@link #beginBulkLoad} once, over every row. */
+    public void endBulkLoad() {
+        writeLock.lock();
+        try {
+            if (bulkLoads == 0) {
+                throw new IllegalStateException("No bulk load in progress on " + name);
+            }
+            if (--bulkLoads > 0) return;
+            TableSnapshot s = snapshot;
+            Map<String, TableIndex> indexes = new LinkedHashMap<>();
+            for (TableIndex old : deferredIndexes.values()) {
+                if (s.indexes.containsKey(old.getColumn().getName())) continue;
+                TableIndex index = TableIndex.create(old.getColumn(), IndexType.valueOf(old.getType()));
+                int c = columns.indexOf(old.getColumn());
+                for (int slot = 0; slot < s.size; slot++) {
+                    index.add(s.storage.valueAt(slot, c), slot);
+                }
+                indexes.put(old.getColumn().getName(), index);
+            }
+            indexes.putAll(s.indexes);      // created during the load and maintained since
+            deferredIndexes = null;
+            snapshot = new TableSnapshot(s.storage, Collections.unmodifiableMap(indexes), s.size, s.version, s.liveRows);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** Re-inserts a row with its original id during recovery. */
+    void restore(int id, Map<String, Object> values) {
+        writeLock.lock();
+        try {
+            TableSnapshot s = snapshot;
+            publishRestored(s, s.storage.append(id, values), id);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** Re-inserts a row from a checkpoint, values in column order, and returns its slot. */
+    int restore(int id, long createdAtMillis, Object[] values) {
+        writeLock.lock();
+        try {
+            TableSnapshot s = snapshot;
+            int slot = s.storage.appendValues(id, createdAtMillis, values);
+            publishRestored(s, slot, id);
+            return slot;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    private void publishRestored(TableSnapshot s, int slot, int id) {
+        indexSlot(s, slot);
+        nextId = Math.max(nextId, id + 1);
+        snapshot = new TableSnapshot(s.storage, s.indexes, slot + 1, s.version + 1, s.liveRows + 1);
+        noteChanges(1);
+    }
+    
+    void restoreNextId(int nextId) {
+        writeLock.lock();
+        try {
+            this.nextId = Math.max(this.nextId, nextId);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /** Adds a newly written slot to the indexes and notes whether it is in table order. */
+    private void indexSlot(TableSnapshot s, int slot) {
+        s.storage.placed(slot);
+        for (TableIndex index : s.indexes.values()) {
+            index.add(s.storage.valueAt(slot, columns.indexOf(index.getColumn())), slot);
+        }
+    }
+    
+    @Override
+    public List<Record> selectAll() {
+        TableSnapshot s = snapshot;
+        return recordsAt(s, s.visibleSlots());
+    }
+    
+    @Override
+    public List<Record> selectWhere(String column, String value) {
+        TableSnapshot s = snapshot;
+        return recordsAt(s, matchingSlots(s, column, value));
+    }
+    
+    @Override
+    public RecordCursor openAll() {
+        TableSnapshot s = snapshot;
+        return new TableCursor(s, whereScan(s, null), s.liveRows, 0, -1);
+    }
+    
+    /** Rows where column=value; an index lookup finds them all at once, a scan as the cursor advances. */
+    @Override
+    public RecordCursor openWhere(String column, String value) {
+        TableSnapshot s = snapshot;
+        int c = s.storage.columnIndex(column);
+        TableIndex index = c >= 0 ? s.indexes.get(columns.get(c).getName()) : null;
+        int[] slots = index != null ? index.lookup(value) : null;
+        if (slots != null) return new TableCursor(s, s.inTableOrder(s.filterVisible(slots)));
+        return new TableCursor(s, equalScan(s, c, column, value), -1, 0, -1);
+    }
+    
+    @Override
+    public int update(String whereCol, String whereVal, String setCol, String setVal) {
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            TableSnapshot s = snapshot;
+            int[] slots = matchingSlots(s, whereCol, whereVal);
+            if (slots.length == 0) return 0;
+    
+            // Append the new versions first: a bad value fails before anything is stamped
+            long version = s.version + 1;
+            for (int slot : slots) {
+                indexSlot(s, s.storage.appendVersion(slot, setCol, setVal));
+            }
+            for (int slot : slots) {
+                s.storage.markDeleted(slot, version);
+            }
+            publish(s.storage, s.indexes, version, s.liveRows);
+            noteChanges(slots.length);
+            if (log != null) lsn = log.logUpdate(this, whereCol, whereVal, setCol, setVal);
+            return slots.length;
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    @Override
+    public int delete(String column, String value) {
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            TableSnapshot s = snapshot;
+            int[] slots = matchingSlots(s, column, value);
+            if (slots.length == 0) return 0;
+    
+            long version = s.version + 1;
+            for (int slot : slots) {
+                s.storage.markDeleted(slot, version);
+            }
+            publish(s.storage, s.indexes, version, s.liveRows - slots.length);
+            noteChanges(slots.length);
+            if (log != null) lsn = log.logDelete(this, column, value);
+            return slots.length;
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    /** Visible rows matching {@code where} (null: every row), in table order. */
+    public List<Record> select(Expr where) {
+        TableSnapshot s = snapshot;
+        return recordsAt(s, matchingSlots(s, where));
+    }
+    
+    /**
+     * Values of {@code names} for each visible row matching {@code where}
+     * (null: every row), in table order, without building Records.
+     */
+    public List<Object[]> project(Expr where, List<String> names) {
+        int[] cols = new int[names.size()];
+        for (int i = 0; i < cols.length; i++) cols[i] = requireColumn(names.get(i));
+        TableSnapshot s = snapshot;
+        if (s.inSlotOrder() && scansWholeTable(s, where)) {
+            return ParallelScan.list(s.size, (from, to) -> new BatchScan(s, columns, where).project(cols, from, to));
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (int slot : matchingSlots(s, where)) {
+            Object[] row = new Object[cols.length];
+            for (int i = 0; i < cols.length; i++) row[i] = s.storage.valueAt(slot, cols[i]);
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    /**
+     * Visible rows matching {@code where} (null: every row), ordered by
+     * {@code order} (empty: table order), without the first {@code offset}
+     * and at most {@code limit} (-1: all) of them.
+     */
+    public List<Record> select(Expr where, List<OrderItem> order, long offset, long limit) {
+        TableSnapshot s = snapshot;
+        return recordsAt(s, orderedSlots(s, where, order, offset, limit));
+    }
+    
+    /**
+     * The rows of {@link #select(Expr, List, long, long)} as a cursor. Without
+     * ORDER BY or an index narrowing {@code where}, the table is scanned only
+     * as far as the rows read; sorting has to find every match first, but
+     * still builds Records only as they are read.
+     */
+    public RecordCursor open(Expr where, List<OrderItem> order, long offset, long limit) {
+        TableSnapshot s = snapshot;
+        if (!order.isEmpty()) return new TableCursor(s, orderedSlots(s, where, order, offset, limit));
+        int[] candidates = where == null ? null : indexCandidates(s, where);
+        if (candidates != null) return new TableCursor(s, page(checkedSlots(s, where, candidates), offset, limit));
+        TableStatistics stats = statistics;
+        long expected = where == null ? s.liveRows
+            : stats == null ? -1 : Math.round(QueryPlanner.selectivity(stats, columns, where) * s.liveRows);
+        return new TableCursor(s, whereScan(s, where), expected, offset, limit);
+    }
+    
+    /** Same as {@link #project(Expr, List)} with ORDER BY, OFFSET and LIMIT as in {@link #select(Expr, List, long, long)}. */
+    public List<Object[]> project(Expr where, List<String> names, List<OrderItem> order, long offset, long limit) {
+        if (order.isEmpty() && offset == 0 && limit < 0) return project(where, names);
+        int[] cols = new int[names.size()];
+        for (int i = 0; i < cols.length; i++) cols[i] = requireColumn(names.get(i));
+        TableSnapshot s = snapshot;
+        int[] slots = orderedSlots(s, where, order, offset, limit);
+        List<Object[]> rows = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            Object[] row = new Object[cols.length];
+            for (int i = 0; i < cols.length; i++) row[i] = s.storage.valueAt(slot, cols[i]);
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    /**
+     * Slots of {@link #select(Expr, List, long, long)}. A BTREE index on a
+     * lone ORDER BY column gives them in order when there is no WHERE or
+     * only a range on that column. Otherwise the matching slots go through
+     * a {@link RowSorter} as their typed keys and slot, so a LIMIT keeps
+     * only offset + limit of them.
+     */
+    private int[] orderedSlots(TableSnapshot s, Expr where, List<OrderItem> order, long offset, long limit) {
+        int[] keys = new int[order.size()];
+        DataType[] types = new DataType[keys.length];
+        boolean[] ascending = new boolean[keys.length];
+        int[] positions = new int[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = requireColumn(order.get(k).column);
+            types[k] = columns.get(keys[k]).getType();
+            ascending[k] = order.get(k).ascending;
+            positions[k] = k;
+        }
+        if (keys.length == 1) {
+            int[] slots = keyOrderSlots(s, where, keys[0], ascending[0]);
+            if (slots != null) return page(slots, offset, limit);
+        }
+        int[] slots = matchingSlots(s, where);
+        if (keys.length == 0) return page(slots, offset, limit);
+    
+        RowSorter sorter = new RowSorter(RowSorter.order(positions, types, ascending), offset, limit);
+        for (int slot : slots) {
+            Object[] row = new Object[keys.length + 1];
+            for (int k = 0; k < keys.length; k++) row[k] = typed(types[k], s.storage.valueAt(slot, keys[k]));
+            row[keys.length] = slot;
+            sorter.add(row);
+        }
+        List<Object[]> sorted = sorter.rows();
+        int[] out = new int[sorted.size()];
+        for (int i = 0; i < out.length; i++) out[i] = (Integer) sorted.get(i)[keys.length];
+        return out;
+    }
+    
+    /** Slots matching {@code where} in the order of a BTREE index on column {@code c}; null if none gives it. */
+    private int[] keyOrderSlots(TableSnapshot s, Expr where, int c, boolean ascending) {
+        Column col = columns.get(c);
+        TableIndex index = s.indexes.get(col.getName());
+        if (!(index instanceof BTreeIndex)) return null;
+        if (where == null) {
+            int[] slots = ((BTreeIndex) index).ordered(ascending);
+            return slots == null ? null : s.filterVisible(slots);
+        }
+        String low = null, high = null;
+        boolean lowInclusive = true, highInclusive = true;
+        if (where instanceof Between && ((Between) where).column.equalsIgnoreCase(col.getName())) {
+            low = ((Between) where).low;
+            high = ((Between) where).high;
+        } else if (where instanceof Comparison && ((Comparison) where).isRange()
+                   && ((Comparison) where).column.equalsIgnoreCase(col.getName())) {
+            Comparison cmp = (Comparison) where;
+            switch (cmp.op) {
+                case GT: low = cmp.value; lowInclusive = false; break;
+                case GE: low = cmp.value; break;
+                case LT: high = cmp.value; highInclusive = false; break;
+                default: high = cmp.value; break;
+            }
+        } else {
+            return null;
+        }
+        int[] slots = rangeSlots(s, col.getName(), low, lowInclusive, high, highInclusive, true);
+        if (!ascending) reverse(slots);
+        return slots;
+    }
+    
+    private static int[] page(int[] slots, long offset, long limit) {
+        int from = (int) Math.min(offset, slots.length);
+        int to = limit < 0 ? slots.length : (int) Math.min(from + limit, slots.length);
+        return from == 0 && to == slots.length ? slots : Arrays.copyOfRange(slots, from, to);
+    }
+    
+    /**
+     * Sets {@code columns} to {@code values} in every row matching
+     * {@code where} (null: every row). Values are checked against the column
+     * types before any row changes.
+     */
+    public int update(Expr where, List<String> columns, List<String> values) {
+        Object[] typed = new Object[columns.size()];
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < typed.length; i++) {
+            Column col = this.columns.get(requireColumn(columns.get(i)));
+            names[i] = col.getName();
+            typed[i] = col.validate(values.get(i));
+        }
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            TableSnapshot s = snapshot;
+            int[] slots = matchingSlots(s, where);
+            if (slots.length == 0) return 0;
+    
+            long version = s.version + 1;
+            for (int slot : slots) {
+                int copy = s.storage.appendVersion(slot, names[0], typed[0]);
+                for (int i = 1; i < names.length; i++) {
+                    s.storage.set(copy, names[i], typed[i]);
+                }
+                indexSlot(s, copy);
+            }
+            for (int slot : slots) {
+                s.storage.markDeleted(slot, version);
+            }
+            publish(s.storage, s.indexes, version, s.liveRows);
+            noteChanges(slots.length);
+            if (log != null) lsn = log.logUpdate(this, where, Arrays.asList(names), Arrays.asList(typed));
+            return slots.length;
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    /** Deletes every row matching {@code where} (null: every row). */
+    public int delete(Expr where) {
+        long lsn = 0;
+        Lock gate = beginChange();
+        try {
+            TableSnapshot s = snapshot;
+            int[] slots = matchingSlots(s, where);
+            if (slots.length == 0) return 0;
+    
+            long version = s.version + 1;
+            for (int slot : slots) {
+                s.storage.markDeleted(slot, version);
+            }
+            publish(s.storage, s.indexes, version, s.liveRows - slots.length);
+            noteChanges(slots.length);
+            if (log != null) lsn = log.logDelete(this, where);
+            return slots.length;
+        } finally {
+            endChange(gate, lsn);
+        }
+    }
+    
+    /** Publishes a new snapshot after an update or delete and schedules compaction when due. */
+    private void publish(TableStorage storage, Map<String, TableIndex> indexes, long version, int liveRows) {
+        int size = storage.size();
+        snapshot = new TableSnapshot(storage, indexes, size, version, liveRows);
+        int dead = size - liveRows;
+        if (dead >= MIN_DEAD_ROWS && dead >= compactionRatio * size && compactionPending.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    System.err.println("Compaction of " + name + " failed: " + e);
+                } finally {
+                    compactionPending.set(false);
+                }
+            });
+        }
+        scheduleFreeze(snapshot);
+    }
+    
+    /** Starts a background freeze once the policy has a full segment of rows to freeze. */
+    private void scheduleFreeze(TableSnapshot s) {
+        if (freezePending.get()) return;
+        int frozen = s.storage.frozenRows();
+        int limit = hotRowLimit;
+        long age = freezeAgeMillis;
+        boolean due = limit > 0 && s.size - limit - frozen >= TieredStorage.SEGMENT_ROWS;
+        if (!due && age > 0 && s.size - frozen >= TieredStorage.SEGMENT_ROWS) {
+            int last = frozen + TieredStorage.SEGMENT_ROWS - 1;
+            due = s.storage.createdAtMillis(last) < System.currentTimeMillis() - age;
+        }
+        if (due && freezePending.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                try {
+                    freeze(TieredStorage.SEGMENT_ROWS);
+                } catch (RuntimeException e) {
+                    System.err.println("Freezing " + name + " failed: " + e);
+                } finally {
+                    freezePending.set(false);
+                }
+            });
+        }
+    }
+    
+    /** Freezes every row the freeze policy allows now, without waiting for a full segment. */
+    public void freeze() {
+        freeze(1);
+    }
+    
+    /**
+     * Encodes the rows due for freezing (in whole multiples of {@code batch})
+     * into compressed segments and swaps in the new storage. Like compact()
+     * the work is done from a snapshot; the write lock is only taken to copy
+     * rows written meanwhile and the deletion stamps. Slots do not move, so
+     * the indexes are kept as they are.
+     */
+    private void freeze(int batch) {
+        TableSnapshot base = snapshot;
+        int frozen = base.storage.frozenRows();
+        int target = base.size;
+        if (hotRowLimit > 0) target = Math.min(target, Math.max(frozen, base.size - hotRowLimit));
+        long age = freezeAgeMillis;
+        if (age > 0) {
+            long cutoff = System.currentTimeMillis() - age;
+            int old = frozen;
+            while (old < base.size && base.storage.createdAtMillis(old) < cutoff) old++;
+            target = hotRowLimit > 0 ? Math.max(target, old) : old;
+        } else if (hotRowLimit == 0) {
+            return;
+        }
+        target = frozen + (target - frozen) / batch * batch;
+        if (target <= frozen) return;
+        TableStorage tiered = TieredStorage.freeze(base.storage, columns, target, base.size);
+    
+        writeLock.lock();
+        try {
+            TableSnapshot current = snapshot;
+            if (current.storage != base.storage) {
+                return;     // compacted meanwhile; the next write retries
+            }
+            for (int slot = base.size; slot < current.size; slot++) {
+                tiered.appendCopy(current.storage, slot);
+            }
+            tiered.copyStamps(current.storage);
+            snapshot = new TableSnapshot(tiered, current.indexes, current.size, current.version, current.liveRows);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Copies the live rows, in table order, into fresh storage and
+     * indexes, then swaps them in. The copy is built from a snapshot without
+     * any lock; the write lock is only taken at the end to carry over rows
+     * written meanwhile.
+     * Readers still holding an old snapshot keep reading the old storage.
+     */
+    public void compact() {
+        TableSnapshot base = snapshot;
+        if (base.size == base.liveRows) return;
+        int[] live = base.visibleSlots();
+        TableStorage compacted = base.storage.retain(live, live.length);
+        if (live.length > 0) compacted.placed(live.length - 1);     // copied in table order: none moved
+        Map<String, TableIndex> indexes = new LinkedHashMap<>();
+        for (TableIndex old : base.indexes.values()) {
+            TableIndex index = TableIndex.create(old.getColumn(), IndexType.valueOf(old.getType()));
+            int c = columns.indexOf(old.getColumn());
+            for (int slot = 0; slot < live.length; slot++) {
+                index.add(compacted.valueAt(slot, c), slot);
+            }
+            indexes.put(old.getColumn().getName(), index);
+        }
+        
+        writeLock.lock();
+        try {
+            TableSnapshot current = snapshot;
+            if (current.storage != base.storage || current.indexes != base.indexes) {
+                return;     // an index was added or another compaction won; the next change retries
+            }
+            long version = current.version;
+            for (int i = 0; i < live.length; i++) {
+                if (!current.storage.visibleAt(live[i], version)) compacted.markDeleted(i, version);
+            }
+            for (int slot = base.size; slot < current.size; slot++) {
+                if (!current.storage.visibleAt(slot, version)) continue;
+                int copy = compacted.appendCopy(current.storage, slot);
+                compacted.placed(copy);
+                for (TableIndex index : indexes.values()) {
+                    index.add(compacted.valueAt(copy, columns.indexOf(index.getColumn())), copy);
+                }
+            }
+            snapshot = new TableSnapshot(compacted, Collections.unmodifiableMap(indexes), compacted.size(),
+                version, current.liveRows);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Rows whose typed value of {@code column} lies between the bounds, in
+     * table order. A null bound is open. INTEGER and DOUBLE compare
+     * numerically.
+     */
+    public List<Record> selectRange(String column, String low, boolean lowInclusive,
+                                    String high, boolean highInclusive) {
+        TableSnapshot s = snapshot;
+        int[] slots = rangeSlots(s, column, low, lowInclusive, high, highInclusive, false);
+        Arrays.sort(slots);
+        return recordsAt(s, s.inTableOrder(slots));
+    }
+    
+    /** Same as {@link #selectRange} but ordered by {@code column}. */
+    public List<Record> selectRange(String column, String low, boolean lowInclusive,
+                                    String high, boolean highInclusive, boolean ascending) {
+        TableSnapshot s = snapshot;
+        int[] slots = rangeSlots(s, column, low, lowInclusive, high, highInclusive, true);
+        if (!ascending) reverse(slots);
+        return recordsAt(s, slots);
+    }
+    
+    /** All rows ordered by {@code column}; NULLs sort last ascending and first descending. */
+    public List<Record> selectOrdered(String column, boolean ascending) {
+        int c = requireColumn(column);
+        TableSnapshot s = snapshot;
+        TableIndex index = s.indexes.get(columns.get(c).getName());
+        if (index instanceof BTreeIndex) {
+            int[] slots = ((BTreeIndex) index).ordered(ascending);
+            if (slots != null) return recordsAt(s, s.filterVisible(slots));
+        }
+        List<Record> results = recordsAt(s, s.visibleSlots());
+        sortRecords(results, column, ascending);
+        return results;
+    }
+    
+    public Object min(String column) {
+        return extreme(column, true, null);
+    }
+    
+    public Object max(String column) {
+        return extreme(column, false, null);
+    }
+    
+    /** Smallest value of {@code column} among rows matching {@code where} (null: every row). */
+    public Object min(String column, Expr where) {
+        return extreme(column, true, where);
+    }
+    
+    public Object max(String column, Expr where) {
+        return extreme(column, false, where);
+    }
+    
+    /** Rows matching {@code where} (null: every row), counting only non-NULL values of {@code column} if given. */
+    public long count(String column, Expr where) {
+        TableSnapshot s = snapshot;
+        if (column == null && where == null) return s.liveRows;
+        int c = column == null ? -1 : requireColumn(column);
+        if (scansWholeTable(s, where)) {
+            return ParallelScan.run(s.size, (from, to) -> new BatchScan(s, columns, where).count(c, from, to), Long::sum);
+        }
+        long count = 0;
+        for (int slot : matchingSlots(s, where)) {
+            if (c < 0 || s.storage.valueAt(slot, c) != null) count++;
+        }
+        return count;
+    }
+    
+    /**
+     * One row per group of the rows matching {@code where} (null: every
+     * row): the values of the {@code groupBy} columns, then one value per
+     * aggregate item, with groups in the order their first row appears.
+     * Without {@code groupBy} there is exactly one group, even over no rows.
+     */
+    public List<Object[]> aggregate(Expr where, List<String> groupBy, List<SelectItem> aggregates) {
+        int[] keys = new int[groupBy.size()];
+        for (int k = 0; k < keys.length; k++) keys[k] = requireColumn(groupBy.get(k));
+        int[] cols = new int[aggregates.size()];
+        for (int i = 0; i < cols.length; i++) {
+            String column = aggregates.get(i).column;
+            cols[i] = column.equals("*") ? -1 : requireColumn(column);
+        }
+        TableSnapshot s = snapshot;
+        HashAggregation result;
+        if (scansWholeTable(s, where)) {
+            result = ParallelScan.run(s.size, (from, to) -> new BatchScan(s, columns, where)
+                .aggregate(new HashAggregation(columns, keys, aggregates, cols), from, to), HashAggregation::merge);
+        } else {
+            int[] slots = matchingSlots(s, where);
+            result = ParallelScan.run(slots.length, (from, to) -> BatchScan.aggregate(s, columns, slots, from, to,
+                new HashAggregation(columns, keys, aggregates, cols)), HashAggregation::merge);
+        }
+        return result.rows();
+    }
+    
+    /** Stable in-memory sort of records by the typed value of {@code column}. */
+    public void sortRecords(List<Record> recs, String column, boolean ascending) {
+        int c = requireColumn(column);
+        Column col = columns.get(c);
+        DataType type = col.getType();
+        Comparator<Record> cmp = (a, b) -> {
+            Object va = typed(type, a.get(col.getName()));
+            Object vb = typed(type, b.get(col.getName()));
+            if (va == null || vb == null) {
+                return va == vb ? 0 : (va == null ? 1 : -1);
+            }
+            return type.compare(va, vb);
+        };
+        recs.sort(ascending ? cmp : cmp.reversed());
+    }
+    
+    /** Matching visible slots; in key order when served by a BTREE index or when {@code keyOrder} is set. */
+    private int[] rangeSlots(TableSnapshot s, String column, String low, boolean lowInclusive,
+                             String high, boolean highInclusive, boolean keyOrder) {
+        int c = requireColumn(column);
+        Column col = columns.get(c);
+        DataType type = col.getType();
+        KeyRange range = KeyRange.of(type, low, lowInclusive, high, highInclusive);
+        if (range.empty) return new int[0];
+    
+        TableIndex index = s.indexes.get(col.getName());
+        if (index instanceof BTreeIndex) {
+            int[] slots = ((BTreeIndex) index).range(range.low, range.lowInclusive, range.high, range.highInclusive);
+            if (slots != null) return s.filterVisible(slots);
+        }
+    
+        SlotList out = new SlotList();
+        for (int slot = 0; slot < s.size; slot++) {
+            if (!s.storage.visibleAt(slot, s.version)) continue;
+            Object v = typed(type, s.storage.valueAt(slot, c));
+            if (v != null && range.contains(type, v)) out.add(slot);
+        }
+        int[] slots = s.inTableOrder(out.toArray());
+        if (keyOrder) sortSlots(s, slots, c);
+        return slots;
+    }
+    
+    private Object extreme(String column, boolean min, Expr where) {
+        int c = requireColumn(column);
+        Column col = columns.get(c);
+        TableSnapshot s = snapshot;
+        TableIndex index = s.indexes.get(col.getName());
+        if (index instanceof BTreeIndex && where == null) {
+            Object busy = new Object();
+            Object key = ((BTreeIndex) index).extreme(min, s::isVisible, busy);
+            if (key != busy) return key;
+        }
+        DataType type = col.getType();
+        if (scansWholeTable(s, where)) {
+            // Ties keep the left range's value, like the single-threaded scan
+            return ParallelScan.run(s.size, (from, to) -> new BatchScan(s, columns, where).extreme(c, min, from, to),
+                (a, b) -> a == null || (b != null && (min ? type.compare(b, a) < 0 : type.compare(b, a) > 0)) ? b : a);
+        }
+        Object best = null;
+        for (int slot : where == null ? s.visibleSlots() : matchingSlots(s, where)) {
+            Object v = typed(type, s.storage.valueAt(slot, c));
+            if (v == null) continue;
+            if (best == null || (min ? type.compare(v, best) < 0 : type.compare(v, best) > 0)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+    
+    /** Sorts slots by the typed value of column {@code c}, keeping table order for ties. */
+    private void sortSlots(TableSnapshot s, int[] slots, int c) {
+        DataType type = columns.get(c).getType();
+        Object[] keys = new Object[slots.length];
+        Integer[] order = new Integer[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            keys[i] = typed(type, s.storage.valueAt(slots[i], c));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = type.compare(keys[a], keys[b]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        int[] sorted = new int[slots.length];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = slots[order[i]];
+        System.arraycopy(sorted, 0, slots, 0, sorted.length);
+    }
+    
+    private List<Record> recordsAt(TableSnapshot s, int[] slots) {
+        List<Record> results = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            results.add(s.storage.recordAt(slot));
+        }
+        return results;
+    }
+    
+    private int requireColumn(String column) {
+        int c = snapshot.storage.columnIndex(column);
+        if (c < 0) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        return c;
+    }
+    
+    /** {@code value} as {@code type}, or null when it is NULL or does not convert. */
+    static Object typed(DataType type, Object value) {
+        if (value == null) return null;
+        try {
+            return type.coerce(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static void reverse(int[] slots) {
+        for (int i = 0, j = slots.length - 1; i < j; i++, j--) {
+            int tmp = slots[i];
+            slots[i] = slots[j];
+            slots[j] = tmp;
+        }
+    }
+    
+    /** Visible slots where column=value, in table order, probing an index when one exists. */
+    private int[] matchingSlots(TableSnapshot s, String column, String value) {
+        int c = s.storage.columnIndex(column);
+        TableIndex index = c >= 0 ? s.indexes.get(columns.get(c).getName()) : null;
+        if (index != null) {
+            int[] slots = index.lookup(value);
+            if (slots != null) return s.inTableOrder(s.filterVisible(slots));
+        }
+        return s.inTableOrder(ParallelScan.slots(s.size, equalScan(s, c, column, value)));
+    }
+    
+    /** Scan of a range of slots for the visible ones where column=value. */
+    private ParallelScan.Range<int[]> equalScan(TableSnapshot s, int c, String column, String value) {
+        if (c >= 0 && BatchScan.appliesTo(s.storage)) {
+            Expr equal = new Comparison(columns.get(c).getName(), TokenType.EQ, value);
+            return (from, to) -> new BatchScan(s, columns, equal).slots(from, to);
+        }
+        return (from, to) -> scanSlots(s, s.storage.equalTo(column, value), from, to);
+    }
+    
+    /**
+     * Visible slots matching a condition, in table order. An indexed
+     * column = value, or a range on a BTREE column, that the whole condition
+     * depends on narrows the candidates; the rest is checked row by row.
+     */
+    int[] matchingSlots(TableSnapshot s, Expr where) {
+        if (where == null) return s.visibleSlots();
+        int[] candidates = indexCandidates(s, where);
+        if (candidates == null) return s.inTableOrder(ParallelScan.slots(s.size, whereScan(s, where)));
+        return checkedSlots(s, where, candidates);
+    }
+    
+    /** Scan of a range of slots for the visible ones matching {@code where} (null: every row). */
+    private ParallelScan.Range<int[]> whereScan(TableSnapshot s, Expr where) {
+        if (where == null) return (from, to) -> scanSlots(s, slot -> true, from, to);
+        if (BatchScan.appliesTo(s.storage)) return (from, to) -> new BatchScan(s, columns, where).slots(from, to);
+        // Each range compiles its own predicate: frozen segments keep per-segment state in theirs
+        return (from, to) -> scanSlots(s, predicate(s, where), from, to);
+    }
+    
+    /** Index candidates that are visible and match {@code where}, in table order. */
+    private int[] checkedSlots(TableSnapshot s, Expr where, int[] candidates) {
+        IntPredicate matches = predicate(s, where);
+        SlotList out = new SlotList();
+        Arrays.sort(candidates);
+        for (int slot : candidates) {
+            if (s.isVisible(slot) && matches.test(slot)) out.add(slot);
+        }
+        return s.inTableOrder(out.toArray());
+    }
+    
+    /** Visible slots in {@code [from, to)} that {@code matches} accepts, ascending. */
+    private static int[] scanSlots(TableSnapshot s, IntPredicate matches, int from, int to) {
+        SlotList out = new SlotList();
+        for (int slot = from; slot < to; slot++) {
+            if (matches.test(slot) && s.storage.visibleAt(slot, s.version)) out.add(slot);
+        }
+        return out.toArray();
+    }
+    
+    /** True if a query should run as a vectorized scan: batches apply and no index narrows {@code where}. */
+    private boolean scansWholeTable(TableSnapshot s, Expr where) {
+        return BatchScan.appliesTo(s.storage) && (where == null || indexCandidates(s, where) == null);
+    }
+    
+    /**
+     * Slots that may match, from one AND-ed condition an index can answer;
+     * null to scan. With statistics the {@link QueryPlanner} picks the most
+     * selective condition, or a scan when that is cheaper; without, the
+     * first condition an index can answer is used.
+     */
+    private int[] indexCandidates(TableSnapshot s, Expr where) {
+        List<Expr> conjuncts = new ArrayList<>();
+        where.conjuncts(conjuncts);
+        List<Expr> indexed = new ArrayList<>();
+        for (Expr e : conjuncts) {
+            String column = e instanceof Comparison ? ((Comparison) e).column
+                : e instanceof Between ? ((Between) e).column : null;
+            int c = column == null ? -1 : s.storage.columnIndex(column);
+            TableIndex index = c < 0 ? null : s.indexes.get(columns.get(c).getName());
+            if (index == null) continue;
+            boolean equal = e instanceof Comparison && ((Comparison) e).op == TokenType.EQ;
+            if (equal || index instanceof BTreeIndex && (e instanceof Between || ((Comparison) e).isRange())) {
+                indexed.add(e);
+            }
+        }
+        if (indexed.isEmpty()) return null;
+        TableStatistics stats = statistics;
+        if (stats != null) {
+            indexed = QueryPlanner.accessPaths(name, stats, columns, indexed, s.liveRows, BatchScan.appliesTo(s.storage));
+        }
+        for (Expr e : indexed) {
+            int c = s.storage.columnIndex(e instanceof Comparison ? ((Comparison) e).column : ((Between) e).column);
+            TableIndex index = s.indexes.get(columns.get(c).getName());
+            int[] slots = null;
+            DataType type = columns.get(c).getType();
+            if (e instanceof Comparison && ((Comparison) e).op == TokenType.EQ) {
+                slots = index.lookup(((Comparison) e).value);
+            } else if (index instanceof BTreeIndex) {
+                KeyRange range = e instanceof Between ? KeyRange.between(type, ((Between) e).low, ((Between) e).high)
+                    : KeyRange.of(type, ((Comparison) e).op, ((Comparison) e).value);
+                slots = range.empty ? new int[0]
+                    : ((BTreeIndex) index).range(range.low, range.lowInclusive, range.high, range.highInclusive);
+            }
+            if (slots != null) return slots.clone();
+        }
+        return null;
+    }
+    
+    /**
+     * Compiles a condition into a slot test. = and &lt;&gt; compare text like
+     * {@link #selectWhere}; ranges compare typed values. NULL never equals,
+     * differs from or falls in a range of anything, and NOT simply inverts.
+     */
+    private IntPredicate predicate(TableSnapshot s, Expr e) {
+        if (e instanceof Logical) {
+            Logical l = (Logical) e;
+            IntPredicate left = predicate(s, l.left);
+            IntPredicate right = predicate(s, l.right);
+            return l.and ? left.and(right) : left.or(right);
+        }
+        if (e instanceof Not) {
+            return predicate(s, ((Not) e).operand).negate();
+        }
+        TableStorage storage = s.storage;
+        if (e instanceof IsNull) {
+            int c = requireColumn(((IsNull) e).column);
+            boolean negated = ((IsNull) e).negated;
+            return slot -> (storage.valueAt(slot, c) == null) != negated;
+        }
+        if (e instanceof Between) {
+            Between b = (Between) e;
+            int c = requireColumn(b.column);
+            return inRange(storage, c, KeyRange.between(columns.get(c).getType(), b.low, b.high));
+        }
+        Comparison cmp = (Comparison) e;
+        int c = requireColumn(cmp.column);
+        String name = columns.get(c).getName();
+        if (cmp.op == TokenType.EQ) {
+            return storage.equalTo(name, cmp.value);
+        }
+        if (cmp.op == TokenType.NE) {
+            IntPredicate equal = storage.equalTo(name, cmp.value);
+            return slot -> storage.valueAt(slot, c) != null && !equal.test(slot);
+        }
+        return inRange(storage, c, KeyRange.of(columns.get(c).getType(), cmp.op, cmp.value));
+    }
+    
+    /** Slot test: the typed value of column {@code c} lies in {@code range}. */
+    private IntPredicate inRange(TableStorage storage, int c, KeyRange range) {
+        if (range.empty) return slot -> false;
+        DataType type = columns.get(c).getType();
+        return slot -> {
+            Object v = typed(type, storage.valueAt(slot, c));
+            return v != null && range.contains(type, v);
+        };
+    }
+    
+    public void describe() {
+        TableSnapshot s = snapshot;
+        System.out.println("\n" + Colors.CYAN + "Table: " + name + Colors.RESET);
+        System.out.println(Colors.CYAN + "─".repeat(50) + Colors.RESET);
+        System.out.printf("%-20s %-15s %-10s%n", "Column", "Type", "Nullable");
+        System.out.println("─".repeat(50));
+        for (Column col : columns) {
+            System.out.printf("%-20s %-15s %-10s%n",
+                col.getName(), col.getType(), col.isNullable() ? "YES" : "NO");
+        }
+        if (!s.indexes.isEmpty()) {
+            System.out.println("\nIndexes:");
+            for (TableIndex index : s.indexes.values()) {
+                System.out.printf("  %-18s %-6s %d distinct key(s)%n",
+                    index.getColumn().getName(), index.getType(), index.distinctKeys());
+            }
+        }
+        System.out.println("\nStorage: " + s.storage.getMode() +
+            " (~" + (s.storage.estimateBytes(s.size) / 1024) + " KB)");
+        TableStorage hot = s.storage instanceof TieredStorage ? ((TieredStorage) s.storage).hot() : s.storage;
+        if (hot instanceof ColumnarStorage) {
+            ColumnarStorage cs = (ColumnarStorage) hot;
+            for (int c = 0; c < columns.size(); c++) {
+                ColumnVector v = cs.vector(c);
+                System.out.printf("  %-18s %-24s ~%d KB%n", columns.get(c).getName(), v.encoding(),
+                    v.estimateBytes(s.size - s.storage.frozenRows()) / 1024);
+            }
+        }
+        if (s.storage instanceof TieredStorage) {
+            List<FrozenSegment> segments = ((TieredStorage) s.storage).segments();
+            System.out.println("Frozen: " + s.storage.frozenRows() + " row(s) in " + segments.size() +
+                " compressed segment(s)");
+            for (int c = 0; c < columns.size(); c++) {
+                Set<String> encodings = new LinkedHashSet<>();
+                long compressed = 0, raw = 0;
+                for (FrozenSegment segment : segments) {
+                    ColumnSegment v = segment.column(c);
+                    encodings.add(v.encoding());
+                    compressed += v.compressedBytes();
+                    raw += v.rawBytes();
+                }
+                System.out.printf("  %-18s %-24s ~%d KB (raw ~%d KB)%n", columns.get(c).getName(),
+                    String.join(", ", encodings), compressed / 1024, raw / 1024);
+            }
+        }
+        System.out.println("Total Records: " + s.liveRows);
+        if (s.size > s.liveRows) {
+            System.out.println("Dead Versions: " + (s.size - s.liveRows) + " (awaiting compaction)");
+        }
+        TableStatistics stats = statistics;
+        if (stats != null) {
+            System.out.println("\nStatistics: " + stats.rows + " row(s), analyzed " + new Date(stats.analyzedAt) +
+                ", " + (changedRows.get() - stats.changes) + " row change(s) since");
+            System.out.printf("  %-18s %-8s %-10s %-14s %-14s%n", "Column", "Nulls", "Distinct", "Min", "Max");
+            for (int c = 0; c < columns.size() && c < stats.columnCount(); c++) {
+                ColumnStatistics col = stats.column(c);
+                System.out.printf("  %-18s %-8d ~%-9d %-14s %-14s%n", columns.get(c).getName(), col.nulls,
+                    col.distinct, col.min != null ? col.min : "NULL", col.max != null ? col.max : "NULL");
+            }
+        }
+    }
+    
+    public void printRecords(List<Record> recs) {
+        printRecords(recs, columns);
+    }
+    
+    /** Prints only the given columns of each record. */
+    public void printRecords(List<Record> recs, List<Column> shown) {
+        printRecords(RecordCursor.of(recs), shown);
+    }
+    
+    public void printRecords(RecordCursor recs) {
+        printRecords(recs, columns);
+    }
+    
+    /** Prints the given columns of each row as the cursor reads it, then closes the cursor. */
+    public void printRecords(RecordCursor recs, List<Column> shown) {
+        try (RecordCursor cursor = recs) {
+            printRows(cursor, shown);
+        }
+    }
+    
+    private void printRows(RecordCursor recs, List<Column> shown) {
+        if (!recs.hasNext()) {
+            System.out.println(Colors.YELLOW + "\nNo records found." + Colors.RESET);
+            return;
+        }
+        
+        // Print header
+        System.out.println();
+        System.out.print(String.format("%-5s", "ID"));
+        for (Column col : shown) {
+            System.out.print(String.format("%-15s", col.getName()));
+        }
+        System.out.println();
+        System.out.println("─".repeat(5 + shown.size() * 15));
+        
+        // Print records
+        long count = 0;
+        while (recs.hasNext()) {
+            Record r = recs.next();
+            count++;
+            System.out.print(String.format("%-5d", r.getId()));
+            for (Column col : shown) {
+                Object val = r.get(col.getName());
+                String strVal = val != null ? val.toString() : "NULL";
+                if (strVal.length() > 12) strVal = strVal.substring(0, 12) + "..";
+                System.out.print(String.format("%-15s", strVal));
+            }
+            System.out.println();
+        }
+        System.out.println("\n" + Colors.GREEN + count + " record(s) returned." + Colors.RESET);
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+
+/**
+ * A {@link RecordCursor} over one snapshot of a {@link Table}.
+ * Author: Eyasu Solomon
+ *
+ * A scanning cursor finds matching slots {@value #CHUNK} at a time, with
+ * the same scans a whole-table query uses, and builds each Record only
+ * when {@link #next} returns it. Reading the first screenful of a large
+ * table scans little more than that screenful, and closing the cursor
+ * early stops the scan. Writes after the cursor was opened never change
+ * what it returns. Until it has scanned every slot, its row count is
+ * extrapolated from the slots scanned so far, or before the first chunk
+ * taken from the statistics the table passed in. Rows an update moved are
+ * matched up front and merged into the chunks by id, so the rows come in
+ * table order. A chunk read under a
+ * {@link QueryControl} counts toward the query's progress, and none is
+ * read once the query was cancelled.
+ */
+final class TableCursor implements RecordCursor {
+    static final int CHUNK = 4096;
+
+    private TableSnapshot s;
+    private final int size;                             // slots of the snapshot
+    private final int[] fixed;                          // the rows, when not scanning
+    private final ParallelScan.Range<int[]> matches;    // visible matching slots of a range, ascending
+    private final long expected;                        // matching rows estimated up front; -1: unknown
+    private final long offset;
+    private final long limit;
+    private int scanned;                                // slots below this have been scanned
+    private long found;                                 // matching slots among them
+    private int[] slots;
+    private int next;                                   // index into slots
+    private int[] late;                                 // matching moved slots by id; null until needed
+    private int lateNext;                               // index into late
+    private long skip;
+    private long remaining;                             // rows still to return; negative: all
+
+    /** The rows at {@code slots}, which are visible, in that order. */
+    TableCursor(TableSnapshot s, int[] slots) {
+        this.s = s;
+        this.size = s.size;
+        this.fixed = slots;
+        this.matches = null;
+        this.expected = slots.length;
+        this.offset = 0;
+        this.limit = -1;
+        this.slots = slots;
+        this.remaining = -1;
+    }
+
+    /**
+     * The rows {@code matches} finds, in table order, without the first
+     * {@code offset} and at most {@code limit} (-1: all) of them. About
+     * {@code expected} rows match before those are applied (-1: unknown).
+     */
+    TableCursor(TableSnapshot s, ParallelScan.Range<int[]> matches, long expected, long offset, long limit) {
+        this.s = s;
+        this.size = s.size;
+        this.fixed = null;
+        this.matches = matches;
+        this.expected = expected;
+        this.offset = offset;
+        this.limit = limit;
+        this.slots = new int[0];
+        this.skip = offset;
+        this.remaining = limit;
+        QueryControl control = QueryControl.current();
+        if (control != null) control.startScan(size);
+    }
+
+    /** A cursor standing where {@code from} stands now. */
+    private TableCursor(TableCursor from) {
+        this.s = from.s;
+        this.size = from.size;
+        this.fixed = from.fixed;
+        this.matches = from.matches;
+        this.expected = from.expected;
+        this.offset = from.offset;
+        this.limit = from.limit;
+        this.scanned = from.scanned;
+        this.found = from.found;
+        this.slots = from.slots;
+        this.next = from.next;
+        this.late = from.late;
+        this.lateNext = from.lateNext;
+        this.skip = from.skip;
+        this.remaining = from.remaining;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (s == null || remaining == 0) return false;
+        while (next == slots.length) {
+            if (matches == null || scanned >= size) return false;
+            int to = (int) Math.min((long) scanned + CHUNK, size);
+            QueryControl control = QueryControl.current();
+            if (control != null) control.check();
+            slots = matches.scan(scanned, to);
+            if (!s.inSlotOrder()) slots = inTableOrder(slots, to);
+            if (control != null) control.scanned(to - scanned);
+            scanned = to;
+            found += slots.length;
+            next = (int) Math.min(skip, slots.length);
+            skip -= next;
+        }
+        return true;
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        if (remaining > 0) remaining--;
+        return s.storage.recordAt(slots[next++]);
+    }
+
+    /**
+     * Puts a chunk ending at slot {@code to} in table order: drops its moved
+     * slots and merges in the matching moved ones whose ids lie below the
+     * next slot in place.
+     */
+    private int[] inTableOrder(int[] chunk, int to) {
+        int[] moved = s.moved();
+        if (late == null) late = movedMatches(moved);
+        int[] placed = new int[chunk.length];
+        int n = 0;
+        for (int slot : chunk) {
+            if (Arrays.binarySearch(moved, slot) < 0) placed[n++] = slot;
+        }
+        int after = to;
+        int m = Arrays.binarySearch(moved, after);
+        while (m >= 0) {
+            after++;
+            m = m + 1 < moved.length && moved[m + 1] == after ? m + 1 : -1;
+        }
+        int end = lateNext;
+        if (after < size) {
+            int bound = s.storage.idAt(after);
+            while (end < late.length && s.storage.idAt(late[end]) < bound) end++;
+        } else {
+            end = late.length;
+        }
+        int[] ordered = s.merge(placed, 0, n, late, lateNext, end);
+        lateNext = end;
+        return ordered;
+    }
+
+    /** The moved slots that match, by id; each run of consecutive ones is scanned as a range. */
+    private int[] movedMatches(int[] moved) {
+        SlotList out = new SlotList();
+        for (int i = 0; i < moved.length; ) {
+            int j = i + 1;
+            while (j < moved.length && moved[j] == moved[j - 1] + 1) j++;
+            for (int slot : matches.scan(moved[i], moved[j - 1] + 1)) out.add(slot);
+            i = j;
+        }
+        int[] slots = out.toArray();
+        return s.byId(slots, slots.length);
+    }
+
+    /** Passes over slots a chunk at a time, building no Records. */
+    @Override
+    public long skip(long n) {
+        long skipped = 0;
+        while (skipped < n && hasNext()) {
+            long k = Math.min(n - skipped, slots.length - next);
+            if (remaining > 0) k = Math.min(k, remaining);
+            next += (int) k;
+            skipped += k;
+            if (remaining > 0) remaining -= k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public RecordCursor reopen() {
+        if (s == null) throw new IllegalStateException("Cursor is closed");
+        return fixed != null ? new TableCursor(s, fixed) : new TableCursor(s, matches, expected, offset, limit);
+    }
+
+    /** Chunks are never changed once scanned, so the fork shares the current one. */
+    @Override
+    public RecordCursor fork() {
+        if (s == null) throw new IllegalStateException("Cursor is closed");
+        return new TableCursor(this);
+    }
+
+    @Override
+    public long estimatedRows() {
+        if (fixed != null) return fixed.length;
+        long matching;
+        if (scanned >= size) matching = found;
+        else if (scanned > 0) matching = Math.max(found, Math.round((double) found * size / scanned));
+        else matching = expected >= 0 ? expected : size;
+        long rows = Math.max(0, matching - offset);
+        return limit < 0 ? rows : Math.min(rows, limit);
+    }
+
+    /** Ends the cursor and lets go of its snapshot. */
+    @Override
+    public void close() {
+        s = null;
+        slots = new int[0];
+        next = 0;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Secondary indexes on a single {@link Table} column.
+ * Author: Eyasu Solomon
+ *
+ * Indexes map a column value to the storage slots holding it. Like the
+ * storage they are append-only: every row version the table writes is added,
+ * readers drop slots their {@link TableSnapshot} cannot see, and compaction
+ * builds fresh indexes over the compacted storage.
+ */
+abstract class TableIndex {
+    protected final Column column;
+
+    protected TableIndex(Column column) {
+        this.column = column;
+    }
+
+    public Column getColumn() { return column; }
+    public abstract String getType();
+
+    public abstract void add(Object value, int slot);
+
+    /**
+     * Returns the slots whose value prints exactly as {@code literal}, in slot
+     * order, or null if a writer keeps the index busy (scan instead).
+     */
+    public abstract int[] lookup(String literal);
+
+    public abstract int distinctKeys();
+
+    public static TableIndex create(Column column, IndexType type) {
+        return type == IndexType.BTREE ? new BTreeIndex(column) : new HashIndex(column);
+    }
+
+    /**
+     * Normalizes a stored value (or a query literal) into an index key. Values
+     * whose text is the canonical form of the column type become typed keys;
+     * anything else is kept as text, so key equality matches the
+     * {@code toString().equals} semantics of a table scan.
+     */
+    public static Object keyFor(DataType type, Object value) {
+        if (value == null) return null;
+        switch (type) {
+            case INTEGER: if (value instanceof Integer) return value; break;
+            case DOUBLE: if (value instanceof Double) return value; break;
+            case BOOLEAN: if (value instanceof Boolean) return value; break;
+            default: if (value instanceof String) return value; break;
+        }
+        String text = value.toString();
+        Object typed = type.keyOf(text);
+        return typed != null ? typed : text;
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.*;
+
+/**
+ * What a reader of a {@link Table} sees: the storage, its indexes, how many
+ * slots were published and the version they were published at. A slot is
+ * visible if it lies below {@code size} and was not deleted at or before
+ * {@code version}; later writes never change that answer, so a snapshot
+ * can be read without locks for as long as the reader likes.
+ * Author: Eyasu Solomon
+ *
+ * Slots in place hold ascending ids, so table order is slot order except
+ * for the moved slots updates wrote; those are merged back in by id.
+ */
+final class TableSnapshot {
+    final TableStorage storage;
+    final Map<String, TableIndex> indexes;
+    final int size;
+    final long version;
+    final int liveRows;
+    private volatile int[] moved;
+
+    TableSnapshot(TableStorage storage, Map<String, TableIndex> indexes, int size, long version, int liveRows) {
+        this.storage = storage;
+        this.indexes = indexes;
+        this.size = size;
+        this.version = version;
+        this.liveRows = liveRows;
+    }
+
+    boolean isVisible(int slot) {
+        return slot < size && storage.visibleAt(slot, version);
+    }
+
+    /** The visible slots in table order. */
+    int[] visibleSlots() {
+        int[] slots = new int[liveRows];
+        int count = 0;
+        for (int slot = 0; slot < size && count < slots.length; slot++) {
+            if (storage.visibleAt(slot, version)) slots[count++] = slot;
+        }
+        return inTableOrder(count == slots.length ? slots : Arrays.copyOf(slots, count));
+    }
+
+    /** Keeps only the visible slots of {@code slots}, preserving their order. */
+    int[] filterVisible(int[] slots) {
+        int count = 0;
+        for (int slot : slots) {
+            if (isVisible(slot)) slots[count++] = slot;
+        }
+        return count == slots.length ? slots : Arrays.copyOf(slots, count);
+    }
+
+    /** Slots written out of table order by updates, ascending; computed once. */
+    int[] moved() {
+        int[] slots = moved;
+        if (slots == null) {
+            slots = storage.movedSlots(size);
+            moved = slots;
+        }
+        return slots;
+    }
+
+    /** True if slot order is table order: no update moved a row. */
+    boolean inSlotOrder() {
+        return moved().length == 0;
+    }
+
+    /** Ascending {@code slots} in table order; the same array when nothing among them moved. */
+    int[] inTableOrder(int[] slots) {
+        int[] moved = moved();
+        if (moved.length == 0 || slots.length < 2) return slots;
+        int[] placed = new int[slots.length];
+        int[] late = new int[Math.min(slots.length, moved.length)];
+        int p = 0, l = 0, m = 0;
+        for (int slot : slots) {
+            while (m < moved.length && moved[m] < slot) m++;
+            if (m < moved.length && moved[m] == slot) late[l++] = slot;
+            else placed[p++] = slot;
+        }
+        if (l == 0) return slots;
+        late = byId(late, l);
+        return merge(placed, 0, p, late, 0, l);
+    }
+
+    /** The first {@code n} of {@code slots} sorted by row id. */
+    int[] byId(int[] slots, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = (long) storage.idAt(slots[i]) << 32 | slots[i];
+        Arrays.sort(keys);
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) sorted[i] = (int) keys[i];
+        return sorted;
+    }
+
+    /** Merges two runs of slots, each in table order, into one. */
+    int[] merge(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        int[] out = new int[aTo - aFrom + bTo - bFrom];
+        int i = aFrom, j = bFrom, n = 0;
+        int bId = j < bTo ? storage.idAt(b[j]) : 0;
+        while (i < aTo && j < bTo) {
+            if (storage.idAt(a[i]) < bId) {
+                out[n++] = a[i++];
+            } else {
+                out[n++] = b[j++];
+                if (j < bTo) bId = storage.idAt(b[j]);
+            }
+        }
+        while (i < aTo) out[n++] = a[i++];
+        while (j < bTo) out[n++] = b[j++];
+        return out;
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Statistics of a table for the {@link QueryPlanner}, collected by ANALYZE.
+ * Author: Eyasu Solomon
+ *
+ * One pass over a snapshot, split across the {@link ParallelScan} pool,
+ * counts the rows and, per column, the NULLs and the smallest and largest
+ * value, and feeds every value into a HyperLogLog sketch that estimates
+ * the number of distinct values to within a few percent. A random sample
+ * of up to {@value #SAMPLE_ROWS} rows is then sorted, per column, into an
+ * equi-depth histogram: {@value #BUCKETS} buckets holding about as many
+ * values each, so a range's share of the rows can be read off however
+ * skewed the values are.
+ *
+ * Statistics are a snapshot of their own and never change; the table
+ * replaces them when it is analyzed again.
+ */
+final class TableStatistics {
+    static final int BUCKETS = 32;
+    static final int SAMPLE_ROWS = 30_000;
+    private static final int SKETCH_BITS = 12;          // 4096 registers: about 1.6% standard error
+
+    final long rows;
+    final long changes;                 // the table's change count when collected
+    final long analyzedAt;              // System.currentTimeMillis()
+    private final ColumnStatistics[] columns;
+
+    TableStatistics(long rows, long changes, long analyzedAt, ColumnStatistics[] columns) {
+        this.rows = rows;
+        this.changes = changes;
+        this.analyzedAt = analyzedAt;
+        this.columns = columns;
+    }
+
+    ColumnStatistics column(int c) {
+        return columns[c];
+    }
+
+    int columnCount() {
+        return columns.length;
+    }
+
+    /** Collects statistics of the rows visible in {@code s}. */
+    static TableStatistics collect(TableSnapshot s, List<Column> columns, long changes) {
+        int width = columns.size();
+        DataType[] types = new DataType[width];
+        for (int c = 0; c < width; c++) types[c] = columns.get(c).getType();
+
+        Pass pass = ParallelScan.run(s.size, (from, to) -> {
+            Pass out = new Pass(types);
+            for (int slot = from; slot < to; slot++) {
+                if (!s.storage.visibleAt(slot, s.version)) continue;
+                out.rows++;
+                for (int c = 0; c < width; c++) out.add(c, Table.typed(types[c], s.storage.valueAt(slot, c)));
+            }
+            return out;
+        }, Pass::merge);
+
+        // A random sample of the live rows for the histograms: the first picks of a shuffle
+        int[] slots = s.visibleSlots();
+        int sampled = Math.min(SAMPLE_ROWS, slots.length);
+        for (int i = 0; i < sampled; i++) {
+            int j = i + ThreadLocalRandom.current().nextInt(slots.length - i);
+            int tmp = slots[i];
+            slots[i] = slots[j];
+            slots[j] = tmp;
+        }
+        ColumnStatistics[] stats = new ColumnStatistics[width];
+        for (int c = 0; c < width; c++) {
+            List<Object> values = new ArrayList<>(sampled);
+            for (int i = 0; i < sampled; i++) {
+                Object value = Table.typed(types[c], s.storage.valueAt(slots[i], c));
+                if (value != null) values.add(value);
+            }
+            DataType type = types[c];
+            values.sort(type::compare);
+            long nonNull = pass.rows - pass.nulls[c];
+            stats[c] = new ColumnStatistics(type, pass.rows, pass.nulls[c],
+                Math.min(nonNull, estimateDistinct(pass.sketches[c])), pass.min[c], pass.max[c], bounds(values));
+        }
+        return new TableStatistics(pass.rows, changes, System.currentTimeMillis(), stats);
+    }
+
+    /** {@value #BUCKETS} + 1 values splitting the sorted sample into buckets of equal size. */
+    private static Object[] bounds(List<Object> sorted) {
+        if (sorted.isEmpty()) return new Object[0];
+        Object[] bounds = new Object[BUCKETS + 1];
+        for (int b = 0; b <= BUCKETS; b++) {
+            bounds[b] = sorted.get((int) ((long) b * (sorted.size() - 1) / BUCKETS));
+        }
+        return bounds;
+    }
+
+    /** HyperLogLog estimate with the small-range correction (linear counting). */
+    private static long estimateDistinct(byte[] registers) {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+
+    private static long hash(Object value) {
+        long h;
+        if (value instanceof Integer) h = (Integer) value;
+        else if (value instanceof Double) h = Double.doubleToLongBits((Double) value);
+        else if (value instanceof Boolean) h = (Boolean) value ? 1 : 2;
+        else h = value.toString().hashCode() * 0x9E3779B97F4A7C15L ^ value.toString().length();
+        // murmur3's finalizer spreads every input bit over the whole long
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /** Counts of one range of slots; ranges merge into the table's. */
+    private static final class Pass {
+        final DataType[] types;
+        final long[] nulls;
+        final Object[] min;
+        final Object[] max;
+        final byte[][] sketches;
+        long rows;
+
+        Pass(DataType[] types) {
+            this.types = types;
+            nulls = new long[types.length];
+            min = new Object[types.length];
+            max = new Object[types.length];
+            sketches = new byte[types.length][1 << SKETCH_BITS];
+        }
+
+        void add(int c, Object value) {
+            if (value == null) {
+                nulls[c]++;
+                return;
+            }
+            if (min[c] == null || types[c].compare(value, min[c]) < 0) min[c] = value;
+            if (max[c] == null || types[c].compare(value, max[c]) > 0) max[c] = value;
+            long h = hash(value);
+            int register = (int) (h >>> (64 - SKETCH_BITS));
+            byte rank = (byte) (Long.numberOfLeadingZeros(h << SKETCH_BITS | 1L << (SKETCH_BITS - 1)) + 1);
+            if (rank > sketches[c][register]) sketches[c][register] = rank;
+        }
+
+        Pass merge(Pass other) {
+            rows += other.rows;
+            for (int c = 0; c < types.length; c++) {
+                nulls[c] += other.nulls[c];
+                if (min[c] == null || other.min[c] != null && types[c].compare(other.min[c], min[c]) < 0) {
+                    min[c] = other.min[c];
+                }
+                if (max[c] == null || other.max[c] != null && types[c].compare(other.max[c], max[c]) > 0) {
+                    max[c] = other.max[c];
+                }
+                for (int r = 0; r < sketches[c].length; r++) {
+                    sketches[c][r] = (byte) Math.max(sketches[c][r], other.sketches[c][r]);
+                }
+            }
+            return this;
+        }
+    }
+}
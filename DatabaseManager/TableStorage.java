@@ -0,0 +1,172 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Physical storage behind a {@link Table}.
+ * Author: Eyasu Solomon
+ *
+ * Rows are addressed by slot (0 .. size-1) in the order they were written.
+ * Table order is row id order: an update writes the new version of a row
+ * at the end, and the storage notes such slots as moved so readers can put
+ * them back in their place (see {@link TableSnapshot}). The ROW mode
+ * keeps one {@link Record} per row, while the COLUMNAR mode keeps one
+ * primitive array per column plus a null bitmap, so INTEGER, DOUBLE and
+ * BOOLEAN values are never boxed while they sit in the table.
+ *
+ * Storage is append-only while readers may be looking at it: a single
+ * writer appends slots and stamps deleted ones with the version that
+ * deleted them, and readers work from a {@link TableSnapshot}. Array fields
+ * are volatile so a reader that sees a grown array also sees its contents.
+ */
+abstract class TableStorage {
+    private static final VarHandle STAMP = MethodHandles.arrayElementVarHandle(long[].class);
+
+    protected final List<Column> columns;
+    private volatile long[] deletedAt = new long[0];    // 0 = live
+    private SlotList moved = new SlotList();            // slots whose id is below an earlier slot's, ascending
+    private int lastId = -1;                            // highest id written so far
+
+    protected TableStorage(List<Column> columns) {
+        this.columns = columns;
+    }
+
+    public static TableStorage create(StorageMode mode, List<Column> columns) {
+        return mode == StorageMode.COLUMNAR ? new ColumnarStorage(columns) : new RowStorage(columns);
+    }
+
+    public abstract StorageMode getMode();
+
+    /** Slots written so far, including ones no snapshot has published yet. Writer only. */
+    public abstract int size();
+    public abstract int idAt(int slot);
+    public abstract Record recordAt(int slot);
+    public abstract Object valueAt(int slot, int column);
+
+    public abstract long createdAtMillis(int slot);
+
+    /** Appends a row and returns its slot. */
+    public abstract int append(int id, Map<String, Object> values);
+
+    /** Appends a row given positionally (one value per column) with its original creation time. */
+    public abstract int appendValues(int id, long createdAtMillis, Object[] values);
+
+    /**
+     * Appends a new version of the row at {@code slot} (same id and creation
+     * time) with one column changed, and returns its slot.
+     */
+    public abstract int appendVersion(int slot, String column, Object value);
+
+    /** Changes a value in place; only for slots no snapshot has published yet. */
+    public abstract void set(int slot, String column, Object value);
+
+    /**
+     * Returns a slot predicate equivalent to {@code get(column).toString().equals(literal)}.
+     * It may cache decoded values, so each scan (and thread) takes its own.
+     */
+    public abstract IntPredicate equalTo(String column, String literal);
+
+    /** Appends a copy of the row at {@code slot} of {@code source} (same mode and columns). */
+    public abstract int appendCopy(TableStorage source, int slot);
+
+    /**
+     * Loads {@code column} of slots {@code [from, from + n)} into a cleared
+     * scan batch. Values that do not coerce to the column type load as NULL.
+     */
+    public void load(int column, int from, int n, BatchColumn out) {
+        for (int i = 0; i < n; i++) {
+            out.set(i, valueAt(from + i, column));
+        }
+    }
+
+    /** A new storage holding copies of the first {@code count} of {@code slots}, all live. */
+    public TableStorage retain(int[] slots, int count) {
+        TableStorage copy = create(getMode(), columns);
+        for (int i = 0; i < count; i++) {
+            copy.appendCopy(this, slots[i]);
+        }
+        return copy;
+    }
+
+    /** Rough number of bytes held by the first {@code rows} slots, used by describe(). */
+    public abstract long estimateBytes(int rows);
+
+    /** Leading slots held in frozen segments (see {@link TieredStorage}). */
+    public int frozenRows() {
+        return 0;
+    }
+
+    /** Takes over the deletion stamps and moved slots of {@code from}, whose slots this storage mirrors. Writer only. */
+    void copyStamps(TableStorage from) {
+        deletedAt = from.deletedAt.clone();
+        moved = from.moved;
+        lastId = from.lastId;
+    }
+
+    /**
+     * Notes the row just written at {@code slot}. One whose id is not above
+     * every id before it is a new version of an older row, out of table
+     * order. Writer only, before the slot is published.
+     */
+    void placed(int slot) {
+        int id = idAt(slot);
+        if (id > lastId) lastId = id;
+        else moved.add(slot);
+    }
+
+    /** The moved slots below {@code size}, ascending. */
+    int[] movedSlots(int size) {
+        int[] slots = moved.toArray();
+        int n = slots.length;
+        while (n > 0 && slots[n - 1] >= size) n--;
+        return n == slots.length ? slots : Arrays.copyOf(slots, n);
+    }
+
+    /** Stamps a slot as deleted by {@code version}. Writer only. */
+    public void markDeleted(int slot, long version) {
+        long[] stamps = deletedAt;
+        if (slot >= stamps.length) {
+            stamps = Arrays.copyOf(stamps, Math.max(size(), stamps.length + (stamps.length >> 1)));
+            deletedAt = stamps;
+        }
+        STAMP.setOpaque(stamps, slot, version);
+    }
+
+    /** Whether a reader at {@code version} sees the slot (it was not deleted at or before it). */
+    public boolean visibleAt(int slot, long version) {
+        long[] stamps = deletedAt;
+        if (slot >= stamps.length) return true;
+        long deleted = (long) STAMP.getOpaque(stamps, slot);
+        return deleted == 0 || deleted > version;
+    }
+
+    /**
+     * Writes the positions (0 .. count-1) of slots {@code [from, from + count)}
+     * visible at {@code version} into {@code out} and returns how many.
+     */
+    public int visibleSlots(int from, int count, long version, int[] out) {
+        long[] stamps = deletedAt;
+        int stamped = Math.max(0, Math.min(count, stamps.length - from));     // later slots were never deleted
+        int n = 0;
+        for (int i = 0; i < stamped; i++) {
+            long deleted = (long) STAMP.getOpaque(stamps, from + i);
+            out[n] = i;
+            n += deleted == 0 || deleted > version ? 1 : 0;
+        }
+        for (int i = stamped; i < count; i++) {
+            out[n++] = i;
+        }
+        return n;
+    }
+
+    public int columnIndex(String name) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(name)) return i;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equalsIgnoreCase(name)) return i;
+        }
+        return -1;
+    }
+}
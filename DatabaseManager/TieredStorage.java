@@ -0,0 +1,201 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Storage whose oldest slots are frozen: slots below {@code frozenRows} live
+ * in immutable {@link FrozenSegment}s, the rest in an ordinary ROW or
+ * COLUMNAR storage ({@code hot}) shifted down by {@code frozenRows}. Slot
+ * numbers are the same as before freezing, so indexes carry over.
+ * Author: Eyasu Solomon
+ */
+class TieredStorage extends TableStorage {
+    static final int SEGMENT_ROWS = 1 << 16;
+
+    private final FrozenSegment[] segments;
+    private final int[] starts;           // first slot of each segment
+    private final int frozenRows;
+    private final TableStorage hot;
+
+    private TieredStorage(List<Column> columns, List<FrozenSegment> segments, TableStorage hot) {
+        super(columns);
+        this.segments = segments.toArray(new FrozenSegment[0]);
+        this.starts = new int[this.segments.length];
+        int rows = 0;
+        for (int i = 0; i < this.segments.length; i++) {
+            starts[i] = rows;
+            rows += this.segments[i].size();
+        }
+        this.frozenRows = rows;
+        this.hot = hot;
+    }
+
+    /**
+     * Freezes slots {@code [source.frozenRows(), target)} of {@code source}
+     * and copies slots {@code [target, size)} into new hot storage. Segments
+     * already frozen are shared, not re-encoded.
+     */
+    static TieredStorage freeze(TableStorage source, List<Column> columns, int target, int size) {
+        List<FrozenSegment> segments = new ArrayList<>();
+        if (source instanceof TieredStorage) {
+            segments.addAll(Arrays.asList(((TieredStorage) source).segments));
+        }
+        int from = source.frozenRows();
+        int[] slots = new int[Math.min(SEGMENT_ROWS, target - from)];
+        for (int start = from; start < target; start += SEGMENT_ROWS) {
+            int n = Math.min(SEGMENT_ROWS, target - start);
+            for (int i = 0; i < n; i++) slots[i] = start + i;
+            segments.add(FrozenSegment.encode(source, columns, slots, 0, n));
+        }
+        TableStorage hot = TableStorage.create(source.getMode(), columns);
+        for (int slot = target; slot < size; slot++) {
+            copyRow(hot, source, slot);
+        }
+        return new TieredStorage(columns, segments, hot);
+    }
+
+    /** Leading live slots that were frozen are frozen again (re-encoded); the rest are copied hot. */
+    @Override
+    public TableStorage retain(int[] slots, int count) {
+        int cold = 0;
+        while (cold < count && slots[cold] < frozenRows) cold++;
+        List<FrozenSegment> kept = new ArrayList<>();
+        for (int from = 0; from < cold; from += SEGMENT_ROWS) {
+            kept.add(FrozenSegment.encode(this, columns, slots, from, Math.min(cold, from + SEGMENT_ROWS)));
+        }
+        TableStorage copy = TableStorage.create(getMode(), columns);
+        for (int i = cold; i < count; i++) {
+            copyRow(copy, this, slots[i]);
+        }
+        return kept.isEmpty() ? copy : new TieredStorage(columns, kept, copy);
+    }
+
+    private static int copyRow(TableStorage into, TableStorage source, int slot) {
+        if (source instanceof TieredStorage) {
+            TieredStorage tiered = (TieredStorage) source;
+            if (slot >= tiered.frozenRows) return into.appendCopy(tiered.hot, slot - tiered.frozenRows);
+        }
+        return into.appendCopy(source, slot);
+    }
+
+    List<FrozenSegment> segments() { return Arrays.asList(segments); }
+    TableStorage hot() { return hot; }
+
+    @Override public StorageMode getMode() { return hot.getMode(); }
+    @Override public int size() { return frozenRows + hot.size(); }
+    @Override public int frozenRows() { return frozenRows; }
+
+    @Override
+    public int idAt(int slot) {
+        if (slot >= frozenRows) return hot.idAt(slot - frozenRows);
+        int s = segmentOf(slot);
+        return segments[s].idAt(slot - starts[s]);
+    }
+
+    @Override
+    public Record recordAt(int slot) {
+        if (slot >= frozenRows) return hot.recordAt(slot - frozenRows);
+        int s = segmentOf(slot);
+        return segments[s].recordAt(slot - starts[s]);
+    }
+
+    @Override
+    public Object valueAt(int slot, int column) {
+        if (slot >= frozenRows) return hot.valueAt(slot - frozenRows, column);
+        int s = segmentOf(slot);
+        return segments[s].valueAt(slot - starts[s], column);
+    }
+
+    @Override
+    public void load(int column, int from, int n, BatchColumn out) {
+        if (from >= frozenRows) {
+            hot.load(column, from - frozenRows, n, out);
+        } else {
+            super.load(column, from, n, out);     // frozen values decode one at a time
+        }
+    }
+
+    @Override
+    public long createdAtMillis(int slot) {
+        if (slot >= frozenRows) return hot.createdAtMillis(slot - frozenRows);
+        int s = segmentOf(slot);
+        return segments[s].createdAtMillis(slot - starts[s]);
+    }
+
+    @Override
+    public int append(int id, Map<String, Object> values) {
+        return frozenRows + hot.append(id, values);
+    }
+
+    @Override
+    public int appendValues(int id, long createdAtMillis, Object[] values) {
+        return frozenRows + hot.appendValues(id, createdAtMillis, values);
+    }
+
+    @Override
+    public int appendVersion(int slot, String column, Object value) {
+        if (slot >= frozenRows) return frozenRows + hot.appendVersion(slot - frozenRows, column, value);
+        if (getMode() == StorageMode.ROW) {
+            int copy = hot.appendCopy(this, slot);      // recordAt hands out a private Record
+            hot.set(copy, column, value);
+            return frozenRows + copy;
+        }
+        int c = columnIndex(column);
+        if (c < 0) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i == c ? value : valueAt(slot, i);
+        }
+        return frozenRows + hot.appendValues(idAt(slot), createdAtMillis(slot), row);
+    }
+
+    @Override
+    public void set(int slot, String column, Object value) {
+        if (slot < frozenRows) {
+            throw new IllegalStateException("Slot " + slot + " is frozen");
+        }
+        hot.set(slot - frozenRows, column, value);
+    }
+
+    @Override
+    public IntPredicate equalTo(String column, String literal) {
+        int c = columnIndex(column);
+        IntPredicate hotMatches = hot.equalTo(column, literal);
+        IntPredicate[] frozenMatches = new IntPredicate[segments.length];
+        return new IntPredicate() {
+            private int lo, hi;                 // slots of the current segment
+            private IntPredicate current;
+
+            @Override
+            public boolean test(int slot) {
+                if (slot >= frozenRows) return hotMatches.test(slot - frozenRows);
+                if (slot < lo || slot >= hi || current == null) {
+                    int s = segmentOf(slot);
+                    if (frozenMatches[s] == null) frozenMatches[s] = segments[s].equalTo(c, literal);
+                    current = frozenMatches[s];
+                    lo = starts[s];
+                    hi = lo + segments[s].size();
+                }
+                return current.test(slot - lo);
+            }
+        };
+    }
+
+    @Override
+    public int appendCopy(TableStorage source, int slot) {
+        return frozenRows + copyRow(hot, source, slot);
+    }
+
+    @Override
+    public long estimateBytes(int rows) {
+        long bytes = hot.estimateBytes(Math.max(0, rows - frozenRows));
+        for (FrozenSegment segment : segments) bytes += segment.bytes();
+        return bytes;
+    }
+
+    private int segmentOf(int slot) {
+        int s = Arrays.binarySearch(starts, slot);
+        return s >= 0 ? s : -s - 2;
+    }
+}
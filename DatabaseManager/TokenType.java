@@ -0,0 +1,13 @@
+/**
+ * Kinds of token {@link SqlLexer} reads.
+ * Author: Eyasu Solomon
+ */
+enum TokenType {
+    WORD,           // identifier or keyword
+    QUOTED_NAME,    // "name" or `name`
+    STRING,         // 'text'
+    NUMBER,
+    COMMA, DOT, LPAREN, RPAREN, STAR, SEMICOLON, MINUS, PLUS,
+    EQ, NE, LT, LE, GT, GE,
+    EOF
+}
@@ -0,0 +1,19 @@
+import java.util.*;
+
+/**
+ * UPDATE table SET column = value, ... [WHERE condition].
+ * Author: Eyasu Solomon
+ */
+final class UpdateStatement extends SqlStatement {
+    final String table;
+    final List<String> columns;
+    final List<String> values;          // null entries set NULL
+    final Expr where;
+
+    UpdateStatement(String table, List<String> columns, List<String> values, Expr where) {
+        this.table = table;
+        this.columns = columns;
+        this.values = values;
+        this.where = where;
+    }
+}
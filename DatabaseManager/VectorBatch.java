@@ -0,0 +1,57 @@
+import java.util.*;
+
+/**
+ * One batch of consecutive slots, or of slots gathered from a list: a
+ * lazily loaded vector per column and the selection vector.
+ * Author: Eyasu Solomon
+ */
+final class VectorBatch {
+    static final int SIZE = 1024;
+
+    final int[] selection = new int[SIZE];
+
+    private final TableStorage storage;
+    private final BatchColumn[] vectors;
+    private final boolean[] loaded;
+    private int start;
+    private int count;
+    private int[] slots;                    // gathered batch: slots[start .. start + count); else null
+
+    VectorBatch(TableStorage storage, List<Column> columns) {
+        this.storage = storage;
+        this.vectors = new BatchColumn[columns.size()];
+        this.loaded = new boolean[columns.size()];
+        for (int c = 0; c < vectors.length; c++) {
+            vectors[c] = new BatchColumn(columns.get(c).getType());
+        }
+    }
+
+    void reset(int start, int count) {
+        this.start = start;
+        this.count = count;
+        this.slots = null;
+        Arrays.fill(loaded, false);
+    }
+
+    /** Makes the batch {@code slots[offset .. offset + count)}, with every position selected. */
+    void gather(int[] slots, int offset, int count) {
+        reset(offset, count);
+        this.slots = slots;
+        for (int i = 0; i < count; i++) selection[i] = i;
+    }
+
+    /** Column {@code c} of this batch, loaded on first use. */
+    BatchColumn column(int c) {
+        BatchColumn col = vectors[c];
+        if (!loaded[c]) {
+            col.clear();
+            if (slots == null) {
+                storage.load(c, start, count, col);
+            } else {
+                for (int i = 0; i < count; i++) col.set(i, storage.valueAt(slots[start + i], c));
+            }
+            loaded[c] = true;
+        }
+        return col;
+    }
+}
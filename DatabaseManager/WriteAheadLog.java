@@ -0,0 +1,563 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead (redo) log for a {@link Database}.
+ * Author: Eyasu Solomon
+ *
+ * Every schema change and {@link Modifiable} operation is appended as one
+ * frame to the current log segment through a FileChannel:
+ *
+ *   [int payloadLength][int crc32(payload)][payload]
+ *
+ * A change is validated and applied in memory first, then logged. Logging
+ * only appends and returns the frame's LSN; the caller passes it to
+ * {@link #awaitDurable} once it has released its locks, which returns when
+ * the frame is durable according to the {@link SyncPolicy}, so writers
+ * waiting at the same time share one sync. Between
+ * {@link #beginDeferredSync} and {@link #endDeferredSync} a thread's
+ * changes return without waiting, and the end waits once for all of them. On startup the segments are replayed in order to
+ * rebuild every table and its nextId counter; a torn frame at the tail (a
+ * crash mid-write) is truncated away.
+ *
+ * A {@link Checkpoint} rotates to a fresh segment and snapshots the tables;
+ * once the snapshot is on disk the older segments are deleted, so recovery
+ * only replays what was logged after the last checkpoint.
+ */
+class WriteAheadLog implements Closeable {
+    static final byte CREATE_TABLE = 1;
+    static final byte CREATE_INDEX = 2;
+    static final byte INSERT = 3;
+    static final byte UPDATE = 4;
+    static final byte DELETE = 5;
+    static final byte UPDATE_WHERE = 6;     // SQL condition, then column/value pairs
+    static final byte DELETE_WHERE = 7;     // SQL condition
+    static final byte ANALYZE = 8;          // statistics are collected again on replay
+
+    private static final int FRAME_HEADER = 8;
+    private static final int BATCH_BYTES = 1 << 20;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final SyncPolicy policy;
+    private final long groupCommitNanos;
+    private final CRC32 crc = new CRC32();
+    private final LogBuffer buffer = new LogBuffer();
+    private final ReentrantReadWriteLock checkpointGate = new ReentrantReadWriteLock();
+    private final ThreadLocal<long[]> deferred = new ThreadLocal<>();  // {depth, last LSN} of a deferring thread
+
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;      // bytes in the current segment
+    private long appendedBytes;     // total bytes appended since open (monotonic LSN)
+    private long durableBytes;      // bytes known to be on disk
+    private boolean flushRequested;
+    private Thread flusher;
+    private volatile boolean closed;
+
+    public WriteAheadLog(Path directory, SyncPolicy policy, long groupCommitMillis) throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        this.groupCommitNanos = Math.max(0, groupCommitMillis) * 1_000_000L;
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        this.segment = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1));
+        openSegment();
+        if (policy == SyncPolicy.GROUP_COMMIT) {
+            flusher = new Thread(this::flushLoop, "wal-group-commit");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    public SyncPolicy getPolicy() { return policy; }
+    public Path getDirectory() { return directory; }
+    
+    /**
+     * Changes hold the read side while they are applied and logged; a
+     * checkpoint holds the write side while it rotates and snapshots.
+     */
+    ReentrantReadWriteLock checkpointGate() { return checkpointGate; }
+    
+    public synchronized long currentSegmentBytes() { return segmentBytes; }
+
+    // ------------------------------------------------------------------
+    // Logging
+    // ------------------------------------------------------------------
+
+    public long logCreateTable(Table table) {
+        return append(CREATE_TABLE, b -> {
+            b.putString(table.getName());
+            b.putString(table.getStorageMode().name());
+            b.putInt(table.getColumns().size());
+            for (Column col : table.getColumns()) {
+                b.putString(col.getName());
+                b.putString(col.getType().name());
+                b.put((byte) (col.isNullable() ? 1 : 0));
+            }
+        });
+    }
+
+    public long logCreateIndex(Table table, String column, IndexType type) {
+        return append(CREATE_INDEX, b -> {
+            b.putString(table.getName());
+            b.putString(column);
+            b.putString(type.name());
+        });
+    }
+
+    public long logAnalyze(Table table) {
+        return append(ANALYZE, b -> b.putString(table.getName()));
+    }
+
+    public long logInsert(Table table, int id, Map<String, Object> values) {
+        return append(INSERT, b -> {
+            b.putString(table.getName());
+            b.putInt(id);
+            b.putInt(values.size());
+            for (Map.Entry<String, Object> e : values.entrySet()) {
+                b.putString(e.getKey());
+                b.putValue(e.getValue());
+            }
+        });
+    }
+
+    /** Logs rows added by one batch insert (ids from firstId on), to be awaited once. */
+    public long logInserts(Table table, int firstId, List<Object[]> rows) {
+        List<Column> columns = table.getColumns();
+        return append(INSERT, rows.size(), (b, i) -> {
+            Object[] row = rows.get(i);
+            int count = 0;
+            for (Object value : row) {
+                if (value != null) count++;
+            }
+            b.putString(table.getName());
+            b.putInt(firstId + i);
+            b.putInt(count);
+            for (int c = 0; c < row.length; c++) {
+                if (row[c] == null) continue;
+                b.putString(columns.get(c).getName());
+                b.putValue(row[c]);
+            }
+        });
+    }
+
+    public long logUpdate(Table table, String whereCol, String whereVal, String setCol, String setVal) {
+        return append(UPDATE, b -> {
+            b.putString(table.getName());
+            b.putString(whereCol);
+            b.putString(whereVal);
+            b.putString(setCol);
+            b.putString(setVal);
+        });
+    }
+
+    public long logDelete(Table table, String column, String value) {
+        return append(DELETE, b -> {
+            b.putString(table.getName());
+            b.putString(column);
+            b.putString(value);
+        });
+    }
+
+    /** Logs an UPDATE by its condition (rendered as SQL, empty for every row), replayed by re-running it. */
+    public long logUpdate(Table table, Expr where, List<String> columns, List<Object> values) {
+        return append(UPDATE_WHERE, b -> {
+            b.putString(table.getName());
+            b.putString(where == null ? "" : where.toString());
+            b.putInt(columns.size());
+            for (int i = 0; i < columns.size(); i++) {
+                b.putString(columns.get(i));
+                b.putValue(values.get(i));
+            }
+        });
+    }
+
+    public long logDelete(Table table, Expr where) {
+        return append(DELETE_WHERE, b -> {
+            b.putString(table.getName());
+            b.putString(where == null ? "" : where.toString());
+        });
+    }
+
+    /**
+     * Until the matching {@link #endDeferredSync}, changes on this thread
+     * return once appended instead of once durable; a script's writes then
+     * share one wait. Calls may nest.
+     */
+    public void beginDeferredSync() {
+        long[] deferring = deferred.get();
+        if (deferring == null) deferred.set(new long[] {1, 0});
+        else deferring[0]++;
+    }
+
+    /** Ends a {@link #beginDeferredSync}; the outermost waits until this thread's changes are durable. */
+    public void endDeferredSync() {
+        long[] deferring = deferred.get();
+        if (deferring == null || --deferring[0] > 0) return;
+        deferred.remove();
+        if (deferring[1] > 0) sync(deferring[1]);
+    }
+
+    /**
+     * Returns once the log is durable up to {@code lsn}, as returned by a
+     * log method: at once under OS_BUFFERED, after a sync of its own under
+     * PER_OP (unless another one covered it), after the next group commit
+     * under GROUP_COMMIT. Call it after releasing any table lock and the
+     * checkpoint gate. Between {@link #beginDeferredSync} and
+     * {@link #endDeferredSync} it only notes the LSN.
+     */
+    public void awaitDurable(long lsn) {
+        long[] deferring = deferred.get();
+        if (deferring != null) {
+            deferring[1] = Math.max(deferring[1], lsn);
+            return;
+        }
+        sync(lsn);
+    }
+
+    private void sync(long lsn) {
+        if (policy == SyncPolicy.PER_OP) {
+            synchronized (this) {
+                if (durableBytes >= lsn || closed) return;
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Write-ahead log sync failed", e);
+                }
+                durableBytes = appendedBytes;
+            }
+        } else if (policy == SyncPolicy.GROUP_COMMIT) {
+            awaitFlush(lsn);
+        }
+    }
+
+    private long append(byte type, Consumer<LogBuffer> body) {
+        return append(type, 1, (b, i) -> body.accept(b));
+    }
+
+    /**
+     * Encodes {@code frames} frames of one type, appends them to the segment
+     * and returns the LSN that {@link #awaitDurable} takes.
+     */
+    private long append(byte type, int frames, ObjIntConsumer<LogBuffer> body) {
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Write-ahead log is closed");
+            try {
+                // Frames of a batch are gathered into one buffer so the batch costs few write calls
+                ByteBuffer batch = frames > 1 ? ByteBuffer.allocate(BATCH_BYTES) : null;
+                for (int i = 0; i < frames; i++) {
+                    buffer.reset();
+                    buffer.skip(FRAME_HEADER);
+                    buffer.put(type);
+                    body.accept(buffer, i);
+
+                    ByteBuffer frame = buffer.frame();
+                    int payload = frame.limit() - FRAME_HEADER;
+                    crc.reset();
+                    crc.update(frame.array(), FRAME_HEADER, payload);
+                    frame.putInt(0, payload);
+                    frame.putInt(4, (int) crc.getValue());
+                    appendedBytes += frame.limit();
+                    segmentBytes += frame.limit();
+                    if (batch != null && frame.limit() <= batch.remaining()) {
+                        batch.put(frame);
+                        continue;
+                    }
+                    if (batch != null) drain(batch);
+                    while (frame.hasRemaining()) channel.write(frame);
+                }
+                if (batch != null) drain(batch);
+                return appendedBytes;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Write-ahead log append failed", e);
+            }
+        }
+    }
+
+    private void drain(ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) channel.write(batch);
+        batch.clear();
+    }
+
+    // ------------------------------------------------------------------
+    // Group commit
+    // ------------------------------------------------------------------
+
+    private synchronized void awaitFlush(long lsn) {
+        flushRequested = true;
+        notifyAll();
+        boolean interrupted = false;
+        while (durableBytes < lsn && channel.isOpen()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Waits for the first commit request, lets the window collect more
+     * appends, then forces them all with a single fsync.
+     */
+    private void flushLoop() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (!flushRequested && !closed) wait();
+                    if (!flushRequested) return;
+                }
+                if (groupCommitNanos > 0) {
+                    Thread.sleep(groupCommitNanos / 1_000_000L, (int) (groupCommitNanos % 1_000_000L));
+                }
+                long target;
+                FileChannel current;
+                synchronized (this) {
+                    flushRequested = false;
+                    target = appendedBytes;
+                    current = channel;
+                }
+                try {
+                    current.force(false);
+                } catch (ClosedChannelException e) {
+                    // Rotated meanwhile; rotate() forced everything up to target
+                    synchronized (this) {
+                        if (current == channel) throw e;
+                    }
+                }
+                synchronized (this) {
+                    durableBytes = Math.max(durableBytes, target);
+                    notifyAll();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Write-ahead log flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Recovery
+    // ------------------------------------------------------------------
+
+    /**
+     * Replays every segment into the database and returns the number of
+     * records applied. Must be called before any table is attached to this log.
+     */
+    public int replay(Database database) throws IOException {
+        return replay(database, 0);
+    }
+    
+    /** Replays the segments numbered {@code fromSegment} and up (those after a checkpoint). */
+    public int replay(Database database, long fromSegment) throws IOException {
+        int applied = 0;
+        List<Path> segments = segments();
+        segments.removeIf(p -> segmentNumber(p) < fromSegment);
+        for (int i = 0; i < segments.size(); i++) {
+            Path file = segments.get(i);
+            long validEnd = 0;
+            long size = Files.size(file);
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                byte[] payload = new byte[256];
+                while (true) {
+                    int length;
+                    int checksum;
+                    try {
+                        length = in.readInt();
+                        checksum = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length <= 0 || length > size - validEnd - FRAME_HEADER) break;
+                    if (payload.length < length) payload = new byte[Math.max(length, payload.length * 2)];
+                    try {
+                        in.readFully(payload, 0, length);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) break;
+                    apply(database, ByteBuffer.wrap(payload, 0, length));
+                    validEnd += FRAME_HEADER + length;
+                    applied++;
+                }
+            }
+            if (validEnd < size) {
+                if (i < segments.size() - 1) {
+                    throw new IOException("Corrupt write-ahead log segment " + file.getFileName() +
+                        " at offset " + validEnd);
+                }
+                System.err.println("Write-ahead log: truncating torn tail of " + file.getFileName() +
+                    " (" + (size - validEnd) + " bytes)");
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    ch.truncate(validEnd);
+                    ch.force(true);
+                }
+                if (file.equals(currentSegmentPath())) {
+                    channel.position(validEnd);
+                    segmentBytes = validEnd;
+                }
+            }
+        }
+        return applied;
+    }
+
+    private void apply(Database database, ByteBuffer in) {
+        byte type = in.get();
+        String tableName = LogBuffer.getString(in);
+        if (type == CREATE_TABLE) {
+            StorageMode mode = StorageMode.valueOf(LogBuffer.getString(in));
+            int count = in.getInt();
+            List<Column> columns = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = LogBuffer.getString(in);
+                DataType dataType = DataType.valueOf(LogBuffer.getString(in));
+                columns.add(new Column(name, dataType, in.get() == 1));
+            }
+            database.addTable(new Table(tableName, columns, mode));
+            return;
+        }
+
+        Table table = database.getTable(tableName);
+        if (table == null) {
+            throw new IllegalStateException("Write-ahead log refers to unknown table " + tableName);
+        }
+        switch (type) {
+            case CREATE_INDEX:
+                table.createIndex(LogBuffer.getString(in), IndexType.valueOf(LogBuffer.getString(in)));
+                break;
+            case INSERT:
+                int id = in.getInt();
+                int count = in.getInt();
+                Map<String, Object> values = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    values.put(LogBuffer.getString(in), LogBuffer.getValue(in));
+                }
+                table.restore(id, values);
+                break;
+            case UPDATE:
+                table.update(LogBuffer.getString(in), LogBuffer.getString(in),
+                             LogBuffer.getString(in), LogBuffer.getString(in));
+                break;
+            case DELETE:
+                table.delete(LogBuffer.getString(in), LogBuffer.getString(in));
+                break;
+            case UPDATE_WHERE: {
+                Expr where = condition(LogBuffer.getString(in));
+                int pairs = in.getInt();
+                List<String> columns = new ArrayList<>(pairs);
+                List<String> assigned = new ArrayList<>(pairs);
+                for (int i = 0; i < pairs; i++) {
+                    columns.add(LogBuffer.getString(in));
+                    Object value = LogBuffer.getValue(in);
+                    assigned.add(value == null ? null : value.toString());
+                }
+                table.update(where, columns, assigned);
+                break;
+            }
+            case DELETE_WHERE:
+                table.delete(condition(LogBuffer.getString(in)));
+                break;
+            case ANALYZE:
+                table.analyze();
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    private static Expr condition(String sql) {
+        return sql.isEmpty() ? null : StatementParser.parseCondition(sql);
+    }
+
+    // ------------------------------------------------------------------
+    // Segments
+    // ------------------------------------------------------------------
+
+    /**
+     * Forces the current segment, starts the next one and returns its
+     * number. Every record logged before the call lives in a lower segment.
+     */
+    public synchronized long rotate() throws IOException {
+        if (closed) throw new IllegalStateException("Write-ahead log is closed");
+        channel.force(false);
+        channel.close();
+        durableBytes = appendedBytes;
+        segment++;
+        openSegment();
+        notifyAll();
+        return segment;
+    }
+    
+    /** Deletes the segments a checkpoint has made redundant. */
+    public void deleteSegmentsBefore(long keepFrom) throws IOException {
+        for (Path p : segments()) {
+            if (segmentNumber(p) < keepFrom) Files.deleteIfExists(p);
+        }
+    }
+    
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(currentSegmentPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        segmentBytes = channel.size();
+        channel.position(segmentBytes);
+    }
+
+    private Path currentSegmentPath() {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : stream) result.add(p);
+        }
+        result.sort(Comparator.comparingLong(WriteAheadLog::segmentNumber));
+        return result;
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                channel.force(false);
+                durableBytes = appendedBytes;
+            } finally {
+                channel.close();
+                notifyAll();
+            }
+        }
+    }
+}